@@ -0,0 +1,25 @@
+package com.plivo.core.cluster;
+
+import java.net.URI;
+
+/**
+ * A broker instance in the cluster and the URL of its inter-node endpoint.
+ */
+public class ClusterNode {
+    
+    private final String id;
+    private final URI url;
+    
+    public ClusterNode(String id, URI url) {
+        this.id = id;
+        this.url = url;
+    }
+    
+    public String getId() {
+        return id;
+    }
+    
+    public URI getUrl() {
+        return url;
+    }
+}
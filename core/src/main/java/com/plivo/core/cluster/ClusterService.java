@@ -0,0 +1,927 @@
+package com.plivo.core.cluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.plivo.core.exceptions.ClusterForwardException;
+import com.plivo.core.exceptions.QueueOverflowException;
+import com.plivo.core.exceptions.TopicAlreadyExistsException;
+import com.plivo.core.exceptions.TopicNotFoundException;
+import com.plivo.core.repository.TopicRepository;
+import com.plivo.core.service.MessageDispatcher;
+import com.plivo.core.service.PubSubService;
+import com.plivo.core.service.TopicDeleter;
+import com.plivo.models.MessageEnvelope;
+import com.plivo.models.Topic;
+import com.plivo.models.cluster.ClusterMessage;
+import io.dropwizard.lifecycle.Managed;
+import org.eclipse.jetty.websocket.api.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Routes topics across broker nodes.
+ * Every node knows every topic, but each topic is replicated on a few nodes
+ * chosen on a consistent hash ring. The leader assigns offsets, queues messages
+ * and replicates them to the other replicas; publishes arriving elsewhere are
+ * forwarded to it. A replica that starts leading a topic claims the next leader
+ * epoch and announces it; every node then follows that replica while it is
+ * reachable, and otherwise the first reachable replica in ring order, which
+ * claims a newer epoch. Followers reject entries from an older epoch, so a
+ * leader that was replaced cannot complete writes through them.
+ *
+ * <p>Followers number a leader's batches and pull the log of its topics from
+ * the leader, page by page, when they connect or find a batch missing. They
+ * hold back acks to that leader until the catch-up completes.
+ *
+ * <p>Nodes with local subscribers register interest
+ * with all replicas, and the leader sends each message once per interested
+ * node, which fans it out to its own subscribers.
+ *
+ * <p>A deleted topic leaves a tombstone with its deletion time for a while.
+ * Topic names announced by peers, in greetings or creations, carry the topic's
+ * creation time, and a topic created before its tombstone is not brought back;
+ * greetings also pass tombstones on to nodes that missed the delete.
+ */
+public class ClusterService implements Managed, MessageDispatcher.Forwarder, PubSubService.SubscriptionListener {
+    
+    private static final Logger log = LoggerFactory.getLogger(ClusterService.class);
+    
+    private final String localNodeId;
+    private final List<ClusterNode> nodes;
+    private final HashRing ring;
+    private final long forwardTimeoutMillis;
+    private final long reconnectIntervalMillis;
+    private final String secret;
+    private final long tombstoneRetentionMillis;
+    private final TopicRepository topicRepository;
+    private final PubSubService pubSubService;
+    private final MessageDispatcher dispatcher;
+    private final ReplicationManager replication;
+    private final ObjectMapper objectMapper;
+    private final Map<String, PeerLink> links;
+    // Nodes with subscribers for each topic owned here
+    private final ConcurrentHashMap<String, Set<String>> remoteInterest;
+    // Interest last reported to the owners of remote topics
+    private final ConcurrentHashMap<String, Boolean> reportedInterest;
+    private final ConcurrentHashMap<Long, CompletableFuture<MessageEnvelope>> pendingPublishes;
+    // Deletion time of each recently deleted topic
+    private final ConcurrentHashMap<String, Long> tombstones;
+    // Newest leader epoch seen for each topic
+    private final ConcurrentHashMap<String, LeaderEpoch> epochs;
+    // Next batch id expected on each leader's replication stream to this node
+    private final ConcurrentHashMap<String, Long> expectedBatches;
+    // Topics being pulled from their leader after this node missed part of the log
+    private final ConcurrentHashMap<String, CatchUp> catchUps;
+    private final AtomicLong nextCorrelationId;
+    // Tears down topics deleted by a peer; without one they are only unregistered
+    private TopicDeleter topicDeleter;
+    private ScheduledExecutorService scheduler;
+    
+    public ClusterService(
+            String localNodeId,
+            List<ClusterNode> nodes,
+            int virtualNodes,
+            int replicationFactor,
+            long forwardTimeoutMillis,
+            long reconnectIntervalMillis,
+            String secret,
+            long tombstoneRetentionMillis,
+            TopicRepository topicRepository,
+            PubSubService pubSubService,
+            MessageDispatcher dispatcher,
+            ReplicationManager replication,
+            ObjectMapper objectMapper) {
+        this.localNodeId = localNodeId;
+        this.nodes = List.copyOf(nodes);
+        this.ring = new HashRing(nodes.stream().map(ClusterNode::getId).collect(Collectors.toList()), virtualNodes, replicationFactor);
+        this.forwardTimeoutMillis = forwardTimeoutMillis;
+        this.reconnectIntervalMillis = reconnectIntervalMillis;
+        this.secret = secret;
+        this.tombstoneRetentionMillis = tombstoneRetentionMillis;
+        this.topicRepository = topicRepository;
+        this.pubSubService = pubSubService;
+        this.dispatcher = dispatcher;
+        this.replication = replication;
+        this.objectMapper = objectMapper;
+        this.links = new ConcurrentHashMap<>();
+        this.remoteInterest = new ConcurrentHashMap<>();
+        this.reportedInterest = new ConcurrentHashMap<>();
+        this.pendingPublishes = new ConcurrentHashMap<>();
+        this.tombstones = new ConcurrentHashMap<>();
+        this.epochs = new ConcurrentHashMap<>();
+        this.expectedBatches = new ConcurrentHashMap<>();
+        this.catchUps = new ConcurrentHashMap<>();
+        this.nextCorrelationId = new AtomicLong();
+    }
+    
+    public void setTopicDeleter(TopicDeleter topicDeleter) {
+        this.topicDeleter = topicDeleter;
+    }
+    
+    @Override
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cluster");
+            thread.setDaemon(true);
+            return thread;
+        });
+        HttpClient httpClient = HttpClient.newHttpClient();
+        
+        for (ClusterNode node : nodes) {
+            if (node.getId().equals(localNodeId)) {
+                continue;
+            }
+            PeerLink link = new PeerLink(node, httpClient, scheduler, reconnectIntervalMillis, secret, this::handleLinkFrame, this::greet);
+            links.put(node.getId(), link);
+        }
+        replication.start(links, scheduler);
+        links.values().forEach(PeerLink::connect);
+        log.info("Cluster node {} started with {} peers, replication factor {}",
+                localNodeId, links.size(), ring.getReplicationFactor());
+    }
+    
+    @Override
+    public void stop() {
+        links.values().forEach(PeerLink::close);
+        scheduler.shutdownNow();
+        pendingPublishes.values().forEach(future ->
+            future.completeExceptionally(new ClusterForwardException("NODE_UNAVAILABLE", "Node is shutting down")));
+        log.info("Cluster node {} stopped", localNodeId);
+    }
+    
+    public String getLocalNodeId() {
+        return localNodeId;
+    }
+    
+    /**
+     * Returns the current leader of a topic: the replica holding its newest epoch if that is this
+     * node or reachable from it, otherwise its first replica that is.
+     */
+    public String leaderOf(String topicName) {
+        List<String> replicas = ring.replicasOf(topicName);
+        LeaderEpoch known = epochs.get(topicName);
+        if (known != null && replicas.contains(known.leader) && isReachable(known.leader)) {
+            return known.leader;
+        }
+        for (String nodeId : replicas) {
+            if (isReachable(nodeId)) {
+                return nodeId;
+            }
+        }
+        return replicas.get(0);
+    }
+    
+    public boolean isLocalLeader(String topicName) {
+        return localNodeId.equals(leaderOf(topicName));
+    }
+    
+    /**
+     * Checks, on the leader, that enough replicas are in sync to accept a publish.
+     *
+     * @throws ClusterForwardException With code NOT_ENOUGH_REPLICAS otherwise
+     */
+    public void ensureInSync(String topicName) {
+        replication.ensureInSync(topicName, ring.replicasOf(topicName));
+    }
+    
+    /**
+     * Replicates a message just published on this leader.
+     *
+     * @return Completes once the configured ack level is met
+     */
+    public CompletableFuture<Void> replicate(String topicName, MessageEnvelope envelope) {
+        return replication.replicate(topicName, envelope, ring.replicasOf(topicName), leaderEpoch(topicName));
+    }
+    
+    /**
+     * Returns this node's leader epoch for a topic it leads, claiming the next epoch if another node
+     * held the newest one.
+     */
+    long leaderEpoch(String topicName) {
+        LeaderEpoch known = epochs.get(topicName);
+        if (known != null && known.leader.equals(localNodeId)) {
+            return known.epoch;
+        }
+        LeaderEpoch claimed = epochs.compute(topicName, (name, current) ->
+            current != null && current.leader.equals(localNodeId)
+                ? current
+                : new LeaderEpoch(current != null ? current.epoch + 1 : 1, localNodeId));
+        if (claimed != known) {
+            log.info("Node {} leads topic {} from epoch {}", localNodeId, topicName, claimed.epoch);
+            ClusterMessage message = new ClusterMessage(ClusterMessage.LEADER, localNodeId);
+            message.setTopic(topicName);
+            message.setEpoch(claimed.epoch);
+            broadcast(message);
+        }
+        return claimed.epoch;
+    }
+    
+    /**
+     * Forwards a publish to the topic's leader.
+     *
+     * @return The envelope assigned by the leader; fails with {@link ClusterForwardException}
+     */
+    public CompletableFuture<MessageEnvelope> forwardPublish(String topicName, String messageId, Object payload, int priority) {
+        String owner = leaderOf(topicName);
+        PeerLink link = links.get(owner);
+        if (link == null || !link.isConnected()) {
+            return CompletableFuture.failedFuture(
+                new ClusterForwardException("NODE_UNAVAILABLE", "Owner node " + owner + " of topic " + topicName + " is unreachable"));
+        }
+        
+        long correlationId = nextCorrelationId.incrementAndGet();
+        CompletableFuture<MessageEnvelope> future = new CompletableFuture<>();
+        pendingPublishes.put(correlationId, future);
+        
+        ClusterMessage request = new ClusterMessage(ClusterMessage.PUBLISH, localNodeId);
+        request.setTopic(topicName);
+        request.setCorrelationId(correlationId);
+        request.setMessageId(messageId);
+        request.setPayload(payload);
+        request.setPriority(priority);
+        
+        if (!send(link, request)) {
+            pendingPublishes.remove(correlationId);
+            return CompletableFuture.failedFuture(
+                new ClusterForwardException("NODE_UNAVAILABLE", "Owner node " + owner + " of topic " + topicName + " is unreachable"));
+        }
+        
+        scheduler.schedule(() -> {
+            CompletableFuture<MessageEnvelope> expired = pendingPublishes.remove(correlationId);
+            if (expired != null) {
+                expired.completeExceptionally(
+                    new ClusterForwardException("NODE_UNAVAILABLE", "Owner node " + owner + " did not answer in time"));
+            }
+        }, forwardTimeoutMillis, TimeUnit.MILLISECONDS);
+        return future;
+    }
+    
+    /**
+     * Sends a message dispatched on the leader once to every node with subscribers for its topic.
+     */
+    @Override
+    public void forward(Topic topic, MessageEnvelope envelope) {
+        Set<String> interested = remoteInterest.get(topic.getName());
+        if (interested == null || interested.isEmpty() || !isLocalLeader(topic.getName())) {
+            return;
+        }
+        
+        ClusterMessage event = new ClusterMessage(ClusterMessage.EVENT, localNodeId);
+        event.setTopic(topic.getName());
+        event.setMessageId(envelope.getId());
+        event.setPayload(envelope.getPayload());
+        event.setPublishedAt(envelope.getPublishedAt());
+        event.setOffset(envelope.getOffset());
+        event.setPriority(envelope.getPriority());
+        
+        String frame;
+        try {
+            frame = objectMapper.writeValueAsString(event);
+        } catch (IOException e) {
+            log.error("Failed to encode event for topic {}: {}", topic.getName(), e.getMessage(), e);
+            return;
+        }
+        
+        for (String nodeId : interested) {
+            PeerLink link = links.get(nodeId);
+            if (link != null && !link.send(frame)) {
+                log.warn("Dropped event {} for node {}: link is down", envelope.getId(), nodeId);
+            }
+        }
+    }
+    
+    /**
+     * Reports to a topic's other replicas whether this node now has subscribers for it,
+     * so whichever of them leads knows where to send events.
+     */
+    @Override
+    public synchronized void onSubscribersChanged(Topic topic) {
+        String topicName = topic.getName();
+        boolean interested = topic.getSubscriberCount() > 0;
+        Boolean previous = reportedInterest.put(topicName, interested);
+        if (previous != null && previous == interested) {
+            return;
+        }
+        
+        ClusterMessage message = new ClusterMessage(ClusterMessage.INTEREST, localNodeId);
+        message.setTopic(topicName);
+        message.setInterested(interested);
+        for (String nodeId : ring.replicasOf(topicName)) {
+            PeerLink link = links.get(nodeId);
+            if (link != null) {
+                // If the link is down the interest is resent in the greeting on reconnect
+                send(link, message);
+            }
+        }
+    }
+    
+    public void onTopicCreated(String topicName) {
+        Topic topic = findTopic(topicName);
+        if (topic == null) {
+            return;
+        }
+        tombstones.remove(topicName);
+        ClusterMessage message = new ClusterMessage(ClusterMessage.TOPIC_CREATED, localNodeId);
+        message.setTopic(topicName);
+        message.setCreatedAt(topic.getCreatedAt().toEpochMilli());
+        broadcast(message);
+    }
+    
+    public void onTopicDeleted(String topicName) {
+        long deletedAt = System.currentTimeMillis();
+        addTombstone(topicName, deletedAt);
+        forgetTopic(topicName);
+        ClusterMessage message = new ClusterMessage(ClusterMessage.TOPIC_DELETED, localNodeId);
+        message.setTopic(topicName);
+        message.setDeletedAt(deletedAt);
+        broadcast(message);
+    }
+    
+    /**
+     * Whether a link handshake presented the cluster's shared secret.
+     */
+    public boolean isTrustedPeer(String presented) {
+        return presented != null && MessageDigest.isEqual(
+            presented.getBytes(StandardCharsets.UTF_8), secret.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * Handles a frame from a peer's outbound link to this node, answering on the same session.
+     */
+    public void handlePeerFrame(Session session, String frame) throws IOException {
+        ClusterMessage message = objectMapper.readValue(frame, ClusterMessage.class);
+        switch (message.getOp()) {
+            case ClusterMessage.HELLO:
+                handleHello(message);
+                break;
+            case ClusterMessage.TOPIC_CREATED:
+                createIfNewer(message.getTopic(), message.getCreatedAt());
+                break;
+            case ClusterMessage.TOPIC_DELETED:
+                deleteIfOlder(message.getTopic(), message.getDeletedAt());
+                break;
+            case ClusterMessage.INTEREST:
+                updateInterest(message.getNode(), message.getTopic(), Boolean.TRUE.equals(message.getInterested()));
+                break;
+            case ClusterMessage.PUBLISH:
+                handlePublish(session, message);
+                break;
+            case ClusterMessage.REPLICATE:
+                handleReplicate(session, message);
+                break;
+            case ClusterMessage.REPLICATE_ACK:
+                // Sent on the follower's own link once it has caught up
+                replication.onAck(message.getNode(), message.getBatchId());
+                break;
+            case ClusterMessage.LEADER:
+                observeEpoch(message.getTopic(), message.getEpoch(), message.getNode());
+                break;
+            case ClusterMessage.FETCH:
+                handleFetch(session, message);
+                break;
+            case ClusterMessage.EVENT:
+                handleEvent(message);
+                break;
+            default:
+                log.warn("Ignoring unknown cluster operation {} from node {}", message.getOp(), message.getNode());
+        }
+    }
+    
+    private void handleLinkFrame(String frame) {
+        ClusterMessage message;
+        try {
+            message = objectMapper.readValue(frame, ClusterMessage.class);
+        } catch (IOException e) {
+            log.warn("Malformed cluster frame: {}", e.getMessage());
+            return;
+        }
+        
+        if (ClusterMessage.REPLICATE_ACK.equals(message.getOp()) && message.getBatchId() != null) {
+            replication.onAck(message.getNode(), message.getBatchId());
+            return;
+        }
+        if (ClusterMessage.STALE_EPOCH.equals(message.getOp())) {
+            log.warn("Node {} follows topic {} from epoch {} of node {}; stepping down",
+                message.getNode(), message.getTopic(), message.getEpoch(), message.getLeader());
+            observeEpoch(message.getTopic(), message.getEpoch(), message.getLeader());
+            replication.onStaleEpoch(message.getNode(), message.getBatchId(), message.getTopic(), message.getLeader());
+            return;
+        }
+        if (ClusterMessage.CATCH_UP.equals(message.getOp())) {
+            handleCatchUp(message);
+            return;
+        }
+        
+        if (!ClusterMessage.PUBLISH_RESULT.equals(message.getOp()) || message.getCorrelationId() == null) {
+            return;
+        }
+        
+        CompletableFuture<MessageEnvelope> future = pendingPublishes.remove(message.getCorrelationId());
+        if (future == null) {
+            return;
+        }
+        if (message.getCode() != null) {
+            future.completeExceptionally(new ClusterForwardException(message.getCode(), message.getError()));
+        } else {
+            future.complete(new MessageEnvelope(message.getMessageId(), null, message.getPublishedAt(), message.getOffset()));
+        }
+    }
+    
+    private void greet(PeerLink link) {
+        String peerId = link.getNode().getId();
+        ClusterMessage hello = new ClusterMessage(ClusterMessage.HELLO, localNodeId);
+        hello.setTopics(topicRepository.getAllTopics().stream()
+            .collect(Collectors.toMap(Topic::getName, topic -> topic.getCreatedAt().toEpochMilli())));
+        hello.setDeletedTopics(Map.copyOf(tombstones));
+        hello.setLeaderEpochs(epochs.entrySet().stream()
+            .filter(entry -> entry.getValue().leader.equals(localNodeId))
+            .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().epoch)));
+        hello.setInterestedTopics(topicRepository.getAllTopics().stream()
+            .filter(topic -> topic.getSubscriberCount() > 0 && ring.replicasOf(topic.getName()).contains(peerId))
+            .map(Topic::getName)
+            .collect(Collectors.toList()));
+        send(link, hello);
+        
+        // Pages requested on an earlier connection will not be answered; pull the peer's topics afresh
+        catchUps.values().removeIf(catchUp -> catchUp.leader.equals(peerId));
+        catchUp(peerId, topicRepository.getAllTopics().stream().map(Topic::getName).collect(Collectors.toList()));
+    }
+    
+    private void handleHello(ClusterMessage hello) {
+        // Deletions first, so a topic this node deleted and the peer still lists is not recreated
+        if (hello.getDeletedTopics() != null) {
+            hello.getDeletedTopics().forEach(this::deleteIfOlder);
+        }
+        if (hello.getTopics() != null) {
+            hello.getTopics().forEach(this::createIfNewer);
+        }
+        String nodeId = hello.getNode();
+        if (hello.getLeaderEpochs() != null) {
+            hello.getLeaderEpochs().forEach((topicName, epoch) -> observeEpoch(topicName, epoch, nodeId));
+        }
+        // Topics created while this node was away only exist once the greeting is applied
+        if (hello.getTopics() != null) {
+            catchUp(nodeId, hello.getTopics().keySet());
+        }
+        
+        // Replace whatever the node registered before it reconnected
+        remoteInterest.values().forEach(interested -> interested.remove(nodeId));
+        if (hello.getInterestedTopics() != null) {
+            hello.getInterestedTopics().forEach(topicName -> updateInterest(nodeId, topicName, true));
+        }
+        log.info("Node {} joined with {} topics", nodeId, hello.getTopics() != null ? hello.getTopics().size() : 0);
+    }
+    
+    private void handlePublish(Session session, ClusterMessage request) throws IOException {
+        ClusterMessage result = new ClusterMessage(ClusterMessage.PUBLISH_RESULT, localNodeId);
+        result.setCorrelationId(request.getCorrelationId());
+        
+        MessageEnvelope envelope;
+        try {
+            if (!isLocalLeader(request.getTopic())) {
+                throw new ClusterForwardException("NOT_LEADER", String.format(
+                    "Node %s does not lead topic %s; node %s does", localNodeId, request.getTopic(), leaderOf(request.getTopic())));
+            }
+            ensureInSync(request.getTopic());
+            envelope = pubSubService.publish(request.getTopic(), request.getMessageId(), request.getPayload(),
+                request.getPriority() != null ? request.getPriority() : Topic.DEFAULT_PRIORITY);
+        } catch (Exception e) {
+            setError(result, e);
+            reply(session, result);
+            return;
+        }
+        
+        // Answer once the ack level is met, without holding up the next frame from the node
+        replicate(request.getTopic(), envelope).whenComplete((ignored, error) -> {
+            if (error != null) {
+                setError(result, error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+            } else {
+                result.setMessageId(envelope.getId());
+                result.setPublishedAt(envelope.getPublishedAt());
+                result.setOffset(envelope.getOffset());
+            }
+            try {
+                reply(session, result);
+            } catch (IOException e) {
+                log.error("Failed to answer forwarded publish: {}", e.getMessage());
+            }
+        });
+    }
+    
+    private void setError(ClusterMessage result, Throwable error) {
+        if (error instanceof QueueOverflowException) {
+            QueueOverflowException overflow = (QueueOverflowException) error;
+            result.setCode("CONSUMER_IS_SLOW");
+            result.setError(String.format("Topic queue is full (%d/%d messages). Consumers are slow.",
+                    overflow.getQueueSize(), overflow.getQueueCapacity()));
+        } else if (error instanceof TopicNotFoundException) {
+            result.setCode("TOPIC_NOT_FOUND");
+            result.setError(error.getMessage());
+        } else if (error instanceof ClusterForwardException) {
+            result.setCode(((ClusterForwardException) error).getCode());
+            result.setError(error.getMessage());
+        } else {
+            log.error("Error handling forwarded publish: {}", error.getMessage(), error);
+            result.setCode("INTERNAL_ERROR");
+            result.setError("Failed to publish message: " + error.getMessage());
+        }
+    }
+    
+    private void handleReplicate(Session session, ClusterMessage batch) throws IOException {
+        String leader = batch.getNode();
+        long batchId = batch.getBatchId();
+        Long expected = expectedBatches.put(leader, batchId + 1);
+        if (expected != null && batchId != expected) {
+            // A batch was lost with a dropped connection; its entries are only in the leader's log now
+            log.warn("Replication stream from node {} skipped from batch {} to {}; catching up", leader, expected, batchId);
+            catchUp(leader, topicRepository.getAllTopics().stream().map(Topic::getName).collect(Collectors.toList()));
+        }
+        
+        if (batch.getEntries() != null) {
+            for (ClusterMessage entry : batch.getEntries()) {
+                CatchUp catchUp = catchUps.get(entry.getTopic());
+                if (catchUp != null) {
+                    // Left to the catch-up, which keeps the log in offset order
+                    catchUp.skipped(entry.getOffset());
+                    continue;
+                }
+                LeaderEpoch known = apply(entry, leader);
+                if (known != null) {
+                    ClusterMessage stale = new ClusterMessage(ClusterMessage.STALE_EPOCH, localNodeId);
+                    stale.setBatchId(batchId);
+                    stale.setTopic(entry.getTopic());
+                    stale.setEpoch(known.epoch);
+                    stale.setLeader(known.leader);
+                    reply(session, stale);
+                }
+            }
+        }
+        
+        // Acking now would cover entries this node does not hold yet
+        if (!isCatchingUpFrom(leader)) {
+            ClusterMessage ack = new ClusterMessage(ClusterMessage.REPLICATE_ACK, localNodeId);
+            ack.setBatchId(batchId);
+            reply(session, ack);
+        }
+    }
+    
+    /**
+     * Stores a log entry from a topic's leader unless it is already held.
+     *
+     * @return The newer epoch the entry was rejected for, or null if it was accepted
+     */
+    private LeaderEpoch apply(ClusterMessage entry, String leader) {
+        LeaderEpoch known = observeEpoch(entry.getTopic(), entry.getEpoch(), leader);
+        if (known != null && (known.epoch != entry.getEpoch() || !known.leader.equals(leader))) {
+            return known;
+        }
+        Topic topic = createIfAbsent(entry.getTopic());
+        if (topic == null) {
+            return null;
+        }
+        synchronized (topic.getPublishLock()) {
+            if (entry.getOffset() <= topic.getLastOffset() && holds(topic, entry.getOffset())) {
+                return null;
+            }
+            if (entry.getOffset() > topic.getLastOffset()) {
+                topic.advanceOffset(entry.getOffset());
+            }
+            topic.addToHistory(new MessageEnvelope(
+                entry.getMessageId(),
+                entry.getPayload(),
+                entry.getPublishedAt(),
+                entry.getOffset()
+            ));
+        }
+        return null;
+    }
+    
+    private boolean holds(Topic topic, long offset) {
+        List<MessageEnvelope> found = topic.getMessagesFromOffset(offset, 1);
+        return !found.isEmpty() && found.get(0).getOffset() == offset;
+    }
+    
+    /**
+     * Records a topic's leader epoch if it is newer than the one known.
+     *
+     * @return The newest epoch known afterwards, or null if the entry carried none
+     */
+    private LeaderEpoch observeEpoch(String topicName, Long epoch, String leader) {
+        if (epoch == null || leader == null) {
+            return null;
+        }
+        return epochs.compute(topicName, (name, known) ->
+            known == null || epoch > known.epoch ? new LeaderEpoch(epoch, leader) : known);
+    }
+    
+    /**
+     * Starts pulling the log of the given topics that a node leads and this node replicates,
+     * from the first offset this node is missing. Topics already being pulled are left alone.
+     * A topic whose first page cannot be requested stays pending until the link to the leader
+     * connects and greets it, so the leader's stream is not acked in the meantime.
+     */
+    private void catchUp(String leader, Collection<String> topicNames) {
+        PeerLink link = links.get(leader);
+        if (link == null) {
+            return;
+        }
+        for (String topicName : topicNames) {
+            Topic topic = findTopic(topicName);
+            if (topic == null || !ring.replicasOf(topicName).contains(localNodeId) || !leader.equals(followedLeader(topicName))) {
+                continue;
+            }
+            if (catchUps.putIfAbsent(topicName, new CatchUp(leader)) == null) {
+                fetch(link, topicName, topic.getLastOffset() + 1);
+            }
+        }
+    }
+    
+    // The holder of the newest epoch, even while this node's own link to it is down
+    private String followedLeader(String topicName) {
+        LeaderEpoch known = epochs.get(topicName);
+        return known != null ? known.leader : leaderOf(topicName);
+    }
+    
+    private boolean fetch(PeerLink link, String topicName, long fromOffset) {
+        ClusterMessage request = new ClusterMessage(ClusterMessage.FETCH, localNodeId);
+        request.setTopic(topicName);
+        request.setOffset(fromOffset);
+        return send(link, request);
+    }
+    
+    private void handleFetch(Session session, ClusterMessage request) throws IOException {
+        String topicName = request.getTopic();
+        Topic topic = findTopic(topicName);
+        ClusterMessage page;
+        if (topic != null && isLocalLeader(topicName)) {
+            page = replication.page(topic, request.getOffset(), leaderEpoch(topicName));
+        } else {
+            // The follower stops and pulls from the actual leader once it greets it
+            page = new ClusterMessage(ClusterMessage.CATCH_UP, localNodeId);
+            page.setTopic(topicName);
+            page.setOffset(request.getOffset());
+            page.setMore(false);
+        }
+        reply(session, page);
+    }
+    
+    private void handleCatchUp(ClusterMessage page) {
+        String topicName = page.getTopic();
+        String leader = page.getNode();
+        CatchUp catchUp = catchUps.get(topicName);
+        if (catchUp == null || !catchUp.leader.equals(leader)) {
+            return;
+        }
+        if (page.getEntries() != null) {
+            for (ClusterMessage entry : page.getEntries()) {
+                if (apply(entry, leader) != null) {
+                    log.warn("Stopped catching up topic {} from node {}: it no longer leads", topicName, leader);
+                    finishCatchUp(topicName, catchUp);
+                    return;
+                }
+            }
+        }
+        
+        // Entries that arrived on the stream meanwhile may be newer than this page
+        boolean more = Boolean.TRUE.equals(page.getMore())
+            || (page.getEntries() != null && !page.getEntries().isEmpty() && catchUp.skippedOffset >= page.getOffset());
+        PeerLink link = links.get(leader);
+        if (more && link != null && fetch(link, topicName, page.getOffset())) {
+            return;
+        }
+        finishCatchUp(topicName, catchUp);
+    }
+    
+    private void finishCatchUp(String topicName, CatchUp catchUp) {
+        if (!catchUps.remove(topicName, catchUp) || isCatchingUpFrom(catchUp.leader)) {
+            return;
+        }
+        // Ack the leader's stream up to the last batch received, which the catch-up now covers
+        Long expected = expectedBatches.get(catchUp.leader);
+        PeerLink link = links.get(catchUp.leader);
+        if (expected != null && link != null) {
+            ClusterMessage ack = new ClusterMessage(ClusterMessage.REPLICATE_ACK, localNodeId);
+            ack.setBatchId(expected - 1);
+            send(link, ack);
+        }
+        log.info("Caught up topic {} from node {}", topicName, catchUp.leader);
+    }
+    
+    private boolean isCatchingUpFrom(String leader) {
+        for (CatchUp catchUp : catchUps.values()) {
+            if (catchUp.leader.equals(leader)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private void reply(Session session, ClusterMessage message) throws IOException {
+        if (session.isOpen()) {
+            session.getRemote().sendString(objectMapper.writeValueAsString(message));
+        }
+    }
+    
+    private void handleEvent(ClusterMessage event) {
+        Topic topic = createIfAbsent(event.getTopic());
+        if (topic == null) {
+            return;
+        }
+        MessageEnvelope envelope = new MessageEnvelope(
+            event.getMessageId(),
+            event.getPayload(),
+            event.getPublishedAt(),
+            event.getOffset()
+        );
+        if (event.getPriority() != null) {
+            envelope.setPriority(event.getPriority());
+        }
+        
+        // Ordered against replicated entries and local publishes like a publish on this node
+        synchronized (topic.getPublishLock()) {
+            // Replicas keep the log through replication; other nodes keep the events they receive
+            if (!ring.replicasOf(topic.getName()).contains(localNodeId)) {
+                topic.addToHistory(envelope);
+            }
+            
+            // Queued like a local publish so the dispatcher fans it out to this node's subscribers
+            if (!topic.offerMessage(envelope)) {
+                log.warn("Dropped event {} from node {}: queue for topic {} is full", envelope.getId(), event.getNode(), topic.getName());
+            }
+        }
+        dispatcher.schedule(topic);
+    }
+    
+    /**
+     * Finds or creates a topic that a peer sent messages for.
+     *
+     * @return The topic, or null if it was deleted and no newer creation has been announced
+     */
+    private Topic createIfAbsent(String topicName) {
+        Topic existing = findTopic(topicName);
+        if (existing != null) {
+            return existing;
+        }
+        if (tombstones.containsKey(topicName)) {
+            log.debug("Ignoring messages for deleted topic {}", topicName);
+            return null;
+        }
+        try {
+            return topicRepository.createTopic(topicName);
+        } catch (TopicAlreadyExistsException e) {
+            return topicRepository.getTopic(topicName);
+        }
+    }
+    
+    /**
+     * Creates a topic announced by a peer unless it was deleted after the peer created it.
+     * The creation time is kept, so every node compares deletions against the same time.
+     */
+    private void createIfNewer(String topicName, Long createdAt) {
+        Long deletedAt = tombstones.get(topicName);
+        if (deletedAt != null && (createdAt == null || createdAt <= deletedAt)) {
+            log.debug("Not recreating topic {}: deleted at {}, created at {}", topicName, deletedAt, createdAt);
+            return;
+        }
+        tombstones.remove(topicName);
+        try {
+            Topic topic = topicRepository.createTopic(topicName);
+            if (createdAt != null) {
+                topic.setCreatedAt(Instant.ofEpochMilli(createdAt));
+            }
+        } catch (TopicAlreadyExistsException e) {
+            // Already known
+        }
+    }
+    
+    /**
+     * Deletes a topic a peer deleted, unless the local topic was created after the deletion.
+     */
+    private void deleteIfOlder(String topicName, Long deletedAt) {
+        long deletionTime = deletedAt != null ? deletedAt : System.currentTimeMillis();
+        Topic topic = findTopic(topicName);
+        if (topic != null && topic.getCreatedAt().toEpochMilli() > deletionTime) {
+            return;
+        }
+        addTombstone(topicName, deletionTime);
+        if (topic != null) {
+            if (topicDeleter != null) {
+                topicDeleter.delete(topicName);
+            } else {
+                topicRepository.removeTopic(topicName);
+            }
+        }
+        forgetTopic(topicName);
+    }
+    
+    private Topic findTopic(String topicName) {
+        try {
+            return topicRepository.getTopic(topicName);
+        } catch (TopicNotFoundException e) {
+            return null;
+        }
+    }
+    
+    private void addTombstone(String topicName, long deletedAt) {
+        tombstones.merge(topicName, deletedAt, Math::max);
+        // Deletes are rare, so expired tombstones are dropped as new ones are added
+        long expiry = System.currentTimeMillis() - tombstoneRetentionMillis;
+        tombstones.values().removeIf(time -> time < expiry);
+    }
+    
+    private void updateInterest(String nodeId, String topicName, boolean interested) {
+        if (interested) {
+            remoteInterest.computeIfAbsent(topicName, name -> ConcurrentHashMap.newKeySet()).add(nodeId);
+        } else {
+            Set<String> nodeIds = remoteInterest.get(topicName);
+            if (nodeIds != null) {
+                nodeIds.remove(nodeId);
+            }
+        }
+    }
+    
+    private void forgetTopic(String topicName) {
+        ring.forget(topicName);
+        remoteInterest.remove(topicName);
+        reportedInterest.remove(topicName);
+        epochs.remove(topicName);
+        catchUps.remove(topicName);
+    }
+    
+    private boolean isReachable(String nodeId) {
+        if (nodeId.equals(localNodeId)) {
+            return true;
+        }
+        PeerLink link = links.get(nodeId);
+        return link != null && link.isConnected();
+    }
+    
+    private void broadcast(ClusterMessage message) {
+        for (PeerLink link : links.values()) {
+            // Nodes that are down learn about created and deleted topics from the greeting when they reconnect
+            if (!send(link, message)) {
+                log.debug("Node {} missed {} for topic {}", link.getNode().getId(), message.getOp(), message.getTopic());
+            }
+        }
+    }
+    
+    private boolean send(PeerLink link, ClusterMessage message) {
+        try {
+            return link.send(objectMapper.writeValueAsString(message));
+        } catch (IOException e) {
+            log.error("Failed to encode cluster message {}: {}", message.getOp(), e.getMessage(), e);
+            return false;
+        }
+    }
+    
+    /**
+     * A topic's leader epoch and the replica that claimed it.
+     */
+    private static final class LeaderEpoch {
+        
+        private final long epoch;
+        private final String leader;
+        
+        private LeaderEpoch(long epoch, String leader) {
+            this.epoch = epoch;
+            this.leader = leader;
+        }
+    }
+    
+    /**
+     * A topic being pulled from its leader.
+     */
+    private static final class CatchUp {
+        
+        private final String leader;
+        // Highest offset left to the catch-up by the replication stream
+        private volatile long skippedOffset = -1;
+        
+        private CatchUp(String leader) {
+            this.leader = leader;
+        }
+        
+        private void skipped(long offset) {
+            if (offset > skippedOffset) {
+                skippedOffset = offset;
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.plivo.core.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Consistent hash ring assigning topics to nodes.
+ * Each node is placed at several virtual points so topics spread evenly, and
+ * adding or removing a node only moves the topics adjacent to its points.
+ * A topic's replicas are the first distinct nodes met walking clockwise from
+ * its hash; the first of them is the preferred leader. Membership is fixed,
+ * so replica lists are cached per topic.
+ */
+public class HashRing {
+    
+    private final TreeMap<Long, String> ring;
+    private final int replicationFactor;
+    private final ConcurrentHashMap<String, List<String>> replicas;
+    
+    public HashRing(Collection<String> nodeIds, int virtualNodes, int replicationFactor) {
+        this.ring = new TreeMap<>();
+        this.replicationFactor = Math.min(Math.max(replicationFactor, 1), new LinkedHashSet<>(nodeIds).size());
+        this.replicas = new ConcurrentHashMap<>();
+        for (String nodeId : nodeIds) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(hash(nodeId + "#" + i), nodeId);
+            }
+        }
+    }
+    
+    public int getReplicationFactor() {
+        return replicationFactor;
+    }
+    
+    /**
+     * Returns the id of the preferred leader of a topic.
+     */
+    public String ownerOf(String topic) {
+        return replicasOf(topic).get(0);
+    }
+    
+    /**
+     * Returns the ids of the nodes replicating a topic, preferred leader first.
+     */
+    public List<String> replicasOf(String topic) {
+        return replicas.computeIfAbsent(topic, this::locate);
+    }
+    
+    /**
+     * Drops the cached replicas of a deleted topic.
+     */
+    public void forget(String topic) {
+        replicas.remove(topic);
+    }
+    
+    private List<String> locate(String topic) {
+        long point = hash(topic);
+        Set<String> nodeIds = new LinkedHashSet<>();
+        for (String nodeId : ring.tailMap(point).values()) {
+            if (nodeIds.size() == replicationFactor) {
+                break;
+            }
+            nodeIds.add(nodeId);
+        }
+        for (String nodeId : ring.headMap(point).values()) {
+            if (nodeIds.size() == replicationFactor) {
+                break;
+            }
+            nodeIds.add(nodeId);
+        }
+        return List.copyOf(nodeIds);
+    }
+    
+    private static long hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (digest[i] & 0xff);
+            }
+            return value;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 not available", e);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.plivo.core.cluster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Outbound inter-node channel to one peer, reconnecting until closed.
+ * Frames sent on the link are answered on the same connection and handed to
+ * the frame handler. The handshake carries the cluster's shared secret in
+ * {@link #SECRET_HEADER}, which the peer checks before accepting the link.
+ */
+public class PeerLink {
+    
+    private static final Logger log = LoggerFactory.getLogger(PeerLink.class);
+    
+    public static final String SECRET_HEADER = "X-Cluster-Secret";
+    
+    private final ClusterNode node;
+    private final HttpClient httpClient;
+    private final ScheduledExecutorService scheduler;
+    private final long reconnectIntervalMillis;
+    private final String secret;
+    private final Consumer<String> frameHandler;
+    private final Consumer<PeerLink> openHandler;
+    private final AtomicBoolean reconnectScheduled;
+    // Incremented on every successful connect
+    private final AtomicLong epoch;
+    private volatile WebSocket webSocket;
+    private volatile boolean closed;
+    
+    public PeerLink(
+            ClusterNode node,
+            HttpClient httpClient,
+            ScheduledExecutorService scheduler,
+            long reconnectIntervalMillis,
+            String secret,
+            Consumer<String> frameHandler,
+            Consumer<PeerLink> openHandler) {
+        this.node = node;
+        this.httpClient = httpClient;
+        this.scheduler = scheduler;
+        this.reconnectIntervalMillis = reconnectIntervalMillis;
+        this.secret = secret;
+        this.frameHandler = frameHandler;
+        this.openHandler = openHandler;
+        this.reconnectScheduled = new AtomicBoolean();
+        this.epoch = new AtomicLong();
+    }
+    
+    public ClusterNode getNode() {
+        return node;
+    }
+    
+    public boolean isConnected() {
+        return webSocket != null;
+    }
+    
+    public long getEpoch() {
+        return epoch.get();
+    }
+    
+    public void connect() {
+        if (closed) {
+            return;
+        }
+        
+        httpClient.newWebSocketBuilder()
+            .header(SECRET_HEADER, secret)
+            .buildAsync(node.getUrl(), new Listener())
+            .whenComplete((ws, error) -> {
+                if (error != null) {
+                    log.debug("Cannot reach node {} at {}: {}", node.getId(), node.getUrl(), error.getMessage());
+                    scheduleReconnect();
+                }
+            });
+    }
+    
+    /**
+     * Sends a frame, waiting until it is written so frames keep their order.
+     *
+     * @return false if the link is down
+     */
+    public synchronized boolean send(String frame) {
+        WebSocket ws = webSocket;
+        if (ws == null) {
+            return false;
+        }
+        
+        try {
+            ws.sendText(frame, true).join();
+            return true;
+        } catch (CompletionException e) {
+            log.warn("Lost link to node {}: {}", node.getId(), e.getMessage());
+            disconnected(ws);
+            ws.abort();
+            return false;
+        }
+    }
+    
+    public void close() {
+        closed = true;
+        WebSocket ws = webSocket;
+        webSocket = null;
+        if (ws != null) {
+            ws.sendClose(WebSocket.NORMAL_CLOSURE, "shutdown");
+        }
+    }
+    
+    private void disconnected(WebSocket ws) {
+        // Only the first failure of a connection schedules the reconnect
+        if (webSocket == ws) {
+            webSocket = null;
+            scheduleReconnect();
+        }
+    }
+    
+    private void scheduleReconnect() {
+        if (closed || !reconnectScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        
+        scheduler.schedule(() -> {
+            reconnectScheduled.set(false);
+            connect();
+        }, reconnectIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    private class Listener implements WebSocket.Listener {
+        
+        private final StringBuilder frame = new StringBuilder();
+        
+        @Override
+        public void onOpen(WebSocket ws) {
+            epoch.incrementAndGet();
+            webSocket = ws;
+            log.info("Connected to node {} at {}", node.getId(), node.getUrl());
+            ws.request(1);
+            // Greeting may block on the send, so keep it off the client's callback thread
+            scheduler.execute(() -> openHandler.accept(PeerLink.this));
+        }
+        
+        @Override
+        public CompletionStage<?> onText(WebSocket ws, CharSequence data, boolean last) {
+            frame.append(data);
+            if (last) {
+                String text = frame.toString();
+                frame.setLength(0);
+                try {
+                    frameHandler.accept(text);
+                } catch (Exception e) {
+                    log.error("Failed to handle frame from node {}: {}", node.getId(), e.getMessage(), e);
+                }
+            }
+            ws.request(1);
+            return null;
+        }
+        
+        @Override
+        public CompletionStage<?> onClose(WebSocket ws, int statusCode, String reason) {
+            log.info("Link to node {} closed: {} - {}", node.getId(), statusCode, reason);
+            disconnected(ws);
+            return null;
+        }
+        
+        @Override
+        public void onError(WebSocket ws, Throwable error) {
+            log.warn("Link to node {} failed: {}", node.getId(), error.getMessage());
+            disconnected(ws);
+        }
+    }
+}
@@ -0,0 +1,386 @@
+package com.plivo.core.cluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.plivo.core.exceptions.ClusterForwardException;
+import com.plivo.models.MessageEnvelope;
+import com.plivo.models.Topic;
+import com.plivo.models.cluster.ClusterMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Leader side of topic replication.
+ * Messages published on a topic leader are appended to one stream per follower
+ * and sent in batches, without waiting for the previous batch's ack, so
+ * replication overlaps with further publishes. Followers ack batches
+ * cumulatively. A follower is in sync while its link is up and its oldest
+ * unacked batch is younger than the lag timeout. With the {@code QUORUM} ack
+ * level a publish completes once a majority of the topic's replicas, counting
+ * the leader, hold the message. Entries carry the leader's epoch for their
+ * topic; a follower that has seen a newer epoch rejects them, which fails the
+ * publishes waiting on them.
+ *
+ * <p>A follower that missed part of the log pulls it from the leader in pages
+ * of at most {@link #CATCH_UP_PAGE_MESSAGES} messages and about
+ * {@link #CATCH_UP_PAGE_BYTES} bytes, so a long history never has to fit in
+ * one frame.
+ */
+public class ReplicationManager {
+    
+    private static final Logger log = LoggerFactory.getLogger(ReplicationManager.class);
+    
+    public static final int CATCH_UP_PAGE_MESSAGES = 1000;
+    // Half of the inter-node frame limit, leaving room for the page around the entries
+    public static final int CATCH_UP_PAGE_BYTES = 512 * 1024;
+    
+    public enum AckLevel {
+        // Ack once the leader has queued the message; followers catch up asynchronously
+        LEADER,
+        // Ack once a majority of the replicas hold the message
+        QUORUM
+    }
+    
+    private final String localNodeId;
+    private final AckLevel ackLevel;
+    private final int batchSize;
+    private final long lingerMillis;
+    private final long ackTimeoutMillis;
+    private final long lagTimeoutNanos;
+    private final ObjectMapper objectMapper;
+    private final ConcurrentHashMap<String, ReplicaStream> streams;
+    private ScheduledExecutorService scheduler;
+    
+    public ReplicationManager(
+            String localNodeId,
+            AckLevel ackLevel,
+            int batchSize,
+            long lingerMillis,
+            long ackTimeoutMillis,
+            long lagTimeoutMillis,
+            ObjectMapper objectMapper) {
+        this.localNodeId = localNodeId;
+        this.ackLevel = ackLevel;
+        this.batchSize = batchSize;
+        this.lingerMillis = lingerMillis;
+        this.ackTimeoutMillis = ackTimeoutMillis;
+        this.lagTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(lagTimeoutMillis);
+        this.objectMapper = objectMapper;
+        this.streams = new ConcurrentHashMap<>();
+    }
+    
+    /**
+     * Opens a stream to each follower link. Called once the links exist.
+     */
+    public void start(Map<String, PeerLink> links, ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+        links.forEach((nodeId, link) -> streams.put(nodeId, new ReplicaStream(link)));
+    }
+    
+    /**
+     * Number of follower acks a publish must collect under the configured ack level.
+     */
+    public int requiredAcks(List<String> replicas) {
+        if (ackLevel == AckLevel.LEADER) {
+            return 0;
+        }
+        // The leader's own copy counts towards the majority
+        return replicas.size() / 2;
+    }
+    
+    /**
+     * Checks that enough followers are in sync to satisfy the ack level before a publish.
+     *
+     * @throws ClusterForwardException With code NOT_ENOUGH_REPLICAS otherwise
+     */
+    public void ensureInSync(String topicName, List<String> replicas) {
+        int required = requiredAcks(replicas);
+        if (required == 0) {
+            return;
+        }
+        
+        int inSync = 0;
+        for (String nodeId : replicas) {
+            ReplicaStream stream = streams.get(nodeId);
+            if (stream != null && stream.isInSync()) {
+                inSync++;
+            }
+        }
+        if (inSync < required) {
+            throw new ClusterForwardException("NOT_ENOUGH_REPLICAS", String.format(
+                "Topic %s has %d in-sync followers, %d required", topicName, inSync, required));
+        }
+    }
+    
+    /**
+     * Streams a message published on this leader to the topic's followers.
+     *
+     * @param epoch This node's leader epoch for the topic
+     * @return Completes when the ack level is satisfied; fails with {@link ClusterForwardException}
+     */
+    public CompletableFuture<Void> replicate(String topicName, MessageEnvelope envelope, List<String> replicas, long epoch) {
+        int required = requiredAcks(replicas);
+        PendingAck pending = required > 0 ? new PendingAck(required) : null;
+        ClusterMessage entry = toEntry(topicName, envelope, epoch);
+        
+        for (String nodeId : replicas) {
+            ReplicaStream stream = streams.get(nodeId);
+            if (stream != null && stream.link.isConnected()) {
+                stream.append(entry, pending);
+            }
+        }
+        
+        if (pending == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return pending.future
+            .orTimeout(ackTimeoutMillis, TimeUnit.MILLISECONDS)
+            .exceptionally(error -> {
+                if (error instanceof TimeoutException) {
+                    throw new ClusterForwardException("REPLICATION_TIMEOUT", String.format(
+                        "Message %s was not acknowledged by %d followers in time", envelope.getId(), required));
+                }
+                if (error instanceof ClusterForwardException) {
+                    throw (ClusterForwardException) error;
+                }
+                throw new ClusterForwardException("INTERNAL_ERROR", error.getMessage());
+            });
+    }
+    
+    /**
+     * Reads one page of a topic's log for a follower catching up.
+     *
+     * @param fromOffset First offset the follower is missing
+     * @param epoch This node's leader epoch for the topic
+     * @return A CATCH_UP page; when {@code more} is set, the next page starts at its offset
+     */
+    public ClusterMessage page(Topic topic, long fromOffset, long epoch) {
+        List<MessageEnvelope> messages = topic.getMessagesFromOffset(fromOffset, CATCH_UP_PAGE_MESSAGES);
+        List<ClusterMessage> entries = new ArrayList<>(messages.size());
+        long nextOffset = fromOffset;
+        int bytes = 0;
+        for (MessageEnvelope envelope : messages) {
+            ClusterMessage entry = toEntry(topic.getName(), envelope, epoch);
+            bytes += encodedSize(entry);
+            if (bytes > CATCH_UP_PAGE_BYTES && !entries.isEmpty()) {
+                break;
+            }
+            entries.add(entry);
+            nextOffset = envelope.getOffset() + 1;
+        }
+        
+        ClusterMessage page = new ClusterMessage(ClusterMessage.CATCH_UP, localNodeId);
+        page.setTopic(topic.getName());
+        page.setEpoch(epoch);
+        page.setOffset(nextOffset);
+        page.setEntries(entries);
+        page.setMore(entries.size() < messages.size() || messages.size() == CATCH_UP_PAGE_MESSAGES);
+        return page;
+    }
+    
+    /**
+     * Handles a follower's cumulative ack of a stream's batches.
+     */
+    public void onAck(String nodeId, long batchId) {
+        ReplicaStream stream = streams.get(nodeId);
+        if (stream != null && batchId > 0) {
+            stream.acknowledge(batchId);
+        }
+    }
+    
+    /**
+     * Handles a follower's rejection of a batch's entries for a topic it follows from a newer epoch.
+     * The publishes waiting on them fail; the follower still acks the rest of the batch.
+     */
+    public void onStaleEpoch(String nodeId, long batchId, String topicName, String leader) {
+        ReplicaStream stream = streams.get(nodeId);
+        if (stream != null) {
+            stream.reject(batchId, topicName, new ClusterForwardException("NOT_LEADER", String.format(
+                "Node %s no longer leads topic %s; node %s does", localNodeId, topicName, leader)));
+        }
+    }
+    
+    private ClusterMessage toEntry(String topicName, MessageEnvelope envelope, long epoch) {
+        ClusterMessage entry = new ClusterMessage();
+        entry.setTopic(topicName);
+        entry.setMessageId(envelope.getId());
+        entry.setPayload(envelope.getPayload());
+        entry.setPublishedAt(envelope.getPublishedAt());
+        entry.setOffset(envelope.getOffset());
+        entry.setEpoch(epoch);
+        return entry;
+    }
+    
+    private int encodedSize(ClusterMessage entry) {
+        try {
+            return objectMapper.writeValueAsBytes(entry).length;
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to encode log entry", e);
+        }
+    }
+    
+    private boolean send(PeerLink link, ClusterMessage message) {
+        try {
+            return link.send(objectMapper.writeValueAsString(message));
+        } catch (IOException e) {
+            log.error("Failed to encode replication batch: {}", e.getMessage(), e);
+            return false;
+        }
+    }
+    
+    /**
+     * Ack counter shared by the streams carrying one message.
+     */
+    private static class PendingAck {
+        
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private final AtomicInteger remaining;
+        
+        private PendingAck(int required) {
+            this.remaining = new AtomicInteger(required);
+        }
+        
+        private void ack() {
+            if (remaining.decrementAndGet() == 0) {
+                future.complete(null);
+            }
+        }
+        
+        private void fail(ClusterForwardException error) {
+            future.completeExceptionally(error);
+        }
+    }
+    
+    /**
+     * Ordered replication stream from this leader to one follower.
+     */
+    private class ReplicaStream {
+        
+        private final PeerLink link;
+        private final List<ClusterMessage> buffer = new ArrayList<>();
+        // Parallel to buffer; null for entries no publish waits on
+        private final List<PendingAck> bufferAcks = new ArrayList<>();
+        // Sent batches awaiting the follower's ack, by batch id
+        private final ConcurrentNavigableMap<Long, InFlightBatch> inFlight = new ConcurrentSkipListMap<>();
+        private long nextBatchId = 1;
+        private boolean flushScheduled;
+        // Connection the in-flight batches were sent on
+        private long epoch;
+        
+        private ReplicaStream(PeerLink link) {
+            this.link = link;
+        }
+        
+        private boolean isInSync() {
+            if (!link.isConnected()) {
+                return false;
+            }
+            Map.Entry<Long, InFlightBatch> oldest = inFlight.firstEntry();
+            return oldest == null || System.nanoTime() - oldest.getValue().sentAt < lagTimeoutNanos;
+        }
+        
+        private synchronized void append(ClusterMessage entry, PendingAck pending) {
+            buffer.add(entry);
+            bufferAcks.add(pending);
+            
+            if (buffer.size() >= batchSize) {
+                flush();
+            } else if (!flushScheduled) {
+                flushScheduled = true;
+                scheduler.schedule(this::lingerExpired, lingerMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        
+        private synchronized void lingerExpired() {
+            flushScheduled = false;
+            if (!buffer.isEmpty()) {
+                flush();
+            }
+        }
+        
+        private void flush() {
+            if (link.getEpoch() != epoch) {
+                // Batches sent on an earlier connection will never be acked
+                inFlight.clear();
+                epoch = link.getEpoch();
+            }
+            
+            long batchId = nextBatchId++;
+            ClusterMessage batch = new ClusterMessage(ClusterMessage.REPLICATE, localNodeId);
+            batch.setBatchId(batchId);
+            batch.setEntries(new ArrayList<>(buffer));
+            
+            inFlight.put(batchId, new InFlightBatch(batch.getEntries(), new ArrayList<>(bufferAcks)));
+            buffer.clear();
+            bufferAcks.clear();
+            
+            if (!send(link, batch)) {
+                // The follower drops out of sync; pending publishes time out unless other followers ack
+                inFlight.remove(batchId);
+                log.warn("Replication batch {} to node {} not sent: link is down", batchId, link.getNode().getId());
+            }
+        }
+        
+        private void acknowledge(long batchId) {
+            Map.Entry<Long, InFlightBatch> oldest;
+            while ((oldest = inFlight.firstEntry()) != null && oldest.getKey() <= batchId) {
+                if (inFlight.remove(oldest.getKey()) != null) {
+                    oldest.getValue().acknowledge();
+                }
+            }
+        }
+        
+        private void reject(long batchId, String topicName, ClusterForwardException error) {
+            InFlightBatch batch = inFlight.get(batchId);
+            if (batch != null) {
+                batch.reject(topicName, error);
+            }
+        }
+    }
+    
+    /**
+     * A sent batch awaiting its ack. Only touched from the follower link's receiving thread once sent.
+     */
+    private static class InFlightBatch {
+        
+        private final List<ClusterMessage> entries;
+        // Parallel to entries; null for entries no publish waits on
+        private final List<PendingAck> acks;
+        private final long sentAt = System.nanoTime();
+        
+        private InFlightBatch(List<ClusterMessage> entries, List<PendingAck> acks) {
+            this.entries = entries;
+            this.acks = acks;
+        }
+        
+        private void acknowledge() {
+            for (PendingAck ack : acks) {
+                if (ack != null) {
+                    ack.ack();
+                }
+            }
+        }
+        
+        private void reject(String topicName, ClusterForwardException error) {
+            for (int i = 0; i < entries.size(); i++) {
+                PendingAck ack = acks.get(i);
+                if (ack != null && topicName.equals(entries.get(i).getTopic())) {
+                    ack.fail(error);
+                    acks.set(i, null);
+                }
+            }
+        }
+    }
+}
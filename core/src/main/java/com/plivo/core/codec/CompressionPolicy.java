@@ -0,0 +1,118 @@
+package com.plivo.core.codec;
+
+import com.plivo.models.TopicPattern;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Per-topic compression of event frames for subscribers that opt in with
+ * {@code "compression":"deflate"}. The first rule whose pattern matches a topic
+ * decides the size threshold and deflate level; topics without a rule are never
+ * compressed here. A frame is compressed at most once per message and the
+ * result is shared by every opted-in subscriber of the topic.
+ */
+public class CompressionPolicy {
+    
+    public static final String DEFLATE = "deflate";
+    public static final String NONE = "none";
+    // Used for topics configured to always compress when no rule matches them
+    public static final Rule DEFAULT_RULE = new Rule("*", 1024, 6);
+    
+    private final List<Rule> rules;
+    // Dispatcher workers are long-lived, so each keeps its own deflater
+    private final ThreadLocal<Deflater> deflaters;
+    
+    public CompressionPolicy(List<Rule> rules) {
+        this.rules = List.copyOf(rules);
+        this.deflaters = ThreadLocal.withInitial(Deflater::new);
+    }
+    
+    public static CompressionPolicy disabled() {
+        return new CompressionPolicy(List.of());
+    }
+    
+    /**
+     * Whether a subscriber's requested compression is one the server can produce.
+     */
+    public static boolean isSupported(String compression) {
+        return compression == null || NONE.equalsIgnoreCase(compression) || DEFLATE.equalsIgnoreCase(compression);
+    }
+    
+    public static boolean wantsDeflate(String compression) {
+        return DEFLATE.equalsIgnoreCase(compression);
+    }
+    
+    /**
+     * Finds the rule for a topic.
+     *
+     * @return The first matching rule, or null if the topic is not compressed
+     */
+    public Rule ruleFor(String topic) {
+        for (Rule rule : rules) {
+            if (rule.pattern.matches(topic)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Deflates an encoded frame (zlib format) under a rule.
+     *
+     * @return The compressed frame, or null if it is below the rule's threshold or does not shrink.
+     *         Shared between sends, so each send must use a duplicate
+     */
+    public ByteBuffer compress(String frame, Rule rule) {
+        byte[] input = frame.getBytes(StandardCharsets.UTF_8);
+        if (input.length < rule.minSizeBytes) {
+            return null;
+        }
+        
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setLevel(rule.level);
+        deflater.setInput(input);
+        deflater.finish();
+        
+        byte[] output = new byte[input.length];
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == output.length) {
+                // Incompressible input, not worth sending compressed
+                return null;
+            }
+            length += deflater.deflate(output, length, output.length - length);
+        }
+        return ByteBuffer.wrap(output, 0, length);
+    }
+    
+    /**
+     * Compression settings for topics matching a {@link TopicPattern}.
+     */
+    public static class Rule {
+        
+        private final TopicPattern pattern;
+        private final int minSizeBytes;
+        private final int level;
+        
+        public Rule(String pattern, int minSizeBytes, int level) {
+            this.pattern = new TopicPattern(pattern);
+            this.minSizeBytes = minSizeBytes;
+            this.level = level;
+        }
+        
+        public String getPattern() {
+            return pattern.getPattern();
+        }
+        
+        public int getMinSizeBytes() {
+            return minSizeBytes;
+        }
+        
+        public int getLevel() {
+            return level;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.plivo.core.codec;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.plivo.models.MessageEnvelope;
+import com.plivo.models.ws.response.AckResponse;
+import com.plivo.models.ws.response.ErrorResponse;
+import com.plivo.models.ws.response.EventResponse;
+import com.plivo.models.ws.response.InfoResponse;
+import com.plivo.models.ws.response.PongResponse;
+import com.plivo.models.ws.response.ServerMessage;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Encoder for the server-to-client WebSocket protocol.
+ * The fixed-shape messages are written by hand instead of through reflective
+ * bean serialization: acks, errors and pongs are assembled from pre-escaped
+ * string fragments, and events and info messages only hand their free-form
+ * payload to Jackson. Publish acks are cached per topic as templates with the
+ * request id spliced in. Output matches the bean serialization, except that
+ * {@code type} is written once as its wire value.
+ */
+public class ProtocolCodec {
+    
+    // Bounds the publish ack template cache for deployments with very many topics
+    private static final int MAX_ACK_TEMPLATES = 10_000;
+    
+    private static final String NULL = "null";
+    
+    private final ObjectMapper objectMapper;
+    private final ConcurrentHashMap<String, AckTemplate> publishAckTemplates;
+    
+    public ProtocolCodec(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.publishAckTemplates = new ConcurrentHashMap<>();
+    }
+    
+    /**
+     * Encodes any server message, using the hand-written form for known types.
+     */
+    public String encode(ServerMessage message) throws IOException {
+        if (message instanceof AckResponse) {
+            AckResponse ack = (AckResponse) message;
+            return encodeAck(ack.getStatus(), ack.getMessage(), ack.getRequestId());
+        }
+        if (message instanceof EventResponse) {
+            return encodeEvent((EventResponse) message);
+        }
+        if (message instanceof ErrorResponse) {
+            ErrorResponse error = (ErrorResponse) message;
+            return encodeError(error.getCode(), error.getMessage(), error.getDetails(), error.getRequestId());
+        }
+        if (message instanceof PongResponse) {
+            PongResponse pong = (PongResponse) message;
+            return encodePong(pong.getTimestamp(), pong.getRequestId());
+        }
+        if (message instanceof InfoResponse) {
+            InfoResponse info = (InfoResponse) message;
+            return encodeInfo(info.getMessage(), info.getData(), info.getRequestId());
+        }
+        return objectMapper.writeValueAsString(message);
+    }
+    
+    public String encodeAck(String status, String message, String requestId) {
+        return new AckTemplate(status, message).render(requestId);
+    }
+    
+    /**
+     * Encodes the ack for a successful publish from a cached per-topic template.
+     */
+    public String encodePublishAck(String topic, String requestId) {
+        AckTemplate template = publishAckTemplates.get(topic);
+        if (template == null) {
+            template = new AckTemplate("success", "Message published to topic: " + topic);
+            if (publishAckTemplates.size() < MAX_ACK_TEMPLATES) {
+                publishAckTemplates.putIfAbsent(topic, template);
+            }
+        }
+        return template.render(requestId);
+    }
+    
+    /**
+     * Drops cached templates for a topic.
+     */
+    public void forgetTopic(String topic) {
+        publishAckTemplates.remove(topic);
+    }
+    
+    public String encodeError(String code, String message, String details, String requestId) {
+        StringBuilder sb = new StringBuilder(96);
+        sb.append("{\"type\":\"error\",\"request_id\":");
+        appendString(sb, requestId);
+        sb.append(",\"code\":");
+        appendString(sb, code);
+        sb.append(",\"message\":");
+        appendString(sb, message);
+        sb.append(",\"details\":");
+        appendString(sb, details);
+        return sb.append('}').toString();
+    }
+    
+    public String encodePong(long timestamp, String requestId) {
+        StringBuilder sb = new StringBuilder(64);
+        sb.append("{\"type\":\"pong\",\"request_id\":");
+        appendString(sb, requestId);
+        return sb.append(",\"timestamp\":").append(timestamp).append('}').toString();
+    }
+    
+    /**
+     * Encodes the event for a message of a topic, reusing the frame attached to the envelope
+     * while it waits for dispatch. The result is not kept, so history holds messages once.
+     */
+    public String encodeEvent(String topic, MessageEnvelope envelope) throws IOException {
+        String encoded = envelope.getEncodedEvent();
+        if (encoded != null) {
+            return encoded;
+        }
+        return encodeEvent(topic, envelope.getId(), envelope.getPayload(), envelope.getPublishedAt(), envelope.getOffset());
+    }
+    
+    public String encodeEvent(EventResponse event) throws IOException {
+        EventResponse.MessageData data = event.getMessage();
+        if (data == null) {
+            return objectMapper.writeValueAsString(event);
+        }
+        return encodeEvent(event.getTopic(), data.getId(), data.getPayload(), data.getPublishedAt(), data.getOffset());
+    }
+    
+    public String encodeInfo(String message, Object data, String requestId) throws IOException {
+        String dataJson = objectMapper.writeValueAsString(data);
+        
+        StringBuilder sb = new StringBuilder(64 + dataJson.length());
+        sb.append("{\"type\":\"info\",\"request_id\":");
+        appendString(sb, requestId);
+        sb.append(",\"message\":");
+        appendString(sb, message);
+        sb.append(",\"data\":").append(dataJson);
+        return sb.append('}').toString();
+    }
+    
+    private String encodeEvent(String topic, String id, Object payload, long publishedAt, long offset) throws IOException {
+        // Only the free-form payload goes through databind
+        String payloadJson = objectMapper.writeValueAsString(payload);
+        
+        StringBuilder sb = new StringBuilder(96 + topic.length() + payloadJson.length());
+        sb.append("{\"type\":\"event\",\"request_id\":null,\"topic\":");
+        appendString(sb, topic);
+        sb.append(",\"message\":{\"id\":");
+        appendString(sb, id);
+        sb.append(",\"payload\":").append(payloadJson);
+        sb.append(",\"published_at\":").append(publishedAt);
+        sb.append(",\"offset\":").append(offset);
+        return sb.append("}}").toString();
+    }
+    
+    private static void appendString(StringBuilder sb, String value) {
+        if (value == null) {
+            sb.append(NULL);
+            return;
+        }
+        sb.append('"');
+        JsonStringEncoder.getInstance().quoteAsString(value, sb);
+        sb.append('"');
+    }
+    
+    /**
+     * Pre-encoded ack with a slot for the request id.
+     */
+    private static class AckTemplate {
+        
+        private final String suffix;
+        
+        private AckTemplate(String status, String message) {
+            StringBuilder sb = new StringBuilder(64);
+            sb.append(",\"status\":");
+            appendString(sb, status);
+            sb.append(",\"message\":");
+            appendString(sb, message);
+            this.suffix = sb.append('}').toString();
+        }
+        
+        private String render(String requestId) {
+            StringBuilder sb = new StringBuilder(32 + suffix.length() + (requestId != null ? requestId.length() + 2 : 4));
+            sb.append("{\"type\":\"ack\",\"request_id\":");
+            appendString(sb, requestId);
+            return sb.append(suffix).toString();
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.plivo.core.exceptions;
+
+public class ClusterForwardException extends RuntimeException {
+    
+    // Error code reported to the publishing client
+    private final String code;
+    
+    public ClusterForwardException(String code, String message) {
+        super(message);
+        this.code = code;
+    }
+    
+    public String getCode() {
+        return code;
+    }
+}
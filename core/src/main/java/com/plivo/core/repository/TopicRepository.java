@@ -1,31 +1,99 @@
 package com.plivo.core.repository;
 
+import com.plivo.models.HeapMessageHistory;
+import com.plivo.models.MessageHistory;
 import com.plivo.models.Topic;
+import com.plivo.models.TopicConfig;
 import com.plivo.core.exceptions.TopicAlreadyExistsException;
 import com.plivo.core.exceptions.TopicNotFoundException;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 
 public class TopicRepository {
     
     private final ConcurrentHashMap<String, Topic> topics;
+    // The same topics in name order, for paged and prefix listing; only changed under the lock of the topic's key in topics
+    private final ConcurrentSkipListMap<String, Topic> topicsByName;
     private final Instant startTime;
+    // Creates the history store of each new topic
+    private final Function<String, MessageHistory> historyFactory;
+    // Whether those stores can be resized by a topic's history_size
+    private final boolean historyResizable;
+    // Subscriptions across all topics, kept as they change so health checks do not walk every topic
+    private final LongAdder subscriberTotal;
     
     public TopicRepository() {
+        this(name -> new HeapMessageHistory(Topic.DEFAULT_HISTORY_SIZE));
+    }
+    
+    public TopicRepository(Function<String, MessageHistory> historyFactory) {
+        this(historyFactory, true);
+    }
+    
+    public TopicRepository(Function<String, MessageHistory> historyFactory, boolean historyResizable) {
         this.topics = new ConcurrentHashMap<>();
+        this.topicsByName = new ConcurrentSkipListMap<>();
         this.startTime = Instant.now();
+        this.historyFactory = historyFactory;
+        this.historyResizable = historyResizable;
+        this.subscriberTotal = new LongAdder();
+    }
+    
+    //Whether topic configs may set history_size; off-heap and tiered stores keep their configured size
+    public boolean isHistoryResizable() {
+        return historyResizable;
     }
     
     //Create a new topic
     public Topic createTopic(String name) {
-        Topic newTopic = new Topic(name);
-        Topic existing = topics.putIfAbsent(name, newTopic);
-        if (existing != null) {
+        return createTopic(name, null);
+    }
+    
+    //Create a new topic with settings that differ from the defaults
+    public Topic createTopic(String name, TopicConfig config) {
+        Topic created = createTopicIfAbsent(name, config);
+        if (created == null) {
             throw new TopicAlreadyExistsException(name);
         }
-        return newTopic;
+        return created;
+    }
+    
+    //Create a topic unless one with the same name exists; returns the new topic, or null if it already existed
+    public Topic createTopicIfAbsent(String name, TopicConfig config) {
+        // Built inside computeIfAbsent so a duplicate never opens a second history store for the topic
+        Topic[] created = new Topic[1];
+        topics.computeIfAbsent(name, key -> {
+            created[0] = newTopic(key, Topic.DEFAULT_QUEUE_CAPACITY);
+            if (config != null) {
+                created[0].updateConfig(config);
+            }
+            topicsByName.put(key, created[0]);
+            return created[0];
+        });
+        return created[0];
+    }
+    
+    //Add a topic loaded from a snapshot, unless one with the same name already exists
+    public boolean restoreTopic(Topic topic) {
+        boolean[] added = new boolean[1];
+        topics.computeIfAbsent(topic.getName(), key -> {
+            topicsByName.put(key, topic);
+            added[0] = true;
+            return topic;
+        });
+        return added[0];
+    }
+    
+    //Build a topic that is not yet registered, with the configured history store opened on first use
+    public Topic newTopic(String name, int queueCapacity) {
+        return new Topic(name, queueCapacity, () -> historyFactory.apply(name));
     }
     
     //Get a topic by name
@@ -44,12 +112,58 @@ public class TopicRepository {
     
     //Delete a topic
     public void deleteTopic(String name) {
-        Topic removed = topics.remove(name);
-        if (removed == null) {
+        if (removeTopic(name) == null) {
             throw new TopicNotFoundException(name);
         }
     }
     
+    //Delete a topic if it exists; returns the removed topic, or null if there was none
+    public Topic removeTopic(String name) {
+        Topic[] deleted = new Topic[1];
+        topics.computeIfPresent(name, (key, topic) -> {
+            topicsByName.remove(key);
+            deleted[0] = topic;
+            return null;
+        });
+        Topic removed = deleted[0];
+        if (removed != null) {
+            subscriberTotal.add(-removed.getSubscriberCount());
+            removed.clearHistory();
+        }
+        return removed;
+    }
+    
+    /**
+     * Lists topics in name order, starting after a cursor, in time proportional to the page.
+     *
+     * @param prefix Only topics whose name starts with this, or null for all
+     * @param after Name of the last topic of the previous page, or null for the first page
+     * @param limit Most topics returned
+     */
+    public List<Topic> listTopics(String prefix, String after, int limit) {
+        String from = prefix != null ? prefix : "";
+        boolean inclusive = true;
+        if (after != null && after.compareTo(from) >= 0) {
+            from = after;
+            inclusive = false;
+        }
+        
+        List<Topic> page = new ArrayList<>(Math.min(limit, 1024));
+        for (Topic topic : topicsByName.tailMap(from, inclusive).values()) {
+            if (page.size() >= limit || (prefix != null && !topic.getName().startsWith(prefix))) {
+                // Names sharing a prefix are contiguous, so nothing further matches
+                break;
+            }
+            page.add(topic);
+        }
+        return page;
+    }
+    
+    //Get all topics in name order
+    public Collection<Topic> getTopicsByName() {
+        return topicsByName.values();
+    }
+    
     // Check if topic exists
     public boolean topicExists(String name) {
         return topics.containsKey(name);
@@ -60,11 +174,21 @@ public class TopicRepository {
         return topics.size();
     }
     
+    //Count a new subscription of a topic
+    public void subscriberAdded(Topic topic) {
+        topic.incrementSubscriberCount();
+        subscriberTotal.increment();
+    }
+    
+    //Count a removed subscription of a topic
+    public void subscriberRemoved(Topic topic) {
+        topic.decrementSubscriberCount();
+        subscriberTotal.decrement();
+    }
+    
     //Get total subscriber count across all topics
     public long getTotalSubscriberCount() {
-        return topics.values().stream()
-                .mapToLong(Topic::getSubscriberCount)
-                .sum();
+        return subscriberTotal.sum();
     }
     
     //Get uptime in seconds
@@ -75,5 +199,7 @@ public class TopicRepository {
     //Clear all topics (for testing)
     public void clear() {
         topics.clear();
+        topicsByName.clear();
+        subscriberTotal.reset();
     }
 }
@@ -0,0 +1,152 @@
+package com.plivo.core.service;
+
+import com.plivo.core.codec.ProtocolCodec;
+import com.plivo.core.repository.TopicRepository;
+import com.plivo.models.Topic;
+import io.dropwizard.lifecycle.Managed;
+import org.eclipse.jetty.websocket.api.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resumes topics stopped by backpressure once their queue drains to the low watermark.
+ * Topics are checked after every dispatcher drain and on a periodic sweep.
+ * Publishers that were rejected while a topic was stopped get a
+ * {@code topic_paused} info message, followed by {@code topic_resumed} when
+ * the topic accepts messages again.
+ */
+public class BackpressureWatchdog implements MessageDispatcher.DispatchListener, Managed {
+    
+    private static final Logger log = LoggerFactory.getLogger(BackpressureWatchdog.class);
+    
+    public static final String PAUSED_MESSAGE = "topic_paused";
+    public static final String RESUMED_MESSAGE = "topic_resumed";
+    
+    private final TopicRepository topicRepository;
+    private final ProtocolCodec codec;
+    private final SessionSender sender;
+    private final long sweepIntervalMillis;
+    // Stopped topics and the publishers waiting for them to resume
+    private final ConcurrentHashMap<String, Set<Session>> pausedTopics;
+    private ScheduledExecutorService scheduler;
+    
+    public BackpressureWatchdog(TopicRepository topicRepository, ProtocolCodec codec, SessionSender sender, long sweepIntervalMillis) {
+        this.topicRepository = topicRepository;
+        this.codec = codec;
+        this.sender = sender;
+        this.sweepIntervalMillis = sweepIntervalMillis;
+        this.pausedTopics = new ConcurrentHashMap<>();
+    }
+    
+    @Override
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "backpressure-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::sweep, sweepIntervalMillis, sweepIntervalMillis, TimeUnit.MILLISECONDS);
+        log.info("Backpressure watchdog started, sweeping every {} ms", sweepIntervalMillis);
+    }
+    
+    @Override
+    public void stop() {
+        scheduler.shutdownNow();
+        log.info("Backpressure watchdog stopped");
+    }
+    
+    /**
+     * Records a publish rejected because the topic stopped accepting messages.
+     * The publisher is told the topic is paused and will be notified when it resumes.
+     */
+    public void onOverflow(Session session, String topicName) {
+        Set<Session> waiting = pausedTopics.computeIfAbsent(topicName, name -> ConcurrentHashMap.newKeySet());
+        if (waiting.add(session)) {
+            Topic topic = topicRepository.getTopic(topicName);
+            send(session, PAUSED_MESSAGE, topic);
+        }
+    }
+    
+    @Override
+    public void onDrained(Topic topic, int count) {
+        if (!topic.isAcceptingMessages()) {
+            checkTopic(topic);
+        }
+    }
+    
+    /**
+     * Drops a disconnected session from every waiting list.
+     */
+    public void removeSession(Session session) {
+        pausedTopics.values().forEach(waiting -> waiting.remove(session));
+    }
+    
+    /**
+     * Drops the waiting list of a deleted topic.
+     */
+    public void removeTopic(String topicName) {
+        pausedTopics.remove(topicName);
+    }
+    
+    private void sweep() {
+        try {
+            for (String topicName : pausedTopics.keySet()) {
+                if (!topicRepository.topicExists(topicName)) {
+                    pausedTopics.remove(topicName);
+                    continue;
+                }
+                checkTopic(topicRepository.getTopic(topicName));
+            }
+        } catch (Exception e) {
+            log.error("Backpressure sweep failed: {}", e.getMessage(), e);
+        }
+    }
+    
+    private void checkTopic(Topic topic) {
+        boolean resumed = topic.resumeAcceptingMessages();
+        // A publisher can register just after another thread resumed the topic, so also flush when already accepting
+        if (!resumed && !topic.isAcceptingMessages()) {
+            return;
+        }
+        
+        if (resumed) {
+            log.info("Topic {} resumed accepting messages at queue depth {}/{}",
+                    topic.getName(), topic.getQueueSize(), topic.getQueueCapacity());
+        }
+        
+        Set<Session> waiting = pausedTopics.remove(topic.getName());
+        if (waiting != null) {
+            for (Session session : waiting) {
+                send(session, RESUMED_MESSAGE, topic);
+            }
+        }
+    }
+    
+    private void send(Session session, String message, Topic topic) {
+        if (session == null || !session.isOpen()) {
+            return;
+        }
+        
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("topic", topic.getName());
+        data.put("accepting", topic.isAcceptingMessages());
+        data.put("queue_depth", topic.getQueueSize());
+        data.put("queue_capacity", topic.getQueueCapacity());
+        data.put("low_watermark", topic.getLowWatermark());
+        
+        try {
+            sender.send(session, codec.encodeInfo(message, data, null));
+        } catch (IOException e) {
+            log.error("Failed to encode {} notification: {}", message, e.getMessage(), e);
+        }
+    }
+}
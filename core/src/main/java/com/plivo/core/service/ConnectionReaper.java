@@ -0,0 +1,208 @@
+package com.plivo.core.service;
+
+import io.dropwizard.lifecycle.Managed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finds connections whose peer has gone away. Every connection records when it last heard
+ * from its peer; a hashed timer wheel visits each one about once per ping interval, pings
+ * it if it has been quiet that long, and evicts it once it has been quiet for the idle
+ * timeout. Connections evicted on the same tick have their subscriptions removed in one
+ * pass, so fan-out stops writing to half-open connections that never report an error.
+ *
+ * <p>Recording activity is a single volatile write; the wheel is only touched by the
+ * reaper thread, which takes new registrations from a queue at each tick.
+ */
+public class ConnectionReaper implements Managed {
+    
+    private static final Logger log = LoggerFactory.getLogger(ConnectionReaper.class);
+    
+    private final PubSubService pubSubService;
+    private final long pingIntervalMillis;
+    private final long idleTimeoutMillis;
+    private final long tickMillis;
+    private final ArrayDeque<Handle>[] wheel;
+    private final ConcurrentLinkedQueue<Handle> registrations;
+    // Ticks run so far; only read and written on the reaper thread
+    private long tick;
+    private ScheduledExecutorService scheduler;
+    
+    @SuppressWarnings("unchecked")
+    public ConnectionReaper(PubSubService pubSubService, long pingIntervalMillis, long idleTimeoutMillis, long tickMillis) {
+        this.pubSubService = pubSubService;
+        this.pingIntervalMillis = pingIntervalMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.tickMillis = tickMillis;
+        // One turn of the wheel covers a ping interval, so a handle is normally due on its first visit
+        int slots = (int) Math.max(1, (pingIntervalMillis + tickMillis - 1) / tickMillis);
+        this.wheel = new ArrayDeque[slots];
+        for (int i = 0; i < slots; i++) {
+            wheel[i] = new ArrayDeque<>();
+        }
+        this.registrations = new ConcurrentLinkedQueue<>();
+    }
+    
+    @Override
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::advance, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        log.info("Connection reaper started, ping every {} ms, idle timeout {} ms, {} wheel slots",
+                pingIntervalMillis, idleTimeoutMillis, wheel.length);
+    }
+    
+    @Override
+    public void stop() {
+        scheduler.shutdownNow();
+        log.info("Connection reaper stopped");
+    }
+    
+    /**
+     * Starts tracking a connection, counting it as heard from now.
+     */
+    public Handle register(Connection connection) {
+        Handle handle = new Handle(connection);
+        registrations.add(handle);
+        return handle;
+    }
+    
+    private void advance() {
+        try {
+            long now = System.currentTimeMillis();
+            int slot = (int) (tick % wheel.length);
+            ArrayDeque<Handle> due = wheel[slot];
+            wheel[slot] = new ArrayDeque<>();
+            tick++;
+            
+            Handle registered;
+            while ((registered = registrations.poll()) != null) {
+                schedule(registered, registered.lastSeen + pingIntervalMillis, now);
+            }
+            
+            List<Handle> dead = new ArrayList<>();
+            for (Handle handle : due) {
+                if (handle.cancelled) {
+                    continue;
+                }
+                if (handle.rounds > 0) {
+                    handle.rounds--;
+                    wheel[slot].add(handle);
+                    continue;
+                }
+                long idle = now - handle.lastSeen;
+                if (idle >= idleTimeoutMillis || !handle.connection.isOpen()) {
+                    dead.add(handle);
+                } else if (idle >= pingIntervalMillis) {
+                    ping(handle);
+                    schedule(handle, now + pingIntervalMillis, now);
+                } else {
+                    schedule(handle, handle.lastSeen + pingIntervalMillis, now);
+                }
+            }
+            
+            if (!dead.isEmpty()) {
+                evict(dead);
+            }
+        } catch (Exception e) {
+            log.error("Connection reaper tick failed: {}", e.getMessage(), e);
+        }
+    }
+    
+    private void schedule(Handle handle, long deadline, long now) {
+        long ticks = Math.max(1, (deadline - now + tickMillis - 1) / tickMillis);
+        handle.rounds = (ticks - 1) / wheel.length;
+        // The slot of the current tick was already taken, so it is next visited a full turn from now
+        wheel[(int) ((tick - 1 + ticks) % wheel.length)].add(handle);
+    }
+    
+    private void ping(Handle handle) {
+        try {
+            handle.connection.ping();
+        } catch (Exception e) {
+            log.debug("Failed to ping connection: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * Removes the subscriptions of every dead connection in one pass over the topics, then closes them.
+     */
+    private void evict(List<Handle> dead) {
+        Set<Object> sessions = new HashSet<>(dead.size() * 2);
+        for (Handle handle : dead) {
+            handle.cancelled = true;
+            sessions.add(handle.connection.getSession());
+        }
+        int removed = pubSubService.removeSessionSubscriptions(sessions);
+        
+        for (Handle handle : dead) {
+            try {
+                handle.connection.evicted();
+            } catch (Exception e) {
+                log.debug("Failed to close evicted connection: {}", e.getMessage());
+            }
+        }
+        log.info("Reaped {} idle connections holding {} subscriptions", dead.size(), removed);
+    }
+    
+    /**
+     * Liveness of one connection.
+     */
+    public static final class Handle {
+        
+        private final Connection connection;
+        private volatile long lastSeen;
+        private volatile boolean cancelled;
+        // Full turns of the wheel left before the handle is due; reaper thread only
+        private long rounds;
+        
+        private Handle(Connection connection) {
+            this.connection = connection;
+            this.lastSeen = System.currentTimeMillis();
+        }
+        
+        /**
+         * Records that something arrived from the peer.
+         */
+        public void touch() {
+            lastSeen = System.currentTimeMillis();
+        }
+        
+        /**
+         * Stops tracking the connection (on close). The handle leaves the wheel on its next visit.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+    
+    /**
+     * A connection the reaper can ping and evict.
+     */
+    public interface Connection {
+        
+        boolean isOpen();
+        
+        // Sends a ping without waiting for it to be written
+        void ping();
+        
+        // The session its subscriptions were made with
+        Object getSession();
+        
+        // Closes the connection; its subscriptions have already been removed
+        void evicted();
+    }
+}
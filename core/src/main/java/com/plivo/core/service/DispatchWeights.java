@@ -0,0 +1,51 @@
+package com.plivo.core.service;
+
+import com.plivo.models.TopicPattern;
+import java.util.List;
+
+/**
+ * Share of dispatch workers each topic gets under the fair scheduler. The
+ * first rule whose pattern matches a topic applies; other topics have weight
+ * 1. A prefix pattern gives all of a tenant's topics the same weight.
+ */
+public class DispatchWeights {
+    
+    public static final DispatchWeights UNIFORM = new DispatchWeights(List.of());
+    
+    private final List<Rule> rules;
+    
+    public DispatchWeights(List<Rule> rules) {
+        this.rules = List.copyOf(rules);
+    }
+    
+    public int weightOf(String topic) {
+        for (Rule rule : rules) {
+            if (rule.pattern.matches(topic)) {
+                return rule.weight;
+            }
+        }
+        return 1;
+    }
+    
+    /**
+     * Weight for topics matching a {@link TopicPattern}.
+     */
+    public static class Rule {
+        
+        private final TopicPattern pattern;
+        private final int weight;
+        
+        public Rule(String pattern, int weight) {
+            this.pattern = new TopicPattern(pattern);
+            this.weight = weight;
+        }
+        
+        public String getPattern() {
+            return pattern.getPattern();
+        }
+        
+        public int getWeight() {
+            return weight;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.plivo.core.service;
+
+import com.plivo.models.Subscription;
+import io.dropwizard.lifecycle.Managed;
+import org.eclipse.jetty.websocket.api.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces events for subscriptions that opted into batched delivery.
+ * Pre-encoded events are appended to a per-subscription buffer and sent as one
+ * JSON array frame when the subscription's batch size or the frame byte limit
+ * is reached, or when the linger time since the first buffered event expires.
+ */
+public class EventBatcher implements Managed {
+    
+    private static final Logger log = LoggerFactory.getLogger(EventBatcher.class);
+    
+    private final SessionSender sender;
+    private final int maxBatchSize;
+    private final long maxLingerMillis;
+    private final long defaultLingerMillis;
+    private final int maxFrameBytes;
+    private ScheduledExecutorService timer;
+    
+    public EventBatcher(SessionSender sender, int maxBatchSize, long maxLingerMillis, long defaultLingerMillis, int maxFrameBytes) {
+        this.sender = sender;
+        this.maxBatchSize = maxBatchSize;
+        this.maxLingerMillis = maxLingerMillis;
+        this.defaultLingerMillis = defaultLingerMillis;
+        this.maxFrameBytes = maxFrameBytes;
+    }
+    
+    @Override
+    public void start() {
+        timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "event-batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("Event batcher started, max batch size {}, max linger {} ms", maxBatchSize, maxLingerMillis);
+    }
+    
+    @Override
+    public void stop() {
+        timer.shutdownNow();
+        log.info("Event batcher stopped");
+    }
+    
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+    
+    public long getMaxLingerMillis() {
+        return maxLingerMillis;
+    }
+    
+    public long getDefaultLingerMillis() {
+        return defaultLingerMillis;
+    }
+    
+    /**
+     * Buffers an encoded event for a batched subscription, sending the batch if it is full.
+     */
+    public void add(Subscription subscription, Session session, String eventJson) {
+        PendingBatch batch = (PendingBatch) subscription.getDeliveryState();
+        if (batch == null) {
+            // A topic is drained by one dispatcher worker at a time, so only that worker creates the batch
+            batch = new PendingBatch(subscription, session);
+            subscription.setDeliveryState(batch);
+        }
+        
+        synchronized (batch) {
+            // Keep frames under the byte limit by sending what is buffered first
+            if (batch.count > 0 && batch.frame.length() + eventJson.length() + 2 > maxFrameBytes) {
+                flush(batch);
+            }
+            
+            batch.frame.append(batch.count == 0 ? '[' : ',').append(eventJson);
+            batch.count++;
+            
+            if (batch.count >= subscription.getBatchSize()) {
+                flush(batch);
+            } else if (batch.count == 1) {
+                long generation = batch.generation;
+                PendingBatch lingering = batch;
+                timer.schedule(() -> flushExpired(lingering, generation), subscription.getBatchLingerMs(), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+    
+    private void flushExpired(PendingBatch batch, long generation) {
+        synchronized (batch) {
+            // Skip if the batch this timer was armed for has already been sent
+            if (batch.generation == generation && batch.count > 0) {
+                flush(batch);
+            }
+        }
+    }
+    
+    private void flush(PendingBatch batch) {
+        String frame = batch.frame.append(']').toString();
+        int count = batch.count;
+        batch.frame.setLength(0);
+        batch.count = 0;
+        batch.generation++;
+        
+        // Queued without waiting, so the monitor is never held across a slow subscriber's write
+        if (sender.send(batch.session, frame)) {
+            log.debug("Queued batch of {} events for subscriber: {}", count, batch.subscription.getClientId());
+        }
+    }
+    
+    /**
+     * Events buffered for one subscription. Guarded by its own monitor.
+     */
+    private static class PendingBatch {
+        
+        private final Subscription subscription;
+        private final Session session;
+        private final StringBuilder frame = new StringBuilder(1024);
+        private int count;
+        // Bumped on every send so stale linger timers can be ignored
+        private long generation;
+        
+        private PendingBatch(Subscription subscription, Session session) {
+            this.subscription = subscription;
+            this.session = session;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.plivo.core.service;
+
+import com.plivo.models.MessageEnvelope;
+
+import java.io.IOException;
+
+/**
+ * A subscriber that is not a WebSocket session, such as an HTTP event stream or a
+ * waiting poll. Set as the session of a {@link com.plivo.models.Subscription}; the
+ * dispatcher hands it the same encoded event frame it sends to WebSocket subscribers.
+ */
+public interface EventSink {
+    
+    boolean isOpen();
+    
+    /**
+     * Receives a dispatched message and its encoded event frame, on a dispatcher worker.
+     */
+    void sendEvent(MessageEnvelope envelope, String eventJson) throws IOException;
+    
+    /**
+     * Told that its topic was deleted, after any queued messages were handed to it.
+     */
+    void topicDeleted(String topicName);
+}
@@ -0,0 +1,141 @@
+package com.plivo.core.service;
+
+import com.plivo.models.Topic;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Deficit round-robin scheduler that shares the dispatch workers across topics.
+ * Topics with queued messages wait in one run queue, at most once each. On its
+ * turn a topic's deficit grows by the quantum times its weight, and it sends as
+ * many messages as the deficit covers, up to the batch size. A message costs
+ * one send per subscriber, so a wide fan-out counts for what it costs. A topic
+ * that still has messages goes back to the tail with the rest of its deficit;
+ * an idle one starts over at zero. A spike on one topic therefore delays every
+ * other topic by at most one bounded turn per round, and quiet topics keep
+ * their latency.
+ */
+public class FairDispatchScheduler {
+    
+    private static final Logger log = LoggerFactory.getLogger(FairDispatchScheduler.class);
+    
+    private final int quantum;
+    private final int batchSize;
+    private final DispatchWeights weights;
+    private final Turn turn;
+    private final LinkedBlockingQueue<Topic> runQueue;
+    private final List<Thread> workers;
+    private volatile boolean running;
+    
+    /**
+     * @param quantum   Sends a topic of weight 1 earns per turn
+     * @param batchSize Most messages a topic sends in one turn
+     */
+    public FairDispatchScheduler(int quantum, int batchSize, DispatchWeights weights, Turn turn) {
+        this.quantum = quantum;
+        this.batchSize = batchSize;
+        this.weights = weights;
+        this.turn = turn;
+        this.runQueue = new LinkedBlockingQueue<>();
+        this.workers = new ArrayList<>();
+    }
+    
+    public void start(int workerCount) {
+        running = true;
+        for (int i = 1; i <= workerCount; i++) {
+            Thread worker = new Thread(this::work, "dispatcher-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+    
+    /**
+     * Stops the workers, letting turns in progress finish for up to the timeout.
+     */
+    public void stop(long timeoutMillis) throws InterruptedException {
+        running = false;
+        workers.forEach(Thread::interrupt);
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (Thread worker : workers) {
+            worker.join(Math.max(1, deadline - System.currentTimeMillis()));
+        }
+        workers.clear();
+    }
+    
+    /**
+     * Queues the topic for a turn unless it is already queued or being served.
+     */
+    public void schedule(Topic topic) {
+        if (topic.tryScheduleDispatch()) {
+            runQueue.offer(topic);
+        }
+    }
+    
+    /**
+     * Topics waiting for a turn.
+     */
+    public int getRunQueueSize() {
+        return runQueue.size();
+    }
+    
+    private void work() {
+        while (running) {
+            Topic topic;
+            try {
+                topic = runQueue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            runTurn(topic);
+        }
+    }
+    
+    private void runTurn(Topic topic) {
+        int cost = Math.max(1, topic.getSubscribers().size());
+        long share = (long) quantum * weights.weightOf(topic.getName());
+        long deficit = topic.getDispatchDeficit() + share;
+        int allowed = (int) Math.min(deficit / cost, batchSize);
+        
+        int sent = 0;
+        if (allowed > 0) {
+            try {
+                sent = turn.dispatch(topic, allowed);
+            } catch (Exception e) {
+                log.error("Error dispatching messages for topic {}: {}", topic.getName(), e.getMessage(), e);
+            }
+        }
+        
+        if (topic.getQueueSize() > 0) {
+            // Keeps the slot. The carry-over is bounded so a topic held back by the batch size cannot bank
+            // turns, yet still grows past the cost of one message when its fan-out exceeds its share
+            topic.setDispatchDeficit(Math.min(deficit - (long) sent * cost, share + cost));
+            runQueue.offer(topic);
+            return;
+        }
+        
+        topic.setDispatchDeficit(0);
+        topic.completeDispatch();
+        // Re-check after releasing the slot so a publish racing with the release is not stranded
+        if (topic.getQueueSize() > 0) {
+            schedule(topic);
+        }
+    }
+    
+    /**
+     * Sends up to the given number of a topic's queued messages.
+     */
+    @FunctionalInterface
+    public interface Turn {
+        
+        /**
+         * @return Messages sent
+         */
+        int dispatch(Topic topic, int maxMessages) throws Exception;
+    }
+}
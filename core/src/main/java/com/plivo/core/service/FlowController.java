@@ -0,0 +1,209 @@
+package com.plivo.core.service;
+
+import com.plivo.core.codec.ProtocolCodec;
+import com.plivo.core.repository.TopicRepository;
+import com.plivo.models.Topic;
+import org.eclipse.jetty.websocket.api.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Credit-based publisher flow control.
+ * Each publishing session gets a window of sends per topic, sized from the free
+ * queue space and the dispatcher drain rate. Credits are topped up with
+ * {@code info} messages as the window runs low, or once the backlog drains if the
+ * queue had no room. Credits are advisory: a publisher that ignores them still
+ * hits the hard {@code CONSUMER_IS_SLOW} rejection when the queue is full.
+ */
+public class FlowController implements MessageDispatcher.DispatchListener {
+    
+    private static final Logger log = LoggerFactory.getLogger(FlowController.class);
+    
+    public static final String CREDIT_MESSAGE = "flow_control";
+    
+    // Weight of the newest sample in the drain rate moving average
+    private static final double RATE_ALPHA = 0.3;
+    
+    private final TopicRepository topicRepository;
+    private final ProtocolCodec codec;
+    private final SessionSender sender;
+    private final int maxWindow;
+    private final long creditHorizonMillis;
+    private final ConcurrentHashMap<String, TopicFlow> topicFlows;
+    
+    public FlowController(TopicRepository topicRepository, ProtocolCodec codec, SessionSender sender, int maxWindow, long creditHorizonMillis) {
+        this.topicRepository = topicRepository;
+        this.codec = codec;
+        this.sender = sender;
+        this.maxWindow = maxWindow;
+        this.creditHorizonMillis = creditHorizonMillis;
+        this.topicFlows = new ConcurrentHashMap<>();
+    }
+    
+    /**
+     * Records an accepted publish from a session, granting credits if its window runs low.
+     */
+    public void onPublish(Session session, String topicName) {
+        Topic topic = topicRepository.getTopic(topicName);
+        TopicFlow flow = topicFlows.computeIfAbsent(topic.getName(), name -> new TopicFlow());
+        PublisherWindow window = flow.publishers.get(session);
+        if (window == null) {
+            window = new PublisherWindow(session);
+            PublisherWindow existing = flow.publishers.putIfAbsent(session, window);
+            if (existing == null) {
+                // First publish opens the window; this send consumes one of the initial credits
+                window.waiting.set(true);
+                tryGrant(topic, flow, window);
+            } else {
+                window = existing;
+            }
+        }
+        
+        int remaining = window.remaining.decrementAndGet();
+        if (remaining <= window.lowWater() && window.waiting.compareAndSet(false, true)) {
+            tryGrant(topic, flow, window);
+        }
+    }
+    
+    @Override
+    public void onDrained(Topic topic, int count) {
+        TopicFlow flow = topicFlows.get(topic.getName());
+        if (flow == null) {
+            return;
+        }
+        
+        flow.recordDrain(count);
+        
+        for (PublisherWindow window : flow.publishers.values()) {
+            if (window.waiting.get()) {
+                tryGrant(topic, flow, window);
+            }
+        }
+    }
+    
+    /**
+     * Drops all windows held by a session (on disconnect).
+     */
+    public void removeSession(Session session) {
+        topicFlows.values().forEach(flow -> flow.publishers.remove(session));
+    }
+    
+    /**
+     * Drops all flow state for a topic.
+     */
+    public void removeTopic(String topicName) {
+        topicFlows.remove(topicName);
+    }
+    
+    /**
+     * Current drain rate of a topic in messages per second, or 0 if unknown.
+     */
+    public double getDrainRate(String topicName) {
+        TopicFlow flow = topicFlows.get(topicName);
+        return flow != null ? flow.drainRate : 0;
+    }
+    
+    private void tryGrant(Topic topic, TopicFlow flow, PublisherWindow window) {
+        int grant;
+        int remaining;
+        synchronized (window) {
+            // A publish and a drain can race to serve the same pending grant
+            if (!window.waiting.get()) {
+                return;
+            }
+            
+            grant = computeGrant(topic, flow);
+            if (grant <= 0) {
+                // Stay in the waiting state, the next drain retries the grant
+                return;
+            }
+            
+            window.lastGrant = grant;
+            remaining = window.remaining.addAndGet(grant);
+            window.waiting.set(false);
+        }
+        sendCredit(window.session, topic, grant, remaining, flow.drainRate);
+    }
+    
+    private int computeGrant(Topic topic, TopicFlow flow) {
+        int free = topic.getQueueCapacity() - topic.getQueueSize();
+        if (free <= 0 || !topic.isAcceptingMessages()) {
+            return 0;
+        }
+        
+        // Space that is free now plus what the dispatcher is expected to drain within the horizon,
+        // shared between the topic's active publishers
+        long expectedDrain = (long) (flow.drainRate * creditHorizonMillis / 1000.0);
+        long budget = Math.min((long) free + expectedDrain, (long) topic.getQueueCapacity());
+        int publishers = Math.max(1, flow.publishers.size());
+        
+        return (int) Math.min(maxWindow, budget / publishers);
+    }
+    
+    private void sendCredit(Session session, Topic topic, int credits, int window, double drainRate) {
+        if (session == null || !session.isOpen()) {
+            return;
+        }
+        
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("topic", topic.getName());
+        data.put("credits", credits);
+        data.put("window", window);
+        data.put("queue_depth", topic.getQueueSize());
+        data.put("drain_rate", Math.round(drainRate));
+        
+        try {
+            String json = codec.encodeInfo(CREDIT_MESSAGE, data, null);
+            if (sender.send(session, json)) {
+                log.debug("Granted {} credits on topic {}", credits, topic.getName());
+            }
+        } catch (IOException e) {
+            log.error("Failed to encode credits: {}", e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Per-topic flow state: the drain rate estimate and the publishers' windows.
+     */
+    private static class TopicFlow {
+        
+        private final ConcurrentHashMap<Session, PublisherWindow> publishers = new ConcurrentHashMap<>();
+        private volatile double drainRate;
+        private volatile long lastDrainNanos = System.nanoTime();
+        
+        private synchronized void recordDrain(int count) {
+            long now = System.nanoTime();
+            double elapsedSeconds = Math.max(now - lastDrainNanos, 1_000_000L) / 1e9;
+            lastDrainNanos = now;
+            double sample = count / elapsedSeconds;
+            drainRate = drainRate == 0 ? sample : RATE_ALPHA * sample + (1 - RATE_ALPHA) * drainRate;
+        }
+    }
+    
+    /**
+     * Credit window of one publishing session on one topic.
+     */
+    private class PublisherWindow {
+        
+        private final Session session;
+        private final AtomicInteger remaining = new AtomicInteger();
+        // True while a grant is pending, so only one thread requests a top-up at a time
+        private final AtomicBoolean waiting = new AtomicBoolean();
+        private volatile int lastGrant = maxWindow;
+        
+        private PublisherWindow(Session session) {
+            this.session = session;
+        }
+        
+        private int lowWater() {
+            return Math.max(1, lastGrant / 2);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.plivo.core.service;
+
+import com.plivo.core.codec.CompressionPolicy;
+import com.plivo.core.codec.ProtocolCodec;
+import com.plivo.models.MessageEnvelope;
+import com.plivo.models.Subscription;
+import com.plivo.models.Topic;
+import io.dropwizard.lifecycle.Managed;
+import org.eclipse.jetty.websocket.api.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Drains topic queues on a worker pool and fans messages out to subscribers.
+ * Publishers only enqueue, so a slow subscriber fills the topic queue instead
+ * of blocking the publishing connection. Workers take turns across topics
+ * through a {@link FairDispatchScheduler}. A topic's priority lanes are served
+ * by weighted round robin, so urgent messages overtake a bulk backlog
+ * without starving it. Sends to WebSocket subscribers are queued through a
+ * {@link SessionSender}, so a worker never waits on a subscriber's socket.
+ */
+public class MessageDispatcher implements Managed {
+    
+    private static final Logger log = LoggerFactory.getLogger(MessageDispatcher.class);
+    
+    private final ProtocolCodec codec;
+    private final CompressionPolicy compressionPolicy;
+    private final EventBatcher batcher;
+    private final SessionSender sender;
+    private final int workerCount;
+    // Messages a priority lane may send per round-robin turn, indexed by priority
+    private final int[] laneWeights;
+    private final List<DispatchListener> listeners;
+    private final FairDispatchScheduler scheduler;
+    private volatile Forwarder forwarder;
+    
+    /**
+     * @param quantum   Subscriber sends a topic of weight 1 earns per scheduler turn
+     * @param batchSize Most messages drained from one topic per turn
+     */
+    public MessageDispatcher(ProtocolCodec codec, CompressionPolicy compressionPolicy, EventBatcher batcher,
+                             SessionSender sender, int workerCount, int quantum, int batchSize, DispatchWeights weights, int[] laneWeights) {
+        this.codec = codec;
+        this.compressionPolicy = compressionPolicy;
+        this.batcher = batcher;
+        this.sender = sender;
+        this.workerCount = workerCount;
+        this.laneWeights = laneWeights.clone();
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.scheduler = new FairDispatchScheduler(quantum, batchSize, weights, this::drain);
+    }
+    
+    @Override
+    public void start() {
+        scheduler.start(workerCount);
+        log.info("Message dispatcher started with {} workers", workerCount);
+    }
+    
+    @Override
+    public void stop() throws Exception {
+        scheduler.stop(5000);
+        log.info("Message dispatcher stopped");
+    }
+    
+    public void addListener(DispatchListener listener) {
+        listeners.add(listener);
+    }
+    
+    public void setForwarder(Forwarder forwarder) {
+        this.forwarder = forwarder;
+    }
+    
+    /**
+     * Schedules a drain of the topic queue unless one is already pending.
+     */
+    public void schedule(Topic topic) {
+        scheduler.schedule(topic);
+    }
+    
+    /**
+     * Topics with queued messages waiting for a worker.
+     */
+    public int getPendingTopics() {
+        return scheduler.getRunQueueSize();
+    }
+    
+    /**
+     * One scheduler turn: drains up to {@code maxMessages} from the topic queue.
+     */
+    private int drain(Topic topic, int maxMessages) {
+        int drained = 0;
+        try {
+            long now = System.currentTimeMillis();
+            MessageEnvelope envelope;
+            while (drained < maxMessages && (envelope = topic.pollMessage(laneWeights)) != null) {
+                drained++;
+                if (topic.isExpired(envelope, now)) {
+                    // Waited in the queue longer than the topic's TTL; still counted as drained for flow control
+                    log.debug("Dropped expired message {} on topic {}", envelope.getId(), topic.getName());
+                    envelope.setEncodedEvent(null);
+                    continue;
+                }
+                deliver(topic, envelope);
+                // A frame attached before dispatch is released, so messages kept in history are not held twice
+                envelope.setEncodedEvent(null);
+            }
+        } catch (Exception e) {
+            log.error("Error dispatching messages for topic {}: {}", topic.getName(), e.getMessage(), e);
+        }
+        
+        if (drained > 0) {
+            for (DispatchListener listener : listeners) {
+                listener.onDrained(topic, drained);
+            }
+        }
+        return drained;
+    }
+    
+    private void deliver(Topic topic, MessageEnvelope envelope) throws IOException {
+        Forwarder remote = forwarder;
+        if (remote != null) {
+            remote.forward(topic, envelope);
+        }
+        
+        if (topic.getSubscribers().isEmpty()) {
+            return;
+        }
+        
+        // Encode once and share the frame across all subscribers
+        String eventJson = codec.encodeEvent(topic.getName(), envelope);
+        
+        // Compressed lazily on the first opted-in subscriber, then shared the same way
+        CompressionPolicy.Rule rule = compressionRule(topic);
+        ByteBuffer compressed = null;
+        boolean compressionTried = false;
+        
+        for (Subscription sub : topic.getSubscribers().values()) {
+            if (sub.getSession() instanceof EventSink) {
+                EventSink sink = (EventSink) sub.getSession();
+                if (sink.isOpen()) {
+                    try {
+                        sink.sendEvent(envelope, eventJson);
+                    } catch (IOException e) {
+                        log.error("Failed to send message to subscriber {}: {}", sub.getClientId(), e.getMessage());
+                    }
+                }
+                continue;
+            }
+            
+            Session subscriberSession = (Session) sub.getSession();
+            if (subscriberSession != null && subscriberSession.isOpen()) {
+                if (sub.isBatched()) {
+                    // Coalesced into the subscriber's next array frame
+                    batcher.add(sub, subscriberSession, eventJson);
+                    continue;
+                }
+                if (rule != null && CompressionPolicy.wantsDeflate(sub.getCompression())) {
+                    if (!compressionTried) {
+                        compressed = compressionPolicy.compress(eventJson, rule);
+                        compressionTried = true;
+                    }
+                    if (compressed != null) {
+                        if (sender.send(subscriberSession, compressed.duplicate())) {
+                            log.debug("Queued compressed event for subscriber: {}", sub.getClientId());
+                        }
+                        continue;
+                    }
+                }
+                if (sender.send(subscriberSession, eventJson)) {
+                    log.debug("Queued event for subscriber: {}", sub.getClientId());
+                }
+            }
+        }
+    }
+    
+    private CompressionPolicy.Rule compressionRule(Topic topic) {
+        switch (topic.getConfig().getCompression()) {
+            case NONE:
+                return null;
+            case DEFLATE:
+                CompressionPolicy.Rule rule = compressionPolicy.ruleFor(topic.getName());
+                return rule != null ? rule : CompressionPolicy.DEFAULT_RULE;
+            default:
+                return compressionPolicy.ruleFor(topic.getName());
+        }
+    }
+    
+    /**
+     * Callback invoked after a batch of messages has been drained from a topic queue.
+     */
+    public interface DispatchListener {
+        
+        void onDrained(Topic topic, int count);
+    }
+    
+    /**
+     * Hands each dispatched message to other nodes before local fan-out.
+     */
+    public interface Forwarder {
+        
+        void forward(Topic topic, MessageEnvelope envelope);
+    }
+}
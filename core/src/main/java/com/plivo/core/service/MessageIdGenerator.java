@@ -0,0 +1,27 @@
+package com.plivo.core.service;
+
+import com.plivo.models.Topic;
+
+/**
+ * Strategy for assigning offsets and ids to published messages.
+ * The offset is the per-topic position of a message; the id is the string
+ * handed to clients when the publisher did not supply one.
+ */
+public interface MessageIdGenerator {
+    
+    /**
+     * Assigns the next offset for a topic. Offsets must be strictly increasing per topic.
+     *
+     * @param topic The topic the message is being published to
+     * @return The offset for the new message
+     */
+    long nextOffset(Topic topic);
+    
+    /**
+     * Formats an offset as a message id.
+     *
+     * @param offset An offset previously returned by {@link #nextOffset(Topic)}
+     * @return The message id
+     */
+    String toMessageId(long offset);
+}
@@ -6,35 +6,63 @@ import com.plivo.core.exceptions.QueueOverflowException;
 import com.plivo.models.Topic;
 import com.plivo.models.Subscription;
 import com.plivo.models.MessageEnvelope;
+import com.plivo.models.FrameReplay;
+import com.plivo.models.ReplayFrom;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class PubSubService {
     
     private static final Logger log = LoggerFactory.getLogger(PubSubService.class);
     
+    public static final int DEFAULT_MAX_REPLAY_MESSAGES = 10000;
+    
     private final TopicRepository topicRepository;
+    private final MessageIdGenerator idGenerator;
+    private final MessageDispatcher dispatcher;
     private final ConcurrentHashMap<String, ConcurrentHashMap<String, Subscription>> topicSubscriptions;
+    private final List<SubscriptionListener> subscriptionListeners;
+    // Most messages a single from_offset / from_time replay returns
+    private final int maxReplayMessages;
+    
+    public PubSubService(TopicRepository topicRepository, MessageIdGenerator idGenerator, MessageDispatcher dispatcher) {
+        this(topicRepository, idGenerator, dispatcher, DEFAULT_MAX_REPLAY_MESSAGES);
+    }
     
-    public PubSubService(TopicRepository topicRepository) {
+    public PubSubService(TopicRepository topicRepository, MessageIdGenerator idGenerator, MessageDispatcher dispatcher,
+                         int maxReplayMessages) {
+        this.maxReplayMessages = maxReplayMessages;
         this.topicRepository = topicRepository;
+        this.idGenerator = idGenerator;
+        this.dispatcher = dispatcher;
         this.topicSubscriptions = new ConcurrentHashMap<>();
+        this.subscriptionListeners = new CopyOnWriteArrayList<>();
+    }
+    
+    public void addSubscriptionListener(SubscriptionListener listener) {
+        subscriptionListeners.add(listener);
     }
     
     //Subscribe a client to a topic
     public void subscribe(String topicName, String clientId, Object session, Integer lastN) {
+        subscribe(new Subscription(clientId, topicName, session), lastN);
+    }
+    
+    //Subscribe a client to a topic with a prepared subscription carrying its delivery options
+    public void subscribe(Subscription subscription, Integer lastN) {
+        String topicName = subscription.getTopic();
+        String clientId = subscription.getClientId();
         Topic topic = topicRepository.getTopic(topicName);
         if (topic == null) {
             throw new TopicNotFoundException(topicName);
         }
         
-        // Create subscription
-        Subscription subscription = new Subscription(clientId, topicName, session);
-        
         // Get or create topic subscriptions map
         ConcurrentHashMap<String, Subscription> subs = topicSubscriptions
                 .computeIfAbsent(topicName, k -> new ConcurrentHashMap<>());
@@ -42,7 +70,8 @@ public class PubSubService {
         // Add subscription
         subs.put(clientId, subscription);
         topic.getSubscribers().put(clientId, subscription);
-        topic.incrementSubscriberCount();
+        topicRepository.subscriberAdded(topic);
+        notifySubscribersChanged(topic);
         
         log.info("Client {} subscribed to topic {}", clientId, topicName);
         
@@ -62,16 +91,22 @@ public class PubSubService {
         }
         
         ConcurrentHashMap<String, Subscription> subs = topicSubscriptions.get(topicName);
-        if (subs != null) {
-            subs.remove(clientId);
+        // Only a subscription that was still registered is counted off, so a late or repeated unsubscribe changes nothing
+        if (subs != null && subs.remove(clientId) != null) {
             topic.getSubscribers().remove(clientId);
-            topic.decrementSubscriberCount();
+            topicRepository.subscriberRemoved(topic);
+            notifySubscribersChanged(topic);
             log.info("Client {} unsubscribed from topic {}", clientId, topicName);
         }
     }
     
     //Publish a message to a topic
     public MessageEnvelope publish(String topicName, String messageId, Object payload) {
+        return publish(topicName, messageId, payload, Topic.DEFAULT_PRIORITY);
+    }
+    
+    //Publish a message to a topic, queued in the lane of its priority
+    public MessageEnvelope publish(String topicName, String messageId, Object payload, int priority) {
         Topic topic = topicRepository.getTopic(topicName);
         if (topic == null) {
             throw new TopicNotFoundException(topicName);
@@ -83,35 +118,53 @@ public class PubSubService {
             throw new QueueOverflowException(topicName, topic.getQueueSize(), topic.getQueueCapacity());
         }
         
-        // Generate message ID if not provided
-        if (messageId == null || messageId.isEmpty()) {
-            messageId = UUID.randomUUID().toString();
-        }
-        
-        // Create message envelope
-        MessageEnvelope envelope = new MessageEnvelope(
-            messageId,
-            payload,
-            System.currentTimeMillis()
-        );
-        
-        // Try to add message to queue (backpressure handling)
-        boolean added = topic.offerMessage(envelope);
-        
-        if (!added) {
-            log.error("Failed to add message to queue for topic {} - queue overflow", topicName);
-            throw new QueueOverflowException(topicName, topic.getQueueSize(), topic.getQueueCapacity());
+        MessageEnvelope envelope;
+        // Concurrent publishes reach the queue and the history in the order of their offsets
+        synchronized (topic.getPublishLock()) {
+            // Assign the per-topic offset, and derive the message ID from it if not provided
+            long offset = idGenerator.nextOffset(topic);
+            if (messageId == null || messageId.isEmpty()) {
+                messageId = idGenerator.toMessageId(offset);
+            }
+            
+            // Create message envelope
+            envelope = new MessageEnvelope(
+                messageId,
+                payload,
+                System.currentTimeMillis(),
+                offset
+            );
+            envelope.setPriority(priority);
+            
+            // Try to add message to queue (backpressure handling)
+            boolean added = topic.offerMessage(envelope);
+            
+            if (!added) {
+                log.error("Failed to add message to queue for topic {} - queue overflow", topicName);
+                throw new QueueOverflowException(topicName, topic.getQueueSize(), topic.getQueueCapacity());
+            }
+            
+            // Add to topic history
+            topic.addToHistory(envelope);
         }
-        
-        // Add to topic history
-        topic.addToHistory(envelope);
         topic.incrementMessageCount();
         
+        // Hand off to the dispatcher for fan-out to subscribers
+        dispatcher.schedule(topic);
+        
         log.info("Published message {} to topic {}", messageId, topicName);
         
         return envelope;
     }
     
+    /**
+     * Drops the subscription index of a deleted topic. The topic keeps its own subscriber
+     * map until its subscribers have been told.
+     */
+    public void forgetTopic(String topicName) {
+        topicSubscriptions.remove(topicName);
+    }
+    
     /**
      * Get all subscribers for a topic
      */
@@ -132,17 +185,55 @@ public class PubSubService {
      */
     public void removeAllSubscriptions(String clientId) {
         topicSubscriptions.forEach((topicName, subs) -> {
-            if (subs.remove(clientId) != null) {
+            if (subs.remove(clientId) == null) {
+                return;
+            }
+            try {
                 Topic topic = topicRepository.getTopic(topicName);
-                if (topic != null) {
-                    topic.getSubscribers().remove(clientId);
-                    topic.decrementSubscriberCount();
-                }
-                log.info("Removed subscription for client {} from topic {}", clientId, topicName);
+                topic.getSubscribers().remove(clientId);
+                topicRepository.subscriberRemoved(topic);
+                notifySubscribersChanged(topic);
+            } catch (TopicNotFoundException e) {
+                // Deleted meanwhile; its subscribers are dropped with it
             }
+            log.info("Removed subscription for client {} from topic {}", clientId, topicName);
         });
     }
     
+    /**
+     * Remove the subscriptions made over any of the given sessions, in one pass over the topics.
+     * Subscriptions a client has since made over another session are kept.
+     *
+     * @return The number of subscriptions removed
+     */
+    public int removeSessionSubscriptions(Set<Object> sessions) {
+        int removed = 0;
+        for (Map.Entry<String, ConcurrentHashMap<String, Subscription>> entry : topicSubscriptions.entrySet()) {
+            Topic topic = null;
+            int topicRemoved = 0;
+            for (Subscription subscription : entry.getValue().values()) {
+                if (!sessions.contains(subscription.getSession())
+                        || !entry.getValue().remove(subscription.getClientId(), subscription)) {
+                    continue;
+                }
+                try {
+                    topic = topic != null ? topic : topicRepository.getTopic(entry.getKey());
+                } catch (TopicNotFoundException e) {
+                    // Deleted meanwhile; its subscribers are dropped with it
+                    break;
+                }
+                topic.getSubscribers().remove(subscription.getClientId(), subscription);
+                topicRepository.subscriberRemoved(topic);
+                topicRemoved++;
+            }
+            if (topicRemoved > 0) {
+                notifySubscribersChanged(topic);
+                removed += topicRemoved;
+            }
+        }
+        return removed;
+    }
+    
     /**
      * Get message history for a topic
      */
@@ -154,6 +245,64 @@ public class PubSubService {
         return topic.getLastNMessages(lastN);
     }
     
+    /**
+     * Get stored messages of a topic starting at an offset, up to the replay limit
+     */
+    public List<MessageEnvelope> getMessagesFromOffset(String topicName, long offset) {
+        return getMessagesFromOffset(topicName, offset, maxReplayMessages);
+    }
+    
+    /**
+     * Get up to {@code limit} stored messages of a topic starting at an offset, never more than the replay limit
+     */
+    public List<MessageEnvelope> getMessagesFromOffset(String topicName, long offset, int limit) {
+        Topic topic = topicRepository.getTopic(topicName);
+        if (topic == null) {
+            throw new TopicNotFoundException(topicName);
+        }
+        return topic.getMessagesFromOffset(offset, Math.min(limit, maxReplayMessages));
+    }
+    
+    /**
+     * Get stored messages of a topic published at or after a time (epoch millis), up to the replay limit
+     */
+    public List<MessageEnvelope> getMessagesFromTime(String topicName, long timestamp) {
+        Topic topic = topicRepository.getTopic(topicName);
+        if (topic == null) {
+            throw new TopicNotFoundException(topicName);
+        }
+        return topic.getMessagesFromTime(timestamp, maxReplayMessages);
+    }
+    
+    /**
+     * Open a replay of a topic's stored history as ready-to-send event frames.
+     * Returns null if the history must be read as messages instead.
+     */
+    public FrameReplay replayFrames(String topicName, ReplayFrom from, long value) {
+        Topic topic = topicRepository.getTopic(topicName);
+        if (topic == null) {
+            throw new TopicNotFoundException(topicName);
+        }
+        int limit = from == ReplayFrom.LAST_N ? (int) Math.min(value, Integer.MAX_VALUE) : maxReplayMessages;
+        return topic.replayFrames(from, value, limit);
+    }
+    
+    /**
+     * Open a frame replay of at most {@code limit} messages, never more than the replay limit.
+     * Returns null if the history must be read as messages instead.
+     */
+    public FrameReplay replayFrames(String topicName, ReplayFrom from, long value, int limit) {
+        Topic topic = topicRepository.getTopic(topicName);
+        if (topic == null) {
+            throw new TopicNotFoundException(topicName);
+        }
+        return topic.replayFrames(from, value, Math.min(limit, maxReplayMessages));
+    }
+    
+    public int getMaxReplayMessages() {
+        return maxReplayMessages;
+    }
+    
     /**
      * Get queue statistics for a topic
      */
@@ -216,6 +365,12 @@ public class PubSubService {
         }
     }
     
+    private void notifySubscribersChanged(Topic topic) {
+        for (SubscriptionListener listener : subscriptionListeners) {
+            listener.onSubscribersChanged(topic);
+        }
+    }
+    
     /**
      * Inner class to hold queue statistics
      */
@@ -248,4 +403,12 @@ public class PubSubService {
             return full;
         }
     }
+    
+    /**
+     * Callback invoked after a subscription is added to or removed from a topic.
+     */
+    public interface SubscriptionListener {
+        
+        void onSubscribersChanged(Topic topic);
+    }
 }
@@ -0,0 +1,287 @@
+package com.plivo.core.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token-bucket limits on publishes and publish bytes, per session, per client id and
+ * per topic. Each bucket is a single {@link AtomicLong} updated by compare-and-set, so
+ * checks never lock. A publish must fit in every applicable bucket; when a later scope
+ * rejects it, the tokens taken from the earlier scopes are given back.
+ */
+public class RateLimiter {
+    
+    // Client and topic buckets kept before idle ones are swept
+    private static final int MAX_TRACKED_KEYS = 10_000;
+    
+    public enum Scope {
+        SESSION,
+        CLIENT,
+        TOPIC
+    }
+    
+    private final Limit sessionLimit;
+    private final Limit clientLimit;
+    private final Limit topicLimit;
+    private final ConcurrentHashMap<String, Buckets> clientBuckets;
+    private final ConcurrentHashMap<String, Buckets> topicBuckets;
+    private final AtomicBoolean sweeping;
+    
+    public RateLimiter(Limit sessionLimit, Limit clientLimit, Limit topicLimit) {
+        this.sessionLimit = sessionLimit;
+        this.clientLimit = clientLimit;
+        this.topicLimit = topicLimit;
+        this.clientBuckets = new ConcurrentHashMap<>();
+        this.topicBuckets = new ConcurrentHashMap<>();
+        this.sweeping = new AtomicBoolean();
+    }
+    
+    /**
+     * Creates the buckets of a new session, or null when sessions are unlimited.
+     */
+    public Buckets newSessionBuckets() {
+        return sessionLimit.isUnlimited() ? null : new Buckets(sessionLimit, System.nanoTime());
+    }
+    
+    /**
+     * The size of text encoded as UTF-8, counted without encoding it, for charging a text
+     * frame by its bytes on the wire rather than its UTF-16 length.
+     */
+    public static int utf8Length(CharSequence text) {
+        int length = text.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                bytes += 1;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                // Four bytes for the pair's two chars
+                bytes += 2;
+                i++;
+            } else {
+                bytes += 2;
+            }
+        }
+        return bytes;
+    }
+    
+    /**
+     * Takes one publish and its bytes from every applicable bucket.
+     *
+     * @param session The session's buckets, or null if none
+     * @param clientId The publisher's client id, or null if unknown
+     * @param topic The target topic, or null if unknown
+     * @param bytes The size of the publish frame
+     * @return null if allowed, otherwise the scope that rejected it
+     */
+    public Rejection tryPublish(Buckets session, String clientId, String topic, int bytes) {
+        long now = System.nanoTime();
+        
+        long wait = session != null ? session.tryTake(bytes, now) : 0;
+        if (wait > 0) {
+            return new Rejection(Scope.SESSION, wait);
+        }
+        
+        Buckets client = clientId != null ? bucketsFor(clientBuckets, clientLimit, clientId, now) : null;
+        wait = client != null ? client.tryTake(bytes, now) : 0;
+        if (wait > 0) {
+            giveBack(session, bytes);
+            return new Rejection(Scope.CLIENT, wait);
+        }
+        
+        Buckets topicBucket = topic != null ? bucketsFor(topicBuckets, topicLimit, topic, now) : null;
+        wait = topicBucket != null ? topicBucket.tryTake(bytes, now) : 0;
+        if (wait > 0) {
+            giveBack(session, bytes);
+            giveBack(client, bytes);
+            return new Rejection(Scope.TOPIC, wait);
+        }
+        return null;
+    }
+    
+    /**
+     * Drops the buckets of a deleted topic.
+     */
+    public void forgetTopic(String topic) {
+        topicBuckets.remove(topic);
+    }
+    
+    private Buckets bucketsFor(ConcurrentHashMap<String, Buckets> buckets, Limit limit, String key, long now) {
+        if (limit.isUnlimited()) {
+            return null;
+        }
+        Buckets existing = buckets.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        if (buckets.size() >= MAX_TRACKED_KEYS) {
+            sweepIdle(buckets, now);
+        }
+        return buckets.computeIfAbsent(key, k -> new Buckets(limit, now));
+    }
+    
+    /**
+     * Removes buckets that have refilled completely; recreating them later is equivalent.
+     */
+    private void sweepIdle(ConcurrentHashMap<String, Buckets> buckets, long now) {
+        if (!sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            for (Map.Entry<String, Buckets> entry : buckets.entrySet()) {
+                if (entry.getValue().isFull(now)) {
+                    buckets.remove(entry.getKey(), entry.getValue());
+                }
+            }
+        } finally {
+            sweeping.set(false);
+        }
+    }
+    
+    private static void giveBack(Buckets buckets, int bytes) {
+        if (buckets != null) {
+            buckets.giveBack(bytes);
+        }
+    }
+    
+    /**
+     * Rates and bursts for one scope. A rate of 0 leaves that dimension unlimited, and a
+     * burst of 0 allows one second's worth.
+     */
+    public static class Limit {
+        
+        public static final Limit UNLIMITED = new Limit(0, 0, 0, 0);
+        
+        private final long publishesPerSecond;
+        private final long publishBurst;
+        private final long bytesPerSecond;
+        private final long byteBurst;
+        
+        public Limit(long publishesPerSecond, long publishBurst, long bytesPerSecond, long byteBurst) {
+            this.publishesPerSecond = publishesPerSecond;
+            this.publishBurst = publishBurst;
+            this.bytesPerSecond = bytesPerSecond;
+            this.byteBurst = byteBurst;
+        }
+        
+        public boolean isUnlimited() {
+            return publishesPerSecond <= 0 && bytesPerSecond <= 0;
+        }
+    }
+    
+    /**
+     * Why a publish was rejected, and how long until it would fit.
+     */
+    public static class Rejection {
+        
+        private final Scope scope;
+        private final long retryAfterNanos;
+        
+        private Rejection(Scope scope, long retryAfterNanos) {
+            this.scope = scope;
+            this.retryAfterNanos = retryAfterNanos;
+        }
+        
+        public Scope getScope() {
+            return scope;
+        }
+        
+        public long getRetryAfterMillis() {
+            return Math.max(1, TimeUnit.NANOSECONDS.toMillis(retryAfterNanos));
+        }
+    }
+    
+    /**
+     * The publish and byte buckets of one session, client or topic.
+     */
+    public static class Buckets {
+        
+        private final TokenBucket publishes;
+        private final TokenBucket bytes;
+        
+        private Buckets(Limit limit, long now) {
+            this.publishes = limit.publishesPerSecond > 0
+                ? new TokenBucket(limit.publishesPerSecond, limit.publishBurst, now) : null;
+            this.bytes = limit.bytesPerSecond > 0
+                ? new TokenBucket(limit.bytesPerSecond, limit.byteBurst, now) : null;
+        }
+        
+        private long tryTake(int byteCount, long now) {
+            long wait = publishes != null ? publishes.tryTake(1, now) : 0;
+            if (wait > 0) {
+                return wait;
+            }
+            wait = bytes != null ? bytes.tryTake(byteCount, now) : 0;
+            if (wait > 0 && publishes != null) {
+                publishes.giveBack(1);
+            }
+            return wait;
+        }
+        
+        private void giveBack(int byteCount) {
+            if (publishes != null) {
+                publishes.giveBack(1);
+            }
+            if (bytes != null) {
+                bytes.giveBack(byteCount);
+            }
+        }
+        
+        private boolean isFull(long now) {
+            return (publishes == null || publishes.isFull(now)) && (bytes == null || bytes.isFull(now));
+        }
+    }
+    
+    /**
+     * Token bucket kept as the time at which it would be full again (the generic cell
+     * rate algorithm). Taking tokens pushes that time forward; a take is refused when
+     * it would lie more than the burst ahead of now. A take larger than the whole burst
+     * is only allowed on a full bucket and is charged in full, so later takes wait until
+     * the debt is paid off.
+     */
+    private static class TokenBucket {
+        
+        private final long nanosPerToken;
+        private final long burstNanos;
+        private final AtomicLong fullAt;
+        
+        private TokenBucket(long tokensPerSecond, long burst, long now) {
+            this.nanosPerToken = Math.max(1, TimeUnit.SECONDS.toNanos(1) / tokensPerSecond);
+            this.burstNanos = (burst > 0 ? burst : tokensPerSecond) * nanosPerToken;
+            this.fullAt = new AtomicLong(now);
+        }
+        
+        /**
+         * @return 0 if the tokens were taken, otherwise the nanoseconds until they would be available
+         */
+        private long tryTake(long tokens, long now) {
+            long cost = tokens * nanosPerToken;
+            while (true) {
+                long current = fullAt.get();
+                long next = Math.max(current, now) + cost;
+                long excess = next - now - burstNanos;
+                // On a full bucket even a take larger than the burst goes through; otherwise it waits at most until full
+                if (excess > 0 && current - now > 0) {
+                    return Math.min(excess, current - now);
+                }
+                if (fullAt.compareAndSet(current, next)) {
+                    return 0;
+                }
+            }
+        }
+        
+        private void giveBack(long tokens) {
+            fullAt.addAndGet(-tokens * nanosPerToken);
+        }
+        
+        private boolean isFull(long now) {
+            return fullAt.get() - now <= 0;
+        }
+    }
+}
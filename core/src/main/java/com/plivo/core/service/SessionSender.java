@@ -0,0 +1,137 @@
+package com.plivo.core.service;
+
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes server-initiated frames to WebSocket sessions without waiting for them to reach
+ * the socket. Jetty queues each frame and reports completion on a callback; the bytes still
+ * queued are counted per session. A session that lets more than the limit pile up is not
+ * reading, so it is disconnected rather than buffered without bound, and its subscriptions
+ * go with it on close. The client can reconnect and replay from its last offset.
+ *
+ * <p>Text frames are counted by character, which equals their size for ASCII JSON.
+ */
+public class SessionSender {
+    
+    private static final Logger log = LoggerFactory.getLogger(SessionSender.class);
+    
+    private final long maxBytesInFlight;
+    private final ConcurrentHashMap<Session, AtomicLong> inFlight;
+    
+    public SessionSender(long maxBytesInFlight) {
+        this.maxBytesInFlight = maxBytesInFlight;
+        this.inFlight = new ConcurrentHashMap<>();
+    }
+    
+    /**
+     * Queues a text frame. Returns false if the session is closed or was disconnected for
+     * having too much outstanding.
+     */
+    public boolean send(Session session, String text) {
+        AtomicLong pending = reserve(session, text.length());
+        if (pending == null) {
+            return false;
+        }
+        session.getRemote().sendString(text, new Release(pending, text.length(), null));
+        return true;
+    }
+    
+    /**
+     * Queues a binary frame. The buffer must not be modified until the frame is written.
+     */
+    public boolean send(Session session, ByteBuffer bytes) {
+        int size = bytes.remaining();
+        AtomicLong pending = reserve(session, size);
+        if (pending == null) {
+            return false;
+        }
+        session.getRemote().sendBytes(bytes, new Release(pending, size, null));
+        return true;
+    }
+    
+    /**
+     * Charges a frame that the caller writes itself, for frames this class cannot build. Returns
+     * the callback to write it with, which gives the bytes back and then completes {@code written},
+     * or null if the session is closed or was disconnected for having too much outstanding.
+     */
+    public WriteCallback charge(Session session, int size, WriteCallback written) {
+        AtomicLong pending = reserve(session, size);
+        return pending != null ? new Release(pending, size, written) : null;
+    }
+    
+    public long getMaxBytesInFlight() {
+        return maxBytesInFlight;
+    }
+    
+    /**
+     * Bytes queued on the session and not yet written.
+     */
+    public long getBytesInFlight(Session session) {
+        AtomicLong pending = inFlight.get(session);
+        return pending != null ? pending.get() : 0;
+    }
+    
+    /**
+     * Drops the counter of a closed session. Writes still queued release into the dropped counter.
+     */
+    public void removeSession(Session session) {
+        inFlight.remove(session);
+    }
+    
+    private AtomicLong reserve(Session session, int size) {
+        if (session == null || !session.isOpen()) {
+            return null;
+        }
+        AtomicLong pending = inFlight.computeIfAbsent(session, key -> new AtomicLong());
+        long outstanding = pending.addAndGet(size);
+        // A single frame larger than the limit still goes out on an idle session
+        if (outstanding > maxBytesInFlight && outstanding > size) {
+            pending.addAndGet(-size);
+            log.warn("Disconnecting {}: {} bytes not yet written, limit {}",
+                    session.getRemoteAddress(), outstanding - size, maxBytesInFlight);
+            session.disconnect();
+            return null;
+        }
+        return pending;
+    }
+    
+    /**
+     * Gives a frame's bytes back once Jetty has written or failed it, then passes the outcome on.
+     */
+    private static class Release implements WriteCallback {
+        
+        private final AtomicLong pending;
+        private final int size;
+        private final WriteCallback written;
+        
+        private Release(AtomicLong pending, int size, WriteCallback written) {
+            this.pending = pending;
+            this.size = size;
+            this.written = written;
+        }
+        
+        @Override
+        public void writeSuccess() {
+            pending.addAndGet(-size);
+            if (written != null) {
+                written.writeSuccess();
+            }
+        }
+        
+        @Override
+        public void writeFailed(Throwable cause) {
+            pending.addAndGet(-size);
+            log.debug("Failed to write frame: {}", cause.getMessage());
+            if (written != null) {
+                written.writeFailed(cause);
+            }
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.plivo.core.service;
+
+import com.plivo.core.repository.TopicRepository;
+import com.plivo.models.Topic;
+import com.plivo.models.http.TopicStats;
+import io.dropwizard.lifecycle.Managed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-topic statistics, collected on a fixed interval into an immutable snapshot. Stats
+ * requests read the latest snapshot instead of walking every topic, so their cost no
+ * longer grows with how often they are made, and publish rates come from the change in
+ * message counts between two snapshots.
+ */
+public class StatsAggregator implements Managed {
+    
+    private static final Logger log = LoggerFactory.getLogger(StatsAggregator.class);
+    
+    private final TopicRepository topicRepository;
+    private final long refreshIntervalMillis;
+    private volatile Snapshot snapshot;
+    private ScheduledExecutorService scheduler;
+    
+    public StatsAggregator(TopicRepository topicRepository, long refreshIntervalMillis) {
+        this.topicRepository = topicRepository;
+        this.refreshIntervalMillis = refreshIntervalMillis;
+        this.snapshot = new Snapshot(new Entry[0], System.currentTimeMillis());
+    }
+    
+    @Override
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stats-aggregator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::refresh, 0, refreshIntervalMillis, TimeUnit.MILLISECONDS);
+        log.info("Stats aggregation started, refreshed every {} ms", refreshIntervalMillis);
+    }
+    
+    @Override
+    public void stop() {
+        scheduler.shutdownNow();
+        log.info("Stats aggregation stopped");
+    }
+    
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+    
+    private void refresh() {
+        try {
+            Snapshot previous = snapshot;
+            long now = System.currentTimeMillis();
+            double elapsedSeconds = Math.max(1, now - previous.takenAt) / 1000.0;
+            
+            List<Entry> entries = new ArrayList<>(topicRepository.getTopicCount());
+            // Read in name order, so the snapshot needs no sort
+            for (Topic topic : topicRepository.getTopicsByName()) {
+                long messages = topic.getMessageCount();
+                Entry before = previous.byName.get(topic.getName());
+                long counted;
+                if (before != null) {
+                    counted = before.messages;
+                } else if (topic.getCreatedAt() != null && topic.getCreatedAt().toEpochMilli() >= previous.takenAt) {
+                    // Created since the last snapshot, so all its messages are new
+                    counted = 0;
+                } else {
+                    // Restored or otherwise not seen before; nothing to compare against yet
+                    counted = messages;
+                }
+                double rate = Math.max(0, messages - counted) / elapsedSeconds;
+                entries.add(new Entry(topic.getName(), messages, topic.getSubscriberCount(), rate));
+            }
+            snapshot = new Snapshot(entries.toArray(new Entry[0]), now);
+        } catch (Exception e) {
+            log.error("Failed to refresh stats: {}", e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Stats of one topic at the time of a snapshot.
+     */
+    public static class Entry {
+        
+        private final String name;
+        private final long messages;
+        private final long subscribers;
+        private final double messagesPerSecond;
+        
+        private Entry(String name, long messages, long subscribers, double messagesPerSecond) {
+            this.name = name;
+            this.messages = messages;
+            this.subscribers = subscribers;
+            this.messagesPerSecond = messagesPerSecond;
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        public TopicStats toTopicStats() {
+            return new TopicStats(messages, subscribers, messagesPerSecond);
+        }
+    }
+    
+    /**
+     * The stats of every topic at one point in time, sorted by name and by publish rate.
+     */
+    public static class Snapshot {
+        
+        private final Entry[] sortedByName;
+        private final Entry[] sortedByRate;
+        private final Map<String, Entry> byName;
+        private final long takenAt;
+        private final long totalMessages;
+        private final long totalSubscribers;
+        
+        private Snapshot(Entry[] sortedByName, long takenAt) {
+            this.sortedByName = sortedByName;
+            this.sortedByRate = sortedByName.clone();
+            Arrays.sort(sortedByRate, Comparator.comparingDouble((Entry entry) -> entry.messagesPerSecond).reversed());
+            this.byName = new HashMap<>(sortedByName.length * 2);
+            long messages = 0;
+            long subscribers = 0;
+            for (Entry entry : sortedByName) {
+                byName.put(entry.name, entry);
+                messages += entry.messages;
+                subscribers += entry.subscribers;
+            }
+            this.takenAt = takenAt;
+            this.totalMessages = messages;
+            this.totalSubscribers = subscribers;
+        }
+        
+        public long getTakenAt() {
+            return takenAt;
+        }
+        
+        public int getTopicCount() {
+            return sortedByName.length;
+        }
+        
+        public long getTotalMessages() {
+            return totalMessages;
+        }
+        
+        public long getTotalSubscribers() {
+            return totalSubscribers;
+        }
+        
+        /**
+         * Returns topics in name order, starting after a cursor.
+         *
+         * @param prefix Only topics whose name starts with this, or null for all
+         * @param after Name of the last topic of the previous page, or null for the first page
+         * @param limit Most topics returned
+         */
+        public List<Entry> page(String prefix, String after, int limit) {
+            String from = prefix != null ? prefix : "";
+            if (after != null && after.compareTo(from) >= 0) {
+                from = after;
+            }
+            int start = firstAtOrAfter(from);
+            if (after != null && start < sortedByName.length && sortedByName[start].name.equals(after)) {
+                start++;
+            }
+            
+            List<Entry> page = new ArrayList<>(Math.min(limit, sortedByName.length - start));
+            for (int i = start; i < sortedByName.length && page.size() < limit; i++) {
+                if (prefix != null && !sortedByName[i].name.startsWith(prefix)) {
+                    // Names sharing a prefix are contiguous, so nothing further matches
+                    break;
+                }
+                page.add(sortedByName[i]);
+            }
+            return page;
+        }
+        
+        /**
+         * Returns the topics with the highest publish rates, busiest first.
+         *
+         * @param prefix Only topics whose name starts with this, or null for all
+         */
+        public List<Entry> top(String prefix, int k) {
+            List<Entry> top = new ArrayList<>(Math.min(k, sortedByRate.length));
+            for (int i = 0; i < sortedByRate.length && top.size() < k; i++) {
+                if (prefix == null || sortedByRate[i].name.startsWith(prefix)) {
+                    top.add(sortedByRate[i]);
+                }
+            }
+            return top;
+        }
+        
+        private int firstAtOrAfter(String name) {
+            int low = 0;
+            int high = sortedByName.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (sortedByName[mid].name.compareTo(name) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
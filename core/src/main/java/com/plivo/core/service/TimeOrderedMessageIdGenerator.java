@@ -0,0 +1,64 @@
+package com.plivo.core.service;
+
+import com.plivo.models.Topic;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Default lock-free id generator.
+ * Offsets carry milliseconds since {@link #EPOCH_MILLIS} in the upper bits and a
+ * sequence in the lower {@link #SEQUENCE_BITS} bits, so they sort by publish time.
+ * They stay below 2^53, so clients that read JSON numbers as doubles get them exactly.
+ * Ids are the node prefix followed by the offset as fixed-width hex, which keeps
+ * lexicographic order equal to offset order.
+ */
+public class TimeOrderedMessageIdGenerator implements MessageIdGenerator {
+    
+    // 2024-01-01T00:00:00Z; with the sequence that leaves 43 bits (~278 years) of timestamp below 2^53
+    public static final long EPOCH_MILLIS = 1704067200000L;
+    public static final int SEQUENCE_BITS = 10;
+    
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    
+    private final String nodePrefix;
+    
+    public TimeOrderedMessageIdGenerator(String nodeId) {
+        this.nodePrefix = (nodeId == null || nodeId.isEmpty()) ? randomNodeId() : nodeId;
+    }
+    
+    @Override
+    public long nextOffset(Topic topic) {
+        long floor = (System.currentTimeMillis() - EPOCH_MILLIS) << SEQUENCE_BITS;
+        // If more than 2^10 messages land in one millisecond the sequence borrows
+        // from the next one, which keeps offsets monotonic per topic
+        return topic.advanceOffset(floor);
+    }
+    
+    @Override
+    public String toMessageId(long offset) {
+        int prefixLength = nodePrefix.length();
+        char[] chars = new char[prefixLength + 17];
+        nodePrefix.getChars(0, prefixLength, chars, 0);
+        chars[prefixLength] = '-';
+        for (int i = chars.length - 1; i > prefixLength; i--) {
+            chars[i] = HEX[(int) (offset & 0xF)];
+            offset >>>= 4;
+        }
+        return new String(chars);
+    }
+    
+    /**
+     * Extracts the publish time in epoch milliseconds from an offset.
+     */
+    public static long timestampOf(long offset) {
+        return (offset >>> SEQUENCE_BITS) + EPOCH_MILLIS;
+    }
+    
+    public String getNodePrefix() {
+        return nodePrefix;
+    }
+    
+    private static String randomNodeId() {
+        return Integer.toHexString(ThreadLocalRandom.current().nextInt(0x100000, 0x1000000));
+    }
+}
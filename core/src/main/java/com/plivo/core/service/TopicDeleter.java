@@ -0,0 +1,205 @@
+package com.plivo.core.service;
+
+import com.plivo.core.codec.ProtocolCodec;
+import com.plivo.core.repository.TopicRepository;
+import com.plivo.models.Subscription;
+import com.plivo.models.Topic;
+import io.dropwizard.lifecycle.Managed;
+import org.eclipse.jetty.websocket.api.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes topics. The topic is unregistered at once, so its name can no longer be published
+ * or subscribed to, and the per-topic state of other components is dropped through their
+ * listeners. Handling the messages still queued and notifying the subscribers happens on a
+ * background thread, so deleting a topic with a large fan-out, or many topics, does not hold
+ * up the caller. Topics draining their queues are re-checked on a schedule rather than waited
+ * on, so the drain timeouts of topics deleted together run side by side.
+ */
+public class TopicDeleter implements Managed {
+    
+    private static final Logger log = LoggerFactory.getLogger(TopicDeleter.class);
+    
+    public static final String DELETED_MESSAGE = "topic_deleted";
+    
+    // Time between checks of a topic whose queued messages are being delivered
+    private static final long DRAIN_POLL_MILLIS = 10;
+    
+    /**
+     * What happens to the messages still queued on a deleted topic.
+     */
+    public enum QueuePolicy {
+        // Delivered to the current subscribers first, within the drain timeout
+        DRAIN,
+        // Dropped
+        DISCARD
+    }
+    
+    private final TopicRepository topicRepository;
+    private final PubSubService pubSubService;
+    private final MessageDispatcher dispatcher;
+    private final ProtocolCodec codec;
+    private final SessionSender sender;
+    private final QueuePolicy queuePolicy;
+    private final long drainTimeoutMillis;
+    private final List<Listener> listeners;
+    private ScheduledExecutorService scheduler;
+    
+    public TopicDeleter(TopicRepository topicRepository, PubSubService pubSubService, MessageDispatcher dispatcher,
+                        ProtocolCodec codec, SessionSender sender, QueuePolicy queuePolicy, long drainTimeoutMillis) {
+        this.topicRepository = topicRepository;
+        this.pubSubService = pubSubService;
+        this.dispatcher = dispatcher;
+        this.codec = codec;
+        this.sender = sender;
+        this.queuePolicy = queuePolicy;
+        this.drainTimeoutMillis = drainTimeoutMillis;
+        this.listeners = new CopyOnWriteArrayList<>();
+    }
+    
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+    
+    @Override
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "topic-deleter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("Topic deleter started, queue policy {}", queuePolicy);
+    }
+    
+    @Override
+    public void stop() {
+        // Topics still draining are re-checked until their timeouts run out, then finished here
+        scheduler.shutdown();
+        try {
+            if (!scheduler.awaitTermination(drainTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                scheduler.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            scheduler.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        log.info("Topic deleter stopped");
+    }
+    
+    /**
+     * Deletes a topic, finishing its teardown in the background.
+     *
+     * @return false if the topic does not exist
+     */
+    public boolean delete(String topicName) {
+        Topic topic = topicRepository.removeTopic(topicName);
+        if (topic == null) {
+            return false;
+        }
+        // Publishes that found the topic just before it was removed are turned away from here on
+        topic.stopAcceptingMessages();
+        pubSubService.forgetTopic(topicName);
+        for (Listener listener : listeners) {
+            try {
+                listener.onTopicDeleted(topicName);
+            } catch (Exception e) {
+                log.error("Topic deletion listener failed for {}: {}", topicName, e.getMessage(), e);
+            }
+        }
+        
+        if (scheduler == null || scheduler.isShutdown()) {
+            finish(topic);
+        } else {
+            scheduler.execute(() -> tearDown(topic));
+        }
+        log.info("Topic {} deleted", topicName);
+        return true;
+    }
+    
+    private void tearDown(Topic topic) {
+        if (queuePolicy == QueuePolicy.DRAIN && topic.getQueueSize() > 0 && !topic.getSubscribers().isEmpty()) {
+            // Lets the dispatcher deliver the queued messages to the subscribers the topic still holds
+            dispatcher.schedule(topic);
+            awaitDrain(topic, System.currentTimeMillis() + drainTimeoutMillis);
+        } else {
+            finish(topic);
+        }
+    }
+    
+    /**
+     * Finishes the teardown once the queue is empty or the deadline has passed, and checks
+     * again later otherwise.
+     */
+    private void awaitDrain(Topic topic, long deadline) {
+        if (topic.getQueueSize() == 0 || System.currentTimeMillis() >= deadline) {
+            finish(topic);
+            return;
+        }
+        try {
+            scheduler.schedule(() -> awaitDrain(topic, deadline), DRAIN_POLL_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Stopping; what is still queued is discarded
+            finish(topic);
+        }
+    }
+    
+    /**
+     * Discards what is still queued and tells the subscribers the topic is gone.
+     */
+    private void finish(Topic topic) {
+        try {
+            int discarded = topic.drainQueue().size();
+            
+            for (Subscription subscription : topic.getSubscribers().values()) {
+                notifySubscriber(topic, subscription, discarded);
+            }
+            topic.getSubscribers().clear();
+            log.info("Topic {} torn down, {} queued messages discarded", topic.getName(), discarded);
+        } catch (Exception e) {
+            log.error("Failed to tear down topic {}: {}", topic.getName(), e.getMessage(), e);
+        }
+    }
+    
+    private void notifySubscriber(Topic topic, Subscription subscription, int discarded) {
+        Object session = subscription.getSession();
+        if (session instanceof EventSink) {
+            ((EventSink) session).topicDeleted(topic.getName());
+            return;
+        }
+        if (!(session instanceof Session) || !((Session) session).isOpen()) {
+            return;
+        }
+        
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("topic", topic.getName());
+        data.put("discarded", discarded);
+        try {
+            String json = codec.encodeInfo(DELETED_MESSAGE, data, null);
+            // Not waited on, so a subscriber that stopped reading cannot hold up other teardowns
+            sender.send((Session) session, json);
+        } catch (IOException e) {
+            log.debug("Failed to notify subscriber {} of deleted topic {}: {}",
+                    subscription.getClientId(), topic.getName(), e.getMessage());
+        }
+    }
+    
+    /**
+     * Drops per-topic state when a topic is deleted. Called on the deleting thread, before the
+     * topic's subscribers are notified.
+     */
+    public interface Listener {
+        
+        void onTopicDeleted(String topicName);
+    }
+}
@@ -1,6 +1,7 @@
 package com.plivo.core.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.plivo.core.codec.ProtocolCodec;
 import com.plivo.models.ws.response.ErrorResponse;
 import org.eclipse.jetty.websocket.api.Session;
 import org.slf4j.Logger;
@@ -17,11 +18,11 @@ public class WebSocketErrorService {
     private static final Logger log = LoggerFactory.getLogger(WebSocketErrorService.class);
     
     private final Session session;
-    private final ObjectMapper objectMapper;
+    private final ProtocolCodec codec;
     
-    public WebSocketErrorService(Session session, ObjectMapper objectMapper) {
+    public WebSocketErrorService(Session session, ProtocolCodec codec) {
         this.session = session;
-        this.objectMapper = objectMapper;
+        this.codec = codec;
     }
     
     /**
@@ -36,6 +37,18 @@ public class WebSocketErrorService {
         sendErrorResponse(error);
     }
     
+    /**
+     * Sends an error response with details to the WebSocket client.
+     *
+     * @param code The error code
+     * @param message The error message
+     * @param details Additional detail for the client, such as when to retry
+     * @param requestId The original request ID for correlation (can be null)
+     */
+    public void sendError(String code, String message, String details, String requestId) {
+        sendErrorResponse(new ErrorResponse(code, message, details, requestId));
+    }
+    
     /**
      * Sends an error response to the WebSocket client.
      *
@@ -44,7 +57,7 @@ public class WebSocketErrorService {
     public void sendErrorResponse(ErrorResponse error) {
         if (session != null && session.isOpen()) {
             try {
-                String json = objectMapper.writeValueAsString(error);
+                String json = codec.encode(error);
                 session.getRemote().sendString(json);
                 log.debug("Sent error: code={}, message={}", error.getCode(), error.getMessage());
             } catch (IOException e) {
@@ -0,0 +1,641 @@
+package com.plivo.core.storage;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.plivo.models.FrameReplay;
+import com.plivo.models.MessageEnvelope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntToLongFunction;
+import java.util.zip.CRC32;
+
+/**
+ * One file of a topic's on-disk history.
+ * Records are appended through a write buffer and located through a sparse
+ * index that holds the ordinal, offset, running maximum timestamp and file
+ * position of one record every {@code indexIntervalBytes}. A seek by ordinal,
+ * offset or time binary-searches the index and scans forward from the nearest
+ * entry, so it reads at most one index interval of records.
+ *
+ * <p>While a segment is written its index lives on the heap. When it is
+ * sealed, the index is written to a {@code .index} file beside it and
+ * memory-mapped, so reopening a sealed segment reads neither the log nor the
+ * index into the heap. A sealed segment whose index file is missing or stale,
+ * as after a crash, is rescanned on first use. The segment being written is
+ * always rescanned on open, and a torn or corrupt tail is truncated.
+ *
+ * <p>Record layout: body length, CRC32 of the body, then the body: offset,
+ * published_at and the complete event frame as the protocol sends it (UTF-8
+ * JSON), so replay can send it without decoding.
+ */
+public class LogSegment {
+    
+    private static final Logger log = LoggerFactory.getLogger(LogSegment.class);
+    
+    public static final String SUFFIX = ".log";
+    public static final String INDEX_SUFFIX = ".index";
+    
+    private static final int RECORD_HEADER_BYTES = 2 * Integer.BYTES;
+    private static final int BODY_HEADER_BYTES = 2 * Long.BYTES;
+    private static final int WRITE_BUFFER_BYTES = 64 * 1024;
+    private static final int READ_BUFFER_BYTES = 64 * 1024;
+    
+    private static final int INDEX_MAGIC = 0x50534958;
+    private static final int INDEX_VERSION = 1;
+    // Magic, version, log bytes, count, first published_at, max published_at, last offset, entries, entries CRC
+    private static final int INDEX_HEADER_BYTES = 2 * Integer.BYTES + Long.BYTES + Integer.BYTES + 3 * Long.BYTES + Integer.BYTES + Long.BYTES;
+    // Ordinal, offset, max published_at, position
+    private static final int INDEX_ENTRY_BYTES = Integer.BYTES + 3 * Long.BYTES;
+    
+    /**
+     * Location of a record: its ordinal within the segment and its file position.
+     */
+    public static class Position {
+        
+        public static final Position START = new Position(0, 0);
+        
+        private final int ordinal;
+        private final long filePosition;
+        
+        private Position(int ordinal, long filePosition) {
+            this.ordinal = ordinal;
+            this.filePosition = filePosition;
+        }
+        
+        public int getOrdinal() {
+            return ordinal;
+        }
+    }
+    
+    private final Path path;
+    private final Path indexPath;
+    private final FileChannel channel;
+    private final int indexIntervalBytes;
+    // Allocated while the segment is written to, released once it is sealed
+    private ByteBuffer writeBuffer;
+    private long flushedBytes;
+    private boolean sealed;
+    // False until a sealed segment without a valid index file is first used
+    private boolean indexed;
+    private int count;
+    private long firstPublishedAt;
+    private long maxPublishedAt;
+    private long lastOffset;
+    
+    private int[] indexOrdinals;
+    private long[] indexOffsets;
+    private long[] indexTimes;
+    private long[] indexPositions;
+    private int indexSize;
+    // Index of a sealed segment; replaces the arrays above
+    private MappedByteBuffer mappedIndex;
+    
+    private LogSegment(Path path, FileChannel channel, int indexIntervalBytes) {
+        this.path = path;
+        this.indexPath = path.resolveSibling(path.getFileName().toString().replace(SUFFIX, INDEX_SUFFIX));
+        this.channel = channel;
+        this.indexIntervalBytes = indexIntervalBytes;
+    }
+    
+    /**
+     * Creates an empty segment named after the offset of its first message.
+     */
+    public static LogSegment create(Path directory, long baseOffset, int indexIntervalBytes) throws IOException {
+        Path path = directory.resolve(String.format("%020d%s", baseOffset, SUFFIX));
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        LogSegment segment = new LogSegment(path, channel, indexIntervalBytes);
+        Files.deleteIfExists(segment.indexPath);
+        segment.resetIndex();
+        segment.indexed = true;
+        return segment;
+    }
+    
+    /**
+     * Opens an existing segment. A sealed segment uses its index file when it is valid;
+     * the segment being written is rescanned and its invalid tail truncated.
+     */
+    public static LogSegment open(Path path, int indexIntervalBytes, boolean sealed) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        LogSegment segment = new LogSegment(path, channel, indexIntervalBytes);
+        segment.flushedBytes = channel.size();
+        segment.sealed = sealed;
+        
+        if (!sealed) {
+            Files.deleteIfExists(segment.indexPath);
+            segment.rebuildIndex();
+        } else if (segment.loadIndex()) {
+            segment.indexed = true;
+        } else {
+            log.info("Index of segment {} is missing or stale, rebuilding it on first use", path);
+        }
+        return segment;
+    }
+    
+    public Path getPath() {
+        return path;
+    }
+    
+    public int getCount() {
+        ensureIndexed();
+        return count;
+    }
+    
+    public long getFirstPublishedAt() {
+        ensureIndexed();
+        return firstPublishedAt;
+    }
+    
+    /**
+     * Latest published_at in the segment; timestamps are not strictly ordered across records.
+     */
+    public long getMaxPublishedAt() {
+        ensureIndexed();
+        return maxPublishedAt;
+    }
+    
+    public long getLastOffset() {
+        ensureIndexed();
+        return lastOffset;
+    }
+    
+    /**
+     * Bytes written to the segment, including those still in the write buffer.
+     */
+    public long size() {
+        return flushedBytes + (writeBuffer != null ? writeBuffer.position() : 0);
+    }
+    
+    /**
+     * Appends a message as its encoded event frame.
+     */
+    public void append(long offset, long publishedAt, byte[] frame) throws IOException {
+        int bodyLength = BODY_HEADER_BYTES + frame.length;
+        int recordLength = RECORD_HEADER_BYTES + bodyLength;
+        
+        if (writeBuffer == null) {
+            writeBuffer = ByteBuffer.allocate(WRITE_BUFFER_BYTES);
+        }
+        ByteBuffer record = writeBuffer;
+        if (record.remaining() < recordLength) {
+            flush();
+            if (record.capacity() < recordLength) {
+                // Too large to buffer, written on its own
+                record = ByteBuffer.allocate(recordLength);
+            }
+        }
+        
+        long position = size();
+        int start = record.position();
+        record.putInt(bodyLength);
+        record.putInt(0);
+        record.putLong(offset);
+        record.putLong(publishedAt);
+        record.put(frame);
+        
+        CRC32 crc = new CRC32();
+        ByteBuffer body = record.duplicate();
+        body.position(start + RECORD_HEADER_BYTES).limit(start + recordLength);
+        crc.update(body);
+        record.putInt(start + Integer.BYTES, (int) crc.getValue());
+        
+        if (record != writeBuffer) {
+            record.flip();
+            write(record);
+        }
+        track(position, offset, publishedAt);
+    }
+    
+    /**
+     * Locates the record with the given ordinal.
+     *
+     * @return Its position, or null if the segment holds fewer records
+     */
+    public Position seekOrdinal(int ordinal) throws IOException {
+        ensureIndexed();
+        if (ordinal >= count) {
+            return null;
+        }
+        return seek(floorEntry(ordinal, this::entryOrdinal), (recordOrdinal, offset, publishedAt) -> recordOrdinal == ordinal);
+    }
+    
+    /**
+     * Locates the first record with an offset at or after the given one.
+     *
+     * @return Its position, or null if every record is older
+     */
+    public Position seekOffset(long offset) throws IOException {
+        ensureIndexed();
+        if (count == 0 || lastOffset < offset) {
+            return null;
+        }
+        return seek(floorEntry(offset, this::entryOffset), (ordinal, recordOffset, publishedAt) -> recordOffset >= offset);
+    }
+    
+    /**
+     * Locates the first record published at or after the given time (epoch millis).
+     *
+     * @return Its position, or null if every record is older
+     */
+    public Position seekTime(long timestamp) throws IOException {
+        ensureIndexed();
+        if (count == 0 || maxPublishedAt < timestamp) {
+            return null;
+        }
+        // Start from the last entry whose running maximum is still before the time
+        return seek(floorEntry(timestamp - 1, this::entryTime), (ordinal, offset, publishedAt) -> publishedAt >= timestamp);
+    }
+    
+    /**
+     * Reads up to {@code limit} messages starting at a position.
+     */
+    public void read(Position from, int limit, ObjectMapper objectMapper, List<MessageEnvelope> out) throws IOException {
+        ensureIndexed();
+        if (from.ordinal >= count || limit <= 0) {
+            return;
+        }
+        flush();
+        
+        int[] remaining = {limit};
+        scan(from.filePosition, flushedBytes, (position, checksum, body) -> {
+            out.add(decode(body, objectMapper));
+            return --remaining[0] > 0;
+        });
+    }
+    
+    /**
+     * Maps the records from a position to the current end of the segment, so they can be
+     * read without holding the history's lock. The mapping stays valid if the segment is
+     * later deleted by retention.
+     */
+    public ByteBuffer map(Position from) throws IOException {
+        ensureIndexed();
+        flush();
+        return channel.map(FileChannel.MapMode.READ_ONLY, from.filePosition, flushedBytes - from.filePosition);
+    }
+    
+    /**
+     * Passes up to {@code limit} records of a mapped region to a sink as event frames, which are
+     * slices of the mapping.
+     *
+     * @return Records passed
+     */
+    public static int replay(ByteBuffer region, int limit, FrameReplay.FrameSink sink) throws IOException {
+        ByteBuffer records = region.duplicate();
+        int passed = 0;
+        while (passed < limit && records.remaining() >= RECORD_HEADER_BYTES) {
+            int start = records.position();
+            int bodyLength = records.getInt(start);
+            int bodyStart = start + RECORD_HEADER_BYTES;
+            
+            ByteBuffer body = records.duplicate();
+            body.position(bodyStart).limit(bodyStart + bodyLength);
+            long offset = body.getLong(bodyStart);
+            body.position(bodyStart + BODY_HEADER_BYTES);
+            sink.accept(offset, body.slice());
+            records.position(bodyStart + bodyLength);
+            passed++;
+        }
+        return passed;
+    }
+    
+    /**
+     * Writes buffered records to the file.
+     */
+    public void flush() throws IOException {
+        if (writeBuffer != null && writeBuffer.position() > 0) {
+            writeBuffer.flip();
+            write(writeBuffer);
+            writeBuffer.clear();
+        }
+    }
+    
+    /**
+     * Flushes and syncs the segment, and moves its index to a mapped index file.
+     * The segment is no longer appended to.
+     */
+    public void seal() throws IOException {
+        flush();
+        channel.force(false);
+        writeBuffer = null;
+        sealed = true;
+        writeIndex();
+    }
+    
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+    
+    public void delete() throws IOException {
+        channel.close();
+        mappedIndex = null;
+        Files.deleteIfExists(path);
+        Files.deleteIfExists(indexPath);
+    }
+    
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            flushedBytes += channel.write(buffer, flushedBytes);
+        }
+    }
+    
+    private void track(long position, long offset, long publishedAt) {
+        if (count == 0) {
+            firstPublishedAt = publishedAt;
+            maxPublishedAt = publishedAt;
+        }
+        maxPublishedAt = Math.max(maxPublishedAt, publishedAt);
+        lastOffset = offset;
+        
+        if (indexSize == 0 || position - indexPositions[indexSize - 1] >= indexIntervalBytes) {
+            if (indexSize == indexOrdinals.length) {
+                int capacity = indexSize * 2;
+                indexOrdinals = Arrays.copyOf(indexOrdinals, capacity);
+                indexOffsets = Arrays.copyOf(indexOffsets, capacity);
+                indexTimes = Arrays.copyOf(indexTimes, capacity);
+                indexPositions = Arrays.copyOf(indexPositions, capacity);
+            }
+            indexOrdinals[indexSize] = count;
+            indexOffsets[indexSize] = offset;
+            indexTimes[indexSize] = maxPublishedAt;
+            indexPositions[indexSize] = position;
+            indexSize++;
+        }
+        count++;
+    }
+    
+    private void resetIndex() {
+        indexOrdinals = new int[16];
+        indexOffsets = new long[16];
+        indexTimes = new long[16];
+        indexPositions = new long[16];
+        indexSize = 0;
+        count = 0;
+        mappedIndex = null;
+    }
+    
+    private void ensureIndexed() {
+        if (indexed) {
+            return;
+        }
+        try {
+            rebuildIndex();
+            writeIndex();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to rebuild index of segment " + path, e);
+        }
+    }
+    
+    /**
+     * Scans the log, rebuilding the heap index and truncating an invalid tail.
+     */
+    private void rebuildIndex() throws IOException {
+        resetIndex();
+        long fileSize = channel.size();
+        CRC32 crc = new CRC32();
+        long validBytes = scan(0, fileSize, (position, checksum, body) -> {
+            crc.reset();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                return false;
+            }
+            track(position, body.getLong(body.position()), body.getLong(body.position() + Long.BYTES));
+            return true;
+        });
+        
+        if (validBytes < fileSize) {
+            log.warn("Truncating segment {} from {} to {} bytes after an incomplete write", path, fileSize, validBytes);
+            channel.truncate(validBytes);
+        }
+        flushedBytes = validBytes;
+        indexed = true;
+    }
+    
+    private void writeIndex() throws IOException {
+        ByteBuffer entries = ByteBuffer.allocate(indexSize * INDEX_ENTRY_BYTES);
+        for (int i = 0; i < indexSize; i++) {
+            entries.putInt(indexOrdinals[i]);
+            entries.putLong(indexOffsets[i]);
+            entries.putLong(indexTimes[i]);
+            entries.putLong(indexPositions[i]);
+        }
+        entries.flip();
+        CRC32 crc = new CRC32();
+        crc.update(entries.duplicate());
+        
+        ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER_BYTES);
+        header.putInt(INDEX_MAGIC);
+        header.putInt(INDEX_VERSION);
+        header.putLong(flushedBytes);
+        header.putInt(count);
+        header.putLong(firstPublishedAt);
+        header.putLong(maxPublishedAt);
+        header.putLong(lastOffset);
+        header.putInt(indexSize);
+        header.putLong(crc.getValue());
+        header.flip();
+        
+        Path temp = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (header.hasRemaining() || entries.hasRemaining()) {
+                out.write(new ByteBuffer[] {header, entries});
+            }
+            out.force(false);
+        }
+        Files.move(temp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        
+        if (!loadIndex()) {
+            throw new IOException("Index file " + indexPath + " failed validation after writing");
+        }
+    }
+    
+    /**
+     * Maps the index file if it is intact and matches the log.
+     */
+    private boolean loadIndex() {
+        if (!Files.exists(indexPath)) {
+            return false;
+        }
+        try (FileChannel in = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+            long size = in.size();
+            if (size < INDEX_HEADER_BYTES) {
+                return false;
+            }
+            MappedByteBuffer mapped = in.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int entries = mapped.getInt(INDEX_HEADER_BYTES - Integer.BYTES - Long.BYTES);
+            if (mapped.getInt(0) != INDEX_MAGIC
+                    || mapped.getInt(Integer.BYTES) != INDEX_VERSION
+                    || mapped.getLong(2 * Integer.BYTES) != flushedBytes
+                    || size != INDEX_HEADER_BYTES + (long) entries * INDEX_ENTRY_BYTES) {
+                return false;
+            }
+            ByteBuffer body = mapped.duplicate();
+            body.position(INDEX_HEADER_BYTES);
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            if (crc.getValue() != mapped.getLong(INDEX_HEADER_BYTES - Long.BYTES)) {
+                return false;
+            }
+            
+            ByteBuffer header = mapped.duplicate();
+            header.position(2 * Integer.BYTES + Long.BYTES);
+            count = header.getInt();
+            firstPublishedAt = header.getLong();
+            maxPublishedAt = header.getLong();
+            lastOffset = header.getLong();
+            indexSize = entries;
+            mappedIndex = mapped;
+            indexOrdinals = null;
+            indexOffsets = null;
+            indexTimes = null;
+            indexPositions = null;
+            return true;
+        } catch (IOException e) {
+            log.warn("Failed to read index {}: {}", indexPath, e.getMessage());
+            return false;
+        }
+    }
+    
+    private int entryOrdinal(int entry) {
+        return mappedIndex != null ? mappedIndex.getInt(entryStart(entry)) : indexOrdinals[entry];
+    }
+    
+    private long entryOffset(int entry) {
+        return mappedIndex != null ? mappedIndex.getLong(entryStart(entry) + Integer.BYTES) : indexOffsets[entry];
+    }
+    
+    private long entryTime(int entry) {
+        return mappedIndex != null ? mappedIndex.getLong(entryStart(entry) + Integer.BYTES + Long.BYTES) : indexTimes[entry];
+    }
+    
+    private long entryPosition(int entry) {
+        return mappedIndex != null ? mappedIndex.getLong(entryStart(entry) + Integer.BYTES + 2 * Long.BYTES) : indexPositions[entry];
+    }
+    
+    private static int entryStart(int entry) {
+        return INDEX_HEADER_BYTES + entry * INDEX_ENTRY_BYTES;
+    }
+    
+    /**
+     * Last index entry whose key is at most the target, or the first entry if there is none.
+     * Keys must be non-decreasing across entries.
+     */
+    private int floorEntry(long target, IntToLongFunction key) {
+        int low = 0;
+        int high = indexSize - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (key.applyAsLong(mid) <= target) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+    
+    /**
+     * Scans forward from an index entry to the first record accepted by the predicate.
+     */
+    private Position seek(int entry, RecordPredicate predicate) throws IOException {
+        flush();
+        int[] ordinal = {entryOrdinal(entry)};
+        Position[] found = new Position[1];
+        scan(entryPosition(entry), flushedBytes, (position, checksum, body) -> {
+            if (predicate.test(ordinal[0], body.getLong(body.position()), body.getLong(body.position() + Long.BYTES))) {
+                found[0] = new Position(ordinal[0], position);
+                return false;
+            }
+            ordinal[0]++;
+            return true;
+        });
+        return found[0];
+    }
+    
+    /**
+     * Visits the records in [from, end) in order.
+     *
+     * @return Position after the last record visited, or of the first record that is incomplete or rejected
+     */
+    private long scan(long from, long end, RecordVisitor visitor) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+        long position = from;
+        while (end - position >= RECORD_HEADER_BYTES) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+            
+            int bodyLength = buffer.getInt(0);
+            if (bodyLength < BODY_HEADER_BYTES || bodyLength > end - position - RECORD_HEADER_BYTES) {
+                return position;
+            }
+            if (RECORD_HEADER_BYTES + bodyLength > buffer.capacity()) {
+                buffer = ByteBuffer.allocate(RECORD_HEADER_BYTES + bodyLength);
+                continue;
+            }
+            
+            while (buffer.remaining() >= RECORD_HEADER_BYTES) {
+                int start = buffer.position();
+                int length = buffer.getInt(start);
+                if (length < BODY_HEADER_BYTES || length > end - position - RECORD_HEADER_BYTES) {
+                    return position;
+                }
+                if (buffer.remaining() < RECORD_HEADER_BYTES + length) {
+                    // Continues in the next read
+                    break;
+                }
+                
+                ByteBuffer body = buffer.duplicate();
+                body.position(start + RECORD_HEADER_BYTES).limit(start + RECORD_HEADER_BYTES + length);
+                if (!visitor.visit(position, buffer.getInt(start + Integer.BYTES), body)) {
+                    return position;
+                }
+                position += RECORD_HEADER_BYTES + length;
+                buffer.position(start + RECORD_HEADER_BYTES + length);
+            }
+        }
+        return position;
+    }
+    
+    private static MessageEnvelope decode(ByteBuffer body, ObjectMapper objectMapper) throws IOException {
+        long offset = body.getLong();
+        long publishedAt = body.getLong();
+        JsonNode message = objectMapper.readTree(body.array(), body.arrayOffset() + body.position(), body.remaining()).get("message");
+        String id = message.get("id").isNull() ? null : message.get("id").asText();
+        return new MessageEnvelope(id, objectMapper.treeToValue(message.get("payload"), Object.class), publishedAt, offset);
+    }
+    
+    @FunctionalInterface
+    private interface RecordVisitor {
+        
+        /**
+         * @return False to stop the scan at this record
+         */
+        boolean visit(long position, int checksum, ByteBuffer body) throws IOException;
+    }
+    
+    @FunctionalInterface
+    private interface RecordPredicate {
+        
+        boolean test(int ordinal, long offset, long publishedAt);
+    }
+}
@@ -0,0 +1,265 @@
+package com.plivo.core.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.plivo.models.MessageEnvelope;
+import com.plivo.models.MessageHistory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Message history with a small hot tier on the heap and the rest off-heap.
+ * The newest messages are kept as objects, since {@code last_n} reads mostly
+ * touch them. Older messages are encoded into direct slabs from a shared
+ * {@link SlabPool}; the heap only holds an index of slab locations, so heap
+ * use no longer grows with the retained payloads. Slabs are written in
+ * order and returned to the pool once every message in them is evicted.
+ *
+ * <p>Entry layout: offset, published_at, max published_at, id length,
+ * payload length, id (UTF-8), payload (JSON). The max published_at is the
+ * running maximum over the entries written so far, which never goes back,
+ * so time lookups can binary-search it even if the clock did.
+ */
+public class OffHeapMessageHistory implements MessageHistory {
+    
+    private static final int HEADER_BYTES = 3 * Long.BYTES + 2 * Integer.BYTES;
+    private static final int MAX_PUBLISHED_AT_FIELD = 2 * Long.BYTES;
+    private static final int INITIAL_INDEX_CAPACITY = 64;
+    
+    private final int maxMessages;
+    private final int hotMessages;
+    private final SlabPool slabPool;
+    private final ObjectMapper objectMapper;
+    private final ArrayDeque<MessageEnvelope> hot;
+    
+    // Ring of cold entry locations, each (slab id << 32 | position)
+    private long[] locations;
+    private int head;
+    private int coldCount;
+    
+    // Slabs in write order; the last one is being written
+    private final List<Slab> slabs;
+    private long firstSlabId;
+    
+    // Latest publish time spilled so far
+    private long maxPublishedAt = Long.MIN_VALUE;
+    
+    public OffHeapMessageHistory(int maxMessages, int hotMessages, SlabPool slabPool, ObjectMapper objectMapper) {
+        this.maxMessages = maxMessages;
+        this.hotMessages = Math.min(hotMessages, maxMessages);
+        this.slabPool = slabPool;
+        this.objectMapper = objectMapper;
+        this.hot = new ArrayDeque<>(this.hotMessages + 1);
+        this.locations = new long[Math.min(INITIAL_INDEX_CAPACITY, Math.max(coldCapacity(), 1))];
+        this.slabs = new ArrayList<>();
+    }
+    
+    @Override
+    public void append(MessageEnvelope message) {
+        hot.addLast(message);
+        if (hot.size() > hotMessages) {
+            spill(hot.pollFirst());
+        }
+    }
+    
+    @Override
+    public List<MessageEnvelope> lastN(int n) {
+        int count = Math.max(0, Math.min(n, size()));
+        int fromHot = Math.min(count, hot.size());
+        int fromCold = count - fromHot;
+        
+        MessageEnvelope[] result = new MessageEnvelope[count];
+        for (int i = 0; i < fromCold; i++) {
+            result[i] = read(locations[index(coldCount - fromCold + i)]);
+        }
+        Iterator<MessageEnvelope> newestFirst = hot.descendingIterator();
+        for (int i = count - 1; i >= fromCold; i--) {
+            result[i] = newestFirst.next();
+        }
+        return new ArrayList<>(Arrays.asList(result));
+    }
+    
+    @Override
+    public List<MessageEnvelope> fromOffset(long offset, int limit) {
+        return from(firstCold(offset, 0), message -> message.getOffset() >= offset, limit);
+    }
+    
+    @Override
+    public List<MessageEnvelope> fromTime(long timestamp, int limit) {
+        return from(firstCold(timestamp, MAX_PUBLISHED_AT_FIELD), message -> message.getPublishedAt() >= timestamp, limit);
+    }
+    
+    @Override
+    public int size() {
+        return coldCount + hot.size();
+    }
+    
+    @Override
+    public void clear() {
+        hot.clear();
+        slabs.forEach(slab -> slabPool.release(slab.buffer));
+        slabs.clear();
+        firstSlabId = 0;
+        maxPublishedAt = Long.MIN_VALUE;
+        head = 0;
+        coldCount = 0;
+    }
+    
+    private int coldCapacity() {
+        return maxMessages - hotMessages;
+    }
+    
+    private int index(int i) {
+        return (head + i) % locations.length;
+    }
+    
+    private void spill(MessageEnvelope message) {
+        if (coldCapacity() == 0) {
+            return;
+        }
+        if (coldCount == coldCapacity()) {
+            evictOldest();
+        } else if (coldCount == locations.length) {
+            growIndex();
+        }
+        
+        byte[] id = message.getId() != null ? message.getId().getBytes(StandardCharsets.UTF_8) : null;
+        byte[] payload;
+        try {
+            payload = objectMapper.writeValueAsBytes(message.getPayload());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to encode payload of message " + message.getId(), e);
+        }
+        int length = HEADER_BYTES + (id != null ? id.length : 0) + payload.length;
+        
+        Slab slab = slabs.isEmpty() ? null : slabs.get(slabs.size() - 1);
+        if (slab == null || slab.buffer.remaining() < length) {
+            slab = new Slab(slabPool.acquire(length));
+            slabs.add(slab);
+        }
+        
+        ByteBuffer buffer = slab.buffer;
+        int position = buffer.position();
+        buffer.putLong(message.getOffset());
+        buffer.putLong(message.getPublishedAt());
+        maxPublishedAt = Math.max(maxPublishedAt, message.getPublishedAt());
+        buffer.putLong(maxPublishedAt);
+        buffer.putInt(id != null ? id.length : -1);
+        buffer.putInt(payload.length);
+        if (id != null) {
+            buffer.put(id);
+        }
+        buffer.put(payload);
+        slab.live++;
+        
+        long slabId = firstSlabId + slabs.size() - 1;
+        locations[index(coldCount)] = slabId << 32 | position;
+        coldCount++;
+    }
+    
+    private void evictOldest() {
+        long location = locations[head];
+        slabs.get((int) ((location >>> 32) - firstSlabId)).live--;
+        head = (head + 1) % locations.length;
+        coldCount--;
+        
+        // Slabs empty out in write order; keep the one being written
+        while (slabs.size() > 1 && slabs.get(0).live == 0) {
+            slabPool.release(slabs.remove(0).buffer);
+            firstSlabId++;
+        }
+    }
+    
+    private void growIndex() {
+        long[] grown = new long[Math.min(locations.length * 2, coldCapacity())];
+        for (int i = 0; i < coldCount; i++) {
+            grown[i] = locations[index(i)];
+        }
+        locations = grown;
+        head = 0;
+    }
+    
+    /**
+     * Binary-searches the cold entries for the first one whose long at {@code field} is at or after the target,
+     * reading only that long from the slab.
+     *
+     * @return Its index, or {@code coldCount} if every cold entry is older
+     */
+    private int firstCold(long target, int field) {
+        int low = 0;
+        int high = coldCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            long location = locations[index(mid)];
+            long value = slabs.get((int) ((location >>> 32) - firstSlabId)).buffer.getLong((int) location + field);
+            if (value < target) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    private List<MessageEnvelope> from(int firstCold, Predicate<MessageEnvelope> start, int limit) {
+        List<MessageEnvelope> result = new ArrayList<>();
+        for (int i = firstCold; i < coldCount && result.size() < limit; i++) {
+            result.add(read(locations[index(i)]));
+        }
+        // The hot tier is small; walk it for the rest
+        for (MessageEnvelope message : hot) {
+            if (result.size() >= limit) {
+                break;
+            }
+            if (!result.isEmpty() || start.test(message)) {
+                result.add(message);
+            }
+        }
+        return result;
+    }
+    
+    private MessageEnvelope read(long location) {
+        Slab slab = slabs.get((int) ((location >>> 32) - firstSlabId));
+        ByteBuffer entry = slab.buffer.duplicate();
+        entry.position((int) location);
+        
+        long offset = entry.getLong();
+        long publishedAt = entry.getLong();
+        // Skip the running max, which only lookups read
+        entry.getLong();
+        int idLength = entry.getInt();
+        byte[] payload = new byte[entry.getInt()];
+        String id = null;
+        if (idLength >= 0) {
+            byte[] idBytes = new byte[idLength];
+            entry.get(idBytes);
+            id = new String(idBytes, StandardCharsets.UTF_8);
+        }
+        entry.get(payload);
+        
+        try {
+            return new MessageEnvelope(id, objectMapper.readValue(payload, Object.class), publishedAt, offset);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to decode payload of message " + id, e);
+        }
+    }
+    
+    private static class Slab {
+        
+        private final ByteBuffer buffer;
+        // Messages in this slab that are still retained
+        private int live;
+        
+        private Slab(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+}
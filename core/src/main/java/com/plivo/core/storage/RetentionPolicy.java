@@ -0,0 +1,63 @@
+package com.plivo.core.storage;
+
+import com.plivo.models.TopicPattern;
+import java.util.List;
+
+/**
+ * Per-topic retention limits for tiered history. The first rule whose pattern
+ * matches a topic applies; other topics get the default rule. A limit of 0
+ * means unlimited.
+ */
+public class RetentionPolicy {
+    
+    private final List<Rule> rules;
+    private final Rule defaultRule;
+    
+    public RetentionPolicy(List<Rule> rules, Rule defaultRule) {
+        this.rules = List.copyOf(rules);
+        this.defaultRule = defaultRule;
+    }
+    
+    public Rule ruleFor(String topic) {
+        for (Rule rule : rules) {
+            if (rule.pattern.matches(topic)) {
+                return rule;
+            }
+        }
+        return defaultRule;
+    }
+    
+    /**
+     * Retention limits for topics matching a {@link TopicPattern}.
+     */
+    public static class Rule {
+        
+        private final TopicPattern pattern;
+        private final long maxMessages;
+        private final long maxBytes;
+        private final long maxAgeMillis;
+        
+        public Rule(String pattern, long maxMessages, long maxBytes, long maxAgeMillis) {
+            this.pattern = new TopicPattern(pattern);
+            this.maxMessages = maxMessages;
+            this.maxBytes = maxBytes;
+            this.maxAgeMillis = maxAgeMillis;
+        }
+        
+        public String getPattern() {
+            return pattern.getPattern();
+        }
+        
+        public long getMaxMessages() {
+            return maxMessages;
+        }
+        
+        public long getMaxBytes() {
+            return maxBytes;
+        }
+        
+        public long getMaxAgeMillis() {
+            return maxAgeMillis;
+        }
+    }
+}
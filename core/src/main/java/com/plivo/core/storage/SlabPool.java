@@ -0,0 +1,68 @@
+package com.plivo.core.storage;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared pool of fixed-size direct buffers for off-heap message storage.
+ * Released slabs are kept for reuse up to a limit, since direct buffers are
+ * slow to allocate and are only freed by the garbage collector.
+ */
+public class SlabPool {
+    
+    private final int slabBytes;
+    private final int maxPooledSlabs;
+    private final ConcurrentLinkedQueue<ByteBuffer> free;
+    private final AtomicInteger pooled;
+    // Direct memory held by slabs in use or in the pool
+    private final AtomicLong allocatedBytes;
+    
+    public SlabPool(int slabBytes, int maxPooledSlabs) {
+        this.slabBytes = slabBytes;
+        this.maxPooledSlabs = maxPooledSlabs;
+        this.free = new ConcurrentLinkedQueue<>();
+        this.pooled = new AtomicInteger();
+        this.allocatedBytes = new AtomicLong();
+    }
+    
+    public int getSlabBytes() {
+        return slabBytes;
+    }
+    
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+    
+    /**
+     * Returns an empty slab that can hold at least {@code minBytes}.
+     * Requests larger than the slab size get a dedicated buffer that is not pooled.
+     */
+    public ByteBuffer acquire(int minBytes) {
+        if (minBytes <= slabBytes) {
+            ByteBuffer slab = free.poll();
+            if (slab != null) {
+                pooled.decrementAndGet();
+                slab.clear();
+                return slab;
+            }
+        }
+        
+        int capacity = Math.max(minBytes, slabBytes);
+        allocatedBytes.addAndGet(capacity);
+        return ByteBuffer.allocateDirect(capacity);
+    }
+    
+    public void release(ByteBuffer slab) {
+        if (slab.capacity() == slabBytes && pooled.incrementAndGet() <= maxPooledSlabs) {
+            free.offer(slab);
+            return;
+        }
+        if (slab.capacity() == slabBytes) {
+            pooled.decrementAndGet();
+        }
+        // Left to the garbage collector
+        allocatedBytes.addAndGet(-slab.capacity());
+    }
+}
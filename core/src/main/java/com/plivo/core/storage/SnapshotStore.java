@@ -0,0 +1,304 @@
+package com.plivo.core.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.plivo.core.repository.TopicRepository;
+import com.plivo.models.MessageEnvelope;
+import com.plivo.models.Topic;
+import com.plivo.models.TopicConfig;
+import io.dropwizard.lifecycle.Managed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Periodic binary snapshots of the topic repository, for warm restarts.
+ * A snapshot holds each topic's configuration, counters and history. It is
+ * written on a background thread from per-topic copies, to a temporary file
+ * that replaces the previous snapshot atomically. At startup the snapshot is
+ * memory-mapped, checked against its trailing CRC and loaded before the
+ * server accepts connections. Subscriptions are not saved; clients
+ * resubscribe when they reconnect.
+ *
+ * <p>Layout (big-endian): magic, version, write time, topic count, topics,
+ * CRC32 of everything before it. Each topic holds its name, creation time,
+ * queue settings, counters, config and history.
+ */
+public class SnapshotStore implements Managed {
+    
+    private static final Logger log = LoggerFactory.getLogger(SnapshotStore.class);
+    
+    private static final int MAGIC = 0x50534E50;
+    private static final int VERSION = 1;
+    private static final int UNSET = -1;
+    private static final long NO_TIMESTAMP = -1;
+    
+    private final TopicRepository topicRepository;
+    private final ObjectMapper objectMapper;
+    private final Path path;
+    private final long intervalMillis;
+    // Fingerprint of the repository at the last snapshot, to skip writes when nothing changed
+    private long lastFingerprint;
+    private ScheduledExecutorService scheduler;
+    
+    public SnapshotStore(TopicRepository topicRepository, ObjectMapper objectMapper, Path path, long intervalMillis) {
+        this.topicRepository = topicRepository;
+        this.objectMapper = objectMapper;
+        this.path = path;
+        this.intervalMillis = intervalMillis;
+    }
+    
+    @Override
+    public void start() {
+        restore();
+        
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "topic-snapshotter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::snapshotQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        log.info("Snapshot store started, writing {} every {} ms", path, intervalMillis);
+    }
+    
+    @Override
+    public void stop() throws Exception {
+        scheduler.shutdown();
+        scheduler.awaitTermination(intervalMillis, TimeUnit.MILLISECONDS);
+        // Final snapshot so a clean shutdown loses nothing
+        snapshot();
+        log.info("Snapshot store stopped");
+    }
+    
+    /**
+     * Writes a snapshot if the repository changed since the last one.
+     *
+     * @return True if a snapshot was written
+     */
+    public synchronized boolean snapshot() throws IOException {
+        long fingerprint = fingerprint();
+        if (fingerprint == lastFingerprint && Files.exists(path)) {
+            return false;
+        }
+        
+        long started = System.nanoTime();
+        List<Topic> topics = new ArrayList<>(topicRepository.getAllTopics());
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        
+        int messages = 0;
+        CRC32 crc = new CRC32();
+        try (FileOutputStream file = new FileOutputStream(temp.toFile())) {
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(file, 64 * 1024), crc));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(topics.size());
+            for (Topic topic : topics) {
+                messages += writeTopic(out, topic);
+            }
+            out.flush();
+            // The checksum itself is not covered by the checksum
+            new DataOutputStream(file).writeLong(crc.getValue());
+            file.getChannel().force(true);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        
+        lastFingerprint = fingerprint;
+        log.debug("Wrote snapshot of {} topics and {} messages in {} ms",
+                topics.size(), messages, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        return true;
+    }
+    
+    /**
+     * Loads the snapshot into the repository, if there is one.
+     * A corrupt or unreadable snapshot is logged and skipped, so the broker still starts empty.
+     *
+     * @return Number of topics restored
+     */
+    public int restore() {
+        if (!Files.exists(path)) {
+            log.info("No snapshot at {}, starting empty", path);
+            return 0;
+        }
+        
+        long started = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            List<Topic> topics = readSnapshot(buffer);
+            
+            int restored = 0;
+            for (Topic topic : topics) {
+                if (topicRepository.restoreTopic(topic)) {
+                    restored++;
+                }
+            }
+            lastFingerprint = fingerprint();
+            log.info("Restored {} topics from {} in {} ms",
+                    restored, path, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+            return restored;
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to restore snapshot {}, starting empty: {}", path, e.getMessage(), e);
+            return 0;
+        }
+    }
+    
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (Exception e) {
+            log.error("Failed to write snapshot {}: {}", path, e.getMessage(), e);
+        }
+    }
+    
+    private int writeTopic(DataOutputStream out, Topic topic) throws IOException {
+        // Copy the history first; counters read afterwards are never behind it.
+        // Histories kept on disk are recovered from their own files, and an unopened history holds nothing to save.
+        List<MessageEnvelope> history = !topic.isHistoryOpen() || topic.isHistoryPersistent()
+                ? List.of()
+                : topic.getLastNMessages(Integer.MAX_VALUE);
+        
+        writeString(out, topic.getName());
+        out.writeLong(topic.getCreatedAt() != null ? topic.getCreatedAt().toEpochMilli() : NO_TIMESTAMP);
+        out.writeInt(topic.getQueueCapacity());
+        out.writeInt(topic.getHighWatermark());
+        out.writeInt(topic.getLowWatermark());
+        out.writeLong(topic.getMessageCount());
+        out.writeLong(topic.getLastOffset());
+        
+        TopicConfig config = topic.getConfig();
+        out.writeInt(config.getHistorySize() != null ? config.getHistorySize() : UNSET);
+        out.writeByte(config.getOverflowPolicy().ordinal());
+        out.writeLong(config.getTtlMillis());
+        out.writeByte(config.getCompression().ordinal());
+        
+        out.writeInt(history.size());
+        for (MessageEnvelope envelope : history) {
+            writeString(out, envelope.getId());
+            out.writeLong(envelope.getPublishedAt());
+            out.writeLong(envelope.getOffset());
+            byte[] payload = objectMapper.writeValueAsBytes(envelope.getPayload());
+            out.writeInt(payload.length);
+            out.write(payload);
+        }
+        return history.size();
+    }
+    
+    private List<Topic> readSnapshot(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < Long.BYTES) {
+            throw new IOException("Snapshot is truncated");
+        }
+        
+        ByteBuffer body = buffer.duplicate();
+        body.limit(buffer.limit() - Long.BYTES);
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+        if (crc.getValue() != buffer.getLong(buffer.limit() - Long.BYTES)) {
+            throw new IOException("Snapshot checksum mismatch");
+        }
+        
+        if (body.getInt() != MAGIC) {
+            throw new IOException("Not a topic snapshot");
+        }
+        int version = body.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version: " + version);
+        }
+        long writtenAt = body.getLong();
+        int count = body.getInt();
+        
+        List<Topic> topics = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            topics.add(readTopic(body));
+        }
+        log.info("Snapshot {} written at {} holds {} topics", path, Instant.ofEpochMilli(writtenAt), count);
+        return topics;
+    }
+    
+    private Topic readTopic(ByteBuffer in) throws IOException {
+        String name = readString(in);
+        long createdAt = in.getLong();
+        int queueCapacity = in.getInt();
+        int highWatermark = in.getInt();
+        int lowWatermark = in.getInt();
+        long messageCount = in.getLong();
+        long lastOffset = in.getLong();
+        
+        Topic topic = topicRepository.newTopic(name, queueCapacity);
+        if (createdAt != NO_TIMESTAMP) {
+            topic.setCreatedAt(Instant.ofEpochMilli(createdAt));
+        }
+        int historySize = in.getInt();
+        TopicConfig.OverflowPolicy overflowPolicy = TopicConfig.OverflowPolicy.values()[in.get()];
+        long ttlMillis = in.getLong();
+        TopicConfig.Compression compression = TopicConfig.Compression.values()[in.get()];
+        topic.applyConfig(new TopicConfig(queueCapacity, historySize != UNSET ? historySize : null,
+                overflowPolicy, ttlMillis, compression));
+        topic.setWatermarks(highWatermark, lowWatermark);
+        topic.restoreCounters(messageCount, lastOffset);
+        
+        int history = in.getInt();
+        for (int i = 0; i < history; i++) {
+            String id = readString(in);
+            long publishedAt = in.getLong();
+            long offset = in.getLong();
+            byte[] payload = new byte[in.getInt()];
+            in.get(payload);
+            topic.addToHistory(new MessageEnvelope(id, objectMapper.readValue(payload, Object.class), publishedAt, offset));
+        }
+        return topic;
+    }
+    
+    private long fingerprint() {
+        long fingerprint = topicRepository.getTopicCount();
+        for (Topic topic : topicRepository.getAllTopics()) {
+            fingerprint = 31 * fingerprint + topic.getName().hashCode();
+            fingerprint = 31 * fingerprint + topic.getLastOffset();
+            fingerprint = 31 * fingerprint + topic.getMessageCount();
+            fingerprint = 31 * fingerprint + topic.getConfig().hashCode();
+        }
+        return fingerprint;
+    }
+    
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
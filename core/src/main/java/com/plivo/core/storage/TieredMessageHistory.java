@@ -0,0 +1,405 @@
+package com.plivo.core.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.plivo.core.codec.ProtocolCodec;
+import com.plivo.models.FrameReplay;
+import com.plivo.models.MessageEnvelope;
+import com.plivo.models.MessageHistory;
+import com.plivo.models.ReplayFrom;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Message history kept in on-disk segments, with the newest messages cached in memory.
+ * Every message is appended to the active segment, which is rolled once it
+ * reaches the segment size; the memory ring serves short {@code last_n} reads
+ * without touching disk. Deeper reads go to the segments. Retention drops
+ * whole segments, oldest first, once the topic's count, byte or age limit is
+ * exceeded, so a topic may hold up to one segment more than its limits.
+ *
+ * <p>Methods are synchronized, since retention and flushing also run on the
+ * storage's background thread.
+ */
+public class TieredMessageHistory implements MessageHistory {
+    
+    private static final Logger log = LoggerFactory.getLogger(TieredMessageHistory.class);
+    
+    private final String topicName;
+    private final Path directory;
+    private final TieredStorage storage;
+    private final RetentionPolicy.Rule retention;
+    private final ObjectMapper objectMapper;
+    private final ProtocolCodec codec;
+    private final ArrayDeque<MessageEnvelope> recent;
+    // Oldest first; the last one is appended to
+    private final List<LogSegment> segments;
+    
+    private TieredMessageHistory(String topicName, Path directory, TieredStorage storage, ObjectMapper objectMapper) {
+        this.topicName = topicName;
+        this.directory = directory;
+        this.storage = storage;
+        this.retention = storage.getRetentionPolicy().ruleFor(topicName);
+        this.objectMapper = objectMapper;
+        this.codec = storage.getCodec();
+        this.recent = new ArrayDeque<>(storage.getMemoryMessages() + 1);
+        this.segments = new ArrayList<>();
+    }
+    
+    /**
+     * Opens the history of a topic, recovering segments left by a previous run.
+     */
+    static TieredMessageHistory open(String topicName, Path directory, TieredStorage storage, ObjectMapper objectMapper)
+            throws IOException {
+        Files.createDirectories(directory);
+        TieredMessageHistory history = new TieredMessageHistory(topicName, directory, storage, objectMapper);
+        
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing
+                .filter(path -> path.getFileName().toString().endsWith(LogSegment.SUFFIX))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+        for (int i = 0; i < files.size(); i++) {
+            // Sealed segments are indexed lazily, so recovery only scans the active one
+            history.segments.add(LogSegment.open(files.get(i), storage.getIndexIntervalBytes(), i < files.size() - 1));
+        }
+        if (!files.isEmpty()) {
+            log.info("Recovered {} segments for topic {}", files.size(), topicName);
+        }
+        return history;
+    }
+    
+    @Override
+    public synchronized void append(MessageEnvelope message) {
+        recent.addLast(message);
+        if (recent.size() > storage.getMemoryMessages()) {
+            recent.pollFirst();
+        }
+        
+        try {
+            // Stored as the event frame subscribers receive, so replays need not encode it again.
+            // The frame also rides on the envelope until the dispatcher has fanned it out.
+            String event = codec.encodeEvent(topicName, message);
+            message.setEncodedEvent(event);
+            byte[] frame = event.getBytes(StandardCharsets.UTF_8);
+            activeSegment(message.getOffset()).append(message.getOffset(), message.getPublishedAt(), frame);
+        } catch (IOException e) {
+            // The message is still delivered; only its history on disk is lost
+            log.error("Failed to write message {} to history of topic {}: {}", message.getId(), topicName, e.getMessage(), e);
+        }
+    }
+    
+    @Override
+    public synchronized List<MessageEnvelope> lastN(int n) {
+        int count = (int) Math.max(0, Math.min(n, size()));
+        if (count <= recent.size()) {
+            return newestRecent(count);
+        }
+        
+        try {
+            return read(locate(ReplayFrom.LAST_N, count), count);
+        } catch (IOException e) {
+            log.error("Failed to read history of topic {}, serving cached messages only: {}", topicName, e.getMessage(), e);
+            return newestRecent(recent.size());
+        }
+    }
+    
+    @Override
+    public synchronized List<MessageEnvelope> fromOffset(long offset, int limit) {
+        if (inRecent(ReplayFrom.OFFSET, offset)) {
+            return fromRecent(message -> message.getOffset() >= offset, limit);
+        }
+        
+        try {
+            return read(locate(ReplayFrom.OFFSET, offset), limit);
+        } catch (IOException e) {
+            log.error("Failed to read history of topic {} from offset {}: {}", topicName, offset, e.getMessage(), e);
+            return new ArrayList<>();
+        }
+    }
+    
+    @Override
+    public synchronized List<MessageEnvelope> fromTime(long timestamp, int limit) {
+        if (inRecent(ReplayFrom.TIME, timestamp)) {
+            return fromRecent(message -> message.getPublishedAt() >= timestamp, limit);
+        }
+        
+        try {
+            return read(locate(ReplayFrom.TIME, timestamp), limit);
+        } catch (IOException e) {
+            log.error("Failed to read history of topic {} from time {}: {}", topicName, timestamp, e.getMessage(), e);
+            return new ArrayList<>();
+        }
+    }
+    
+    /**
+     * Maps the segment regions to replay and returns a replay that streams their stored frames.
+     * Reads that the memory ring can serve are left to the message reads.
+     */
+    @Override
+    public synchronized FrameReplay replayFrames(ReplayFrom from, long value, int limit) {
+        if (from == ReplayFrom.LAST_N) {
+            limit = (int) Math.max(0, Math.min(limit, Math.min(value, size())));
+            value = limit;
+        }
+        if (inRecent(from, value)) {
+            return null;
+        }
+        
+        List<ByteBuffer> regions = new ArrayList<>();
+        try {
+            Start start = locate(from, value);
+            // Only map as many segments as the replay can read; each mapping lives until it is collected
+            long covered = 0;
+            for (int i = start.segment; i < segments.size() && covered < limit; i++) {
+                LogSegment segment = segments.get(i);
+                LogSegment.Position position = i == start.segment ? start.position : LogSegment.Position.START;
+                regions.add(segment.map(position));
+                covered += segment.getCount() - position.getOrdinal();
+            }
+        } catch (IOException e) {
+            log.error("Failed to map history of topic {} for replay: {}", topicName, e.getMessage(), e);
+            return null;
+        }
+        
+        int max = limit;
+        return sink -> {
+            int sent = 0;
+            for (ByteBuffer region : regions) {
+                if (sent >= max) {
+                    break;
+                }
+                sent += LogSegment.replay(region, max - sent, sink);
+            }
+            return sent;
+        };
+    }
+    
+    @Override
+    public synchronized int size() {
+        long count = 0;
+        for (LogSegment segment : segments) {
+            count += segment.getCount();
+        }
+        return (int) Math.min(count, Integer.MAX_VALUE);
+    }
+    
+    @Override
+    public synchronized void clear() {
+        recent.clear();
+        for (LogSegment segment : segments) {
+            try {
+                segment.delete();
+            } catch (IOException e) {
+                log.warn("Failed to delete segment {}: {}", segment.getPath(), e.getMessage());
+            }
+        }
+        segments.clear();
+        try {
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            log.warn("Failed to delete history directory {}: {}", directory, e.getMessage());
+        }
+        storage.remove(topicName, this);
+    }
+    
+    @Override
+    public boolean isPersistent() {
+        return true;
+    }
+    
+    /**
+     * Writes buffered records of the active segment to disk.
+     */
+    public synchronized void flush() throws IOException {
+        if (!segments.isEmpty()) {
+            segments.get(segments.size() - 1).flush();
+        }
+    }
+    
+    /**
+     * Drops the oldest segments while the topic exceeds a retention limit.
+     * The active segment is only dropped once all of it has expired.
+     */
+    public synchronized void enforceRetention(long nowMillis) {
+        long count = size();
+        long bytes = segments.stream().mapToLong(LogSegment::size).sum();
+        
+        while (!segments.isEmpty()) {
+            LogSegment oldest = segments.get(0);
+            boolean sealed = segments.size() > 1;
+            boolean expired = retention.getMaxAgeMillis() > 0 && oldest.getCount() > 0
+                    && oldest.getMaxPublishedAt() < nowMillis - retention.getMaxAgeMillis();
+            boolean overCount = sealed && retention.getMaxMessages() > 0
+                    && count - oldest.getCount() >= retention.getMaxMessages();
+            boolean overBytes = sealed && retention.getMaxBytes() > 0 && bytes > retention.getMaxBytes();
+            if (!expired && !overCount && !overBytes) {
+                break;
+            }
+            
+            count -= oldest.getCount();
+            bytes -= oldest.size();
+            segments.remove(0);
+            try {
+                oldest.delete();
+            } catch (IOException e) {
+                log.warn("Failed to delete segment {}: {}", oldest.getPath(), e.getMessage());
+            }
+            log.debug("Dropped segment {} of topic {} by retention", oldest.getPath().getFileName(), topicName);
+        }
+        
+        if (segments.isEmpty()) {
+            recent.clear();
+        }
+    }
+    
+    synchronized void close() throws IOException {
+        for (LogSegment segment : segments) {
+            segment.close();
+        }
+    }
+    
+    private LogSegment activeSegment(long offset) throws IOException {
+        LogSegment active = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (active != null && active.size() < storage.getSegmentBytes()) {
+            return active;
+        }
+        
+        if (active != null) {
+            active.seal();
+        }
+        LogSegment rolled = LogSegment.create(directory, offset, storage.getIndexIntervalBytes());
+        segments.add(rolled);
+        // Count and size limits only change when a segment fills up
+        enforceRetention(System.currentTimeMillis());
+        return rolled;
+    }
+    
+    private List<MessageEnvelope> newestRecent(int count) {
+        MessageEnvelope[] result = new MessageEnvelope[count];
+        Iterator<MessageEnvelope> newestFirst = recent.descendingIterator();
+        for (int i = count - 1; i >= 0; i--) {
+            result[i] = newestFirst.next();
+        }
+        return new ArrayList<>(Arrays.asList(result));
+    }
+    
+    /**
+     * Finds the segment and position of the first message to read.
+     * For {@link ReplayFrom#LAST_N} the value must not exceed the number of stored messages.
+     */
+    private Start locate(ReplayFrom from, long value) throws IOException {
+        if (from == ReplayFrom.LAST_N) {
+            // Walk back from the newest segment to the one holding the first message to read
+            long needed = value;
+            for (int i = segments.size() - 1; i >= 0; i--) {
+                LogSegment segment = segments.get(i);
+                if (segment.getCount() >= needed) {
+                    return new Start(i, segment.seekOrdinal((int) (segment.getCount() - needed)));
+                }
+                needed -= segment.getCount();
+            }
+            return new Start(0, LogSegment.Position.START);
+        }
+        
+        int first = from == ReplayFrom.OFFSET
+                ? firstSegment(LogSegment::getLastOffset, value)
+                : firstSegment(LogSegment::getMaxPublishedAt, value);
+        if (first == segments.size()) {
+            return new Start(first, null);
+        }
+        LogSegment segment = segments.get(first);
+        return new Start(first, from == ReplayFrom.OFFSET ? segment.seekOffset(value) : segment.seekTime(value));
+    }
+    
+    private List<MessageEnvelope> read(Start start, int limit) throws IOException {
+        List<MessageEnvelope> result = new ArrayList<>();
+        for (int i = start.segment; i < segments.size() && result.size() < limit; i++) {
+            LogSegment.Position from = i == start.segment ? start.position : LogSegment.Position.START;
+            if (from != null) {
+                segments.get(i).read(from, limit - result.size(), objectMapper, result);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Whether the memory ring holds the start of a read, assuming offsets and times grow with each message.
+     */
+    private boolean inRecent(ReplayFrom from, long value) {
+        MessageEnvelope oldest = recent.peekFirst();
+        switch (from) {
+            case LAST_N:
+                return value <= recent.size();
+            case OFFSET:
+                return oldest != null && oldest.getOffset() <= value;
+            default:
+                // Messages published in the same millisecond may precede the ring
+                return oldest != null && oldest.getPublishedAt() < value;
+        }
+    }
+    
+    private List<MessageEnvelope> fromRecent(Predicate<MessageEnvelope> start, int limit) {
+        List<MessageEnvelope> result = new ArrayList<>();
+        for (MessageEnvelope message : recent) {
+            if (result.size() >= limit) {
+                break;
+            }
+            if (!result.isEmpty() || start.test(message)) {
+                result.add(message);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Binary-searches the segments for the first one whose key (a per-segment maximum) reaches the target.
+     * Only the segments probed are indexed.
+     *
+     * @return Its index, or the number of segments if every one is older
+     */
+    private int firstSegment(ToLongFunction<LogSegment> key, long target) {
+        int low = 0;
+        int high = segments.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            LogSegment segment = segments.get(mid);
+            if (segment.getCount() == 0 || key.applyAsLong(segment) < target) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    /**
+     * First message to read: a segment and a position in it, or a null position if the segment has none.
+     */
+    private static class Start {
+        
+        private final int segment;
+        private final LogSegment.Position position;
+        
+        private Start(int segment, LogSegment.Position position) {
+            this.segment = segment;
+            this.position = position;
+        }
+    }
+}
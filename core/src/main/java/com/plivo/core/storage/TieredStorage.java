@@ -0,0 +1,165 @@
+package com.plivo.core.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.plivo.core.codec.ProtocolCodec;
+import com.plivo.models.MessageHistory;
+import io.dropwizard.lifecycle.Managed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Disk tier of topic history: one directory of segments per topic under the data directory.
+ * Creates each topic's {@link TieredMessageHistory}, recovering what a
+ * previous run left on disk, and runs the background flush and retention
+ * sweeps for all of them.
+ */
+public class TieredStorage implements Managed {
+    
+    private static final Logger log = LoggerFactory.getLogger(TieredStorage.class);
+    
+    private final Path dataDirectory;
+    private final int memoryMessages;
+    private final int segmentBytes;
+    private final int indexIntervalBytes;
+    private final long flushIntervalMillis;
+    private final long retentionCheckIntervalMillis;
+    private final RetentionPolicy retentionPolicy;
+    private final ObjectMapper objectMapper;
+    private final ProtocolCodec codec;
+    private final ConcurrentHashMap<String, TieredMessageHistory> histories;
+    private ScheduledExecutorService scheduler;
+    
+    public TieredStorage(
+            Path dataDirectory,
+            int memoryMessages,
+            int segmentBytes,
+            int indexIntervalBytes,
+            long flushIntervalMillis,
+            long retentionCheckIntervalMillis,
+            RetentionPolicy retentionPolicy,
+            ObjectMapper objectMapper,
+            ProtocolCodec codec) {
+        this.dataDirectory = dataDirectory;
+        this.memoryMessages = memoryMessages;
+        this.segmentBytes = segmentBytes;
+        this.indexIntervalBytes = indexIntervalBytes;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.retentionCheckIntervalMillis = retentionCheckIntervalMillis;
+        this.retentionPolicy = retentionPolicy;
+        this.objectMapper = objectMapper;
+        this.codec = codec;
+        this.histories = new ConcurrentHashMap<>();
+    }
+    
+    @Override
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tiered-storage");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushAll, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::enforceRetention,
+                retentionCheckIntervalMillis, retentionCheckIntervalMillis, TimeUnit.MILLISECONDS);
+        log.info("Tiered storage started in {}, segments of {} bytes", dataDirectory, segmentBytes);
+    }
+    
+    @Override
+    public void stop() {
+        scheduler.shutdownNow();
+        for (TieredMessageHistory history : histories.values()) {
+            try {
+                history.close();
+            } catch (IOException e) {
+                log.warn("Failed to close history: {}", e.getMessage());
+            }
+        }
+        log.info("Tiered storage stopped");
+    }
+    
+    /**
+     * Opens the history of a topic.
+     *
+     * @throws UncheckedIOException If its directory cannot be created or read
+     */
+    public MessageHistory newHistory(String topicName) {
+        try {
+            TieredMessageHistory history = TieredMessageHistory.open(
+                topicName, dataDirectory.resolve(directoryName(topicName)), this, objectMapper);
+            histories.put(topicName, history);
+            return history;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open history of topic " + topicName, e);
+        }
+    }
+    
+    public int getMemoryMessages() {
+        return memoryMessages;
+    }
+    
+    public int getSegmentBytes() {
+        return segmentBytes;
+    }
+    
+    public int getIndexIntervalBytes() {
+        return indexIntervalBytes;
+    }
+    
+    public RetentionPolicy getRetentionPolicy() {
+        return retentionPolicy;
+    }
+    
+    public ProtocolCodec getCodec() {
+        return codec;
+    }
+    
+    void remove(String topicName, TieredMessageHistory history) {
+        histories.remove(topicName, history);
+    }
+    
+    private void flushAll() {
+        for (TieredMessageHistory history : histories.values()) {
+            try {
+                history.flush();
+            } catch (Exception e) {
+                log.error("Failed to flush history: {}", e.getMessage(), e);
+            }
+        }
+    }
+    
+    private void enforceRetention() {
+        long now = System.currentTimeMillis();
+        for (TieredMessageHistory history : histories.values()) {
+            try {
+                history.enforceRetention(now);
+            } catch (Exception e) {
+                log.error("Retention sweep failed: {}", e.getMessage(), e);
+            }
+        }
+    }
+    
+    /**
+     * Maps a topic name to a safe directory name, escaping everything except letters, digits, '-' and '_'.
+     */
+    static String directoryName(String topicName) {
+        StringBuilder sb = new StringBuilder(topicName.length());
+        for (byte b : topicName.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xff);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' || c == '_') {
+                sb.append(c);
+            } else {
+                sb.append('%').append(String.format("%02X", b & 0xff));
+            }
+        }
+        return sb.toString();
+    }
+}
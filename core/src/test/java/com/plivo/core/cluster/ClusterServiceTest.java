@@ -0,0 +1,171 @@
+package com.plivo.core.cluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.plivo.core.codec.CompressionPolicy;
+import com.plivo.core.codec.ProtocolCodec;
+import com.plivo.core.repository.TopicRepository;
+import com.plivo.core.service.DispatchWeights;
+import com.plivo.core.service.MessageDispatcher;
+import com.plivo.core.service.PubSubService;
+import com.plivo.core.service.SessionSender;
+import com.plivo.core.service.TimeOrderedMessageIdGenerator;
+import com.plivo.models.HeapMessageHistory;
+import com.plivo.models.MessageEnvelope;
+import com.plivo.models.cluster.ClusterMessage;
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Drives the follower side of node-3 in a three-node cluster with frames from its peers.
+ * The links to the peers never connect.
+ */
+class ClusterServiceTest {
+    
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<ClusterMessage> replies = new ArrayList<>();
+    private TopicRepository topicRepository;
+    private ClusterService clusterService;
+    private Session session;
+    
+    @BeforeEach
+    void setUp() {
+        topicRepository = new TopicRepository(name -> new HeapMessageHistory(100));
+        MessageDispatcher dispatcher = new MessageDispatcher(
+            new ProtocolCodec(objectMapper),
+            new CompressionPolicy(List.of()),
+            null,
+            new SessionSender(1024),
+            1,
+            1,
+            1,
+            new DispatchWeights(List.of()),
+            new int[]{1, 4, 16}
+        );
+        PubSubService pubSubService = new PubSubService(topicRepository, new TimeOrderedMessageIdGenerator("node-3"), dispatcher);
+        List<ClusterNode> nodes = List.of(
+            new ClusterNode("node-1", URI.create("ws://127.0.0.1:1/cluster")),
+            new ClusterNode("node-2", URI.create("ws://127.0.0.1:1/cluster")),
+            new ClusterNode("node-3", URI.create("ws://127.0.0.1:1/cluster")));
+        ReplicationManager replication = new ReplicationManager(
+            "node-3", ReplicationManager.AckLevel.LEADER, 100, 5, 1000, 1000, objectMapper);
+        clusterService = new ClusterService("node-3", nodes, 16, 3, 1000, 60000, "secret", 60000,
+            topicRepository, pubSubService, dispatcher, replication, objectMapper);
+        clusterService.start();
+        session = session(replies);
+    }
+    
+    @AfterEach
+    void tearDown() {
+        clusterService.stop();
+    }
+    
+    @Test
+    void entriesFromAnOlderEpochAreRejected() throws Exception {
+        receive(batch("node-1", 1, entry(100, 1)));
+        receive(batch("node-2", 1, entry(101, 2)));
+        receive(batch("node-1", 2, entry(102, 1)));
+        
+        assertEquals(List.of(100L, 101L), storedOffsets());
+        ClusterMessage stale = replies(ClusterMessage.STALE_EPOCH).get(0);
+        assertEquals(2L, stale.getBatchId());
+        assertEquals(2L, stale.getEpoch());
+        assertEquals("node-2", stale.getLeader());
+        // The rest of the batch is still acked
+        assertEquals(3, replies(ClusterMessage.REPLICATE_ACK).size());
+    }
+    
+    @Test
+    void sameEpochFromAnotherLeaderIsRejected() throws Exception {
+        receive(batch("node-1", 1, entry(100, 3)));
+        receive(batch("node-2", 1, entry(101, 3)));
+        
+        assertEquals(List.of(100L), storedOffsets());
+        assertEquals("node-1", replies(ClusterMessage.STALE_EPOCH).get(0).getLeader());
+    }
+    
+    @Test
+    void missingBatchHoldsBackAcksUntilCaughtUp() throws Exception {
+        receive(batch("node-1", 1, entry(100, 1)));
+        receive(batch("node-1", 3, entry(102, 1)));
+        receive(batch("node-1", 4, entry(103, 1)));
+        
+        // Batch 2 was lost; later entries wait for the catch-up instead of leaving a hole
+        assertEquals(List.of(100L), storedOffsets());
+        assertEquals(List.of(1L), replies(ClusterMessage.REPLICATE_ACK).stream()
+            .map(ClusterMessage::getBatchId)
+            .collect(Collectors.toList()));
+    }
+    
+    @Test
+    void redeliveredEntriesAreStoredOnce() throws Exception {
+        receive(batch("node-1", 1, entry(100, 1), entry(101, 1)));
+        receive(batch("node-1", 2, entry(101, 1), entry(102, 1)));
+        
+        assertEquals(List.of(100L, 101L, 102L), storedOffsets());
+    }
+    
+    private void receive(ClusterMessage message) throws Exception {
+        clusterService.handlePeerFrame(session, objectMapper.writeValueAsString(message));
+    }
+    
+    private List<ClusterMessage> replies(String op) {
+        return replies.stream().filter(reply -> op.equals(reply.getOp())).collect(Collectors.toList());
+    }
+    
+    private List<Long> storedOffsets() {
+        return topicRepository.getTopic("orders").getLastNMessages(100).stream()
+            .map(MessageEnvelope::getOffset)
+            .collect(Collectors.toList());
+    }
+    
+    private static ClusterMessage batch(String leader, long batchId, ClusterMessage... entries) {
+        ClusterMessage batch = new ClusterMessage(ClusterMessage.REPLICATE, leader);
+        batch.setBatchId(batchId);
+        batch.setEntries(List.of(entries));
+        return batch;
+    }
+    
+    private static ClusterMessage entry(long offset, long epoch) {
+        ClusterMessage entry = new ClusterMessage();
+        entry.setTopic("orders");
+        entry.setMessageId("m-" + offset);
+        entry.setPayload("payload");
+        entry.setPublishedAt(System.currentTimeMillis());
+        entry.setOffset(offset);
+        entry.setEpoch(epoch);
+        return entry;
+    }
+    
+    // A session that records the frames sent on it
+    private Session session(List<ClusterMessage> sent) {
+        RemoteEndpoint remote = (RemoteEndpoint) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[]{RemoteEndpoint.class}, (proxy, method, args) -> {
+                if (method.getName().equals("sendString") && args.length == 1) {
+                    sent.add(objectMapper.readValue((String) args[0], ClusterMessage.class));
+                }
+                return null;
+            });
+        return (Session) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[]{Session.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "isOpen":
+                        return true;
+                    case "getRemote":
+                        return remote;
+                    default:
+                        return null;
+                }
+            });
+    }
+}
@@ -0,0 +1,77 @@
+package com.plivo.core.cluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.plivo.models.HeapMessageHistory;
+import com.plivo.models.MessageEnvelope;
+import com.plivo.models.Topic;
+import com.plivo.models.cluster.ClusterMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReplicationManagerTest {
+    
+    // Largest text frame ClusterWebSocket accepts
+    private static final int MAX_FRAME_BYTES = 1024 * 1024;
+    
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ReplicationManager replication = new ReplicationManager(
+        "node-1", ReplicationManager.AckLevel.LEADER, 100, 5, 1000, 1000, objectMapper);
+    
+    @Test
+    void catchUpOfALargeLogIsPagedUnderTheFrameLimit() throws Exception {
+        Topic topic = topicWith(3000, "x".repeat(2048));
+        
+        List<Long> offsets = new ArrayList<>();
+        long from = 0;
+        int pages = 0;
+        ClusterMessage page;
+        do {
+            page = replication.page(topic, from, 7);
+            pages++;
+            assertTrue(objectMapper.writeValueAsBytes(page).length < MAX_FRAME_BYTES, "page " + pages + " too large");
+            for (ClusterMessage entry : page.getEntries()) {
+                assertEquals(7L, entry.getEpoch());
+                offsets.add(entry.getOffset());
+            }
+            from = page.getOffset();
+        } while (page.getMore());
+        
+        assertTrue(pages > 1);
+        assertEquals(3000, offsets.size());
+        for (int i = 0; i < offsets.size(); i++) {
+            assertEquals(i + 1, offsets.get(i));
+        }
+    }
+    
+    @Test
+    void pageHoldsAtMostThePageMessageCount() {
+        Topic topic = topicWith(ReplicationManager.CATCH_UP_PAGE_MESSAGES + 10, "small");
+        
+        ClusterMessage first = replication.page(topic, 0, 1);
+        assertEquals(ReplicationManager.CATCH_UP_PAGE_MESSAGES, first.getEntries().size());
+        assertTrue(first.getMore());
+        
+        ClusterMessage second = replication.page(topic, first.getOffset(), 1);
+        assertEquals(10, second.getEntries().size());
+        assertFalse(second.getMore());
+        
+        ClusterMessage last = replication.page(topic, second.getOffset(), 1);
+        assertTrue(last.getEntries().isEmpty());
+        assertFalse(last.getMore());
+    }
+    
+    private static Topic topicWith(int messages, String payload) {
+        Topic topic = new Topic("orders", messages, new HeapMessageHistory(messages));
+        for (int i = 1; i <= messages; i++) {
+            topic.advanceOffset(i);
+            topic.addToHistory(new MessageEnvelope("m-" + i, payload, System.currentTimeMillis(), i));
+        }
+        return topic;
+    }
+}
@@ -0,0 +1,164 @@
+package com.plivo.core.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.plivo.core.repository.TopicRepository;
+import com.plivo.core.service.DispatchWeights;
+import com.plivo.core.service.MessageDispatcher;
+import com.plivo.core.service.PubSubService;
+import com.plivo.core.service.SessionSender;
+import com.plivo.core.service.TimeOrderedMessageIdGenerator;
+import com.plivo.models.Subscription;
+import com.plivo.models.TopicConfig;
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Inflater;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompressionPolicyTest {
+    
+    private static final String LARGE = "x".repeat(2000);
+    
+    @Test
+    void framesBelowTheThresholdAreNotCompressed() throws Exception {
+        CompressionPolicy policy = new CompressionPolicy(List.of());
+        CompressionPolicy.Rule rule = new CompressionPolicy.Rule("*", 100, 6);
+        
+        assertNull(policy.compress("y".repeat(99), rule));
+        ByteBuffer compressed = policy.compress("y".repeat(100), rule);
+        assertNotNull(compressed);
+        assertTrue(compressed.remaining() < 100);
+        assertEquals("y".repeat(100), inflate(compressed));
+    }
+    
+    @Test
+    void framesThatDoNotShrinkAreNotCompressed() {
+        // The zlib header and checksum alone outweigh a frame this short
+        assertNull(new CompressionPolicy(List.of()).compress("{}", new CompressionPolicy.Rule("*", 0, 9)));
+    }
+    
+    @Test
+    void theFirstMatchingRuleApplies() {
+        CompressionPolicy.Rule exact = new CompressionPolicy.Rule("metrics.raw", 10, 1);
+        CompressionPolicy.Rule prefix = new CompressionPolicy.Rule("metrics.*", 100, 6);
+        CompressionPolicy policy = new CompressionPolicy(List.of(exact, prefix));
+        
+        assertSame(exact, policy.ruleFor("metrics.raw"));
+        assertSame(prefix, policy.ruleFor("metrics.cpu"));
+        assertNull(policy.ruleFor("orders"));
+    }
+    
+    @Test
+    void topicPolicyDecidesWhichEventsAreDeflated() throws Exception {
+        TopicRepository topicRepository = new TopicRepository();
+        MessageDispatcher dispatcher = new MessageDispatcher(
+            new ProtocolCodec(new ObjectMapper()),
+            new CompressionPolicy(List.of(new CompressionPolicy.Rule("metrics.*", 200, 6))),
+            null,
+            new SessionSender(1024 * 1024),
+            1,
+            1,
+            1,
+            new DispatchWeights(List.of()),
+            new int[]{1, 4, 16}
+        );
+        Semaphore delivered = new Semaphore(0);
+        dispatcher.addListener((topic, count) -> delivered.release(count));
+        PubSubService pubSubService = new PubSubService(topicRepository, new TimeOrderedMessageIdGenerator("test"), dispatcher);
+        dispatcher.start();
+        try {
+            topicRepository.createTopic("metrics.cpu");
+            topicRepository.createTopic("metrics.raw", new TopicConfig(null, null, null, null, TopicConfig.Compression.NONE));
+            topicRepository.createTopic("orders", new TopicConfig(null, null, null, null, TopicConfig.Compression.DEFLATE));
+            topicRepository.createTopic("logs");
+            
+            List<Object> optedIn = Collections.synchronizedList(new ArrayList<>());
+            List<Object> plain = Collections.synchronizedList(new ArrayList<>());
+            for (String topic : List.of("metrics.cpu", "metrics.raw", "orders", "logs")) {
+                Subscription deflate = new Subscription("deflate", topic, session(optedIn));
+                deflate.setCompression(CompressionPolicy.DEFLATE);
+                pubSubService.subscribe(deflate, null);
+                pubSubService.subscribe(new Subscription("plain", topic, session(plain)), null);
+            }
+            
+            // Under the metrics rule's threshold, over it, turned off for the topic, forced on, and without a rule
+            publish(pubSubService, delivered, "metrics.cpu", "small");
+            publish(pubSubService, delivered, "metrics.cpu", LARGE);
+            publish(pubSubService, delivered, "metrics.raw", LARGE);
+            publish(pubSubService, delivered, "orders", LARGE);
+            publish(pubSubService, delivered, "logs", LARGE);
+            
+            assertEquals(List.of(String.class, ByteBuffer.class, String.class, ByteBuffer.class, String.class), types(optedIn));
+            assertEquals(List.of(String.class, String.class, String.class, String.class, String.class), types(plain));
+            assertTrue(inflate((ByteBuffer) optedIn.get(3)).contains(LARGE));
+        } finally {
+            dispatcher.stop();
+        }
+    }
+    
+    private static void publish(PubSubService pubSubService, Semaphore delivered, String topic, String payload) throws Exception {
+        pubSubService.publish(topic, null, payload);
+        assertTrue(delivered.tryAcquire(5, TimeUnit.SECONDS));
+    }
+    
+    private static List<Class<?>> types(List<Object> frames) {
+        List<Class<?>> types = new ArrayList<>();
+        synchronized (frames) {
+            for (Object frame : frames) {
+                types.add(frame instanceof ByteBuffer ? ByteBuffer.class : String.class);
+            }
+        }
+        return types;
+    }
+    
+    private static String inflate(ByteBuffer compressed) throws Exception {
+        byte[] input = new byte[compressed.remaining()];
+        compressed.duplicate().get(input);
+        Inflater inflater = new Inflater();
+        inflater.setInput(input);
+        byte[] output = new byte[64 * 1024];
+        int length = inflater.inflate(output);
+        inflater.end();
+        return new String(output, 0, length, StandardCharsets.UTF_8);
+    }
+    
+    // A session that records the text and binary frames sent on it
+    private Session session(List<Object> sent) {
+        RemoteEndpoint remote = (RemoteEndpoint) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[]{RemoteEndpoint.class}, (proxy, method, args) -> {
+                if (method.getName().equals("sendString") || method.getName().equals("sendBytes")) {
+                    sent.add(args[0]);
+                }
+                return null;
+            });
+        return (Session) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[]{Session.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "isOpen":
+                        return true;
+                    case "getRemote":
+                        return remote;
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        return null;
+                }
+            });
+    }
+}
@@ -0,0 +1,92 @@
+package com.plivo.core.codec;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.plivo.models.MessageEnvelope;
+import com.plivo.models.ws.response.AckResponse;
+import com.plivo.models.ws.response.ErrorResponse;
+import com.plivo.models.ws.response.EventResponse;
+import com.plivo.models.ws.response.InfoResponse;
+import com.plivo.models.ws.response.PongResponse;
+import com.plivo.models.ws.response.ServerMessage;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ProtocolCodecTest {
+    
+    // Needs escaping in every way JSON strings can: quotes, backslashes, control and non-ASCII characters
+    private static final String AWKWARD = "say \"hi\" \\ to\n\tall\u0001 caf\u00e9 \ud83d\ude00 </script>";
+    
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ProtocolCodec codec = new ProtocolCodec(objectMapper);
+    
+    @Test
+    void handWrittenMessagesMatchBeanSerialization() throws IOException {
+        for (String text : Arrays.asList("plain", AWKWARD, null)) {
+            assertMatchesBean(new AckResponse("success", text, text));
+            assertMatchesBean(new ErrorResponse("INVALID_REQUEST", text, text, text));
+            assertMatchesBean(new PongResponse(1_700_000_000_000L, text));
+            assertMatchesBean(new InfoResponse(text, payload(text), text));
+            assertMatchesBean(new EventResponse(text == null ? "orders" : text,
+                new EventResponse.MessageData(text, payload(text), 1_700_000_000_000L, 42)));
+        }
+    }
+    
+    @Test
+    void eventsOfEnvelopesMatchBeanSerialization() throws IOException {
+        MessageEnvelope envelope = new MessageEnvelope("m-1", payload(AWKWARD), 1_700_000_000_000L, 7);
+        EventResponse bean = new EventResponse("orders", new EventResponse.MessageData("m-1", payload(AWKWARD), 1_700_000_000_000L, 7));
+        assertEquals(tree(bean), objectMapper.readTree(codec.encodeEvent("orders", envelope)));
+        
+        // A frame attached for dispatch is used as is
+        envelope.setEncodedEvent("{\"cached\":true}");
+        assertEquals("{\"cached\":true}", codec.encodeEvent("orders", envelope));
+    }
+    
+    @Test
+    void publishAcksAreRenderedPerRequest() throws IOException {
+        AckResponse first = new AckResponse("success", "Message published to topic: orders", "r-1");
+        AckResponse second = new AckResponse("success", "Message published to topic: orders", AWKWARD);
+        assertEquals(tree(first), objectMapper.readTree(codec.encodePublishAck("orders", "r-1")));
+        assertEquals(tree(second), objectMapper.readTree(codec.encodePublishAck("orders", AWKWARD)));
+        
+        codec.forgetTopic("orders");
+        assertEquals(tree(first), objectMapper.readTree(codec.encodePublishAck("orders", "r-1")));
+    }
+    
+    private void assertMatchesBean(ServerMessage message) throws IOException {
+        JsonNode encoded = objectMapper.readTree(codec.encode(message));
+        assertEquals(tree(message), encoded);
+        assertEquals(fieldNames(tree(message)), fieldNames(encoded));
+    }
+    
+    // The bean form writes type twice, the second time as the enum name; the codec writes the wire value once
+    private JsonNode tree(ServerMessage message) throws IOException {
+        ObjectNode node = (ObjectNode) objectMapper.readTree(objectMapper.writeValueAsString(message));
+        node.put("type", message.getType().getValue());
+        return node;
+    }
+    
+    private static List<String> fieldNames(JsonNode node) {
+        List<String> names = new ArrayList<>();
+        node.fieldNames().forEachRemaining(names::add);
+        return names;
+    }
+    
+    private static Map<String, Object> payload(String text) {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("text", text);
+        payload.put("count", 3);
+        payload.put("items", List.of(1, 2));
+        return payload;
+    }
+}
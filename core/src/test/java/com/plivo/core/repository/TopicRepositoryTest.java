@@ -0,0 +1,60 @@
+package com.plivo.core.repository;
+
+import com.plivo.models.Topic;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TopicRepositoryTest {
+    
+    private final TopicRepository topicRepository = new TopicRepository();
+    
+    @Test
+    void listingPagesInNameOrderAfterTheCursor() {
+        for (String name : List.of("d", "b", "e", "a", "c")) {
+            topicRepository.createTopic(name);
+        }
+        
+        assertEquals(List.of("a", "b"), names(topicRepository.listTopics(null, null, 2)));
+        assertEquals(List.of("c", "d"), names(topicRepository.listTopics(null, "b", 2)));
+        assertEquals(List.of("e"), names(topicRepository.listTopics(null, "d", 2)));
+        assertTrue(topicRepository.listTopics(null, "e", 2).isEmpty());
+    }
+    
+    @Test
+    void cursorSurvivesChangesBetweenPages() {
+        for (String name : List.of("a", "b", "c", "d")) {
+            topicRepository.createTopic(name);
+        }
+        List<Topic> first = topicRepository.listTopics(null, null, 2);
+        
+        // The cursor topic is gone, one before it and one after it are new
+        topicRepository.deleteTopic("b");
+        topicRepository.createTopic("aa");
+        topicRepository.createTopic("bb");
+        
+        String cursor = first.get(first.size() - 1).getName();
+        assertEquals(List.of("bb", "c", "d"), names(topicRepository.listTopics(null, cursor, 10)));
+    }
+    
+    @Test
+    void prefixListingStopsAtTheEndOfThePrefix() {
+        for (String name : List.of("orders", "orders-eu", "orders-us", "ordersx", "payments-eu")) {
+            topicRepository.createTopic(name);
+        }
+        
+        assertEquals(List.of("orders-eu", "orders-us"), names(topicRepository.listTopics("orders-", null, 10)));
+        assertEquals(List.of("orders-us"), names(topicRepository.listTopics("orders-", "orders-eu", 10)));
+        // A cursor before the prefix starts from the prefix
+        assertEquals(List.of("orders-eu"), names(topicRepository.listTopics("orders-", "a", 1)));
+        assertTrue(topicRepository.listTopics("refunds-", null, 10).isEmpty());
+    }
+    
+    private static List<String> names(List<Topic> topics) {
+        return topics.stream().map(Topic::getName).collect(Collectors.toList());
+    }
+}
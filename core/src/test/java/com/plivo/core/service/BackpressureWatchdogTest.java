@@ -0,0 +1,146 @@
+package com.plivo.core.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.plivo.core.codec.ProtocolCodec;
+import com.plivo.core.repository.TopicRepository;
+import com.plivo.models.MessageEnvelope;
+import com.plivo.models.Topic;
+import com.plivo.models.TopicConfig;
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BackpressureWatchdogTest {
+    
+    private static final int[] LANE_WEIGHTS = {1, 4, 16};
+    
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<String> sent = Collections.synchronizedList(new ArrayList<>());
+    private TopicRepository topicRepository;
+    private BackpressureWatchdog watchdog;
+    private Topic topic;
+    
+    @BeforeEach
+    void setUp() {
+        topicRepository = new TopicRepository();
+        watchdog = new BackpressureWatchdog(topicRepository, new ProtocolCodec(objectMapper), new SessionSender(1024 * 1024), 1000);
+        // High watermark 10, low watermark 5
+        topic = topicRepository.createTopic("orders", new TopicConfig(10, null, null, null, null));
+    }
+    
+    @Test
+    void pausedPublishersAreResumedAtTheLowWatermark() throws Exception {
+        fill();
+        Session publisher = session();
+        watchdog.onOverflow(publisher, "orders");
+        watchdog.onOverflow(publisher, "orders");
+        assertEquals(1, sent.size());
+        JsonNode paused = objectMapper.readTree(sent.get(0));
+        assertEquals(BackpressureWatchdog.PAUSED_MESSAGE, paused.get("message").asText());
+        assertFalse(paused.get("data").get("accepting").asBoolean());
+        assertEquals(5, paused.get("data").get("low_watermark").asInt());
+        
+        // One above the low watermark is not enough
+        drain(4);
+        assertFalse(topic.isAcceptingMessages());
+        assertEquals(1, sent.size());
+        
+        drain(1);
+        assertTrue(topic.isAcceptingMessages());
+        assertEquals(2, sent.size());
+        JsonNode resumed = objectMapper.readTree(sent.get(1));
+        assertEquals(BackpressureWatchdog.RESUMED_MESSAGE, resumed.get("message").asText());
+        assertTrue(resumed.get("data").get("accepting").asBoolean());
+        assertEquals(5, resumed.get("data").get("queue_depth").asInt());
+        
+        // The publisher is only told once
+        drain(1);
+        assertEquals(2, sent.size());
+    }
+    
+    @Test
+    void publisherWaitingOnAnAcceptingTopicIsToldByTheSweep() throws Exception {
+        fill();
+        drain(5);
+        assertTrue(topic.isAcceptingMessages());
+        
+        // Rejected just before a drain resumed the topic, so no later drain will see it stopped
+        watchdog = new BackpressureWatchdog(topicRepository, new ProtocolCodec(objectMapper), new SessionSender(1024 * 1024), 10);
+        watchdog.onOverflow(session(), "orders");
+        watchdog.start();
+        try {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (sent.size() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        } finally {
+            watchdog.stop();
+        }
+        assertEquals(2, sent.size());
+        assertEquals(BackpressureWatchdog.RESUMED_MESSAGE, objectMapper.readTree(sent.get(1)).get("message").asText());
+    }
+    
+    @Test
+    void disconnectedPublishersAreNotNotified() {
+        fill();
+        Session publisher = session();
+        watchdog.onOverflow(publisher, "orders");
+        watchdog.removeSession(publisher);
+        drain(5);
+        assertEquals(1, sent.size());
+    }
+    
+    private void fill() {
+        int offset = 0;
+        while (topic.offerMessage(new MessageEnvelope("m-" + offset, offset, System.currentTimeMillis(), offset))) {
+            offset++;
+        }
+        assertEquals(10, topic.getQueueSize());
+        assertFalse(topic.isAcceptingMessages());
+    }
+    
+    // Takes messages off the queue as the dispatcher would, one drain at a time
+    private void drain(int count) {
+        for (int i = 0; i < count; i++) {
+            topic.pollMessage(LANE_WEIGHTS);
+            watchdog.onDrained(topic, 1);
+        }
+    }
+    
+    // A session that records the text frames sent on it
+    private Session session() {
+        RemoteEndpoint remote = (RemoteEndpoint) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[]{RemoteEndpoint.class}, (proxy, method, args) -> {
+                if (method.getName().equals("sendString")) {
+                    sent.add((String) args[0]);
+                }
+                return null;
+            });
+        return (Session) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[]{Session.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "isOpen":
+                        return true;
+                    case "getRemote":
+                        return remote;
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        return null;
+                }
+            });
+    }
+}
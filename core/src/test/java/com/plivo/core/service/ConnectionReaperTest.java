@@ -0,0 +1,150 @@
+package com.plivo.core.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.plivo.core.codec.CompressionPolicy;
+import com.plivo.core.codec.ProtocolCodec;
+import com.plivo.core.repository.TopicRepository;
+import com.plivo.models.HeapMessageHistory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConnectionReaperTest {
+    
+    private static final long PING_MILLIS = 100;
+    private static final long IDLE_MILLIS = 300;
+    
+    private TopicRepository topicRepository;
+    private PubSubService pubSubService;
+    private ConnectionReaper reaper;
+    
+    @BeforeEach
+    void setUp() {
+        topicRepository = new TopicRepository(name -> new HeapMessageHistory(100));
+        MessageDispatcher dispatcher = new MessageDispatcher(
+            new ProtocolCodec(new ObjectMapper()),
+            new CompressionPolicy(List.of()),
+            null,
+            new SessionSender(1024),
+            1,
+            1,
+            1,
+            new DispatchWeights(List.of()),
+            new int[]{1, 4, 16}
+        );
+        pubSubService = new PubSubService(topicRepository, new TimeOrderedMessageIdGenerator("test"), dispatcher);
+        topicRepository.createTopic("orders");
+        topicRepository.createTopic("payments");
+        reaper = new ConnectionReaper(pubSubService, PING_MILLIS, IDLE_MILLIS, 20);
+        reaper.start();
+    }
+    
+    @AfterEach
+    void tearDown() {
+        reaper.stop();
+    }
+    
+    @Test
+    void silentConnectionIsPingedThenEvictedWithItsSubscriptions() throws Exception {
+        FakeConnection silent = new FakeConnection();
+        FakeConnection other = new FakeConnection();
+        pubSubService.subscribe("orders", "silent", silent, null);
+        pubSubService.subscribe("payments", "silent", silent, null);
+        pubSubService.subscribe("orders", "other", other, null);
+        
+        long start = System.currentTimeMillis();
+        silent.register();
+        other.register();
+        // The other connection keeps talking until the silent one is gone
+        while (!silent.evicted.await(20, TimeUnit.MILLISECONDS)) {
+            assertTrue(System.currentTimeMillis() - start < 5000, "not evicted");
+            other.handle.touch();
+        }
+        
+        assertTrue(System.currentTimeMillis() - start >= IDLE_MILLIS);
+        assertTrue(silent.pings.get() >= 1);
+        assertFalse(pubSubService.getTopicSubscribers("orders").containsKey("silent"));
+        assertFalse(pubSubService.getTopicSubscribers("payments").containsKey("silent"));
+        assertTrue(pubSubService.getTopicSubscribers("orders").containsKey("other"));
+        assertEquals(1, topicRepository.getTopic("orders").getSubscriberCount());
+        assertEquals(1, other.evicted.getCount());
+    }
+    
+    @Test
+    void activeConnectionIsNeitherPingedNorEvicted() throws Exception {
+        FakeConnection active = new FakeConnection();
+        active.register();
+        
+        long end = System.currentTimeMillis() + 3 * IDLE_MILLIS;
+        while (System.currentTimeMillis() < end) {
+            active.handle.touch();
+            Thread.sleep(20);
+        }
+        
+        assertEquals(0, active.pings.get());
+        assertEquals(1, active.evicted.getCount());
+    }
+    
+    @Test
+    void closedConnectionIsEvictedWithoutWaitingForTheIdleTimeout() throws Exception {
+        FakeConnection closed = new FakeConnection();
+        closed.open = false;
+        long start = System.currentTimeMillis();
+        closed.register();
+        
+        assertTrue(closed.evicted.await(5, TimeUnit.SECONDS));
+        assertTrue(System.currentTimeMillis() - start < IDLE_MILLIS);
+        assertEquals(0, closed.pings.get());
+    }
+    
+    @Test
+    void cancelledConnectionIsDropped() throws Exception {
+        FakeConnection cancelled = new FakeConnection();
+        cancelled.register().cancel();
+        
+        assertFalse(cancelled.evicted.await(3 * IDLE_MILLIS, TimeUnit.MILLISECONDS));
+        assertEquals(0, cancelled.pings.get());
+    }
+    
+    private class FakeConnection implements ConnectionReaper.Connection {
+        
+        private final AtomicInteger pings = new AtomicInteger();
+        private final CountDownLatch evicted = new CountDownLatch(1);
+        private volatile boolean open = true;
+        private ConnectionReaper.Handle handle;
+        
+        private ConnectionReaper.Handle register() {
+            handle = reaper.register(this);
+            return handle;
+        }
+        
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+        
+        @Override
+        public void ping() {
+            pings.incrementAndGet();
+        }
+        
+        @Override
+        public Object getSession() {
+            return this;
+        }
+        
+        @Override
+        public void evicted() {
+            evicted.countDown();
+        }
+    }
+}
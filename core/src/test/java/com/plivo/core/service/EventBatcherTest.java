@@ -0,0 +1,136 @@
+package com.plivo.core.service;
+
+import com.plivo.models.Subscription;
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventBatcherTest {
+    
+    private final List<String> sent = Collections.synchronizedList(new ArrayList<>());
+    private EventBatcher batcher;
+    private Session session;
+    
+    @BeforeEach
+    void setUp() {
+        batcher = new EventBatcher(new SessionSender(1024 * 1024), 100, 1000, 50, 64);
+        batcher.start();
+        session = session();
+    }
+    
+    @AfterEach
+    void tearDown() {
+        batcher.stop();
+    }
+    
+    @Test
+    void fullBatchIsSentAtOnce() {
+        Subscription subscription = subscription(3, 10000);
+        batcher.add(subscription, session, "{\"n\":1}");
+        batcher.add(subscription, session, "{\"n\":2}");
+        assertTrue(sent.isEmpty());
+        
+        batcher.add(subscription, session, "{\"n\":3}");
+        assertEquals(List.of("[{\"n\":1},{\"n\":2},{\"n\":3}]"), sent);
+        
+        batcher.add(subscription, session, "{\"n\":4}");
+        assertEquals(1, sent.size());
+    }
+    
+    @Test
+    void partialBatchIsSentWhenTheLingerExpires() throws Exception {
+        Subscription subscription = subscription(100, 50);
+        long start = System.currentTimeMillis();
+        batcher.add(subscription, session, "{\"n\":1}");
+        batcher.add(subscription, session, "{\"n\":2}");
+        assertTrue(sent.isEmpty());
+        
+        awaitSent(1);
+        assertTrue(System.currentTimeMillis() - start >= 50);
+        assertEquals(List.of("[{\"n\":1},{\"n\":2}]"), sent);
+        
+        // The next event starts a new linger
+        batcher.add(subscription, session, "{\"n\":3}");
+        awaitSent(2);
+        assertEquals("[{\"n\":3}]", sent.get(1));
+    }
+    
+    @Test
+    void batchIsSentEarlyToStayUnderTheFrameLimit() {
+        Subscription subscription = subscription(100, 10000);
+        String event = "{\"n\":\"" + "x".repeat(20) + "\"}";
+        batcher.add(subscription, session, event);
+        batcher.add(subscription, session, event);
+        assertTrue(sent.isEmpty());
+        
+        // A third would take the frame past 64 bytes
+        batcher.add(subscription, session, event);
+        assertEquals(List.of("[" + event + "," + event + "]"), sent);
+    }
+    
+    @Test
+    void lingerOfASentBatchDoesNotCutTheNextOneShort() throws Exception {
+        Subscription subscription = subscription(2, 1000);
+        batcher.add(subscription, session, "{\"n\":1}");
+        batcher.add(subscription, session, "{\"n\":2}");
+        assertEquals(1, sent.size());
+        
+        // The first batch's timer fires a second after its first event, 200 ms before this one's
+        Thread.sleep(200);
+        batcher.add(subscription, session, "{\"n\":3}");
+        Thread.sleep(900);
+        assertEquals(1, sent.size());
+        awaitSent(2);
+    }
+    
+    private void awaitSent(int frames) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sent.size() < frames && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(frames, sent.size());
+    }
+    
+    private static Subscription subscription(int batchSize, long lingerMillis) {
+        Subscription subscription = new Subscription("client", "orders", null);
+        subscription.setBatchSize(batchSize);
+        subscription.setBatchLingerMs(lingerMillis);
+        return subscription;
+    }
+    
+    // A session that records the text frames sent on it
+    private Session session() {
+        RemoteEndpoint remote = (RemoteEndpoint) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[]{RemoteEndpoint.class}, (proxy, method, args) -> {
+                if (method.getName().equals("sendString")) {
+                    sent.add((String) args[0]);
+                }
+                return null;
+            });
+        return (Session) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[]{Session.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "isOpen":
+                        return true;
+                    case "getRemote":
+                        return remote;
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        return null;
+                }
+            });
+    }
+}
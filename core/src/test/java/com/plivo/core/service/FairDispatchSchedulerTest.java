@@ -0,0 +1,113 @@
+package com.plivo.core.service;
+
+import com.plivo.models.MessageEnvelope;
+import com.plivo.models.Subscription;
+import com.plivo.models.Topic;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FairDispatchSchedulerTest {
+    
+    private static final int[] LANE_WEIGHTS = {1, 4, 16};
+    
+    // Topic name of every message sent, in order
+    private final List<String> sent = Collections.synchronizedList(new ArrayList<>());
+    private FairDispatchScheduler scheduler;
+    
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        scheduler.stop(1000);
+    }
+    
+    @Test
+    void quietTopicsAreServedWithinOneTurnOfAHotOne() throws Exception {
+        scheduler = new FairDispatchScheduler(10, 10, DispatchWeights.UNIFORM, this::dispatch);
+        Topic hot = topic("hot", 10000, 1);
+        List<Topic> quiet = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            quiet.add(topic("quiet-" + i, 5, 1));
+        }
+        
+        // The hot topic is first in line, yet only gets one batch before the others have all been served
+        scheduler.schedule(hot);
+        quiet.forEach(scheduler::schedule);
+        scheduler.start(1);
+        awaitSent(10015);
+        
+        List<String> order = snapshot(10015);
+        int lastQuiet = 0;
+        for (int i = 0; i < order.size(); i++) {
+            if (order.get(i).startsWith("quiet-")) {
+                lastQuiet = i;
+            }
+        }
+        assertEquals(15 + 10 - 1, lastQuiet);
+    }
+    
+    @Test
+    void busyTopicsShareByWeight() throws Exception {
+        DispatchWeights weights = new DispatchWeights(List.of(new DispatchWeights.Rule("tenant-a.*", 3)));
+        scheduler = new FairDispatchScheduler(10, 1000, weights, this::dispatch);
+        scheduler.schedule(topic("tenant-a.orders", 10000, 1));
+        scheduler.schedule(topic("tenant-b.orders", 10000, 1));
+        scheduler.start(1);
+        awaitSent(4000);
+        
+        long heavy = snapshot(4000).stream().filter(name -> name.startsWith("tenant-a.")).count();
+        assertEquals(3000, heavy);
+    }
+    
+    @Test
+    void wideFanOutCostsOneSendPerSubscriber() throws Exception {
+        scheduler = new FairDispatchScheduler(8, 1000, DispatchWeights.UNIFORM, this::dispatch);
+        scheduler.schedule(topic("wide", 10000, 4));
+        scheduler.schedule(topic("narrow", 10000, 1));
+        scheduler.start(1);
+        awaitSent(1000);
+        
+        // Two messages of the wide topic per turn against eight of the narrow one
+        long wide = snapshot(1000).stream().filter("wide"::equals).count();
+        assertEquals(200, wide);
+    }
+    
+    private int dispatch(Topic topic, int maxMessages) {
+        int count = 0;
+        while (count < maxMessages && topic.pollMessage(LANE_WEIGHTS) != null) {
+            sent.add(topic.getName());
+            count++;
+        }
+        return count;
+    }
+    
+    private static Topic topic(String name, int messages, int subscribers) {
+        Topic topic = new Topic(name, messages);
+        for (int i = 0; i < messages; i++) {
+            assertTrue(topic.offerMessage(new MessageEnvelope("m-" + i, i, System.currentTimeMillis(), i)));
+        }
+        for (int i = 0; i < subscribers; i++) {
+            topic.getSubscribers().put("client-" + i, new Subscription("client-" + i, name, null));
+        }
+        return topic;
+    }
+    
+    private void awaitSent(int messages) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (sent.size() < messages && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(sent.size() >= messages, "sent " + sent.size());
+    }
+    
+    private List<String> snapshot(int messages) {
+        synchronized (sent) {
+            return new ArrayList<>(sent.subList(0, messages));
+        }
+    }
+}
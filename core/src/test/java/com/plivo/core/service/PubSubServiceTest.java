@@ -0,0 +1,106 @@
+package com.plivo.core.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.plivo.core.codec.CompressionPolicy;
+import com.plivo.core.codec.ProtocolCodec;
+import com.plivo.core.repository.TopicRepository;
+import com.plivo.models.HeapMessageHistory;
+import com.plivo.models.MessageEnvelope;
+import com.plivo.models.Topic;
+import com.plivo.models.TopicConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PubSubServiceTest {
+    
+    private static final int PUBLISHERS = 8;
+    private static final int MESSAGES_PER_PUBLISHER = 5000;
+    private static final int TOTAL = PUBLISHERS * MESSAGES_PER_PUBLISHER;
+    
+    private TopicRepository topicRepository;
+    private PubSubService pubSubService;
+    
+    @BeforeEach
+    void setUp() {
+        topicRepository = new TopicRepository(name -> new HeapMessageHistory(TOTAL));
+        MessageDispatcher dispatcher = new MessageDispatcher(
+            new ProtocolCodec(new ObjectMapper()),
+            new CompressionPolicy(List.of()),
+            null,
+            new SessionSender(1024),
+            1,
+            1,
+            1,
+            new DispatchWeights(List.of()),
+            new int[]{1, 4, 16}
+        );
+        pubSubService = new PubSubService(topicRepository, new TimeOrderedMessageIdGenerator("test"), dispatcher);
+    }
+    
+    @Test
+    void concurrentPublishesAreQueuedAndStoredInOffsetOrder() throws Exception {
+        topicRepository.createTopic("orders", new TopicConfig(TOTAL, null, null, null, null));
+        
+        ExecutorService publishers = Executors.newFixedThreadPool(PUBLISHERS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+        for (int p = 0; p < PUBLISHERS; p++) {
+            results.add(publishers.submit(() -> {
+                start.await();
+                for (int i = 0; i < MESSAGES_PER_PUBLISHER; i++) {
+                    pubSubService.publish("orders", null, i);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> result : results) {
+            result.get();
+        }
+        publishers.shutdown();
+        
+        Topic topic = topicRepository.getTopic("orders");
+        List<MessageEnvelope> queued = topic.drainQueue();
+        List<MessageEnvelope> stored = topic.getLastNMessages(TOTAL);
+        assertEquals(TOTAL, queued.size());
+        assertEquals(TOTAL, stored.size());
+        assertIncreasing(queued);
+        assertIncreasing(stored);
+        assertEquals(topic.getLastOffset(), stored.get(TOTAL - 1).getOffset());
+    }
+    
+    @Test
+    void removingAClientSkipsTopicsDeletedMeanwhile() {
+        topicRepository.createTopic("orders");
+        topicRepository.createTopic("payments");
+        pubSubService.subscribe("orders", "client", new Object(), null);
+        pubSubService.subscribe("payments", "client", new Object(), null);
+        topicRepository.removeTopic("orders");
+        
+        pubSubService.removeAllSubscriptions("client");
+        assertTrue(topicRepository.getTopic("payments").getSubscribers().isEmpty());
+        assertNull(pubSubService.getSubscription("payments", "client"));
+    }
+    
+    private static void assertIncreasing(List<MessageEnvelope> messages) {
+        for (int i = 1; i < messages.size(); i++) {
+            MessageEnvelope previous = messages.get(i - 1);
+            MessageEnvelope current = messages.get(i);
+            assertTrue(current.getOffset() > previous.getOffset(),
+                "offset " + current.getOffset() + " follows " + previous.getOffset() + " at " + i);
+            assertTrue(current.getPublishedAt() >= previous.getPublishedAt(),
+                "publish time goes back at " + i);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.plivo.core.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimiterTest {
+    
+    @Test
+    void rejectsPastTheBurstWithTimeUntilTheNextToken() {
+        // 10 publishes a second, so a token every 100 ms
+        RateLimiter limiter = new RateLimiter(new RateLimiter.Limit(10, 2, 0, 0),
+                RateLimiter.Limit.UNLIMITED, RateLimiter.Limit.UNLIMITED);
+        RateLimiter.Buckets session = limiter.newSessionBuckets();
+        
+        assertNull(limiter.tryPublish(session, null, "orders", 10));
+        assertNull(limiter.tryPublish(session, null, "orders", 10));
+        RateLimiter.Rejection rejection = limiter.tryPublish(session, null, "orders", 10);
+        
+        assertNotNull(rejection);
+        assertEquals(RateLimiter.Scope.SESSION, rejection.getScope());
+        assertTrue(rejection.getRetryAfterMillis() > 0 && rejection.getRetryAfterMillis() <= 100,
+                "retry after " + rejection.getRetryAfterMillis() + " ms");
+    }
+    
+    @Test
+    void retryAfterIsEnoughForTheRejectedPublish() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(new RateLimiter.Limit(20, 1, 0, 0),
+                RateLimiter.Limit.UNLIMITED, RateLimiter.Limit.UNLIMITED);
+        RateLimiter.Buckets session = limiter.newSessionBuckets();
+        
+        assertNull(limiter.tryPublish(session, null, "orders", 10));
+        RateLimiter.Rejection rejection = limiter.tryPublish(session, null, "orders", 10);
+        assertNotNull(rejection);
+        
+        Thread.sleep(rejection.getRetryAfterMillis() + 1);
+        assertNull(limiter.tryPublish(session, null, "orders", 10));
+    }
+    
+    @Test
+    void chargesFramesLargerThanTheByteBurstInFull() {
+        // 1000 bytes a second with a 100 byte burst
+        RateLimiter limiter = new RateLimiter(new RateLimiter.Limit(0, 0, 1000, 100),
+                RateLimiter.Limit.UNLIMITED, RateLimiter.Limit.UNLIMITED);
+        RateLimiter.Buckets session = limiter.newSessionBuckets();
+        
+        // Accepted on a full bucket, leaving a 500 ms debt
+        assertNull(limiter.tryPublish(session, null, "orders", 500));
+        RateLimiter.Rejection rejection = limiter.tryPublish(session, null, "orders", 1);
+        
+        assertNotNull(rejection);
+        assertTrue(rejection.getRetryAfterMillis() > 300 && rejection.getRetryAfterMillis() <= 500,
+                "retry after " + rejection.getRetryAfterMillis() + " ms");
+    }
+    
+    @Test
+    void sharesClientBucketsAcrossSessions() {
+        RateLimiter limiter = new RateLimiter(RateLimiter.Limit.UNLIMITED,
+                new RateLimiter.Limit(1, 1, 0, 0), RateLimiter.Limit.UNLIMITED);
+        
+        // Unlimited sessions have no buckets of their own, so only the client scope applies
+        assertNull(limiter.newSessionBuckets());
+        assertNull(limiter.tryPublish(null, "pub1", "orders", 10));
+        RateLimiter.Rejection rejection = limiter.tryPublish(null, "pub1", "payments", 10);
+        
+        assertNotNull(rejection);
+        assertEquals(RateLimiter.Scope.CLIENT, rejection.getScope());
+        assertNull(limiter.tryPublish(null, "pub2", "orders", 10));
+    }
+    
+    @Test
+    void givesBackEarlierScopesWhenALaterOneRejects() {
+        RateLimiter limiter = new RateLimiter(new RateLimiter.Limit(1, 1, 0, 0),
+                RateLimiter.Limit.UNLIMITED, new RateLimiter.Limit(1, 1, 0, 0));
+        RateLimiter.Buckets first = limiter.newSessionBuckets();
+        RateLimiter.Buckets second = limiter.newSessionBuckets();
+        
+        assertNull(limiter.tryPublish(first, null, "orders", 10));
+        assertEquals(RateLimiter.Scope.TOPIC, limiter.tryPublish(second, null, "orders", 10).getScope());
+        
+        // The second session's token was returned when the topic refused it
+        assertNull(limiter.tryPublish(second, null, "payments", 10));
+    }
+    
+    @Test
+    void framesAreChargedByTheirUtf8Length() {
+        for (String text : new String[]{"", "orders", "caf\u00e9", "\u20ac100", "\ud83d\ude00 ok", "\u00e9\u4e2d\ud83d\ude00x"}) {
+            assertEquals(text.getBytes(StandardCharsets.UTF_8).length, RateLimiter.utf8Length(text), text);
+        }
+    }
+}
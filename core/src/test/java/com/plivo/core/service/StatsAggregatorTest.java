@@ -0,0 +1,110 @@
+package com.plivo.core.service;
+
+import com.plivo.core.repository.TopicRepository;
+import com.plivo.models.Topic;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StatsAggregatorTest {
+    
+    private TopicRepository topicRepository;
+    private StatsAggregator aggregator;
+    
+    @BeforeEach
+    void setUp() {
+        topicRepository = new TopicRepository();
+        // Topics created from here on count all their messages towards the first snapshot's rates
+        aggregator = new StatsAggregator(topicRepository, 60000);
+    }
+    
+    @AfterEach
+    void tearDown() {
+        aggregator.stop();
+    }
+    
+    @Test
+    void pagesFollowTheCursorThroughEveryTopicOnce() throws Exception {
+        for (int i = 0; i < 25; i++) {
+            topicRepository.createTopic(String.format("t-%02d", i));
+        }
+        StatsAggregator.Snapshot snapshot = refresh(25);
+        
+        List<String> seen = new ArrayList<>();
+        String cursor = null;
+        List<StatsAggregator.Entry> page;
+        do {
+            page = snapshot.page(null, cursor, 10);
+            page.forEach(entry -> seen.add(entry.getName()));
+            cursor = page.isEmpty() ? null : page.get(page.size() - 1).getName();
+        } while (page.size() == 10);
+        
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            expected.add(String.format("t-%02d", i));
+        }
+        assertEquals(expected, seen);
+        // A cursor naming a topic deleted since carries on from where it would have been
+        assertEquals(List.of("t-06", "t-07"), names(snapshot.page(null, "t-05a", 2)));
+    }
+    
+    @Test
+    void prefixPagesStopAtTheEndOfThePrefix() throws Exception {
+        for (String name : List.of("a.1", "b.1", "b.2", "b.3", "c.1")) {
+            topicRepository.createTopic(name);
+        }
+        StatsAggregator.Snapshot snapshot = refresh(5);
+        
+        assertEquals(List.of("b.1", "b.2", "b.3"), names(snapshot.page("b.", null, 10)));
+        assertEquals(List.of("b.2", "b.3"), names(snapshot.page("b.", "b.1", 10)));
+        assertEquals(List.of("b.1"), names(snapshot.page("b.", "a.1", 1)));
+        assertTrue(snapshot.page("b.", "b.3", 10).isEmpty());
+        assertTrue(snapshot.page("d.", null, 10).isEmpty());
+    }
+    
+    @Test
+    void topReturnsTheBusiestTopicsFirst() throws Exception {
+        publish("a.quiet", 1);
+        publish("a.busy", 50);
+        publish("b.busiest", 100);
+        publish("b.idle", 0);
+        StatsAggregator.Snapshot snapshot = refresh(4);
+        
+        assertEquals(List.of("b.busiest", "a.busy"), names(snapshot.top(null, 2)));
+        assertEquals(List.of("a.busy", "a.quiet"), names(snapshot.top("a.", 5)));
+        assertEquals(151, snapshot.getTotalMessages());
+        
+        double busiest = snapshot.top(null, 1).get(0).toTopicStats().getMessagesPerSecond();
+        double busy = snapshot.top("a.", 1).get(0).toTopicStats().getMessagesPerSecond();
+        assertEquals(2.0, busiest / busy, 0.001);
+    }
+    
+    private void publish(String name, int messages) {
+        Topic topic = topicRepository.createTopic(name);
+        for (int i = 0; i < messages; i++) {
+            topic.incrementMessageCount();
+        }
+    }
+    
+    private StatsAggregator.Snapshot refresh(int topics) throws InterruptedException {
+        aggregator.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (aggregator.getSnapshot().getTopicCount() < topics && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        StatsAggregator.Snapshot snapshot = aggregator.getSnapshot();
+        assertEquals(topics, snapshot.getTopicCount());
+        return snapshot;
+    }
+    
+    private static List<String> names(List<StatsAggregator.Entry> entries) {
+        return entries.stream().map(StatsAggregator.Entry::getName).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,57 @@
+package com.plivo.core.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.plivo.core.codec.ProtocolCodec;
+import com.plivo.models.MessageEnvelope;
+import com.plivo.models.Topic;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimeOrderedMessageIdGeneratorTest {
+    
+    // Largest integer a double, and so a JavaScript number, holds exactly
+    private static final long MAX_SAFE_INTEGER = (1L << 53) - 1;
+    
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final TimeOrderedMessageIdGenerator generator = new TimeOrderedMessageIdGenerator("node");
+    
+    @Test
+    void offsetRoundTripsThroughAnEventReadAsADouble() throws Exception {
+        Topic topic = new Topic("orders");
+        long offset = generator.nextOffset(topic);
+        String event = new ProtocolCodec(objectMapper).encodeEvent("orders",
+            new MessageEnvelope(generator.toMessageId(offset), "payload", System.currentTimeMillis(), offset));
+        
+        // What a JavaScript client gets from JSON.parse, sent back as from_offset
+        JsonNode parsed = objectMapper.readTree(event).get("message").get("offset");
+        double asNumber = Double.parseDouble(parsed.asText());
+        assertEquals(offset, (long) asNumber);
+        assertEquals(offset, objectMapper.readTree(Long.toString((long) asNumber)).asLong());
+    }
+    
+    @Test
+    void offsetsStayBelowTwoToThe53ForCenturies() {
+        long inTwoHundredYears = Duration.ofDays(200L * 366).toMillis();
+        long sequence = (1L << TimeOrderedMessageIdGenerator.SEQUENCE_BITS) - 1;
+        assertTrue((inTwoHundredYears << TimeOrderedMessageIdGenerator.SEQUENCE_BITS) + sequence <= MAX_SAFE_INTEGER);
+    }
+    
+    @Test
+    void offsetsIncreaseAndCarryThePublishTime() {
+        Topic topic = new Topic("orders");
+        long before = System.currentTimeMillis();
+        long previous = 0;
+        // More than one millisecond's worth of sequence numbers
+        for (int i = 0; i < 5000; i++) {
+            long offset = generator.nextOffset(topic);
+            assertTrue(offset > previous);
+            previous = offset;
+        }
+        assertTrue(TimeOrderedMessageIdGenerator.timestampOf(previous) >= before);
+    }
+}
@@ -0,0 +1,191 @@
+package com.plivo.core.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.plivo.core.codec.CompressionPolicy;
+import com.plivo.core.codec.ProtocolCodec;
+import com.plivo.core.repository.TopicRepository;
+import com.plivo.models.HeapMessageHistory;
+import com.plivo.models.MessageEnvelope;
+import com.plivo.models.Subscription;
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TopicDeleterTest {
+    
+    private static final long DRAIN_TIMEOUT_MILLIS = 400;
+    
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private TopicRepository topicRepository;
+    private MessageDispatcher dispatcher;
+    private PubSubService pubSubService;
+    private TopicDeleter deleter;
+    
+    @BeforeEach
+    void setUp() {
+        topicRepository = new TopicRepository(name -> new HeapMessageHistory(100));
+        dispatcher = new MessageDispatcher(
+            new ProtocolCodec(objectMapper),
+            new CompressionPolicy(List.of()),
+            null,
+            new SessionSender(1024),
+            1,
+            1,
+            1,
+            new DispatchWeights(List.of()),
+            new int[]{1, 4, 16}
+        );
+        pubSubService = new PubSubService(topicRepository, new TimeOrderedMessageIdGenerator("test"), dispatcher);
+    }
+    
+    @AfterEach
+    void tearDown() throws Exception {
+        if (deleter != null) {
+            deleter.stop();
+        }
+        dispatcher.stop();
+    }
+    
+    @Test
+    void discardedMessagesAreCountedInTheNotification() throws Exception {
+        startDeleter(TopicDeleter.QueuePolicy.DISCARD);
+        topicRepository.createTopic("orders");
+        RecordingSink sink = subscribe("orders", "sink");
+        List<String> sent = Collections.synchronizedList(new ArrayList<>());
+        pubSubService.subscribe(new Subscription("ws", "orders", session(sent)), null);
+        publish("orders", 3);
+        
+        assertTrue(deleter.delete("orders"));
+        assertFalse(topicRepository.topicExists("orders"));
+        assertFalse(deleter.delete("orders"));
+        
+        // Stopping waits for the teardown to finish
+        deleter.stop();
+        deleter = null;
+        assertEquals(List.of("topic_deleted"), sink.received);
+        assertEquals(1, sent.size());
+        JsonNode info = objectMapper.readTree(sent.get(0));
+        assertEquals(TopicDeleter.DELETED_MESSAGE, info.get("message").asText());
+        assertEquals("orders", info.get("data").get("topic").asText());
+        assertEquals(3, info.get("data").get("discarded").asInt());
+    }
+    
+    @Test
+    void queuedMessagesAreDeliveredBeforeTheNotification() throws Exception {
+        startDeleter(TopicDeleter.QueuePolicy.DRAIN);
+        topicRepository.createTopic("orders");
+        RecordingSink sink = subscribe("orders", "sink");
+        publish("orders", 3);
+        
+        deleter.delete("orders");
+        dispatcher.start();
+        
+        assertTrue(sink.deleted.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("event", "event", "event", "topic_deleted"), sink.received);
+    }
+    
+    @Test
+    void drainTimeoutsOfTopicsDeletedTogetherOverlap() throws Exception {
+        startDeleter(TopicDeleter.QueuePolicy.DRAIN);
+        int topics = 5;
+        List<RecordingSink> sinks = new ArrayList<>();
+        for (int i = 0; i < topics; i++) {
+            topicRepository.createTopic("topic-" + i);
+            sinks.add(subscribe("topic-" + i, "sink-" + i));
+            publish("topic-" + i, 1);
+        }
+        
+        // The dispatcher is not running, so every topic waits out its full drain timeout
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < topics; i++) {
+            deleter.delete("topic-" + i);
+        }
+        for (RecordingSink sink : sinks) {
+            assertTrue(sink.deleted.await(5, TimeUnit.SECONDS));
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue(elapsed >= DRAIN_TIMEOUT_MILLIS, "finished after " + elapsed + " ms");
+        // One after another they would take the sum of their timeouts
+        assertTrue(elapsed < 3 * DRAIN_TIMEOUT_MILLIS, "finished after " + elapsed + " ms");
+    }
+    
+    private void startDeleter(TopicDeleter.QueuePolicy policy) {
+        deleter = new TopicDeleter(topicRepository, pubSubService, dispatcher, new ProtocolCodec(objectMapper),
+            new SessionSender(1024 * 1024), policy, DRAIN_TIMEOUT_MILLIS);
+        deleter.start();
+    }
+    
+    private RecordingSink subscribe(String topicName, String clientId) {
+        RecordingSink sink = new RecordingSink();
+        pubSubService.subscribe(new Subscription(clientId, topicName, sink), null);
+        return sink;
+    }
+    
+    private void publish(String topicName, int count) {
+        for (int i = 0; i < count; i++) {
+            pubSubService.publish(topicName, null, i);
+        }
+    }
+    
+    // A session that records the text frames sent on it
+    private Session session(List<String> sent) {
+        RemoteEndpoint remote = (RemoteEndpoint) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[]{RemoteEndpoint.class}, (proxy, method, args) -> {
+                if (method.getName().equals("sendString")) {
+                    sent.add((String) args[0]);
+                }
+                return null;
+            });
+        return (Session) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[]{Session.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "isOpen":
+                        return true;
+                    case "getRemote":
+                        return remote;
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        return null;
+                }
+            });
+    }
+    
+    private static class RecordingSink implements EventSink {
+        
+        private final List<String> received = Collections.synchronizedList(new ArrayList<>());
+        private final CountDownLatch deleted = new CountDownLatch(1);
+        
+        @Override
+        public boolean isOpen() {
+            return deleted.getCount() > 0;
+        }
+        
+        @Override
+        public void sendEvent(MessageEnvelope envelope, String eventJson) {
+            received.add("event");
+        }
+        
+        @Override
+        public void topicDeleted(String topicName) {
+            received.add("topic_deleted");
+            deleted.countDown();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.plivo.core.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.plivo.models.MessageEnvelope;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LogSegmentTest {
+    
+    private static final int MESSAGES = 500;
+    private static final int INDEX_INTERVAL_BYTES = 256;
+    
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    
+    @TempDir
+    Path directory;
+    
+    @Test
+    void sealedSegmentReopensFromItsIndexFile() throws Exception {
+        LogSegment segment = LogSegment.create(directory, 10, INDEX_INTERVAL_BYTES);
+        appendAll(segment);
+        segment.seal();
+        segment.close();
+        Path index = directory.resolve(String.format("%020d%s", 10, LogSegment.INDEX_SUFFIX));
+        assertTrue(Files.exists(index));
+        
+        LogSegment reopened = LogSegment.open(segment.getPath(), INDEX_INTERVAL_BYTES, true);
+        assertEquals(MESSAGES, reopened.getCount());
+        assertEquals(offsetOf(MESSAGES - 1), reopened.getLastOffset());
+        assertEquals(publishedAtOf(0), reopened.getFirstPublishedAt());
+        assertReadsAll(reopened);
+        reopened.close();
+    }
+    
+    @Test
+    void sealedSegmentWithAStaleIndexIsRescanned() throws Exception {
+        LogSegment segment = LogSegment.create(directory, 10, INDEX_INTERVAL_BYTES);
+        appendAll(segment);
+        segment.seal();
+        segment.close();
+        Path index = directory.resolve(String.format("%020d%s", 10, LogSegment.INDEX_SUFFIX));
+        try (FileChannel channel = FileChannel.open(index, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() / 2);
+        }
+        
+        LogSegment reopened = LogSegment.open(segment.getPath(), INDEX_INTERVAL_BYTES, true);
+        assertEquals(MESSAGES, reopened.getCount());
+        assertReadsAll(reopened);
+        reopened.close();
+    }
+    
+    @Test
+    void segmentBeingWrittenDropsATornTailOnReopen() throws Exception {
+        LogSegment segment = LogSegment.create(directory, 10, INDEX_INTERVAL_BYTES);
+        appendAll(segment);
+        segment.close();
+        long size = Files.size(segment.getPath());
+        // Half of a record, as if the process died while writing it
+        try (FileChannel channel = FileChannel.open(segment.getPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 64, 1, 2, 3, 4, 5, 6}));
+        }
+        
+        LogSegment reopened = LogSegment.open(segment.getPath(), INDEX_INTERVAL_BYTES, false);
+        assertEquals(size, Files.size(segment.getPath()));
+        assertEquals(MESSAGES, reopened.getCount());
+        
+        // Appends continue after the last complete record
+        reopened.append(offsetOf(MESSAGES), publishedAtOf(MESSAGES), frame(MESSAGES));
+        assertEquals(offsetOf(MESSAGES), reopened.getLastOffset());
+        reopened.close();
+    }
+    
+    @Test
+    void seeksByOffsetOrdinalAndTimeThroughTheIndex() throws Exception {
+        LogSegment segment = LogSegment.create(directory, 10, INDEX_INTERVAL_BYTES);
+        appendAll(segment);
+        assertSeeks(segment);
+        
+        // The same seeks through the mapped index of the sealed segment
+        segment.seal();
+        segment.close();
+        LogSegment reopened = LogSegment.open(segment.getPath(), INDEX_INTERVAL_BYTES, true);
+        assertSeeks(reopened);
+        reopened.close();
+    }
+    
+    @Test
+    void seekByTimeFindsTheFirstRecordAtOrAfterItWhenTimestampsAreOutOfOrder() throws Exception {
+        LogSegment segment = LogSegment.create(directory, 0, INDEX_INTERVAL_BYTES);
+        // Published times step back every tenth record, as when publishers' clocks disagree
+        for (int i = 0; i < MESSAGES; i++) {
+            long publishedAt = publishedAtOf(i) - (i % 10 == 9 ? 20 : 0);
+            segment.append(offsetOf(i), publishedAt, frame(i));
+        }
+        
+        for (int i = 0; i < MESSAGES; i += 7) {
+            long time = publishedAtOf(i);
+            int expected = i % 10 == 9 ? i + 1 : i;
+            if (expected < MESSAGES) {
+                assertEquals(offsetOf(expected), readAt(segment, segment.seekTime(time)).getOffset(), "time " + time);
+            }
+        }
+        segment.close();
+    }
+    
+    private void assertSeeks(LogSegment segment) throws Exception {
+        for (int i = 0; i < MESSAGES; i += 13) {
+            assertEquals(offsetOf(i), readAt(segment, segment.seekOffset(offsetOf(i))).getOffset());
+            // Between two records, the next one
+            assertEquals(offsetOf(i + 1), readAt(segment, segment.seekOffset(offsetOf(i) + 1)).getOffset());
+            assertEquals(offsetOf(i), readAt(segment, segment.seekOrdinal(i)).getOffset());
+            assertEquals(offsetOf(i), readAt(segment, segment.seekTime(publishedAtOf(i))).getOffset());
+        }
+        assertEquals(offsetOf(0), readAt(segment, segment.seekOffset(0)).getOffset());
+        assertNull(segment.seekOffset(offsetOf(MESSAGES - 1) + 1));
+        assertNull(segment.seekOrdinal(MESSAGES));
+        assertNull(segment.seekTime(publishedAtOf(MESSAGES)));
+    }
+    
+    private MessageEnvelope readAt(LogSegment segment, LogSegment.Position position) throws Exception {
+        assertNotNull(position);
+        List<MessageEnvelope> messages = new ArrayList<>();
+        segment.read(position, 1, objectMapper, messages);
+        return messages.get(0);
+    }
+    
+    private void appendAll(LogSegment segment) throws Exception {
+        for (int i = 0; i < MESSAGES; i++) {
+            segment.append(offsetOf(i), publishedAtOf(i), frame(i));
+        }
+    }
+    
+    private void assertReadsAll(LogSegment segment) throws Exception {
+        List<MessageEnvelope> messages = new ArrayList<>();
+        segment.read(LogSegment.Position.START, Integer.MAX_VALUE, objectMapper, messages);
+        assertEquals(MESSAGES, messages.size());
+        for (int i = 0; i < MESSAGES; i++) {
+            assertEquals(offsetOf(i), messages.get(i).getOffset());
+            assertEquals("m-" + i, messages.get(i).getId());
+            assertEquals(i, messages.get(i).getPayload());
+        }
+    }
+    
+    private static long offsetOf(int i) {
+        return 10 + i * 10L;
+    }
+    
+    private static long publishedAtOf(int i) {
+        return 1_700_000_000_000L + i;
+    }
+    
+    private static byte[] frame(int i) {
+        return ("{\"type\":\"event\",\"request_id\":null,\"topic\":\"orders\",\"message\":{\"id\":\"m-" + i
+            + "\",\"payload\":" + i + ",\"published_at\":" + publishedAtOf(i) + ",\"offset\":" + offsetOf(i) + "}}")
+            .getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,44 @@
+package com.plivo.core.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.plivo.models.MessageEnvelope;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OffHeapMessageHistoryTest {
+    
+    private final OffHeapMessageHistory history =
+        new OffHeapMessageHistory(100, 2, new SlabPool(4096, 4), new ObjectMapper());
+    
+    @Test
+    void fromTimeFindsMessagesAfterTheClockWentBack() {
+        // The clock steps back after offset 3, so publish times are not sorted in the cold tier
+        long[] publishedAt = {1000, 2000, 3000, 1500, 1600, 4000, 5000, 6000};
+        for (int i = 0; i < publishedAt.length; i++) {
+            history.append(new MessageEnvelope("m" + i, Map.of("n", i), publishedAt[i], i));
+        }
+        
+        List<MessageEnvelope> fromTime = history.fromTime(2500, 100);
+        assertEquals(2, fromTime.get(0).getOffset());
+        assertEquals(6, fromTime.size());
+        
+        assertEquals(5, history.fromTime(3500, 100).get(0).getOffset());
+        assertEquals(0, history.fromTime(7000, 100).size());
+    }
+    
+    @Test
+    void fromOffsetReadsColdAndHotTiers() {
+        for (int i = 0; i < 10; i++) {
+            history.append(new MessageEnvelope("m" + i, Map.of("n", i), 1000L * i, 10L * i));
+        }
+        
+        List<MessageEnvelope> fromOffset = history.fromOffset(35, 3);
+        assertEquals(List.of(40L, 50L, 60L), fromOffset.stream().map(MessageEnvelope::getOffset).collect(Collectors.toList()));
+        assertEquals("m9", history.lastN(1).get(0).getId());
+    }
+}
@@ -0,0 +1,96 @@
+package com.plivo.core.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.plivo.core.repository.TopicRepository;
+import com.plivo.models.MessageEnvelope;
+import com.plivo.models.Topic;
+import com.plivo.models.TopicConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnapshotStoreTest {
+    
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    
+    @TempDir
+    Path directory;
+    
+    @Test
+    void topicsRoundTripThroughASnapshot() throws Exception {
+        TopicRepository source = new TopicRepository();
+        TopicConfig config = new TopicConfig(50, 20, TopicConfig.OverflowPolicy.DROP_OLDEST, 1000L, TopicConfig.Compression.DEFLATE);
+        Topic orders = source.createTopic("orders", config);
+        orders.setCreatedAt(Instant.ofEpochMilli(1_700_000_000_000L));
+        orders.setWatermarks(40, 10);
+        for (int i = 1; i <= 3; i++) {
+            orders.addToHistory(new MessageEnvelope("m-" + i, Map.of("n", i, "text", "caf\u00e9"), 1_700_000_000_000L + i, 100 + i));
+        }
+        orders.restoreCounters(3, 103);
+        source.createTopic("idle");
+        
+        SnapshotStore store = new SnapshotStore(source, objectMapper, directory.resolve("topics.snapshot"), 1000);
+        assertTrue(store.snapshot());
+        // Nothing changed since
+        assertFalse(store.snapshot());
+        
+        TopicRepository target = new TopicRepository();
+        assertEquals(2, new SnapshotStore(target, objectMapper, directory.resolve("topics.snapshot"), 1000).restore());
+        
+        Topic restored = target.getTopic("orders");
+        assertEquals(config, restored.getConfig());
+        assertEquals(Instant.ofEpochMilli(1_700_000_000_000L), restored.getCreatedAt());
+        assertEquals(50, restored.getQueueCapacity());
+        assertEquals(40, restored.getHighWatermark());
+        assertEquals(10, restored.getLowWatermark());
+        assertEquals(3, restored.getMessageCount());
+        assertEquals(103, restored.getLastOffset());
+        
+        List<MessageEnvelope> history = restored.getLastNMessages(10);
+        assertEquals(3, history.size());
+        for (int i = 0; i < 3; i++) {
+            MessageEnvelope envelope = history.get(i);
+            assertEquals("m-" + (i + 1), envelope.getId());
+            assertEquals(Map.of("n", i + 1, "text", "caf\u00e9"), envelope.getPayload());
+            assertEquals(1_700_000_000_001L + i, envelope.getPublishedAt());
+            assertEquals(101 + i, envelope.getOffset());
+        }
+        
+        // A history that was never used is not opened by saving or restoring it
+        assertFalse(source.getTopic("idle").isHistoryOpen());
+        assertFalse(target.getTopic("idle").isHistoryOpen());
+        assertEquals(TopicConfig.defaults(Topic.DEFAULT_QUEUE_CAPACITY), target.getTopic("idle").getConfig());
+    }
+    
+    @Test
+    void corruptSnapshotIsSkipped() throws Exception {
+        TopicRepository source = new TopicRepository();
+        source.createTopic("orders").addToHistory(new MessageEnvelope("m-1", "x", 1, 1));
+        Path path = directory.resolve("topics.snapshot");
+        new SnapshotStore(source, objectMapper, path, 1000).snapshot();
+        
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[bytes.length / 2] ^= 0x01;
+        Files.write(path, bytes);
+        
+        TopicRepository target = new TopicRepository();
+        assertEquals(0, new SnapshotStore(target, objectMapper, path, 1000).restore());
+        assertEquals(0, target.getTopicCount());
+    }
+    
+    @Test
+    void missingSnapshotRestoresNothing() {
+        TopicRepository target = new TopicRepository();
+        assertEquals(0, new SnapshotStore(target, objectMapper, directory.resolve("none.snapshot"), 1000).restore());
+        assertEquals(0, target.getTopicCount());
+    }
+}
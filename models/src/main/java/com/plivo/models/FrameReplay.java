@@ -0,0 +1,29 @@
+package com.plivo.models;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Stored messages read as ready-to-send event frames, without decoding them.
+ * Opened under the topic's lock and sent outside it.
+ */
+@FunctionalInterface
+public interface FrameReplay {
+    
+    /**
+     * Passes each frame to the sink, oldest first.
+     *
+     * @return Frames passed
+     */
+    int sendTo(FrameSink sink) throws IOException;
+    
+    /**
+     * Receives event frames: the UTF-8 JSON text of an event message, possibly in a direct or mapped buffer,
+     * with the offset of its message. The buffer is not reused, so a sink may queue it for an asynchronous write.
+     */
+    @FunctionalInterface
+    interface FrameSink {
+        
+        void accept(long offset, ByteBuffer frame) throws IOException;
+    }
+}
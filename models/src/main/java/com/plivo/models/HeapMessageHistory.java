@@ -0,0 +1,60 @@
+package com.plivo.models;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Message history held on the heap, bounded by a message count.
+ */
+public class HeapMessageHistory implements MessageHistory {
+    
+    private int maxMessages;
+    private final ArrayDeque<MessageEnvelope> messages;
+    
+    public HeapMessageHistory(int maxMessages) {
+        this.maxMessages = maxMessages;
+        this.messages = new ArrayDeque<>(Math.min(maxMessages, 1024));
+    }
+    
+    @Override
+    public void append(MessageEnvelope message) {
+        messages.addLast(message);
+        if (messages.size() > maxMessages) {
+            messages.pollFirst();
+        }
+    }
+    
+    @Override
+    public List<MessageEnvelope> lastN(int n) {
+        int count = Math.max(0, Math.min(n, messages.size()));
+        MessageEnvelope[] result = new MessageEnvelope[count];
+        // Walk back from the newest message so short reads do not touch the whole history
+        Iterator<MessageEnvelope> newestFirst = messages.descendingIterator();
+        for (int i = count - 1; i >= 0; i--) {
+            result[i] = newestFirst.next();
+        }
+        return new ArrayList<>(Arrays.asList(result));
+    }
+    
+    @Override
+    public boolean setMaxMessages(int maxMessages) {
+        this.maxMessages = maxMessages;
+        while (messages.size() > maxMessages) {
+            messages.pollFirst();
+        }
+        return true;
+    }
+    
+    @Override
+    public int size() {
+        return messages.size();
+    }
+    
+    @Override
+    public void clear() {
+        messages.clear();
+    }
+}
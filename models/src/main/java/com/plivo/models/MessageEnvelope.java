@@ -1,5 +1,6 @@
 package com.plivo.models;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 public class MessageEnvelope {
@@ -13,6 +14,17 @@ public class MessageEnvelope {
     @JsonProperty("published_at")
     private long publishedAt;
     
+    @JsonProperty("offset")
+    private long offset;
+    
+    // Queue lane the message is dispatched from; not part of the event sent to subscribers
+    @JsonIgnore
+    private int priority = Topic.DEFAULT_PRIORITY;
+    
+    // Event frame encoded before dispatch, handed to the dispatcher and dropped once fanned out
+    @JsonIgnore
+    private transient volatile String encodedEvent;
+    
     public MessageEnvelope() {}
     
     public MessageEnvelope(String id, Object payload, long publishedAt) {
@@ -21,6 +33,13 @@ public class MessageEnvelope {
         this.publishedAt = publishedAt;
     }
     
+    public MessageEnvelope(String id, Object payload, long publishedAt, long offset) {
+        this.id = id;
+        this.payload = payload;
+        this.publishedAt = publishedAt;
+        this.offset = offset;
+    }
+    
     public String getId() {
         return id;
     }
@@ -44,5 +63,31 @@ public class MessageEnvelope {
     public void setPublishedAt(long publishedAt) {
         this.publishedAt = publishedAt;
     }
+    
+    public long getOffset() {
+        return offset;
+    }
+    
+    public void setOffset(long offset) {
+        this.offset = offset;
+    }
+    
+    @JsonIgnore
+    public int getPriority() {
+        return priority;
+    }
+    
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+    
+    @JsonIgnore
+    public String getEncodedEvent() {
+        return encodedEvent;
+    }
+    
+    public void setEncodedEvent(String encodedEvent) {
+        this.encodedEvent = encodedEvent;
+    }
 }
 
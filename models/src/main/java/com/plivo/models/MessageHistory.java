@@ -0,0 +1,81 @@
+package com.plivo.models;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Retained messages of a topic, oldest first.
+ * Implementations are not thread-safe; {@link Topic} serializes access.
+ */
+public interface MessageHistory {
+    
+    /**
+     * Appends a message, evicting the oldest ones past the retention limit.
+     */
+    void append(MessageEnvelope message);
+    
+    /**
+     * Returns up to the last {@code n} messages, oldest first.
+     */
+    List<MessageEnvelope> lastN(int n);
+    
+    /**
+     * Returns up to {@code limit} messages starting at the first one with an offset at or after {@code offset}, oldest first.
+     */
+    default List<MessageEnvelope> fromOffset(long offset, int limit) {
+        return from(message -> message.getOffset() >= offset, limit);
+    }
+    
+    /**
+     * Returns up to {@code limit} messages starting at the first one published at or after {@code timestamp}
+     * (epoch millis), oldest first.
+     */
+    default List<MessageEnvelope> fromTime(long timestamp, int limit) {
+        return from(message -> message.getPublishedAt() >= timestamp, limit);
+    }
+    
+    /**
+     * Opens a replay of up to {@code limit} stored messages as event frames that are sent without
+     * re-encoding. For {@link ReplayFrom#LAST_N} the value is the number of messages, otherwise the
+     * offset or time to start at.
+     *
+     * @return Null if the history does not store frames, or serves this read from memory anyway
+     */
+    default FrameReplay replayFrames(ReplayFrom from, long value, int limit) {
+        return null;
+    }
+    
+    int size();
+    
+    /**
+     * Changes how many messages are kept, evicting the oldest ones past the new limit.
+     *
+     * @return false if this history's size is fixed by its store
+     */
+    default boolean setMaxMessages(int maxMessages) {
+        return false;
+    }
+    
+    /**
+     * Drops all messages and releases any storage held outside the heap.
+     */
+    void clear();
+    
+    /**
+     * Whether the history survives a restart on its own, so snapshots need not include it.
+     */
+    default boolean isPersistent() {
+        return false;
+    }
+    
+    private List<MessageEnvelope> from(Predicate<MessageEnvelope> start, int limit) {
+        List<MessageEnvelope> messages = lastN(size());
+        for (int i = 0; i < messages.size(); i++) {
+            if (start.test(messages.get(i))) {
+                return new ArrayList<>(messages.subList(i, Math.min(messages.size(), i + Math.max(limit, 0))));
+            }
+        }
+        return new ArrayList<>();
+    }
+}
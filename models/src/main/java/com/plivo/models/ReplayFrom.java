@@ -0,0 +1,13 @@
+package com.plivo.models;
+
+/**
+ * Where a replay of stored history starts.
+ */
+public enum ReplayFrom {
+    // The last n messages
+    LAST_N,
+    // The first message at or after an offset
+    OFFSET,
+    // The first message published at or after a time (epoch millis)
+    TIME
+}
@@ -1,5 +1,6 @@
 package com.plivo.models;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 public class Subscription {
@@ -13,8 +14,21 @@ public class Subscription {
     @JsonProperty("subscribed_at")
     private long subscribedAt;
     
+    @JsonProperty("compression")
+    private String compression;
+    
+    // Events per coalesced frame; 0 or 1 sends every event as its own frame
+    @JsonProperty("batch_size")
+    private int batchSize;
+    
+    @JsonProperty("batch_linger_ms")
+    private long batchLingerMs;
+    
     private transient Object session;
     
+    // Delivery state owned by the dispatcher, such as a pending batch
+    private transient volatile Object deliveryState;
+    
     public Subscription() {}
     
     public Subscription(String clientId, String topic, Object session) {
@@ -48,6 +62,35 @@ public class Subscription {
         this.subscribedAt = subscribedAt;
     }
     
+    public String getCompression() {
+        return compression;
+    }
+    
+    public void setCompression(String compression) {
+        this.compression = compression;
+    }
+    
+    public int getBatchSize() {
+        return batchSize;
+    }
+    
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+    
+    public long getBatchLingerMs() {
+        return batchLingerMs;
+    }
+    
+    public void setBatchLingerMs(long batchLingerMs) {
+        this.batchLingerMs = batchLingerMs;
+    }
+    
+    @JsonIgnore
+    public boolean isBatched() {
+        return batchSize > 1;
+    }
+    
     public Object getSession() {
         return session;
     }
@@ -55,4 +98,13 @@ public class Subscription {
     public void setSession(Object session) {
         this.session = session;
     }
+    
+    @JsonIgnore
+    public Object getDeliveryState() {
+        return deliveryState;
+    }
+    
+    public void setDeliveryState(Object deliveryState) {
+        this.deliveryState = deliveryState;
+    }
 }
@@ -4,17 +4,25 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import java.time.Instant;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 public class Topic {
     
     // Default queue capacity for backpressure handling
-    private static final int DEFAULT_QUEUE_CAPACITY = 1000;
-    private static final int DEFAULT_HISTORY_SIZE = 100;
+    public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+    public static final int DEFAULT_HISTORY_SIZE = 100;
+    // Priority lanes of the queue, 0 (lowest) to PRIORITY_LANES - 1 (highest)
+    public static final int PRIORITY_LANES = 3;
+    public static final int DEFAULT_PRIORITY = 1;
+    // Publishing resumes after a shutdown once the queue falls to this fraction of capacity
+    private static final double DEFAULT_LOW_WATERMARK_RATIO = 0.5;
     
     @JsonProperty
     private String name;
@@ -22,54 +30,108 @@ public class Topic {
     @JsonProperty
     private Instant createdAt;
     
-    private AtomicLong messageCount;
+    // Striped so concurrent publishers and subscribers do not contend on one counter
+    private LongAdder messageCount;
     
-    private AtomicLong subscriberCount;
+    private LongAdder subscriberCount;
+    
+    // Offset of the most recently published message
+    private AtomicLong lastOffset;
+    
+    // Held while a message gets its offset and enters the queue and the history, so both stay in offset order
+    private final Object publishLock = new Object();
     
     private ConcurrentHashMap<String, Subscription> subscribers;
     
-    private List<MessageEnvelope> messageHistory;
+    // Opened on first use, so idle topics hold no history store; guarded by the topic's lock
+    private MessageHistory messageHistory;
+    private Supplier<MessageHistory> historyFactory;
+    
+    // Queue for backpressure handling, one FIFO lane per priority, bounded as a whole; created on the first publish
+    private volatile Queue<MessageEnvelope>[] lanes;
+    
+    // Messages across all lanes
+    private AtomicInteger queuedMessages;
     
-    // Bounded queue for backpressure handling
-    private BlockingQueue<MessageEnvelope> messageQueue;
+    // Weighted round-robin position of the draining thread: the lane being served and the sends it has left
+    private int laneCursor;
+    private int laneCredit;
     
-    private int queueCapacity;
+    private volatile int queueCapacity;
+    
+    // Queue depth at which the topic stops accepting messages
+    private volatile int highWatermark;
+    
+    // Queue depth at or below which a stopped topic may resume
+    private volatile int lowWatermark;
+    
+    // Capacity, history size, overflow policy, TTL and compression; replaced as a whole when changed
+    private volatile TopicConfig config;
     
     // Flag to indicate if topic is accepting messages
     private AtomicBoolean acceptingMessages;
     
+    // Set while a dispatcher drain is queued or running for this topic
+    private AtomicBoolean dispatchScheduled;
+    
+    // Sends the fair dispatch scheduler has credited to this topic; only touched by the dispatch slot holder
+    private long dispatchDeficit;
+    
     public Topic() {
-        this.messageCount = new AtomicLong(0);
-        this.subscriberCount = new AtomicLong(0);
+        this.messageCount = new LongAdder();
+        this.subscriberCount = new LongAdder();
+        this.lastOffset = new AtomicLong(0);
         this.subscribers = new ConcurrentHashMap<>();
-        this.messageHistory = new ArrayList<>();
+        this.historyFactory = () -> new HeapMessageHistory(DEFAULT_HISTORY_SIZE);
         this.queueCapacity = DEFAULT_QUEUE_CAPACITY;
-        this.messageQueue = new LinkedBlockingQueue<>(DEFAULT_QUEUE_CAPACITY);
+        this.queuedMessages = new AtomicInteger();
+        setDefaultWatermarks();
+        this.config = TopicConfig.defaults(this.queueCapacity);
         this.acceptingMessages = new AtomicBoolean(true);
+        this.dispatchScheduled = new AtomicBoolean(false);
     }
     
     public Topic(String name) {
         this.name = name;
         this.createdAt = Instant.now();
-        this.messageCount = new AtomicLong(0);
-        this.subscriberCount = new AtomicLong(0);
+        this.messageCount = new LongAdder();
+        this.subscriberCount = new LongAdder();
+        this.lastOffset = new AtomicLong(0);
         this.subscribers = new ConcurrentHashMap<>();
-        this.messageHistory = new ArrayList<>();
+        this.historyFactory = () -> new HeapMessageHistory(DEFAULT_HISTORY_SIZE);
         this.queueCapacity = DEFAULT_QUEUE_CAPACITY;
-        this.messageQueue = new LinkedBlockingQueue<>(DEFAULT_QUEUE_CAPACITY);
+        this.queuedMessages = new AtomicInteger();
+        setDefaultWatermarks();
+        this.config = TopicConfig.defaults(this.queueCapacity);
         this.acceptingMessages = new AtomicBoolean(true);
+        this.dispatchScheduled = new AtomicBoolean(false);
     }
     
     public Topic(String name, int queueCapacity) {
+        this(name, queueCapacity, new HeapMessageHistory(DEFAULT_HISTORY_SIZE));
+    }
+    
+    public Topic(String name, int queueCapacity, MessageHistory messageHistory) {
+        this(name, queueCapacity, () -> messageHistory);
+    }
+    
+    /**
+     * Creates a topic whose history store is opened by {@code historyFactory} when it is first used.
+     */
+    public Topic(String name, int queueCapacity, Supplier<MessageHistory> historyFactory) {
         this.name = name;
         this.createdAt = Instant.now();
-        this.messageCount = new AtomicLong(0);
-        this.subscriberCount = new AtomicLong(0);
+        this.messageCount = new LongAdder();
+        this.subscriberCount = new LongAdder();
+        this.lastOffset = new AtomicLong(0);
         this.subscribers = new ConcurrentHashMap<>();
-        this.messageHistory = new ArrayList<>();
+        this.historyFactory = historyFactory;
         this.queueCapacity = queueCapacity > 0 ? queueCapacity : DEFAULT_QUEUE_CAPACITY;
-        this.messageQueue = new LinkedBlockingQueue<>(this.queueCapacity);
+        this.queuedMessages = new AtomicInteger();
+        setDefaultWatermarks();
+        this.config = TopicConfig.defaults(this.queueCapacity);
         this.acceptingMessages = new AtomicBoolean(true);
+        this.dispatchScheduled = new AtomicBoolean(false);
     }
     
     public String getName() {
@@ -92,24 +154,52 @@ public class Topic {
     
     @JsonProperty("messageCount")
     public long getMessageCount() {
-        return messageCount.get();
+        return messageCount.sum();
     }
     
     public void incrementMessageCount() {
-        messageCount.incrementAndGet();
+        messageCount.increment();
     }
     
     @JsonProperty("subscriberCount")
     public long getSubscriberCount() {
-        return subscriberCount.get();
+        return subscriberCount.sum();
     }
     
     public void incrementSubscriberCount() {
-        subscriberCount.incrementAndGet();
+        subscriberCount.increment();
     }
     
     public void decrementSubscriberCount() {
-        subscriberCount.decrementAndGet();
+        subscriberCount.decrement();
+    }
+    
+    public long getLastOffset() {
+        return lastOffset.get();
+    }
+    
+    /**
+     * Lock to hold from assigning a message's offset until it is queued and stored.
+     */
+    public Object getPublishLock() {
+        return publishLock;
+    }
+    
+    /**
+     * Advances the offset to the next value that is greater than the previous
+     * offset and at least {@code floor}. Lock-free.
+     */
+    public long advanceOffset(long floor) {
+        return lastOffset.accumulateAndGet(floor, (previous, min) -> Math.max(previous + 1, min));
+    }
+    
+    /**
+     * Restores the message count and offset saved in a snapshot. Only valid before the topic is published to.
+     */
+    public void restoreCounters(long messageCount, long lastOffset) {
+        this.messageCount.reset();
+        this.messageCount.add(messageCount);
+        this.lastOffset.set(lastOffset);
     }
     
     public ConcurrentHashMap<String, Subscription> getSubscribers() {
@@ -117,21 +207,110 @@ public class Topic {
     }
     
     public synchronized void addToHistory(MessageEnvelope message) {
-        messageHistory.add(message);
-        // Keep only last N messages
-        if (messageHistory.size() > DEFAULT_HISTORY_SIZE) {
-            messageHistory.remove(0);
-        }
+        history().append(message);
     }
     
     public synchronized List<MessageEnvelope> getLastNMessages(int n) {
-        int size = messageHistory.size();
-        int fromIndex = Math.max(0, size - n);
-        return new ArrayList<>(messageHistory.subList(fromIndex, size));
+        return history().lastN(n);
+    }
+    
+    public synchronized List<MessageEnvelope> getMessagesFromOffset(long offset, int limit) {
+        return history().fromOffset(offset, limit);
+    }
+    
+    public synchronized List<MessageEnvelope> getMessagesFromTime(long timestamp, int limit) {
+        return history().fromTime(timestamp, limit);
+    }
+    
+    public synchronized FrameReplay replayFrames(ReplayFrom from, long value, int limit) {
+        return history().replayFrames(from, value, limit);
+    }
+    
+    public synchronized boolean isHistoryPersistent() {
+        return history().isPersistent();
+    }
+    
+    /**
+     * Checks whether the topic has been used since it was created or restored: its history
+     * store is open or its queue exists. Idle topics hold neither.
+     */
+    public synchronized boolean isMaterialized() {
+        return messageHistory != null || lanes != null;
+    }
+    
+    public synchronized boolean isHistoryOpen() {
+        return messageHistory != null;
+    }
+    
+    private MessageHistory history() {
+        if (messageHistory == null) {
+            messageHistory = historyFactory.get();
+            historyFactory = null;
+            if (config.getHistorySize() != null) {
+                messageHistory.setMaxMessages(config.getHistorySize());
+            }
+        }
+        return messageHistory;
+    }
+    
+    public TopicConfig getConfig() {
+        return config;
+    }
+    
+    /**
+     * Applies a complete config while the topic runs, keeping its subscribers. Messages already
+     * queued stay when the capacity shrinks; the topic stops accepting until they drain.
+     */
+    public synchronized void applyConfig(TopicConfig config) {
+        if (config.getQueueCapacity() != queueCapacity) {
+            queueCapacity = config.getQueueCapacity();
+            setDefaultWatermarks();
+            if (queuedMessages.get() >= highWatermark) {
+                acceptingMessages.set(false);
+            }
+        }
+        if (messageHistory != null && config.getHistorySize() != null) {
+            messageHistory.setMaxMessages(config.getHistorySize());
+        }
+        this.config = config;
+        if (config.getOverflowPolicy() == TopicConfig.OverflowPolicy.DROP_OLDEST) {
+            acceptingMessages.set(true);
+        } else {
+            resumeAcceptingMessages();
+        }
+    }
+    
+    /**
+     * Applies the fields set in {@code changes} on top of the current config.
+     *
+     * @return The resulting config
+     */
+    public synchronized TopicConfig updateConfig(TopicConfig changes) {
+        applyConfig(config.mergedWith(changes));
+        return config;
     }
     
     /**
-     * Offers a message to the queue (non-blocking).
+     * Checks whether a queued message has outlived the topic's TTL.
+     */
+    public boolean isExpired(MessageEnvelope message, long now) {
+        long ttlMillis = config.getTtlMillis();
+        return ttlMillis > 0 && now - message.getPublishedAt() > ttlMillis;
+    }
+    
+    /**
+     * Drops the history and releases its storage (on topic deletion). A history that was
+     * never used is not created just to be cleared.
+     */
+    public synchronized void clearHistory() {
+        if (messageHistory == null) {
+            return;
+        }
+        messageHistory.clear();
+    }
+    
+    /**
+     * Offers a message to the lane of its priority (non-blocking).
      * Returns true if message was added, false if queue is full.
      */
     public boolean offerMessage(MessageEnvelope message) {
@@ -139,10 +318,21 @@ public class Topic {
             return false;
         }
         
-        boolean added = messageQueue.offer(message);
+        // Reserve a slot first so the lanes together never exceed the capacity
+        int size = queuedMessages.incrementAndGet();
+        boolean added = size <= queueCapacity;
+        boolean dropOldest = config.getOverflowPolicy() == TopicConfig.OverflowPolicy.DROP_OLDEST;
+        if (!added && dropOldest) {
+            added = evictOldest();
+        }
+        if (added) {
+            lanes()[laneOf(message.getPriority())].offer(message);
+        } else {
+            queuedMessages.decrementAndGet();
+        }
         
-        // If queue is full, stop accepting messages
-        if (!added) {
+        // If queue is full or past the high watermark, stop accepting messages
+        if (!dropOldest && (!added || size >= highWatermark)) {
             acceptingMessages.set(false);
         }
         
@@ -150,25 +340,92 @@ public class Topic {
     }
     
     /**
-     * Polls a message from the queue (non-blocking).
+     * Drops the oldest message of the lowest non-empty priority lane to make room for a new one.
+     * The dropped message's slot is handed to the new message, so the count does not change.
+     */
+    private boolean evictOldest() {
+        Queue<MessageEnvelope>[] lanes = this.lanes;
+        if (lanes == null) {
+            return false;
+        }
+        for (int lane = 0; lane < PRIORITY_LANES; lane++) {
+            if (lanes[lane].poll() != null) {
+                // Release the dropped message's slot; the one reserved for the new message stays
+                queuedMessages.decrementAndGet();
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Polls the highest-priority message (non-blocking).
      * Returns null if queue is empty.
      */
     public MessageEnvelope pollMessage() {
-        return messageQueue.poll();
+        Queue<MessageEnvelope>[] lanes = this.lanes;
+        if (lanes == null) {
+            return null;
+        }
+        for (int lane = PRIORITY_LANES - 1; lane >= 0; lane--) {
+            MessageEnvelope message = lanes[lane].poll();
+            if (message != null) {
+                queuedMessages.decrementAndGet();
+                return message;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Polls the next message by weighted round robin over the lanes, highest first: a lane
+     * sends up to its weight in messages before the turn passes to the next lower one, so
+     * low lanes keep moving during a burst of urgent messages. Order within a lane is kept.
+     * Only the thread holding the dispatch slot may call this.
+     *
+     * @param laneWeights Sends per turn, indexed by priority
+     */
+    public MessageEnvelope pollMessage(int[] laneWeights) {
+        if (queuedMessages.get() == 0) {
+            return null;
+        }
+        Queue<MessageEnvelope>[] lanes = lanes();
+        for (int turns = 0; turns <= PRIORITY_LANES; turns++) {
+            if (laneCredit > 0) {
+                MessageEnvelope message = lanes[laneCursor].poll();
+                if (message != null) {
+                    laneCredit--;
+                    queuedMessages.decrementAndGet();
+                    return message;
+                }
+            }
+            // Out of credit or empty: the next lower lane's turn, wrapping to the highest
+            laneCursor = laneCursor == 0 ? PRIORITY_LANES - 1 : laneCursor - 1;
+            laneCredit = laneWeights[laneCursor];
+        }
+        return null;
     }
     
     /**
      * Checks if the message queue is full.
      */
     public boolean isQueueFull() {
-        return messageQueue.remainingCapacity() == 0;
+        return queuedMessages.get() >= queueCapacity;
     }
     
     /**
      * Gets the current queue size.
      */
     public int getQueueSize() {
-        return messageQueue.size();
+        return queuedMessages.get();
+    }
+    
+    /**
+     * Gets the number of messages waiting in one priority lane.
+     */
+    public int getLaneSize(int priority) {
+        Queue<MessageEnvelope>[] lanes = this.lanes;
+        return lanes != null ? lanes[laneOf(priority)].size() : 0;
     }
     
     /**
@@ -193,20 +450,91 @@ public class Topic {
     }
     
     /**
-     * Resumes accepting messages (if queue has space).
+     * Resumes accepting messages if the queue has drained to the low watermark.
+     * Returns true if this call switched the topic back to accepting.
      */
-    public void resumeAcceptingMessages() {
-        if (!isQueueFull()) {
-            acceptingMessages.set(true);
+    public boolean resumeAcceptingMessages() {
+        if (queuedMessages.get() <= lowWatermark) {
+            return acceptingMessages.compareAndSet(false, true);
         }
+        return false;
+    }
+    
+    public int getHighWatermark() {
+        return highWatermark;
+    }
+    
+    public int getLowWatermark() {
+        return lowWatermark;
+    }
+    
+    /**
+     * Sets the queue depths at which the topic stops and resumes accepting messages.
+     * Keeping them apart prevents the topic from flapping around a single threshold.
+     */
+    public void setWatermarks(int highWatermark, int lowWatermark) {
+        this.highWatermark = Math.min(Math.max(highWatermark, 1), queueCapacity);
+        this.lowWatermark = Math.min(Math.max(lowWatermark, 0), this.highWatermark - 1);
+    }
+    
+    @SuppressWarnings("unchecked")
+    private Queue<MessageEnvelope>[] lanes() {
+        Queue<MessageEnvelope>[] current = lanes;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (lanes == null) {
+                Queue<MessageEnvelope>[] created = new Queue[PRIORITY_LANES];
+                for (int lane = 0; lane < PRIORITY_LANES; lane++) {
+                    created[lane] = new ConcurrentLinkedQueue<>();
+                }
+                lanes = created;
+            }
+            return lanes;
+        }
+    }
+    
+    private static int laneOf(int priority) {
+        return Math.min(Math.max(priority, 0), PRIORITY_LANES - 1);
+    }
+    
+    private void setDefaultWatermarks() {
+        setWatermarks(queueCapacity, (int) (queueCapacity * DEFAULT_LOW_WATERMARK_RATIO));
     }
     
     /**
-     * Drains messages from queue for graceful shutdown.
+     * Drains messages from queue for graceful shutdown, highest priority first.
      */
     public List<MessageEnvelope> drainQueue() {
         List<MessageEnvelope> drained = new ArrayList<>();
-        messageQueue.drainTo(drained);
+        MessageEnvelope message;
+        while ((message = pollMessage()) != null) {
+            drained.add(message);
+        }
         return drained;
     }
+    
+    /**
+     * Claims the dispatch slot for this topic.
+     * Returns true if the caller should schedule a drain, false if one is already pending.
+     */
+    public boolean tryScheduleDispatch() {
+        return dispatchScheduled.compareAndSet(false, true);
+    }
+    
+    /**
+     * Releases the dispatch slot after a drain finishes.
+     */
+    public void completeDispatch() {
+        dispatchScheduled.set(false);
+    }
+    
+    public long getDispatchDeficit() {
+        return dispatchDeficit;
+    }
+    
+    public void setDispatchDeficit(long dispatchDeficit) {
+        this.dispatchDeficit = dispatchDeficit;
+    }
 }
@@ -0,0 +1,158 @@
+package com.plivo.models;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.Min;
+
+import java.util.Objects;
+
+/**
+ * Settings of one topic, chosen when it is created and changeable while it runs. As a
+ * request, fields left out keep their current value; a topic's own config always has
+ * every field set except {@code history_size}, which is left to the history store when
+ * unset.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TopicConfig {
+    
+    /**
+     * What a publish does when the topic's queue is full.
+     */
+    public enum OverflowPolicy {
+        // The publish is rejected and the topic stops accepting until the queue drains
+        @JsonProperty("reject")
+        REJECT,
+        // The oldest queued message of the lowest priority is dropped to make room
+        @JsonProperty("drop_oldest")
+        DROP_OLDEST
+    }
+    
+    /**
+     * Which events of the topic are deflated for subscribers that asked for compression.
+     */
+    public enum Compression {
+        // As decided by the server's compression rules
+        @JsonProperty("auto")
+        AUTO,
+        // Never
+        @JsonProperty("none")
+        NONE,
+        // Always, with the matching rule's settings or the defaults
+        @JsonProperty("deflate")
+        DEFLATE
+    }
+    
+    @Min(1)
+    @JsonProperty("queue_capacity")
+    private Integer queueCapacity;
+    
+    @Min(1)
+    @JsonProperty("history_size")
+    private Integer historySize;
+    
+    @JsonProperty("overflow_policy")
+    private OverflowPolicy overflowPolicy;
+    
+    // Queued messages older than this are dropped instead of delivered; 0 keeps them
+    @Min(0)
+    @JsonProperty("ttl_ms")
+    private Long ttlMillis;
+    
+    @JsonProperty("compression")
+    private Compression compression;
+    
+    public TopicConfig() {}
+    
+    public TopicConfig(Integer queueCapacity, Integer historySize, OverflowPolicy overflowPolicy, Long ttlMillis,
+                       Compression compression) {
+        this.queueCapacity = queueCapacity;
+        this.historySize = historySize;
+        this.overflowPolicy = overflowPolicy;
+        this.ttlMillis = ttlMillis;
+        this.compression = compression;
+    }
+    
+    /**
+     * The config of a topic created without one.
+     */
+    public static TopicConfig defaults(int queueCapacity) {
+        return new TopicConfig(queueCapacity, null, OverflowPolicy.REJECT, 0L, Compression.AUTO);
+    }
+    
+    /**
+     * Returns a copy with the fields set in {@code changes} replaced.
+     */
+    public TopicConfig mergedWith(TopicConfig changes) {
+        if (changes == null) {
+            return this;
+        }
+        return new TopicConfig(
+            changes.queueCapacity != null ? changes.queueCapacity : queueCapacity,
+            changes.historySize != null ? changes.historySize : historySize,
+            changes.overflowPolicy != null ? changes.overflowPolicy : overflowPolicy,
+            changes.ttlMillis != null ? changes.ttlMillis : ttlMillis,
+            changes.compression != null ? changes.compression : compression
+        );
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TopicConfig)) {
+            return false;
+        }
+        TopicConfig that = (TopicConfig) o;
+        return Objects.equals(queueCapacity, that.queueCapacity)
+            && Objects.equals(historySize, that.historySize)
+            && overflowPolicy == that.overflowPolicy
+            && Objects.equals(ttlMillis, that.ttlMillis)
+            && compression == that.compression;
+    }
+    
+    @Override
+    public int hashCode() {
+        return Objects.hash(queueCapacity, historySize, overflowPolicy, ttlMillis, compression);
+    }
+    
+    public Integer getQueueCapacity() {
+        return queueCapacity;
+    }
+    
+    public void setQueueCapacity(Integer queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+    
+    public Integer getHistorySize() {
+        return historySize;
+    }
+    
+    public void setHistorySize(Integer historySize) {
+        this.historySize = historySize;
+    }
+    
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+    
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+    
+    public Long getTtlMillis() {
+        return ttlMillis;
+    }
+    
+    public void setTtlMillis(Long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+    
+    public Compression getCompression() {
+        return compression;
+    }
+    
+    public void setCompression(Compression compression) {
+        this.compression = compression;
+    }
+}
@@ -0,0 +1,32 @@
+package com.plivo.models;
+
+/**
+ * Topic name pattern used by per-topic configuration rules: an exact name, a
+ * prefix ending in {@code *}, or {@code *} for all topics.
+ */
+public final class TopicPattern {
+    
+    private static final String WILDCARD = "*";
+    
+    private final String pattern;
+    // Name prefix a wildcard pattern matches, or null for an exact name
+    private final String prefix;
+    
+    public TopicPattern(String pattern) {
+        this.pattern = pattern;
+        this.prefix = pattern.endsWith(WILDCARD) ? pattern.substring(0, pattern.length() - 1) : null;
+    }
+    
+    public boolean matches(String topic) {
+        return prefix != null ? topic.startsWith(prefix) : pattern.equals(topic);
+    }
+    
+    public String getPattern() {
+        return pattern;
+    }
+    
+    @Override
+    public String toString() {
+        return pattern;
+    }
+}
@@ -0,0 +1,308 @@
+package com.plivo.models.cluster;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Frame exchanged between broker nodes on the inter-node channel.
+ * One flat shape is used for every operation; fields that do not apply are omitted.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ClusterMessage {
+    
+    // Sent on connect with the sender's topics, its recent deletions, the topics it leads and the topics it has subscribers for
+    public static final String HELLO = "hello";
+    // Carry created_at and deleted_at, so a delete is only undone by a topic created after it
+    public static final String TOPIC_CREATED = "topic_created";
+    public static final String TOPIC_DELETED = "topic_deleted";
+    // Whether the sender has local subscribers for a topic owned by the receiver
+    public static final String INTEREST = "interest";
+    // A publish forwarded to the topic owner, answered with PUBLISH_RESULT
+    public static final String PUBLISH = "publish";
+    public static final String PUBLISH_RESULT = "publish_result";
+    // A message published on the owner, delivered once to each interested node
+    public static final String EVENT = "event";
+    // A batch of log entries sent by a topic leader to a follower, answered with REPLICATE_ACK
+    public static final String REPLICATE = "replicate";
+    public static final String REPLICATE_ACK = "replicate_ack";
+    // Sent by a follower for entries whose leader epoch is older than one it has seen
+    public static final String STALE_EPOCH = "stale_epoch";
+    // Announces that the sender leads a topic from a new epoch
+    public static final String LEADER = "leader";
+    // A follower's request for the leader's log of a topic from an offset, answered with one CATCH_UP page
+    public static final String FETCH = "fetch";
+    public static final String CATCH_UP = "catch_up";
+    
+    @JsonProperty("op")
+    private String op;
+    
+    @JsonProperty("node")
+    private String node;
+    
+    @JsonProperty("topic")
+    private String topic;
+    
+    // Topics of a HELLO with their creation times (epoch millis)
+    @JsonProperty("topics")
+    private Map<String, Long> topics;
+    
+    // Topics the sender deleted recently, with their deletion times (epoch millis)
+    @JsonProperty("deleted_topics")
+    private Map<String, Long> deletedTopics;
+    
+    // Topics of a HELLO the sender leads, with their leader epochs
+    @JsonProperty("leader_epochs")
+    private Map<String, Long> leaderEpochs;
+    
+    @JsonProperty("interested_topics")
+    private List<String> interestedTopics;
+    
+    @JsonProperty("interested")
+    private Boolean interested;
+    
+    @JsonProperty("correlation_id")
+    private Long correlationId;
+    
+    @JsonProperty("message_id")
+    private String messageId;
+    
+    @JsonProperty("payload")
+    private Object payload;
+    
+    @JsonProperty("published_at")
+    private Long publishedAt;
+    
+    @JsonProperty("created_at")
+    private Long createdAt;
+    
+    @JsonProperty("deleted_at")
+    private Long deletedAt;
+    
+    @JsonProperty("offset")
+    private Long offset;
+    
+    // Queue lane of a PUBLISH or EVENT
+    @JsonProperty("priority")
+    private Integer priority;
+    
+    // Sequence number of a REPLICATE batch on its leader-to-follower stream
+    @JsonProperty("batch_id")
+    private Long batchId;
+    
+    // Leader epoch of a log entry, LEADER or STALE_EPOCH; a higher epoch fences writes from older leaders
+    @JsonProperty("epoch")
+    private Long epoch;
+    
+    // Node that leads the topic of a STALE_EPOCH from its epoch
+    @JsonProperty("leader")
+    private String leader;
+    
+    // Entries of a REPLICATE batch or CATCH_UP page, each carrying topic, message_id, payload, published_at, offset and epoch
+    @JsonProperty("entries")
+    private List<ClusterMessage> entries;
+    
+    // Whether the leader has more of the log after a CATCH_UP page, to be fetched from its offset
+    @JsonProperty("more")
+    private Boolean more;
+    
+    // Error code of a failed PUBLISH_RESULT, as sent to clients
+    @JsonProperty("code")
+    private String code;
+    
+    @JsonProperty("error")
+    private String error;
+    
+    public ClusterMessage() {}
+    
+    public ClusterMessage(String op, String node) {
+        this.op = op;
+        this.node = node;
+    }
+    
+    public String getOp() {
+        return op;
+    }
+    
+    public void setOp(String op) {
+        this.op = op;
+    }
+    
+    public String getNode() {
+        return node;
+    }
+    
+    public void setNode(String node) {
+        this.node = node;
+    }
+    
+    public String getTopic() {
+        return topic;
+    }
+    
+    public void setTopic(String topic) {
+        this.topic = topic;
+    }
+    
+    public Map<String, Long> getTopics() {
+        return topics;
+    }
+    
+    public void setTopics(Map<String, Long> topics) {
+        this.topics = topics;
+    }
+    
+    public Map<String, Long> getDeletedTopics() {
+        return deletedTopics;
+    }
+    
+    public void setDeletedTopics(Map<String, Long> deletedTopics) {
+        this.deletedTopics = deletedTopics;
+    }
+    
+    public Map<String, Long> getLeaderEpochs() {
+        return leaderEpochs;
+    }
+    
+    public void setLeaderEpochs(Map<String, Long> leaderEpochs) {
+        this.leaderEpochs = leaderEpochs;
+    }
+    
+    public List<String> getInterestedTopics() {
+        return interestedTopics;
+    }
+    
+    public void setInterestedTopics(List<String> interestedTopics) {
+        this.interestedTopics = interestedTopics;
+    }
+    
+    public Boolean getInterested() {
+        return interested;
+    }
+    
+    public void setInterested(Boolean interested) {
+        this.interested = interested;
+    }
+    
+    public Long getCorrelationId() {
+        return correlationId;
+    }
+    
+    public void setCorrelationId(Long correlationId) {
+        this.correlationId = correlationId;
+    }
+    
+    public String getMessageId() {
+        return messageId;
+    }
+    
+    public void setMessageId(String messageId) {
+        this.messageId = messageId;
+    }
+    
+    public Object getPayload() {
+        return payload;
+    }
+    
+    public void setPayload(Object payload) {
+        this.payload = payload;
+    }
+    
+    public Long getPublishedAt() {
+        return publishedAt;
+    }
+    
+    public void setPublishedAt(Long publishedAt) {
+        this.publishedAt = publishedAt;
+    }
+    
+    public Long getCreatedAt() {
+        return createdAt;
+    }
+    
+    public void setCreatedAt(Long createdAt) {
+        this.createdAt = createdAt;
+    }
+    
+    public Long getDeletedAt() {
+        return deletedAt;
+    }
+    
+    public void setDeletedAt(Long deletedAt) {
+        this.deletedAt = deletedAt;
+    }
+    
+    public Long getOffset() {
+        return offset;
+    }
+    
+    public void setOffset(Long offset) {
+        this.offset = offset;
+    }
+    
+    public Integer getPriority() {
+        return priority;
+    }
+    
+    public void setPriority(Integer priority) {
+        this.priority = priority;
+    }
+    
+    public Long getBatchId() {
+        return batchId;
+    }
+    
+    public void setBatchId(Long batchId) {
+        this.batchId = batchId;
+    }
+    
+    public Long getEpoch() {
+        return epoch;
+    }
+    
+    public void setEpoch(Long epoch) {
+        this.epoch = epoch;
+    }
+    
+    public String getLeader() {
+        return leader;
+    }
+    
+    public void setLeader(String leader) {
+        this.leader = leader;
+    }
+    
+    public List<ClusterMessage> getEntries() {
+        return entries;
+    }
+    
+    public void setEntries(List<ClusterMessage> entries) {
+        this.entries = entries;
+    }
+    
+    public Boolean getMore() {
+        return more;
+    }
+    
+    public void setMore(Boolean more) {
+        this.more = more;
+    }
+    
+    public String getCode() {
+        return code;
+    }
+    
+    public void setCode(String code) {
+        this.code = code;
+    }
+    
+    public String getError() {
+        return error;
+    }
+    
+    public void setError(String error) {
+        this.error = error;
+    }
+}
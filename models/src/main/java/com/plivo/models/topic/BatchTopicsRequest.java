@@ -0,0 +1,42 @@
+package com.plivo.models.http;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.plivo.models.TopicConfig;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+
+import java.util.List;
+
+public class BatchTopicsRequest {
+    
+    @NotEmpty(message = "Topic names are required")
+    @JsonProperty
+    private List<String> names;
+    
+    // Settings of created topics that differ from the defaults, or null for none; ignored by deletes
+    @Valid
+    @JsonProperty
+    private TopicConfig config;
+    
+    public BatchTopicsRequest() {}
+    
+    public BatchTopicsRequest(List<String> names) {
+        this.names = names;
+    }
+    
+    public List<String> getNames() {
+        return names;
+    }
+    
+    public void setNames(List<String> names) {
+        this.names = names;
+    }
+    
+    public TopicConfig getConfig() {
+        return config;
+    }
+    
+    public void setConfig(TopicConfig config) {
+        this.config = config;
+    }
+}
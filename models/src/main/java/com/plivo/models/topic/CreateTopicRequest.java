@@ -1,16 +1,26 @@
 package com.plivo.models.http;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.plivo.models.TopicConfig;
+import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.Pattern;
 
 public class CreateTopicRequest {
     
+    public static final String NAME_PATTERN = "^[a-zA-Z0-9_-]+$";
+    public static final String NAME_PATTERN_MESSAGE = "Topic name must contain only alphanumeric characters, hyphens, and underscores";
+    
     @NotEmpty(message = "Topic name is required")
-    @Pattern(regexp = "^[a-zA-Z0-9_-]+$", message = "Topic name must contain only alphanumeric characters, hyphens, and underscores")
+    @Pattern(regexp = NAME_PATTERN, message = NAME_PATTERN_MESSAGE)
     @JsonProperty
     private String name;
     
+    // Settings that differ from the defaults, or null for none
+    @Valid
+    @JsonProperty
+    private TopicConfig config;
+    
     public CreateTopicRequest() {}
     
     public CreateTopicRequest(String name) {
@@ -24,4 +34,12 @@ public class CreateTopicRequest {
     public void setName(String name) {
         this.name = name;
     }
+    
+    public TopicConfig getConfig() {
+        return config;
+    }
+    
+    public void setConfig(TopicConfig config) {
+        this.config = config;
+    }
 }
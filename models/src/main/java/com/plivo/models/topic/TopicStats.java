@@ -10,6 +10,10 @@ public class TopicStats {
     @JsonProperty
     private long subscribers;
     
+    // Publish rate over the last stats refresh interval
+    @JsonProperty("messages_per_second")
+    private double messagesPerSecond;
+    
     public TopicStats() {}
     
     public TopicStats(long messages, long subscribers) {
@@ -17,6 +21,12 @@ public class TopicStats {
         this.subscribers = subscribers;
     }
     
+    public TopicStats(long messages, long subscribers, double messagesPerSecond) {
+        this.messages = messages;
+        this.subscribers = subscribers;
+        this.messagesPerSecond = messagesPerSecond;
+    }
+    
     public long getMessages() {
         return messages;
     }
@@ -32,5 +42,13 @@ public class TopicStats {
     public void setSubscribers(long subscribers) {
         this.subscribers = subscribers;
     }
+    
+    public double getMessagesPerSecond() {
+        return messagesPerSecond;
+    }
+    
+    public void setMessagesPerSecond(double messagesPerSecond) {
+        this.messagesPerSecond = messagesPerSecond;
+    }
 }
 
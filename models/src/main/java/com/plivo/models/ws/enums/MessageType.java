@@ -11,6 +11,8 @@ public enum MessageType {
     PONG("pong"),
     INFO("info");
     
+    private static final MessageType[] VALUES = values();
+    
     private final String value;
     
     MessageType(String value) {
@@ -25,4 +27,20 @@ public enum MessageType {
     public String toString() {
         return value;
     }
+    
+    /**
+     * Looks up a message type by its wire value, ignoring case.
+     * Returns null if the value is unknown.
+     */
+    public static MessageType fromValue(String value) {
+        if (value == null) {
+            return null;
+        }
+        for (MessageType type : VALUES) {
+            if (type.value.equalsIgnoreCase(value)) {
+                return type;
+            }
+        }
+        return null;
+    }
 }
@@ -44,6 +44,14 @@ public abstract class ClientMessage {
         this.requestId = requestId;
     }
     
+    /**
+     * Clears the request fields so the instance can be reused for the next frame.
+     * Subclasses must call super and clear their own fields.
+     */
+    public void reset() {
+        this.requestId = null;
+    }
+    
     /**
      * Accept method for visitor pattern.
      * Subclasses must implement this to call the appropriate visit method.
@@ -44,6 +44,13 @@ public class PublishRequest extends ClientMessage {
         this.message = message;
     }
     
+    @Override
+    public void reset() {
+        super.reset();
+        this.topic = null;
+        this.message = null;
+    }
+    
     @Override
     public void accept(ClientMessageVisitor visitor) {
         visitor.visit(this);
@@ -58,6 +65,10 @@ public class PublishRequest extends ClientMessage {
         @NotNull(message = "Payload cannot be null")
         private Object payload;
         
+        // Queue lane from 0 (bulk) to 2 (urgent); 1 when absent
+        @JsonProperty("priority")
+        private Integer priority;
+        
         public Message() {}
         
         public Message(String id, Object payload) {
@@ -80,5 +91,13 @@ public class PublishRequest extends ClientMessage {
         public void setPayload(Object payload) {
             this.payload = payload;
         }
+        
+        public Integer getPriority() {
+            return priority;
+        }
+        
+        public void setPriority(Integer priority) {
+            this.priority = priority;
+        }
     }
 }
@@ -17,6 +17,26 @@ public class SubscribeRequest extends ClientMessage {
     @JsonProperty("last_n")
     private Integer lastN;
     
+    // Replay history from this offset onwards
+    @JsonProperty("from_offset")
+    private Long fromOffset;
+    
+    // Replay history published at or after this time (epoch millis)
+    @JsonProperty("from_time")
+    private Long fromTime;
+    
+    // Opt-in to compressed event frames, e.g. "deflate"
+    @JsonProperty("compression")
+    private String compression;
+    
+    // Opt-in to coalesced delivery: up to this many events per array frame
+    @JsonProperty("batch_size")
+    private Integer batchSize;
+    
+    // How long a partial batch may wait for more events before it is sent
+    @JsonProperty("batch_linger_ms")
+    private Long batchLingerMs;
+    
     public SubscribeRequest() {
         setType(MessageType.SUBSCRIBE);
     }
@@ -60,6 +80,59 @@ public class SubscribeRequest extends ClientMessage {
         this.lastN = lastN;
     }
     
+    public Long getFromOffset() {
+        return fromOffset;
+    }
+    
+    public void setFromOffset(Long fromOffset) {
+        this.fromOffset = fromOffset;
+    }
+    
+    public Long getFromTime() {
+        return fromTime;
+    }
+    
+    public void setFromTime(Long fromTime) {
+        this.fromTime = fromTime;
+    }
+    
+    public String getCompression() {
+        return compression;
+    }
+    
+    public void setCompression(String compression) {
+        this.compression = compression;
+    }
+    
+    public Integer getBatchSize() {
+        return batchSize;
+    }
+    
+    public void setBatchSize(Integer batchSize) {
+        this.batchSize = batchSize;
+    }
+    
+    public Long getBatchLingerMs() {
+        return batchLingerMs;
+    }
+    
+    public void setBatchLingerMs(Long batchLingerMs) {
+        this.batchLingerMs = batchLingerMs;
+    }
+    
+    @Override
+    public void reset() {
+        super.reset();
+        this.topic = null;
+        this.clientId = null;
+        this.lastN = null;
+        this.fromOffset = null;
+        this.fromTime = null;
+        this.compression = null;
+        this.batchSize = null;
+        this.batchLingerMs = null;
+    }
+    
     @Override
     public void accept(ClientMessageVisitor visitor) {
         visitor.visit(this);
@@ -41,6 +41,13 @@ public class UnsubscribeRequest extends ClientMessage {
         this.clientId = clientId;
     }
     
+    @Override
+    public void reset() {
+        super.reset();
+        this.topic = null;
+        this.clientId = null;
+    }
+    
     @Override
     public void accept(ClientMessageVisitor visitor) {
         visitor.visit(this);
@@ -48,6 +48,9 @@ public class EventResponse extends ServerMessage {
         @JsonProperty("published_at")
         private long publishedAt;
         
+        @JsonProperty("offset")
+        private long offset;
+        
         public MessageData() {}
         
         public MessageData(String id, Object payload, long publishedAt) {
@@ -56,6 +59,13 @@ public class EventResponse extends ServerMessage {
             this.publishedAt = publishedAt;
         }
         
+        public MessageData(String id, Object payload, long publishedAt, long offset) {
+            this.id = id;
+            this.payload = payload;
+            this.publishedAt = publishedAt;
+            this.offset = offset;
+        }
+        
         public String getId() {
             return id;
         }
@@ -79,5 +89,13 @@ public class EventResponse extends ServerMessage {
         public void setPublishedAt(long publishedAt) {
             this.publishedAt = publishedAt;
         }
+        
+        public long getOffset() {
+            return offset;
+        }
+        
+        public void setOffset(long offset) {
+            this.offset = offset;
+        }
     }
 }
@@ -0,0 +1,96 @@
+package com.plivo.models;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TopicTest {
+    
+    private static final int[] LANE_WEIGHTS = {1, 4, 16};
+    
+    @Test
+    void lanesAreServedByWeightHighestFirst() {
+        Topic topic = new Topic("orders", 1000);
+        offer(topic, 0, 50);
+        offer(topic, 1, 50);
+        offer(topic, 2, 50);
+        
+        // One round: 16 urgent, 4 normal, 1 bulk
+        int[] served = new int[Topic.PRIORITY_LANES];
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < 21; i++) {
+            int priority = topic.pollMessage(LANE_WEIGHTS).getPriority();
+            served[priority]++;
+            order.add(priority);
+        }
+        assertEquals(1, served[0]);
+        assertEquals(4, served[1]);
+        assertEquals(16, served[2]);
+        assertEquals(2, order.get(0));
+        assertEquals(0, order.get(20));
+    }
+    
+    @Test
+    void lowerLanesKeepMovingDuringAnUrgentBurst() {
+        Topic topic = new Topic("orders", 1000);
+        offer(topic, 0, 10);
+        offer(topic, 2, 500);
+        
+        int bulk = 0;
+        for (int i = 0; i < 170; i++) {
+            if (topic.pollMessage(LANE_WEIGHTS).getPriority() == 0) {
+                bulk++;
+            }
+        }
+        // Ten rounds of 16 urgent and 1 bulk; the empty normal lane passes its turn
+        assertEquals(10, bulk);
+    }
+    
+    @Test
+    void orderIsKeptWithinALaneAndEveryMessageIsPolledOnce() {
+        Topic topic = new Topic("orders", 1000);
+        offer(topic, 0, 30);
+        offer(topic, 1, 30);
+        offer(topic, 2, 30);
+        
+        long[] lastOffset = {-1, -1, -1};
+        for (int i = 0; i < 90; i++) {
+            MessageEnvelope message = topic.pollMessage(LANE_WEIGHTS);
+            int priority = message.getPriority();
+            assertTrue(message.getOffset() > lastOffset[priority]);
+            lastOffset[priority] = message.getOffset();
+        }
+        assertNull(topic.pollMessage(LANE_WEIGHTS));
+        assertEquals(0, topic.getQueueSize());
+    }
+    
+    @Test
+    void clearingAnUnusedHistoryDoesNotOpenIt() {
+        AtomicInteger opened = new AtomicInteger();
+        Topic topic = new Topic("orders", 1000, () -> {
+            opened.incrementAndGet();
+            return new HeapMessageHistory(10);
+        });
+        topic.clearHistory();
+        assertEquals(0, opened.get());
+        
+        topic.addToHistory(new MessageEnvelope("m", "x", System.currentTimeMillis(), 1));
+        topic.clearHistory();
+        assertEquals(1, opened.get());
+        assertTrue(topic.getLastNMessages(10).isEmpty());
+    }
+    
+    private static void offer(Topic topic, int priority, int count) {
+        for (int i = 0; i < count; i++) {
+            MessageEnvelope message = new MessageEnvelope("m-" + priority + "-" + i, i, System.currentTimeMillis(), i);
+            message.setPriority(priority);
+            topic.offerMessage(message);
+        }
+    }
+}
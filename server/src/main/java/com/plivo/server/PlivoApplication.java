@@ -1,22 +1,64 @@
 package com.plivo.server;
 
+import com.plivo.core.cluster.ClusterNode;
+import com.plivo.core.cluster.ClusterService;
+import com.plivo.core.cluster.ReplicationManager;
+import com.plivo.core.codec.CompressionPolicy;
+import com.plivo.core.codec.ProtocolCodec;
 import com.plivo.core.repository.TopicRepository;
+import com.plivo.core.service.BackpressureWatchdog;
+import com.plivo.core.service.ConnectionReaper;
+import com.plivo.core.service.DispatchWeights;
+import com.plivo.core.service.EventBatcher;
+import com.plivo.core.service.FlowController;
+import com.plivo.core.service.MessageDispatcher;
+import com.plivo.core.service.MessageIdGenerator;
 import com.plivo.core.service.PubSubService;
+import com.plivo.core.service.RateLimiter;
+import com.plivo.core.service.SessionSender;
+import com.plivo.core.service.StatsAggregator;
+import com.plivo.core.service.TimeOrderedMessageIdGenerator;
+import com.plivo.core.service.TopicDeleter;
+import com.plivo.models.HeapMessageHistory;
+import com.plivo.models.MessageHistory;
+import com.plivo.core.storage.OffHeapMessageHistory;
+import com.plivo.core.storage.RetentionPolicy;
+import com.plivo.core.storage.SlabPool;
+import com.plivo.core.storage.SnapshotStore;
+import com.plivo.core.storage.TieredStorage;
+import com.plivo.server.config.ClusterConfiguration;
+import com.plivo.server.config.CompressionConfiguration;
+import com.plivo.server.config.DispatcherConfiguration;
+import com.plivo.server.config.HeartbeatConfiguration;
+import com.plivo.server.config.HistoryConfiguration;
+import com.plivo.server.config.PublishLimitConfiguration;
+import com.plivo.server.config.RateLimitConfiguration;
 import com.plivo.server.health.ApplicationHealthCheck;
+import com.plivo.server.resources.EventFeeds;
 import com.plivo.server.resources.HealthResource;
+import com.plivo.server.resources.MessageIngest;
 import com.plivo.server.resources.StatsResource;
 import com.plivo.server.resources.TopicResource;
+import com.plivo.server.websocket.ClusterWebSocketCreator;
 import com.plivo.server.websocket.PubSubWebSocketCreator;
 import io.dropwizard.core.Application;
 import io.dropwizard.core.setup.Bootstrap;
 import io.dropwizard.core.setup.Environment;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.util.compression.CompressionPool;
+import org.eclipse.jetty.util.compression.DeflaterPool;
+import org.eclipse.jetty.websocket.core.server.WebSocketServerComponents;
 import org.eclipse.jetty.websocket.server.config.JettyWebSocketServletContainerInitializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.net.URI;
+import java.nio.file.Paths;
 import java.time.Duration;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 public class PlivoApplication extends Application<PlivoConfiguration> {
     
@@ -41,16 +83,147 @@ public class PlivoApplication extends Application<PlivoConfiguration> {
     public void run(PlivoConfiguration configuration, Environment environment) {
         log.info("Initializing Plivo PubSub Application");
         
+        // Initialize codec for outbound protocol messages
+        final ProtocolCodec codec = new ProtocolCodec(environment.getObjectMapper());
+        
         // Initialize in-memory repository
-        final TopicRepository topicRepository = new TopicRepository();
+        final TopicRepository topicRepository = new TopicRepository(
+            buildHistoryFactory(configuration.getHistory(), codec, environment),
+            !configuration.getHistory().isOffHeap() && !configuration.getHistory().isTiered()
+        );
         log.info("Topic repository initialized");
         
+        // Restore topics from the last snapshot and keep snapshotting them.
+        // Registered first so topics are loaded before anything else starts.
+        if (configuration.getSnapshot().isEnabled()) {
+            final SnapshotStore snapshotStore = new SnapshotStore(
+                topicRepository,
+                environment.getObjectMapper(),
+                Paths.get(configuration.getSnapshot().getPath()),
+                configuration.getSnapshot().getIntervalMillis()
+            );
+            environment.lifecycle().manage(snapshotStore);
+            log.info("Snapshot store initialized");
+        }
+        
+        // Initialize per-topic event compression
+        final CompressionPolicy compressionPolicy = buildCompressionPolicy(configuration.getCompression());
+        
+        // Initialize non-blocking sends to WebSocket clients
+        final SessionSender sender = new SessionSender(configuration.getDispatcher().getMaxBytesInFlight());
+        
+        // Initialize batcher that coalesces events for subscribers that opt in
+        final EventBatcher batcher = new EventBatcher(
+            sender,
+            configuration.getBatching().getMaxBatchSize(),
+            configuration.getBatching().getMaxLingerMillis(),
+            configuration.getBatching().getDefaultLingerMillis(),
+            configuration.getBatching().getMaxFrameBytes()
+        );
+        environment.lifecycle().manage(batcher);
+        
+        // Initialize dispatcher that fans messages out to subscribers
+        final MessageDispatcher dispatcher = new MessageDispatcher(
+            codec,
+            compressionPolicy,
+            batcher,
+            sender,
+            configuration.getDispatcher().getWorkers(),
+            configuration.getDispatcher().getQuantum(),
+            configuration.getDispatcher().getBatchSize(),
+            buildDispatchWeights(configuration.getDispatcher()),
+            configuration.getDispatcher().getPriorityWeights().stream().mapToInt(Integer::intValue).toArray()
+        );
+        environment.lifecycle().manage(dispatcher);
+        log.info("Message dispatcher initialized");
+        
         // Initialize PubSub service
-        final PubSubService pubSubService = new PubSubService(topicRepository);
+        final MessageIdGenerator idGenerator = new TimeOrderedMessageIdGenerator(configuration.getNodeId());
+        final PubSubService pubSubService = new PubSubService(
+            topicRepository, idGenerator, dispatcher, configuration.getHistory().getMaxReplayMessages());
         log.info("PubSub service initialized");
         
+        // Initialize watchdog that resumes topics stopped by backpressure.
+        // Registered before flow control so credits are granted against the resumed state.
+        final BackpressureWatchdog watchdog = new BackpressureWatchdog(
+            topicRepository,
+            codec,
+            sender,
+            configuration.getBackpressure().getSweepIntervalMillis()
+        );
+        dispatcher.addListener(watchdog);
+        environment.lifecycle().manage(watchdog);
+        log.info("Backpressure watchdog initialized");
+        
+        // Initialize publisher flow control
+        FlowController flowController = null;
+        if (configuration.getFlowControl().isEnabled()) {
+            flowController = new FlowController(
+                topicRepository,
+                codec,
+                sender,
+                configuration.getFlowControl().getMaxWindow(),
+                configuration.getFlowControl().getCreditHorizonMillis()
+            );
+            dispatcher.addListener(flowController);
+            log.info("Flow control initialized");
+        }
+        
+        // Initialize publish rate limits
+        final RateLimiter rateLimiter = buildRateLimiter(configuration.getRateLimit());
+        
+        // Initialize cluster routing; topics are owned by one node and forwarded from the others
+        ClusterService clusterService = null;
+        if (configuration.getCluster().isEnabled()) {
+            clusterService = buildClusterService(configuration, topicRepository, pubSubService, dispatcher, environment);
+            dispatcher.setForwarder(clusterService);
+            pubSubService.addSubscriptionListener(clusterService);
+            environment.lifecycle().manage(clusterService);
+            log.info("Cluster mode initialized as node {}", configuration.getNodeId());
+        }
+        
+        // Initialize topic deletion; per-topic state elsewhere is dropped as topics go
+        final TopicDeleter topicDeleter = new TopicDeleter(
+            topicRepository,
+            pubSubService,
+            dispatcher,
+            codec,
+            sender,
+            configuration.getTopicDeletion().getQueuePolicy(),
+            configuration.getTopicDeletion().getDrainTimeoutMillis()
+        );
+        topicDeleter.addListener(codec::forgetTopic);
+        topicDeleter.addListener(watchdog::removeTopic);
+        if (flowController != null) {
+            topicDeleter.addListener(flowController::removeTopic);
+        }
+        if (rateLimiter != null) {
+            topicDeleter.addListener(rateLimiter::forgetTopic);
+        }
+        if (clusterService != null) {
+            clusterService.setTopicDeleter(topicDeleter);
+        }
+        environment.lifecycle().manage(topicDeleter);
+        log.info("Topic deleter initialized");
+        
         // Register REST resources
-        final TopicResource topicResource = new TopicResource(topicRepository);
+        final MessageIngest ingest = new MessageIngest(
+            pubSubService,
+            clusterService,
+            rateLimiter,
+            environment.getObjectMapper(),
+            configuration.getIngest().getBatchSize(),
+            configuration.getIngest().getMaxWaitMillis()
+        );
+        final EventFeeds eventFeeds = new EventFeeds(
+            pubSubService,
+            codec,
+            configuration.getHttpConsumers().getHeartbeatIntervalMillis(),
+            configuration.getHttpConsumers().getMaxPollMessages(),
+            configuration.getHttpConsumers().getMaxPollTimeoutMillis()
+        );
+        environment.lifecycle().manage(eventFeeds);
+        final TopicResource topicResource = new TopicResource(topicRepository, clusterService, ingest, eventFeeds, topicDeleter);
         environment.jersey().register(topicResource);
         log.info("TopicResource registered");
         
@@ -58,7 +231,9 @@ public class PlivoApplication extends Application<PlivoConfiguration> {
         environment.jersey().register(healthResource);
         log.info("HealthResource registered");
         
-        final StatsResource statsResource = new StatsResource(topicRepository);
+        final StatsAggregator statsAggregator = new StatsAggregator(topicRepository, configuration.getStats().getRefreshIntervalMillis());
+        environment.lifecycle().manage(statsAggregator);
+        final StatsResource statsResource = new StatsResource(statsAggregator, configuration.getStats().getMaxPageSize());
         environment.jersey().register(statsResource);
         log.info("StatsResource registered");
         
@@ -67,29 +242,194 @@ public class PlivoApplication extends Application<PlivoConfiguration> {
         environment.healthChecks().register("application", healthCheck);
         log.info("Health checks registered");
         
+        // Initialize the heartbeat reaper for WebSocket clients
+        ConnectionReaper reaper = null;
+        HeartbeatConfiguration heartbeat = configuration.getHeartbeat();
+        if (heartbeat.isEnabled()) {
+            reaper = new ConnectionReaper(
+                pubSubService,
+                heartbeat.getPingIntervalMillis(),
+                heartbeat.getIdleTimeoutMillis(),
+                heartbeat.getTickMillis()
+            );
+            environment.lifecycle().manage(reaper);
+            log.info("Connection reaper initialized");
+        }
+        
         // Configure WebSocket
-        configureWebSocket(environment, pubSubService);
+        configureWebSocket(environment, configuration.getCompression(), heartbeat, configuration.getHistory(), codec, pubSubService, flowController, watchdog, batcher, sender, clusterService, rateLimiter, reaper);
         
         log.info("Plivo PubSub Application initialization complete");
     }
     
-    private void configureWebSocket(Environment environment, PubSubService pubSubService) {
+    private CompressionPolicy buildCompressionPolicy(CompressionConfiguration compression) {
+        List<CompressionPolicy.Rule> rules = compression.getTopics().stream()
+            .map(topic -> new CompressionPolicy.Rule(topic.getPattern(), topic.getMinSizeBytes(), topic.getLevel()))
+            .collect(Collectors.toList());
+        log.info("Event compression enabled for {} topic patterns", rules.size());
+        return new CompressionPolicy(rules);
+    }
+    
+    private DispatchWeights buildDispatchWeights(DispatcherConfiguration dispatcher) {
+        List<DispatchWeights.Rule> rules = dispatcher.getWeights().stream()
+            .map(weight -> new DispatchWeights.Rule(weight.getPattern(), weight.getWeight()))
+            .collect(Collectors.toList());
+        if (!rules.isEmpty()) {
+            log.info("Fair dispatch weights set for {} topic patterns", rules.size());
+        }
+        return new DispatchWeights(rules);
+    }
+    
+    private RateLimiter buildRateLimiter(RateLimitConfiguration rateLimit) {
+        RateLimiter.Limit session = buildLimit(rateLimit.getSession());
+        RateLimiter.Limit client = buildLimit(rateLimit.getClient());
+        RateLimiter.Limit topic = buildLimit(rateLimit.getTopic());
+        if (session.isUnlimited() && client.isUnlimited() && topic.isUnlimited()) {
+            return null;
+        }
+        log.info("Publish rate limits enabled");
+        return new RateLimiter(session, client, topic);
+    }
+    
+    private RateLimiter.Limit buildLimit(PublishLimitConfiguration limit) {
+        return new RateLimiter.Limit(
+            limit.getPublishesPerSecond(), limit.getPublishBurst(), limit.getBytesPerSecond(), limit.getByteBurst());
+    }
+    
+    private Function<String, MessageHistory> buildHistoryFactory(HistoryConfiguration history, ProtocolCodec codec, Environment environment) {
+        int maxMessages = history.getMaxMessages();
+        if (history.isTiered() && history.isOffHeap()) {
+            throw new IllegalArgumentException("history.tiered and history.offHeap cannot both be set");
+        }
+        
+        if (history.isTiered()) {
+            List<RetentionPolicy.Rule> rules = history.getRetention().stream()
+                .map(rule -> new RetentionPolicy.Rule(rule.getPattern(), rule.getMaxMessages(), rule.getMaxBytes(), rule.getMaxAgeMillis()))
+                .collect(Collectors.toList());
+            TieredStorage storage = new TieredStorage(
+                Paths.get(history.getDataDirectory()),
+                history.getHotMessages(),
+                history.getSegmentBytes(),
+                history.getIndexIntervalBytes(),
+                history.getFlushIntervalMillis(),
+                history.getRetentionCheckIntervalMillis(),
+                new RetentionPolicy(rules, new RetentionPolicy.Rule("*", maxMessages, 0, 0)),
+                environment.getObjectMapper(),
+                codec
+            );
+            environment.lifecycle().manage(storage);
+            log.info("Topic history tiered to disk with {} retention rules", rules.size());
+            return storage::newHistory;
+        }
+        
+        if (!history.isOffHeap()) {
+            log.info("Topic history on heap, {} messages per topic", maxMessages);
+            return name -> new HeapMessageHistory(maxMessages);
+        }
+        
+        SlabPool slabPool = new SlabPool(history.getSlabBytes(), history.getMaxPooledSlabs());
+        log.info("Topic history off-heap, {} messages per topic with the newest {} on heap",
+            maxMessages, Math.min(history.getHotMessages(), maxMessages));
+        return name -> new OffHeapMessageHistory(maxMessages, history.getHotMessages(), slabPool, environment.getObjectMapper());
+    }
+    
+    private ClusterService buildClusterService(
+            PlivoConfiguration configuration,
+            TopicRepository topicRepository,
+            PubSubService pubSubService,
+            MessageDispatcher dispatcher,
+            Environment environment) {
+        ClusterConfiguration cluster = configuration.getCluster();
+        List<ClusterNode> nodes = cluster.getNodes().stream()
+            .map(node -> new ClusterNode(node.getId(), URI.create(node.getUrl())))
+            .collect(Collectors.toList());
+        
+        String nodeId = configuration.getNodeId();
+        if (nodes.stream().noneMatch(node -> node.getId().equals(nodeId))) {
+            throw new IllegalArgumentException("Cluster mode requires nodeId to name one of cluster.nodes, got: " + nodeId);
+        }
+        if (cluster.getSecret() == null || cluster.getSecret().isBlank()) {
+            throw new IllegalArgumentException("Cluster mode requires cluster.secret, shared by all nodes");
+        }
+        
+        ReplicationManager replication = new ReplicationManager(
+            nodeId,
+            cluster.getAckLevel(),
+            cluster.getReplicationBatchSize(),
+            cluster.getReplicationLingerMillis(),
+            cluster.getForwardTimeoutMillis(),
+            cluster.getReplicaLagTimeoutMillis(),
+            environment.getObjectMapper()
+        );
+        
+        return new ClusterService(
+            nodeId,
+            nodes,
+            cluster.getVirtualNodes(),
+            cluster.getReplicationFactor(),
+            cluster.getForwardTimeoutMillis(),
+            cluster.getReconnectIntervalMillis(),
+            cluster.getSecret(),
+            cluster.getTombstoneRetentionMillis(),
+            topicRepository,
+            pubSubService,
+            dispatcher,
+            replication,
+            environment.getObjectMapper()
+        );
+    }
+    
+    private void configureWebSocket(
+            Environment environment,
+            CompressionConfiguration compression,
+            HeartbeatConfiguration heartbeat,
+            HistoryConfiguration history,
+            ProtocolCodec codec,
+            PubSubService pubSubService,
+            FlowController flowController,
+            BackpressureWatchdog watchdog,
+            EventBatcher batcher,
+            SessionSender sender,
+            ClusterService clusterService,
+            RateLimiter rateLimiter,
+            ConnectionReaper reaper) {
         try {
             Server server = environment.getApplicationContext().getServer();
             ServletContextHandler context = environment.getApplicationContext();
             
+            // Deflater pool used by permessage-deflate; picked up when the WebSocket components are created
+            context.setAttribute(
+                WebSocketServerComponents.WEBSOCKET_DEFLATER_POOL_ATTRIBUTE,
+                new DeflaterPool(CompressionPool.DEFAULT_CAPACITY, compression.getDeflateLevel(), true)
+            );
+            
             // Configure WebSocket
             JettyWebSocketServletContainerInitializer.configure(context, (servletContext, wsContainer) -> {
                 wsContainer.setMaxTextMessageSize(65536);
-                wsContainer.setIdleTimeout(Duration.ofMinutes(5));
+                wsContainer.setIdleTimeout(Duration.ofMillis(heartbeat.getIdleTimeoutMillis()));
                 
                 PubSubWebSocketCreator creator = new PubSubWebSocketCreator(
                     pubSubService,
-                    environment.getObjectMapper()
+                    codec,
+                    environment.getObjectMapper(),
+                    flowController,
+                    watchdog,
+                    batcher,
+                    sender,
+                    clusterService,
+                    rateLimiter,
+                    reaper,
+                    compression.isPerMessageDeflate(),
+                    history.getReplayTimeoutMillis()
                 );
                 
                 wsContainer.addMapping("/ws", creator);
                 log.info("WebSocket endpoint configured at /ws");
+                
+                if (clusterService != null) {
+                    wsContainer.addMapping("/cluster", new ClusterWebSocketCreator(clusterService));
+                    log.info("Cluster endpoint configured at /cluster");
+                }
             });
             
         } catch (Exception e) {
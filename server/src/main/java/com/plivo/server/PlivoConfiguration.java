@@ -1,8 +1,24 @@
 package com.plivo.server;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.plivo.server.config.BackpressureConfiguration;
+import com.plivo.server.config.BatchingConfiguration;
+import com.plivo.server.config.ClusterConfiguration;
+import com.plivo.server.config.CompressionConfiguration;
+import com.plivo.server.config.DispatcherConfiguration;
+import com.plivo.server.config.FlowControlConfiguration;
+import com.plivo.server.config.HeartbeatConfiguration;
+import com.plivo.server.config.HistoryConfiguration;
+import com.plivo.server.config.HttpConsumerConfiguration;
+import com.plivo.server.config.IngestConfiguration;
+import com.plivo.server.config.RateLimitConfiguration;
+import com.plivo.server.config.SnapshotConfiguration;
+import com.plivo.server.config.StatsConfiguration;
+import com.plivo.server.config.TopicDeletionConfiguration;
 import io.dropwizard.core.Configuration;
+import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
 
 public class PlivoConfiguration extends Configuration {
 
@@ -13,6 +29,80 @@ public class PlivoConfiguration extends Configuration {
     @JsonProperty
     private String version = "1.0.0";
     
+    // Prefix for generated message ids; a random one is used when empty
+    @JsonProperty
+    private String nodeId;
+    
+    @Valid
+    @NotNull
+    @JsonProperty
+    private DispatcherConfiguration dispatcher = new DispatcherConfiguration();
+    
+    @Valid
+    @NotNull
+    @JsonProperty
+    private FlowControlConfiguration flowControl = new FlowControlConfiguration();
+    
+    @Valid
+    @NotNull
+    @JsonProperty
+    private RateLimitConfiguration rateLimit = new RateLimitConfiguration();
+    
+    @Valid
+    @NotNull
+    @JsonProperty
+    private IngestConfiguration ingest = new IngestConfiguration();
+    
+    @Valid
+    @NotNull
+    @JsonProperty
+    private HttpConsumerConfiguration httpConsumers = new HttpConsumerConfiguration();
+    
+    @Valid
+    @NotNull
+    @JsonProperty
+    private StatsConfiguration stats = new StatsConfiguration();
+    
+    @Valid
+    @NotNull
+    @JsonProperty
+    private TopicDeletionConfiguration topicDeletion = new TopicDeletionConfiguration();
+    
+    @Valid
+    @NotNull
+    @JsonProperty
+    private HeartbeatConfiguration heartbeat = new HeartbeatConfiguration();
+    
+    @Valid
+    @NotNull
+    @JsonProperty
+    private BackpressureConfiguration backpressure = new BackpressureConfiguration();
+    
+    @Valid
+    @NotNull
+    @JsonProperty
+    private CompressionConfiguration compression = new CompressionConfiguration();
+    
+    @Valid
+    @NotNull
+    @JsonProperty
+    private BatchingConfiguration batching = new BatchingConfiguration();
+    
+    @Valid
+    @NotNull
+    @JsonProperty
+    private ClusterConfiguration cluster = new ClusterConfiguration();
+    
+    @Valid
+    @NotNull
+    @JsonProperty
+    private SnapshotConfiguration snapshot = new SnapshotConfiguration();
+    
+    @Valid
+    @NotNull
+    @JsonProperty
+    private HistoryConfiguration history = new HistoryConfiguration();
+    
     public String getApplicationName() {
         return applicationName;
     }
@@ -28,5 +118,124 @@ public class PlivoConfiguration extends Configuration {
     public void setVersion(String version) {
         this.version = version;
     }
+    
+    public String getNodeId() {
+        return nodeId;
+    }
+    
+    public void setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+    }
+    
+    public DispatcherConfiguration getDispatcher() {
+        return dispatcher;
+    }
+    
+    public void setDispatcher(DispatcherConfiguration dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+    
+    public FlowControlConfiguration getFlowControl() {
+        return flowControl;
+    }
+    
+    public void setFlowControl(FlowControlConfiguration flowControl) {
+        this.flowControl = flowControl;
+    }
+    
+    public RateLimitConfiguration getRateLimit() {
+        return rateLimit;
+    }
+    
+    public void setRateLimit(RateLimitConfiguration rateLimit) {
+        this.rateLimit = rateLimit;
+    }
+    
+    public IngestConfiguration getIngest() {
+        return ingest;
+    }
+    
+    public void setIngest(IngestConfiguration ingest) {
+        this.ingest = ingest;
+    }
+    
+    public HttpConsumerConfiguration getHttpConsumers() {
+        return httpConsumers;
+    }
+    
+    public void setHttpConsumers(HttpConsumerConfiguration httpConsumers) {
+        this.httpConsumers = httpConsumers;
+    }
+    
+    public StatsConfiguration getStats() {
+        return stats;
+    }
+    
+    public void setStats(StatsConfiguration stats) {
+        this.stats = stats;
+    }
+    
+    public TopicDeletionConfiguration getTopicDeletion() {
+        return topicDeletion;
+    }
+    
+    public void setTopicDeletion(TopicDeletionConfiguration topicDeletion) {
+        this.topicDeletion = topicDeletion;
+    }
+    
+    public HeartbeatConfiguration getHeartbeat() {
+        return heartbeat;
+    }
+    
+    public void setHeartbeat(HeartbeatConfiguration heartbeat) {
+        this.heartbeat = heartbeat;
+    }
+    
+    public BackpressureConfiguration getBackpressure() {
+        return backpressure;
+    }
+    
+    public void setBackpressure(BackpressureConfiguration backpressure) {
+        this.backpressure = backpressure;
+    }
+    
+    public CompressionConfiguration getCompression() {
+        return compression;
+    }
+    
+    public void setCompression(CompressionConfiguration compression) {
+        this.compression = compression;
+    }
+    
+    public BatchingConfiguration getBatching() {
+        return batching;
+    }
+    
+    public void setBatching(BatchingConfiguration batching) {
+        this.batching = batching;
+    }
+    
+    public ClusterConfiguration getCluster() {
+        return cluster;
+    }
+    
+    public void setCluster(ClusterConfiguration cluster) {
+        this.cluster = cluster;
+    }
+    
+    public SnapshotConfiguration getSnapshot() {
+        return snapshot;
+    }
+    
+    public void setSnapshot(SnapshotConfiguration snapshot) {
+        this.snapshot = snapshot;
+    }
+    
+    public HistoryConfiguration getHistory() {
+        return history;
+    }
+    
+    public void setHistory(HistoryConfiguration history) {
+        this.history = history;
+    }
 }
-
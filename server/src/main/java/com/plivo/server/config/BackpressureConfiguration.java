@@ -0,0 +1,20 @@
+package com.plivo.server.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.Min;
+
+public class BackpressureConfiguration {
+    
+    // How often stopped topics are re-checked against their low watermark
+    @Min(10)
+    @JsonProperty
+    private long sweepIntervalMillis = 500;
+    
+    public long getSweepIntervalMillis() {
+        return sweepIntervalMillis;
+    }
+    
+    public void setSweepIntervalMillis(long sweepIntervalMillis) {
+        this.sweepIntervalMillis = sweepIntervalMillis;
+    }
+}
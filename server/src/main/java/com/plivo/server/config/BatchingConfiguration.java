@@ -0,0 +1,59 @@
+package com.plivo.server.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.Min;
+
+public class BatchingConfiguration {
+    
+    // Largest batch_size a subscriber may request
+    @Min(2)
+    @JsonProperty
+    private int maxBatchSize = 1000;
+    
+    // Largest batch_linger_ms a subscriber may request
+    @Min(0)
+    @JsonProperty
+    private long maxLingerMillis = 1000;
+    
+    // Linger used when a subscriber sets batch_size without batch_linger_ms
+    @Min(0)
+    @JsonProperty
+    private long defaultLingerMillis = 10;
+    
+    // A batch frame is sent early rather than grow past this size
+    @Min(1024)
+    @JsonProperty
+    private int maxFrameBytes = 1024 * 1024;
+    
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+    
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+    
+    public long getMaxLingerMillis() {
+        return maxLingerMillis;
+    }
+    
+    public void setMaxLingerMillis(long maxLingerMillis) {
+        this.maxLingerMillis = maxLingerMillis;
+    }
+    
+    public long getDefaultLingerMillis() {
+        return defaultLingerMillis;
+    }
+    
+    public void setDefaultLingerMillis(long defaultLingerMillis) {
+        this.defaultLingerMillis = defaultLingerMillis;
+    }
+    
+    public int getMaxFrameBytes() {
+        return maxFrameBytes;
+    }
+    
+    public void setMaxFrameBytes(int maxFrameBytes) {
+        this.maxFrameBytes = maxFrameBytes;
+    }
+}
@@ -0,0 +1,167 @@
+package com.plivo.server.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.plivo.core.cluster.ReplicationManager;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ClusterConfiguration {
+    
+    // When disabled the node serves every topic itself
+    @JsonProperty
+    private boolean enabled = false;
+    
+    // All nodes of the cluster, including this one (matched by nodeId)
+    @Valid
+    @NotNull
+    @JsonProperty
+    private List<ClusterNodeConfiguration> nodes = new ArrayList<>();
+    
+    // Points per node on the hash ring
+    @Min(1)
+    @JsonProperty
+    private int virtualNodes = 128;
+    
+    // Nodes holding each topic, the leader included
+    @Min(1)
+    @JsonProperty
+    private int replicationFactor = 1;
+    
+    // When a publish is acked: once the leader queued it, or once a majority of replicas hold it
+    @NotNull
+    @JsonProperty
+    private ReplicationManager.AckLevel ackLevel = ReplicationManager.AckLevel.LEADER;
+    
+    // Entries per replication frame
+    @Min(1)
+    @JsonProperty
+    private int replicationBatchSize = 128;
+    
+    // How long a partial replication batch waits for more entries
+    @Min(0)
+    @JsonProperty
+    private long replicationLingerMillis = 1;
+    
+    // A follower with a batch unacked for longer drops out of the in-sync set
+    @Min(1)
+    @JsonProperty
+    private long replicaLagTimeoutMillis = 10000;
+    
+    // How long a forwarded or replicated publish waits for the answer
+    @Min(1)
+    @JsonProperty
+    private long forwardTimeoutMillis = 5000;
+    
+    @Min(1)
+    @JsonProperty
+    private long reconnectIntervalMillis = 1000;
+    
+    // Shared by all nodes; links to /cluster without it are refused. Required when enabled
+    @JsonProperty
+    private String secret;
+    
+    // How long a deleted topic is remembered, so peers that missed the delete do not bring it back
+    @Min(1)
+    @JsonProperty
+    private long tombstoneRetentionMillis = 24 * 60 * 60 * 1000L;
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    public List<ClusterNodeConfiguration> getNodes() {
+        return nodes;
+    }
+    
+    public void setNodes(List<ClusterNodeConfiguration> nodes) {
+        this.nodes = nodes;
+    }
+    
+    public int getVirtualNodes() {
+        return virtualNodes;
+    }
+    
+    public void setVirtualNodes(int virtualNodes) {
+        this.virtualNodes = virtualNodes;
+    }
+    
+    public int getReplicationFactor() {
+        return replicationFactor;
+    }
+    
+    public void setReplicationFactor(int replicationFactor) {
+        this.replicationFactor = replicationFactor;
+    }
+    
+    public ReplicationManager.AckLevel getAckLevel() {
+        return ackLevel;
+    }
+    
+    public void setAckLevel(ReplicationManager.AckLevel ackLevel) {
+        this.ackLevel = ackLevel;
+    }
+    
+    public int getReplicationBatchSize() {
+        return replicationBatchSize;
+    }
+    
+    public void setReplicationBatchSize(int replicationBatchSize) {
+        this.replicationBatchSize = replicationBatchSize;
+    }
+    
+    public long getReplicationLingerMillis() {
+        return replicationLingerMillis;
+    }
+    
+    public void setReplicationLingerMillis(long replicationLingerMillis) {
+        this.replicationLingerMillis = replicationLingerMillis;
+    }
+    
+    public long getReplicaLagTimeoutMillis() {
+        return replicaLagTimeoutMillis;
+    }
+    
+    public void setReplicaLagTimeoutMillis(long replicaLagTimeoutMillis) {
+        this.replicaLagTimeoutMillis = replicaLagTimeoutMillis;
+    }
+    
+    public long getForwardTimeoutMillis() {
+        return forwardTimeoutMillis;
+    }
+    
+    public void setForwardTimeoutMillis(long forwardTimeoutMillis) {
+        this.forwardTimeoutMillis = forwardTimeoutMillis;
+    }
+    
+    public long getReconnectIntervalMillis() {
+        return reconnectIntervalMillis;
+    }
+    
+    public void setReconnectIntervalMillis(long reconnectIntervalMillis) {
+        this.reconnectIntervalMillis = reconnectIntervalMillis;
+    }
+    
+    public String getSecret() {
+        return secret;
+    }
+    
+    public void setSecret(String secret) {
+        this.secret = secret;
+    }
+    
+    public long getTombstoneRetentionMillis() {
+        return tombstoneRetentionMillis;
+    }
+    
+    public void setTombstoneRetentionMillis(long tombstoneRetentionMillis) {
+        this.tombstoneRetentionMillis = tombstoneRetentionMillis;
+    }
+}
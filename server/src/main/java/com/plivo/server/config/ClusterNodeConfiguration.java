@@ -0,0 +1,32 @@
+package com.plivo.server.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.NotEmpty;
+
+public class ClusterNodeConfiguration {
+    
+    @NotEmpty
+    @JsonProperty
+    private String id;
+    
+    // Inter-node endpoint of the node, e.g. ws://localhost:8080/cluster
+    @NotEmpty
+    @JsonProperty
+    private String url;
+    
+    public String getId() {
+        return id;
+    }
+    
+    public void setId(String id) {
+        this.id = id;
+    }
+    
+    public String getUrl() {
+        return url;
+    }
+    
+    public void setUrl(String url) {
+        this.url = url;
+    }
+}
@@ -0,0 +1,53 @@
+package com.plivo.server.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class CompressionConfiguration {
+    
+    // Whether clients may negotiate the permessage-deflate extension
+    @JsonProperty
+    private boolean perMessageDeflate = true;
+    
+    // Deflate level used by permessage-deflate, -1 for the zlib default
+    @Min(-1)
+    @Max(9)
+    @JsonProperty
+    private int deflateLevel = -1;
+    
+    // Topics whose events are compressed once and sent as binary frames to opted-in subscribers
+    @Valid
+    @NotNull
+    @JsonProperty
+    private List<TopicCompressionConfiguration> topics = new ArrayList<>();
+    
+    public boolean isPerMessageDeflate() {
+        return perMessageDeflate;
+    }
+    
+    public void setPerMessageDeflate(boolean perMessageDeflate) {
+        this.perMessageDeflate = perMessageDeflate;
+    }
+    
+    public int getDeflateLevel() {
+        return deflateLevel;
+    }
+    
+    public void setDeflateLevel(int deflateLevel) {
+        this.deflateLevel = deflateLevel;
+    }
+    
+    public List<TopicCompressionConfiguration> getTopics() {
+        return topics;
+    }
+    
+    public void setTopics(List<TopicCompressionConfiguration> topics) {
+        this.topics = topics;
+    }
+}
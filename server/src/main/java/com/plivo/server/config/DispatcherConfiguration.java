@@ -0,0 +1,93 @@
+package com.plivo.server.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class DispatcherConfiguration {
+    
+    // Threads draining topic queues
+    @Min(1)
+    @JsonProperty
+    private int workers = Math.max(2, Runtime.getRuntime().availableProcessors());
+    
+    // Messages drained from one topic before yielding to other topics
+    @Min(1)
+    @JsonProperty
+    private int batchSize = 64;
+    
+    // Subscriber sends a topic of weight 1 earns per turn; a message costs one send per subscriber
+    @Min(1)
+    @JsonProperty
+    private int quantum = 256;
+    
+    // Per-topic or per-tenant dispatch weights; the first matching pattern applies, others get 1
+    @Valid
+    @NotNull
+    @JsonProperty
+    private List<TopicWeightConfiguration> weights = new ArrayList<>();
+    
+    // Messages each priority lane (low, normal, high) may send per round-robin turn
+    @NotNull
+    @Size(min = 3, max = 3)
+    @JsonProperty
+    private List<@Min(1) Integer> priorityWeights = List.of(1, 4, 16);
+    
+    // Bytes queued to one WebSocket client and not yet written before it is disconnected as too slow
+    @Min(1)
+    @JsonProperty
+    private long maxBytesInFlight = 8 * 1024 * 1024;
+    
+    public int getWorkers() {
+        return workers;
+    }
+    
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
+    
+    public int getBatchSize() {
+        return batchSize;
+    }
+    
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+    
+    public int getQuantum() {
+        return quantum;
+    }
+    
+    public void setQuantum(int quantum) {
+        this.quantum = quantum;
+    }
+    
+    public List<TopicWeightConfiguration> getWeights() {
+        return weights;
+    }
+    
+    public void setWeights(List<TopicWeightConfiguration> weights) {
+        this.weights = weights;
+    }
+    
+    public List<Integer> getPriorityWeights() {
+        return priorityWeights;
+    }
+    
+    public void setPriorityWeights(List<Integer> priorityWeights) {
+        this.priorityWeights = priorityWeights;
+    }
+    
+    public long getMaxBytesInFlight() {
+        return maxBytesInFlight;
+    }
+    
+    public void setMaxBytesInFlight(long maxBytesInFlight) {
+        this.maxBytesInFlight = maxBytesInFlight;
+    }
+}
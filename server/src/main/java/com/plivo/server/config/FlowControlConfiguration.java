@@ -0,0 +1,44 @@
+package com.plivo.server.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.Min;
+
+public class FlowControlConfiguration {
+    
+    @JsonProperty
+    private boolean enabled = true;
+    
+    // Upper bound on the credits granted to one publisher at a time
+    @Min(1)
+    @JsonProperty
+    private int maxWindow = 256;
+    
+    // How far ahead the expected drain is counted when sizing a grant
+    @Min(0)
+    @JsonProperty
+    private long creditHorizonMillis = 1000;
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    public int getMaxWindow() {
+        return maxWindow;
+    }
+    
+    public void setMaxWindow(int maxWindow) {
+        this.maxWindow = maxWindow;
+    }
+    
+    public long getCreditHorizonMillis() {
+        return creditHorizonMillis;
+    }
+    
+    public void setCreditHorizonMillis(long creditHorizonMillis) {
+        this.creditHorizonMillis = creditHorizonMillis;
+    }
+}
@@ -0,0 +1,58 @@
+package com.plivo.server.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.Min;
+
+public class HeartbeatConfiguration {
+    
+    // Ping WebSocket clients and evict the ones that stop answering
+    @JsonProperty
+    private boolean enabled = true;
+    
+    // A connection quiet for this long is sent a ping
+    @Min(1)
+    @JsonProperty
+    private long pingIntervalMillis = 30000;
+    
+    // A connection quiet for this long is closed and its subscriptions removed; also the socket idle timeout
+    @Min(1)
+    @JsonProperty
+    private long idleTimeoutMillis = 90000;
+    
+    // Resolution of the reaper's timer wheel
+    @Min(1)
+    @JsonProperty
+    private long tickMillis = 1000;
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    public long getPingIntervalMillis() {
+        return pingIntervalMillis;
+    }
+    
+    public void setPingIntervalMillis(long pingIntervalMillis) {
+        this.pingIntervalMillis = pingIntervalMillis;
+    }
+    
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+    
+    public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+    
+    public long getTickMillis() {
+        return tickMillis;
+    }
+    
+    public void setTickMillis(long tickMillis) {
+        this.tickMillis = tickMillis;
+    }
+}
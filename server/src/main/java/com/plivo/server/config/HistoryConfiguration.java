@@ -0,0 +1,192 @@
+package com.plivo.server.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class HistoryConfiguration {
+    
+    // Messages retained per topic for last_n; the default retention when tiered
+    @Min(1)
+    @JsonProperty
+    private int maxMessages = 100;
+    
+    // Most messages replayed for a from_offset or from_time subscription
+    @Min(1)
+    @JsonProperty
+    private int maxReplayMessages = 10000;
+    
+    // Longest a WebSocket replay may take to be written before the client is disconnected
+    @Min(1)
+    @JsonProperty
+    private long replayTimeoutMillis = 30000;
+    
+    // Keep retained messages in direct memory instead of on the heap
+    @JsonProperty
+    private boolean offHeap = false;
+    
+    // Newest messages per topic kept on the heap when offHeap or tiered is set
+    @Min(0)
+    @JsonProperty
+    private int hotMessages = 16;
+    
+    // Size of the direct buffers that off-heap messages are packed into
+    @Min(4096)
+    @JsonProperty
+    private int slabBytes = 1024 * 1024;
+    
+    // Released slabs kept for reuse instead of being freed
+    @Min(0)
+    @JsonProperty
+    private int maxPooledSlabs = 64;
+    
+    // Keep history in on-disk segments, with the newest hotMessages cached on the heap
+    @JsonProperty
+    private boolean tiered = false;
+    
+    @NotEmpty
+    @JsonProperty
+    private String dataDirectory = "data/history";
+    
+    // Segments are rolled at this size, and retention drops whole segments
+    @Min(4096)
+    @JsonProperty
+    private int segmentBytes = 16 * 1024 * 1024;
+    
+    // Bytes between sparse index entries in a segment
+    @Min(64)
+    @JsonProperty
+    private int indexIntervalBytes = 4096;
+    
+    // How often buffered records are written out; a crash loses at most this much history
+    @Min(1)
+    @JsonProperty
+    private long flushIntervalMillis = 1000;
+    
+    @Min(100)
+    @JsonProperty
+    private long retentionCheckIntervalMillis = 5000;
+    
+    // Per-topic retention by count, bytes or age; the first matching pattern applies
+    @Valid
+    @NotNull
+    @JsonProperty
+    private List<TopicRetentionConfiguration> retention = new ArrayList<>();
+    
+    public int getMaxMessages() {
+        return maxMessages;
+    }
+    
+    public void setMaxMessages(int maxMessages) {
+        this.maxMessages = maxMessages;
+    }
+    
+    public int getMaxReplayMessages() {
+        return maxReplayMessages;
+    }
+    
+    public void setMaxReplayMessages(int maxReplayMessages) {
+        this.maxReplayMessages = maxReplayMessages;
+    }
+    
+    public long getReplayTimeoutMillis() {
+        return replayTimeoutMillis;
+    }
+    
+    public void setReplayTimeoutMillis(long replayTimeoutMillis) {
+        this.replayTimeoutMillis = replayTimeoutMillis;
+    }
+    
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+    
+    public void setOffHeap(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+    
+    public int getHotMessages() {
+        return hotMessages;
+    }
+    
+    public void setHotMessages(int hotMessages) {
+        this.hotMessages = hotMessages;
+    }
+    
+    public int getSlabBytes() {
+        return slabBytes;
+    }
+    
+    public void setSlabBytes(int slabBytes) {
+        this.slabBytes = slabBytes;
+    }
+    
+    public int getMaxPooledSlabs() {
+        return maxPooledSlabs;
+    }
+    
+    public void setMaxPooledSlabs(int maxPooledSlabs) {
+        this.maxPooledSlabs = maxPooledSlabs;
+    }
+    
+    public boolean isTiered() {
+        return tiered;
+    }
+    
+    public void setTiered(boolean tiered) {
+        this.tiered = tiered;
+    }
+    
+    public String getDataDirectory() {
+        return dataDirectory;
+    }
+    
+    public void setDataDirectory(String dataDirectory) {
+        this.dataDirectory = dataDirectory;
+    }
+    
+    public int getSegmentBytes() {
+        return segmentBytes;
+    }
+    
+    public void setSegmentBytes(int segmentBytes) {
+        this.segmentBytes = segmentBytes;
+    }
+    
+    public int getIndexIntervalBytes() {
+        return indexIntervalBytes;
+    }
+    
+    public void setIndexIntervalBytes(int indexIntervalBytes) {
+        this.indexIntervalBytes = indexIntervalBytes;
+    }
+    
+    public long getFlushIntervalMillis() {
+        return flushIntervalMillis;
+    }
+    
+    public void setFlushIntervalMillis(long flushIntervalMillis) {
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+    
+    public long getRetentionCheckIntervalMillis() {
+        return retentionCheckIntervalMillis;
+    }
+    
+    public void setRetentionCheckIntervalMillis(long retentionCheckIntervalMillis) {
+        this.retentionCheckIntervalMillis = retentionCheckIntervalMillis;
+    }
+    
+    public List<TopicRetentionConfiguration> getRetention() {
+        return retention;
+    }
+    
+    public void setRetention(List<TopicRetentionConfiguration> retention) {
+        this.retention = retention;
+    }
+}
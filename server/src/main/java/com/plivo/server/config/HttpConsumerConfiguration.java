@@ -0,0 +1,46 @@
+package com.plivo.server.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.Min;
+
+public class HttpConsumerConfiguration {
+    
+    // Comment lines sent on idle event streams, so proxies keep them open and dead clients are found
+    @Min(100)
+    @JsonProperty
+    private long heartbeatIntervalMillis = 15000;
+    
+    // Most messages returned by one poll
+    @Min(1)
+    @JsonProperty
+    private int maxPollMessages = 1000;
+    
+    // Longest a poll may wait for a message
+    @Min(0)
+    @JsonProperty
+    private long maxPollTimeoutMillis = 30000;
+    
+    public long getHeartbeatIntervalMillis() {
+        return heartbeatIntervalMillis;
+    }
+    
+    public void setHeartbeatIntervalMillis(long heartbeatIntervalMillis) {
+        this.heartbeatIntervalMillis = heartbeatIntervalMillis;
+    }
+    
+    public int getMaxPollMessages() {
+        return maxPollMessages;
+    }
+    
+    public void setMaxPollMessages(int maxPollMessages) {
+        this.maxPollMessages = maxPollMessages;
+    }
+    
+    public long getMaxPollTimeoutMillis() {
+        return maxPollTimeoutMillis;
+    }
+    
+    public void setMaxPollTimeoutMillis(long maxPollTimeoutMillis) {
+        this.maxPollTimeoutMillis = maxPollTimeoutMillis;
+    }
+}
@@ -0,0 +1,33 @@
+package com.plivo.server.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.Min;
+
+public class IngestConfiguration {
+    
+    // Messages per result line of an HTTP publish
+    @Min(1)
+    @JsonProperty
+    private int batchSize = 1000;
+    
+    // How long one message may wait for a full queue or the topic rate limit before the request ends
+    @Min(0)
+    @JsonProperty
+    private long maxWaitMillis = 5000;
+    
+    public int getBatchSize() {
+        return batchSize;
+    }
+    
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+    
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+    
+    public void setMaxWaitMillis(long maxWaitMillis) {
+        this.maxWaitMillis = maxWaitMillis;
+    }
+}
@@ -0,0 +1,59 @@
+package com.plivo.server.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.Min;
+
+public class PublishLimitConfiguration {
+    
+    // Sustained publishes per second; 0 means unlimited
+    @Min(0)
+    @JsonProperty
+    private long publishesPerSecond = 0;
+    
+    // Publishes allowed at once after a quiet period; 0 means one second's worth
+    @Min(0)
+    @JsonProperty
+    private long publishBurst = 0;
+    
+    // Sustained publish frame bytes per second; 0 means unlimited
+    @Min(0)
+    @JsonProperty
+    private long bytesPerSecond = 0;
+    
+    // Bytes allowed at once after a quiet period; 0 means one second's worth
+    @Min(0)
+    @JsonProperty
+    private long byteBurst = 0;
+    
+    public long getPublishesPerSecond() {
+        return publishesPerSecond;
+    }
+    
+    public void setPublishesPerSecond(long publishesPerSecond) {
+        this.publishesPerSecond = publishesPerSecond;
+    }
+    
+    public long getPublishBurst() {
+        return publishBurst;
+    }
+    
+    public void setPublishBurst(long publishBurst) {
+        this.publishBurst = publishBurst;
+    }
+    
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+    
+    public void setBytesPerSecond(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+    
+    public long getByteBurst() {
+        return byteBurst;
+    }
+    
+    public void setByteBurst(long byteBurst) {
+        this.byteBurst = byteBurst;
+    }
+}
@@ -0,0 +1,50 @@
+package com.plivo.server.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotNull;
+
+public class RateLimitConfiguration {
+    
+    // Limits for each WebSocket connection
+    @Valid
+    @NotNull
+    @JsonProperty
+    private PublishLimitConfiguration session = new PublishLimitConfiguration();
+    
+    // Limits shared by all connections with the same client id
+    @Valid
+    @NotNull
+    @JsonProperty
+    private PublishLimitConfiguration client = new PublishLimitConfiguration();
+    
+    // Limits for each topic, across all publishers
+    @Valid
+    @NotNull
+    @JsonProperty
+    private PublishLimitConfiguration topic = new PublishLimitConfiguration();
+    
+    public PublishLimitConfiguration getSession() {
+        return session;
+    }
+    
+    public void setSession(PublishLimitConfiguration session) {
+        this.session = session;
+    }
+    
+    public PublishLimitConfiguration getClient() {
+        return client;
+    }
+    
+    public void setClient(PublishLimitConfiguration client) {
+        this.client = client;
+    }
+    
+    public PublishLimitConfiguration getTopic() {
+        return topic;
+    }
+    
+    public void setTopic(PublishLimitConfiguration topic) {
+        this.topic = topic;
+    }
+}
@@ -0,0 +1,45 @@
+package com.plivo.server.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotEmpty;
+
+public class SnapshotConfiguration {
+    
+    // Restore topics at startup and snapshot them periodically
+    @JsonProperty
+    private boolean enabled = false;
+    
+    @NotEmpty
+    @JsonProperty
+    private String path = "data/topics.snapshot";
+    
+    // How often the repository is snapshotted; a final snapshot is written on shutdown
+    @Min(100)
+    @JsonProperty
+    private long intervalMillis = 30_000;
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    public String getPath() {
+        return path;
+    }
+    
+    public void setPath(String path) {
+        this.path = path;
+    }
+    
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+    
+    public void setIntervalMillis(long intervalMillis) {
+        this.intervalMillis = intervalMillis;
+    }
+}
@@ -0,0 +1,33 @@
+package com.plivo.server.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.Min;
+
+public class StatsConfiguration {
+    
+    // How often the stats snapshot is rebuilt, and the window publish rates are measured over
+    @Min(100)
+    @JsonProperty
+    private long refreshIntervalMillis = 5000;
+    
+    // Most topics returned by one stats request
+    @Min(1)
+    @JsonProperty
+    private int maxPageSize = 1000;
+    
+    public long getRefreshIntervalMillis() {
+        return refreshIntervalMillis;
+    }
+    
+    public void setRefreshIntervalMillis(long refreshIntervalMillis) {
+        this.refreshIntervalMillis = refreshIntervalMillis;
+    }
+    
+    public int getMaxPageSize() {
+        return maxPageSize;
+    }
+    
+    public void setMaxPageSize(int maxPageSize) {
+        this.maxPageSize = maxPageSize;
+    }
+}
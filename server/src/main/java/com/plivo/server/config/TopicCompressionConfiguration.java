@@ -0,0 +1,48 @@
+package com.plivo.server.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotEmpty;
+
+public class TopicCompressionConfiguration {
+    
+    // Exact topic name, a prefix ending in '*', or '*' for all topics
+    @NotEmpty
+    @JsonProperty
+    private String pattern;
+    
+    // Smaller events are sent uncompressed
+    @Min(0)
+    @JsonProperty
+    private int minSizeBytes = 1024;
+    
+    @Min(-1)
+    @Max(9)
+    @JsonProperty
+    private int level = 6;
+    
+    public String getPattern() {
+        return pattern;
+    }
+    
+    public void setPattern(String pattern) {
+        this.pattern = pattern;
+    }
+    
+    public int getMinSizeBytes() {
+        return minSizeBytes;
+    }
+    
+    public void setMinSizeBytes(int minSizeBytes) {
+        this.minSizeBytes = minSizeBytes;
+    }
+    
+    public int getLevel() {
+        return level;
+    }
+    
+    public void setLevel(int level) {
+        this.level = level;
+    }
+}
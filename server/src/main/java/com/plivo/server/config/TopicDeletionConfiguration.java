@@ -0,0 +1,35 @@
+package com.plivo.server.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.plivo.core.service.TopicDeleter;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+
+public class TopicDeletionConfiguration {
+    
+    // DRAIN delivers messages still queued on a deleted topic to its subscribers; DISCARD drops them
+    @NotNull
+    @JsonProperty
+    private TopicDeleter.QueuePolicy queuePolicy = TopicDeleter.QueuePolicy.DRAIN;
+    
+    // Longest the queue of a deleted topic is drained before the rest is dropped
+    @Min(0)
+    @JsonProperty
+    private long drainTimeoutMillis = 5000;
+    
+    public TopicDeleter.QueuePolicy getQueuePolicy() {
+        return queuePolicy;
+    }
+    
+    public void setQueuePolicy(TopicDeleter.QueuePolicy queuePolicy) {
+        this.queuePolicy = queuePolicy;
+    }
+    
+    public long getDrainTimeoutMillis() {
+        return drainTimeoutMillis;
+    }
+    
+    public void setDrainTimeoutMillis(long drainTimeoutMillis) {
+        this.drainTimeoutMillis = drainTimeoutMillis;
+    }
+}
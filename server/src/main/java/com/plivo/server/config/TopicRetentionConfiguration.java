@@ -0,0 +1,58 @@
+package com.plivo.server.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotEmpty;
+
+public class TopicRetentionConfiguration {
+    
+    // Exact topic name, a prefix ending in '*', or '*' for all topics
+    @NotEmpty
+    @JsonProperty
+    private String pattern;
+    
+    // Limits are applied by whole segments; 0 means unlimited
+    @Min(0)
+    @JsonProperty
+    private long maxMessages = 0;
+    
+    @Min(0)
+    @JsonProperty
+    private long maxBytes = 0;
+    
+    @Min(0)
+    @JsonProperty
+    private long maxAgeMillis = 0;
+    
+    public String getPattern() {
+        return pattern;
+    }
+    
+    public void setPattern(String pattern) {
+        this.pattern = pattern;
+    }
+    
+    public long getMaxMessages() {
+        return maxMessages;
+    }
+    
+    public void setMaxMessages(long maxMessages) {
+        this.maxMessages = maxMessages;
+    }
+    
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+    
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+    
+    public long getMaxAgeMillis() {
+        return maxAgeMillis;
+    }
+    
+    public void setMaxAgeMillis(long maxAgeMillis) {
+        this.maxAgeMillis = maxAgeMillis;
+    }
+}
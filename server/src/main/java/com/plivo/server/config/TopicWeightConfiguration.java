@@ -0,0 +1,34 @@
+package com.plivo.server.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotEmpty;
+
+public class TopicWeightConfiguration {
+    
+    // Exact topic name, a prefix ending in '*' (e.g. a tenant's topics), or '*' for all topics
+    @NotEmpty
+    @JsonProperty
+    private String pattern;
+    
+    // Share of dispatch turns relative to topics of weight 1
+    @Min(1)
+    @JsonProperty
+    private int weight = 1;
+    
+    public String getPattern() {
+        return pattern;
+    }
+    
+    public void setPattern(String pattern) {
+        this.pattern = pattern;
+    }
+    
+    public int getWeight() {
+        return weight;
+    }
+    
+    public void setWeight(int weight) {
+        this.weight = weight;
+    }
+}
@@ -0,0 +1,430 @@
+package com.plivo.server.resources;
+
+import com.plivo.core.codec.ProtocolCodec;
+import com.plivo.core.exceptions.TopicNotFoundException;
+import com.plivo.core.service.EventSink;
+import com.plivo.core.service.PubSubService;
+import com.plivo.models.FrameReplay;
+import com.plivo.models.MessageEnvelope;
+import com.plivo.models.ReplayFrom;
+import com.plivo.models.Subscription;
+import io.dropwizard.lifecycle.Managed;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import org.glassfish.jersey.server.ChunkedOutput;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * HTTP consumers: Server-Sent Event streams and long polls. Both subscribe to the
+ * topic as {@link EventSink}s, so the dispatcher hands them the event frame it
+ * encoded for WebSocket subscribers, and history is read as stored frames where the
+ * topic keeps them. Neither holds a thread while waiting: streams are written by
+ * the dispatcher, and a waiting poll is a suspended request.
+ */
+public class EventFeeds implements Managed {
+    
+    private static final Logger log = LoggerFactory.getLogger(EventFeeds.class);
+    
+    private static final String HEARTBEAT = ":\n\n";
+    // Last frame of a stream whose topic was deleted; EventSource clients see it as a named event
+    private static final String TOPIC_DELETED_EVENT = "event: topic_deleted\ndata: {}\n\n";
+    
+    private final PubSubService pubSubService;
+    private final ProtocolCodec codec;
+    private final long heartbeatIntervalMillis;
+    private final int maxPollMessages;
+    private final long maxPollTimeoutMillis;
+    // Open event streams by topic
+    private final ConcurrentHashMap<String, Feed> feeds;
+    private ScheduledExecutorService scheduler;
+    
+    public EventFeeds(PubSubService pubSubService, ProtocolCodec codec, long heartbeatIntervalMillis,
+                      int maxPollMessages, long maxPollTimeoutMillis) {
+        this.pubSubService = pubSubService;
+        this.codec = codec;
+        this.heartbeatIntervalMillis = heartbeatIntervalMillis;
+        this.maxPollMessages = maxPollMessages;
+        this.maxPollTimeoutMillis = maxPollTimeoutMillis;
+        this.feeds = new ConcurrentHashMap<>();
+    }
+    
+    @Override
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "event-feed-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::heartbeat, heartbeatIntervalMillis, heartbeatIntervalMillis, TimeUnit.MILLISECONDS);
+        log.info("HTTP event feeds started, heartbeat every {} ms", heartbeatIntervalMillis);
+    }
+    
+    @Override
+    public void stop() {
+        scheduler.shutdownNow();
+        for (Feed feed : feeds.values()) {
+            for (EventStream stream : feed.streams) {
+                stream.close();
+            }
+        }
+        log.info("HTTP event feeds stopped");
+    }
+    
+    public int getMaxPollMessages() {
+        return maxPollMessages;
+    }
+    
+    public long getMaxPollTimeoutMillis() {
+        return maxPollTimeoutMillis;
+    }
+    
+    /**
+     * Opens a Server-Sent Event stream of a topic. Each event's id is its offset, so a
+     * reconnecting client resumes after the last event it saw.
+     *
+     * @param fromOffset Offset to replay stored messages from first, or null for new messages only
+     * @throws TopicNotFoundException If the topic does not exist
+     */
+    public ChunkedOutput<String> openStream(String topicName, Long fromOffset) throws IOException {
+        ChunkedOutput<String> output = new ChunkedOutput<>(String.class);
+        openStream(topicName, fromOffset, output);
+        return output;
+    }
+    
+    /**
+     * Streams into the given output. Live events are held back while the replay is written
+     * and then sent, less those the replay already covered, so ids only ever increase.
+     */
+    void openStream(String topicName, Long fromOffset, ChunkedOutput<String> output) throws IOException {
+        EventStream stream = new EventStream(topicName, output);
+        if (fromOffset != null) {
+            stream.holdLive();
+        }
+        pubSubService.subscribe(new Subscription(stream.clientId, topicName, stream), null);
+        stream.feed = feeds.compute(topicName, (name, feed) -> {
+            Feed joined = feed != null ? feed : new Feed();
+            joined.streams.add(stream);
+            return joined;
+        });
+        log.info("Event stream {} opened on topic {}", stream.clientId, topicName);
+        
+        // Sends the response headers before the first event
+        stream.write(HEARTBEAT);
+        if (fromOffset != null) {
+            long lastReplayed = fromOffset - 1;
+            try {
+                for (Frame frame : readFrames(topicName, fromOffset, pubSubService.getMaxReplayMessages())) {
+                    stream.write(streamFrame(frame.offset, frame.json));
+                    lastReplayed = frame.offset;
+                }
+            } finally {
+                stream.releaseLive(lastReplayed);
+            }
+        }
+    }
+    
+    /**
+     * Answers a poll with stored messages from an offset. If there are none yet, the request
+     * is suspended until the next message or the timeout, with no thread waiting on it.
+     *
+     * @throws TopicNotFoundException If the topic does not exist
+     */
+    public void poll(String topicName, long offset, int max, long timeoutMillis, AsyncResponse response) throws IOException {
+        List<Frame> frames = readFrames(topicName, offset, max);
+        if (!frames.isEmpty() || timeoutMillis <= 0) {
+            response.resume(pollResponse(frames, offset));
+            return;
+        }
+        
+        PollWaiter waiter = new PollWaiter(topicName, offset, response);
+        response.setTimeoutHandler(timedOut -> waiter.complete(List.of()));
+        response.setTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        try {
+            pubSubService.subscribe(new Subscription(waiter.clientId, topicName, waiter), null);
+        } catch (TopicNotFoundException e) {
+            waiter.complete(List.of());
+            return;
+        }
+        waiter.subscribed();
+        
+        // A message stored between the first read and the subscription would otherwise wait for the next one
+        frames = readFrames(topicName, offset, max);
+        if (!frames.isEmpty()) {
+            waiter.complete(frames);
+        }
+    }
+    
+    /**
+     * Reads stored messages as event frames, using the stored frames when the history keeps them.
+     */
+    private List<Frame> readFrames(String topicName, long offset, int max) throws IOException {
+        List<Frame> frames = new ArrayList<>();
+        FrameReplay replay = pubSubService.replayFrames(topicName, ReplayFrom.OFFSET, offset, max);
+        if (replay != null) {
+            replay.sendTo((frameOffset, frame) -> frames.add(new Frame(frameOffset, StandardCharsets.UTF_8.decode(frame).toString())));
+            return frames;
+        }
+        for (MessageEnvelope envelope : pubSubService.getMessagesFromOffset(topicName, offset, max)) {
+            frames.add(new Frame(envelope.getOffset(), codec.encodeEvent(topicName, envelope)));
+        }
+        return frames;
+    }
+    
+    private void heartbeat() {
+        for (Feed feed : feeds.values()) {
+            for (EventStream stream : feed.streams) {
+                if (stream.closed.get()) {
+                    // Closed before it joined the feed
+                    removeStream(stream);
+                } else {
+                    stream.write(HEARTBEAT);
+                }
+            }
+        }
+    }
+    
+    private void removeStream(EventStream stream) {
+        feeds.computeIfPresent(stream.topicName, (name, feed) -> {
+            feed.streams.remove(stream);
+            return feed.streams.isEmpty() ? null : feed;
+        });
+    }
+    
+    private void unsubscribe(String topicName, String clientId) {
+        try {
+            pubSubService.unsubscribe(topicName, clientId);
+        } catch (TopicNotFoundException e) {
+            // Deleted along with its subscriptions
+        }
+    }
+    
+    private static String streamFrame(long offset, String eventJson) {
+        return "id: " + offset + "\ndata: " + eventJson + "\n\n";
+    }
+    
+    /**
+     * Builds {@code {"events": [...], "next_offset": n}} around the encoded frames.
+     */
+    private static Response pollResponse(List<Frame> frames, long offset) {
+        int length = 32;
+        for (Frame frame : frames) {
+            length += frame.json.length() + 1;
+        }
+        
+        StringBuilder sb = new StringBuilder(length);
+        sb.append("{\"events\":[");
+        for (int i = 0; i < frames.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(frames.get(i).json);
+        }
+        long nextOffset = frames.isEmpty() ? offset : frames.get(frames.size() - 1).offset + 1;
+        sb.append("],\"next_offset\":").append(nextOffset).append('}');
+        return Response.ok(sb.toString(), MediaType.APPLICATION_JSON).build();
+    }
+    
+    private static class Frame {
+        
+        private final long offset;
+        private final String json;
+        
+        private Frame(long offset, String json) {
+            this.offset = offset;
+            this.json = json;
+        }
+    }
+    
+    /**
+     * The event streams of one topic, and the last stream frame built for them.
+     */
+    private static class Feed {
+        
+        private final Set<EventStream> streams = ConcurrentHashMap.newKeySet();
+        private volatile SharedFrame last;
+        
+        /**
+         * Builds the stream frame of a message once and shares it with the topic's other streams.
+         */
+        private String frameFor(MessageEnvelope envelope, String eventJson) {
+            SharedFrame shared = last;
+            if (shared == null || shared.envelope != envelope) {
+                shared = new SharedFrame(envelope, streamFrame(envelope.getOffset(), eventJson));
+                last = shared;
+            }
+            return shared.frame;
+        }
+    }
+    
+    private static class SharedFrame {
+        
+        private final MessageEnvelope envelope;
+        private final String frame;
+        
+        private SharedFrame(MessageEnvelope envelope, String frame) {
+            this.envelope = envelope;
+            this.frame = frame;
+        }
+    }
+    
+    /**
+     * One open Server-Sent Event stream.
+     */
+    private class EventStream implements EventSink {
+        
+        private final String topicName;
+        private final String clientId;
+        private final ChunkedOutput<String> output;
+        private final AtomicBoolean closed;
+        // Set once the stream has joined its topic's feed, just after subscribing
+        private volatile Feed feed;
+        // Live events that arrived while the replay was written, or null when not replaying
+        private List<Frame> held;
+        
+        private EventStream(String topicName, ChunkedOutput<String> output) {
+            this.topicName = topicName;
+            this.clientId = "sse-" + UUID.randomUUID();
+            this.output = output;
+            this.closed = new AtomicBoolean();
+        }
+        
+        @Override
+        public boolean isOpen() {
+            return !closed.get() && !output.isClosed();
+        }
+        
+        @Override
+        public void sendEvent(MessageEnvelope envelope, String eventJson) {
+            synchronized (this) {
+                if (held != null) {
+                    held.add(new Frame(envelope.getOffset(), eventJson));
+                    return;
+                }
+            }
+            Feed joined = feed;
+            write(joined != null ? joined.frameFor(envelope, eventJson) : streamFrame(envelope.getOffset(), eventJson));
+        }
+        
+        @Override
+        public void topicDeleted(String topicName) {
+            write(TOPIC_DELETED_EVENT);
+            close();
+        }
+        
+        private synchronized void holdLive() {
+            held = new ArrayList<>();
+        }
+        
+        /**
+         * Sends the held live events that follow the replay and stops holding them.
+         */
+        private synchronized void releaseLive(long lastReplayed) {
+            for (Frame frame : held) {
+                if (frame.offset > lastReplayed) {
+                    write(streamFrame(frame.offset, frame.json));
+                }
+            }
+            held = null;
+        }
+        
+        private void write(String chunk) {
+            if (closed.get()) {
+                return;
+            }
+            try {
+                output.write(chunk);
+            } catch (IOException | IllegalStateException e) {
+                // The client went away; found on the next event or heartbeat
+                close();
+            }
+        }
+        
+        private void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            removeStream(this);
+            unsubscribe(topicName, clientId);
+            try {
+                output.close();
+            } catch (IOException e) {
+                log.debug("Failed to close event stream {}: {}", clientId, e.getMessage());
+            }
+            log.info("Event stream {} closed on topic {}", clientId, topicName);
+        }
+    }
+    
+    /**
+     * A suspended poll, answered by the first message at or after its offset.
+     */
+    private class PollWaiter implements EventSink {
+        
+        private final String topicName;
+        private final String clientId;
+        private final long offset;
+        private final AsyncResponse response;
+        private final AtomicBoolean done;
+        private boolean subscribed;
+        
+        private PollWaiter(String topicName, long offset, AsyncResponse response) {
+            this.topicName = topicName;
+            this.clientId = "poll-" + UUID.randomUUID();
+            this.offset = offset;
+            this.response = response;
+            this.done = new AtomicBoolean();
+        }
+        
+        @Override
+        public boolean isOpen() {
+            return !done.get();
+        }
+        
+        @Override
+        public void sendEvent(MessageEnvelope envelope, String eventJson) {
+            if (envelope.getOffset() >= offset) {
+                complete(List.of(new Frame(envelope.getOffset(), eventJson)));
+            }
+        }
+        
+        @Override
+        public void topicDeleted(String topicName) {
+            complete(List.of());
+        }
+        
+        private void complete(List<Frame> frames) {
+            if (!done.compareAndSet(false, true)) {
+                return;
+            }
+            synchronized (this) {
+                if (subscribed) {
+                    unsubscribe(topicName, clientId);
+                }
+            }
+            response.resume(pollResponse(frames, offset));
+        }
+        
+        /**
+         * Called once the subscription is in place; drops it again if the poll was already answered.
+         */
+        private synchronized void subscribed() {
+            subscribed = true;
+            if (done.get()) {
+                unsubscribe(topicName, clientId);
+            }
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package com.plivo.server.resources;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.plivo.core.cluster.ClusterService;
+import com.plivo.core.exceptions.ClusterForwardException;
+import com.plivo.core.exceptions.QueueOverflowException;
+import com.plivo.core.exceptions.TopicNotFoundException;
+import com.plivo.core.service.PubSubService;
+import com.plivo.core.service.RateLimiter;
+import com.plivo.models.MessageEnvelope;
+import com.plivo.models.Topic;
+import com.plivo.models.ws.request.PublishRequest;
+import jakarta.ws.rs.core.StreamingOutput;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Publishes messages from an HTTP request body: one JSON message, a JSON array of them,
+ * or newline-delimited JSON. The body is parsed and published one message at a time,
+ * and a result line is written for every batch, so a request can carry any number of
+ * messages. A full topic queue or the topic rate limit holds up reading the body
+ * instead of rejecting messages, which pushes back on the producer; if that lasts
+ * longer than the wait limit the request ends early, and everything before the
+ * reported index was published.
+ */
+public class MessageIngest {
+    
+    private static final Logger log = LoggerFactory.getLogger(MessageIngest.class);
+    
+    // Pause between retries while a topic's queue is full
+    private static final long OVERFLOW_POLL_MILLIS = 10;
+    
+    private final PubSubService pubSubService;
+    private final ClusterService clusterService;
+    private final RateLimiter rateLimiter;
+    private final ObjectMapper objectMapper;
+    private final ObjectReader messageReader;
+    private final int batchSize;
+    private final long maxWaitMillis;
+    
+    public MessageIngest(
+            PubSubService pubSubService,
+            ClusterService clusterService,
+            RateLimiter rateLimiter,
+            ObjectMapper objectMapper,
+            int batchSize,
+            long maxWaitMillis) {
+        this.pubSubService = pubSubService;
+        this.clusterService = clusterService;
+        this.rateLimiter = rateLimiter;
+        this.objectMapper = objectMapper;
+        this.messageReader = objectMapper.readerFor(PublishRequest.Message.class);
+        this.batchSize = batchSize;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+    
+    /**
+     * Creates the streamed response that publishes the body to a topic while it is written.
+     */
+    public StreamingOutput ingest(String topicName, InputStream body) {
+        return output -> new Run(topicName, output).publishAll(body);
+    }
+    
+    /**
+     * A message that ends the request: the body cannot be read further, or publishing cannot go on.
+     */
+    private static class IngestAbort extends Exception {
+        
+        private final String code;
+        
+        private IngestAbort(String code, String message) {
+            super(message);
+            this.code = code;
+        }
+    }
+    
+    /**
+     * State of one request.
+     */
+    private class Run {
+        
+        private final String topicName;
+        private final OutputStream output;
+        private final List<Map<String, Object>> errors;
+        private final List<CompletableFuture<MessageEnvelope>> pending;
+        private final List<Integer> pendingIndexes;
+        private int index;
+        private int batch;
+        private int batchStart;
+        private int batchAccepted;
+        private int batchRejected;
+        private long firstOffset = -1;
+        private long lastOffset = -1;
+        private long accepted;
+        private long rejected;
+        
+        private Run(String topicName, OutputStream output) {
+            this.topicName = topicName;
+            this.output = output;
+            this.errors = new ArrayList<>();
+            this.pending = new ArrayList<>();
+            this.pendingIndexes = new ArrayList<>();
+        }
+        
+        private void publishAll(InputStream body) throws IOException {
+            String abortCode = null;
+            String abortMessage = null;
+            try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+                JsonToken token = parser.nextToken();
+                if (token == JsonToken.START_ARRAY) {
+                    while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                        if (token == null) {
+                            throw new IngestAbort("INVALID_MESSAGE", "Unterminated JSON array");
+                        }
+                        publishNext(parser, token);
+                    }
+                } else {
+                    // One message, or newline-delimited messages read as consecutive root values
+                    for (; token != null; token = parser.nextToken()) {
+                        publishNext(parser, token);
+                    }
+                }
+            } catch (IngestAbort e) {
+                abortCode = e.code;
+                abortMessage = e.getMessage();
+            } catch (JsonProcessingException e) {
+                abortCode = "INVALID_MESSAGE";
+                abortMessage = "Malformed message: " + e.getOriginalMessage();
+            }
+            
+            finishBatch();
+            
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("status", abortCode == null ? "complete" : "aborted");
+            summary.put("accepted", accepted);
+            summary.put("rejected", rejected);
+            if (abortCode != null) {
+                log.warn("HTTP publish to topic {} aborted at message {}: {}", topicName, index, abortMessage);
+                summary.put("index", index);
+                summary.put("code", abortCode);
+                summary.put("message", abortMessage);
+            }
+            writeLine(summary);
+        }
+        
+        private void publishNext(JsonParser parser, JsonToken token) throws IOException, IngestAbort {
+            if (token != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                reject("INVALID_REQUEST", "Message must be a JSON object");
+            } else {
+                long start = parser.getTokenLocation().getByteOffset();
+                PublishRequest.Message message = messageReader.readValue(parser);
+                publish(message, (int) (parser.getCurrentLocation().getByteOffset() - start));
+            }
+            
+            index++;
+            if (index - batchStart >= batchSize) {
+                finishBatch();
+            }
+        }
+        
+        private void publish(PublishRequest.Message message, int bytes) throws IngestAbort {
+            if (message.getPayload() == null) {
+                reject("INVALID_REQUEST", "Message payload is required");
+                return;
+            }
+            Integer priority = message.getPriority();
+            if (priority != null && (priority < 0 || priority >= Topic.PRIORITY_LANES)) {
+                reject("INVALID_REQUEST", "priority must be between 0 and " + (Topic.PRIORITY_LANES - 1));
+                return;
+            }
+            int lane = priority != null ? priority : Topic.DEFAULT_PRIORITY;
+            
+            long deadline = System.currentTimeMillis() + maxWaitMillis;
+            awaitRate(bytes, deadline);
+            
+            // Topics led by another node are published there; the results are collected at the end of the batch
+            if (clusterService != null && !clusterService.isLocalLeader(topicName)) {
+                addPending(clusterService.forwardPublish(topicName, message.getId(), message.getPayload(), lane));
+                return;
+            }
+            if (clusterService != null) {
+                clusterService.ensureInSync(topicName);
+            }
+            
+            MessageEnvelope envelope = publishLocally(message, lane, deadline);
+            if (clusterService != null) {
+                addPending(clusterService.replicate(topicName, envelope).thenApply(ignored -> envelope));
+            } else {
+                accept(envelope);
+            }
+        }
+        
+        private void awaitRate(int bytes, long deadline) throws IngestAbort {
+            if (rateLimiter == null) {
+                return;
+            }
+            RateLimiter.Rejection rejection;
+            while ((rejection = rateLimiter.tryPublish(null, null, topicName, bytes)) != null) {
+                long wait = rejection.getRetryAfterMillis();
+                if (System.currentTimeMillis() + wait > deadline) {
+                    throw new IngestAbort("RATE_LIMITED", "Publish rate limit exceeded for topic: " + topicName);
+                }
+                sleep(wait);
+            }
+        }
+        
+        private MessageEnvelope publishLocally(PublishRequest.Message message, int lane, long deadline) throws IngestAbort {
+            while (true) {
+                try {
+                    return pubSubService.publish(topicName, message.getId(), message.getPayload(), lane);
+                } catch (TopicNotFoundException e) {
+                    throw new IngestAbort("TOPIC_NOT_FOUND", e.getMessage());
+                } catch (QueueOverflowException e) {
+                    // The topic stops itself at its high watermark and the watchdog resumes it as it drains
+                    if (System.currentTimeMillis() >= deadline) {
+                        throw new IngestAbort("CONSUMER_IS_SLOW", String.format(
+                            "Topic queue is full (%d/%d messages). Consumers are slow.",
+                            e.getQueueSize(), e.getQueueCapacity()));
+                    }
+                    sleep(OVERFLOW_POLL_MILLIS);
+                }
+            }
+        }
+        
+        private void accept(MessageEnvelope envelope) {
+            if (firstOffset < 0) {
+                firstOffset = envelope.getOffset();
+            }
+            lastOffset = envelope.getOffset();
+            batchAccepted++;
+        }
+        
+        private void addPending(CompletableFuture<MessageEnvelope> future) {
+            pending.add(future);
+            pendingIndexes.add(index);
+        }
+        
+        private void reject(String code, String message) {
+            reject(index, code, message);
+        }
+        
+        private void reject(int at, String code, String message) {
+            Map<String, Object> error = new LinkedHashMap<>();
+            error.put("index", at);
+            error.put("code", code);
+            error.put("message", message);
+            errors.add(error);
+            batchRejected++;
+        }
+        
+        /**
+         * Waits for forwarded and replicated publishes, then writes the batch result.
+         */
+        private void finishBatch() throws IOException {
+            for (int i = 0; i < pending.size(); i++) {
+                try {
+                    accept(pending.get(i).join());
+                } catch (CompletionException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    String code = cause instanceof ClusterForwardException
+                        ? ((ClusterForwardException) cause).getCode() : "INTERNAL_ERROR";
+                    reject(pendingIndexes.get(i), code, cause.getMessage());
+                }
+            }
+            pending.clear();
+            pendingIndexes.clear();
+            
+            if (index == batchStart) {
+                return;
+            }
+            
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("batch", batch);
+            result.put("first_index", batchStart);
+            result.put("accepted", batchAccepted);
+            result.put("rejected", batchRejected);
+            if (firstOffset >= 0) {
+                result.put("first_offset", firstOffset);
+                result.put("last_offset", lastOffset);
+            }
+            if (!errors.isEmpty()) {
+                result.put("errors", new ArrayList<>(errors));
+            }
+            writeLine(result);
+            
+            accepted += batchAccepted;
+            rejected += batchRejected;
+            batch++;
+            batchStart = index;
+            batchAccepted = 0;
+            batchRejected = 0;
+            firstOffset = -1;
+            lastOffset = -1;
+            errors.clear();
+        }
+        
+        private void writeLine(Map<String, Object> line) throws IOException {
+            output.write(objectMapper.writeValueAsBytes(line));
+            output.write('\n');
+            output.flush();
+        }
+    }
+    
+    private static void sleep(long millis) throws IngestAbort {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IngestAbort("INTERNAL_ERROR", "Interrupted while waiting to publish");
+        }
+    }
+}
@@ -1,42 +1,65 @@
 package com.plivo.server.resources;
 
-import com.plivo.core.repository.TopicRepository;
-import com.plivo.models.Topic;
+import com.plivo.core.service.StatsAggregator;
 import com.plivo.models.http.TopicStats;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 @Path("/stats")
 @Produces(MediaType.APPLICATION_JSON)
 public class StatsResource {
     
-    private final TopicRepository topicRepository;
+    private final StatsAggregator statsAggregator;
+    private final int maxPageSize;
     
-    public StatsResource(TopicRepository topicRepository) {
-        this.topicRepository = topicRepository;
+    public StatsResource(StatsAggregator statsAggregator, int maxPageSize) {
+        this.statsAggregator = statsAggregator;
+        this.maxPageSize = maxPageSize;
     }
     
-    //Get system statistics
+    //Get system statistics from the latest snapshot, a page of topics in name order or the busiest topics
     @GET
-    public Response getStats() {
-        Map<String, TopicStats> topicStatsMap = new HashMap<>();
+    public Response getStats(
+            @QueryParam("prefix") String prefix,
+            @QueryParam("cursor") String cursor,
+            @QueryParam("limit") Integer limit,
+            @QueryParam("top") Integer top) {
+        if ((limit != null && limit < 1) || (top != null && top < 1)) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "limit and top must be at least 1");
+            return Response.status(Response.Status.BAD_REQUEST).entity(error).build();
+        }
+        
+        StatsAggregator.Snapshot snapshot = statsAggregator.getSnapshot();
+        String topicPrefix = prefix != null && !prefix.isEmpty() ? prefix : null;
+        int pageSize = Math.min(top != null ? top : limit != null ? limit : maxPageSize, maxPageSize);
+        List<StatsAggregator.Entry> entries = top != null
+            ? snapshot.top(topicPrefix, pageSize)
+            : snapshot.page(topicPrefix, cursor, pageSize);
         
-        for (Topic topic : topicRepository.getAllTopics()) {
-            TopicStats stats = new TopicStats(
-                topic.getMessageCount(),
-                topic.getSubscriberCount()
-            );
-            topicStatsMap.put(topic.getName(), stats);
+        Map<String, TopicStats> topicStatsMap = new LinkedHashMap<>();
+        for (StatsAggregator.Entry entry : entries) {
+            topicStatsMap.put(entry.getName(), entry.toTopicStats());
         }
         
         Map<String, Object> response = new HashMap<>();
         response.put("topics", topicStatsMap);
+        response.put("total_topics", snapshot.getTopicCount());
+        response.put("total_messages", snapshot.getTotalMessages());
+        response.put("total_subscribers", snapshot.getTotalSubscribers());
+        response.put("generated_at", snapshot.getTakenAt());
+        if (top == null && entries.size() == pageSize) {
+            response.put("next_cursor", entries.get(entries.size() - 1).getName());
+        }
         
         return Response.ok(response).build();
     }
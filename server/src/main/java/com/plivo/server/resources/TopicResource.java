@@ -1,22 +1,34 @@
 package com.plivo.server.resources;
 
+import com.plivo.core.cluster.ClusterService;
 import com.plivo.core.exceptions.TopicAlreadyExistsException;
 import com.plivo.core.exceptions.TopicNotFoundException;
 import com.plivo.core.repository.TopicRepository;
+import com.plivo.core.service.TopicDeleter;
 import com.plivo.models.Topic;
+import com.plivo.models.TopicConfig;
+import com.plivo.models.http.BatchTopicsRequest;
 import com.plivo.models.http.CreateTopicRequest;
 import com.plivo.models.http.CreateTopicResponse;
 import com.plivo.models.http.TopicInfo;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotNull;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.container.Suspended;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import org.glassfish.jersey.server.ChunkedOutput;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 @Path("/topics")
@@ -24,11 +36,33 @@ import java.util.stream.Collectors;
 @Consumes(MediaType.APPLICATION_JSON)
 public class TopicResource {
     
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+    
+    // Topics listed per page when no limit is given, and the most one page may hold
+    private static final int DEFAULT_LIST_LIMIT = 1000;
+    private static final int MAX_LIST_LIMIT = 10000;
+    // Most topics one batch create or delete may name
+    private static final int MAX_BATCH_TOPICS = 10000;
+    private static final Pattern TOPIC_NAME = Pattern.compile(CreateTopicRequest.NAME_PATTERN);
+    
     private static final Logger log = LoggerFactory.getLogger(TopicResource.class);
     private final TopicRepository topicRepository;
+    private final ClusterService clusterService;
+    private final MessageIngest ingest;
+    private final EventFeeds eventFeeds;
+    private final TopicDeleter topicDeleter;
     
     public TopicResource(TopicRepository topicRepository) {
+        this(topicRepository, null, null, null, null);
+    }
+    
+    public TopicResource(TopicRepository topicRepository, ClusterService clusterService, MessageIngest ingest,
+                         EventFeeds eventFeeds, TopicDeleter topicDeleter) {
         this.topicRepository = topicRepository;
+        this.clusterService = clusterService;
+        this.ingest = ingest;
+        this.eventFeeds = eventFeeds;
+        this.topicDeleter = topicDeleter;
     }
     
     //Create a new topic
@@ -37,8 +71,14 @@ public class TopicResource {
         try {
             String topicName = request.getName();
             log.info("Creating topic: {}", topicName);
+            if (!supportsConfig(request.getConfig())) {
+                return historySizeUnsupported();
+            }
             
-            Topic topic = topicRepository.createTopic(topicName);
+            Topic topic = topicRepository.createTopic(topicName, request.getConfig());
+            if (clusterService != null) {
+                clusterService.onTopicCreated(topicName);
+            }
             
             CreateTopicResponse response = new CreateTopicResponse("created", topicName);
             log.info("Topic created successfully: {}", topicName);
@@ -54,6 +94,41 @@ public class TopicResource {
         }
     }
     
+    //Create many topics at once; names that exist already or are invalid are reported, not fatal
+    @POST
+    @Path("/batch")
+    public Response createTopics(@Valid BatchTopicsRequest request) {
+        if (request.getNames().size() > MAX_BATCH_TOPICS) {
+            return tooManyTopics();
+        }
+        if (!supportsConfig(request.getConfig())) {
+            return historySizeUnsupported();
+        }
+        
+        List<String> created = new ArrayList<>();
+        List<String> existing = new ArrayList<>();
+        List<String> invalid = new ArrayList<>();
+        for (String topicName : request.getNames()) {
+            if (topicName == null || !TOPIC_NAME.matcher(topicName).matches()) {
+                invalid.add(topicName);
+            } else if (topicRepository.createTopicIfAbsent(topicName, request.getConfig()) == null) {
+                existing.add(topicName);
+            } else {
+                created.add(topicName);
+                if (clusterService != null) {
+                    clusterService.onTopicCreated(topicName);
+                }
+            }
+        }
+        log.info("Batch created {} topics, {} already existed, {} invalid", created.size(), existing.size(), invalid.size());
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("created", created);
+        response.put("existing", existing);
+        response.put("invalid", invalid);
+        return Response.ok(response).build();
+    }
+    
     
     // Delete a topic
     @DELETE
@@ -61,7 +136,12 @@ public class TopicResource {
     public Response deleteTopic(@PathParam("name") String name) {
         try {
             log.info("Deleting topic: {}", name);
-            topicRepository.deleteTopic(name);
+            if (!deleteIfPresent(name)) {
+                throw new TopicNotFoundException(name);
+            }
+            if (clusterService != null) {
+                clusterService.onTopicDeleted(name);
+            }
             
             Map<String, String> response = new HashMap<>();
             response.put("status", "deleted");
@@ -79,18 +159,200 @@ public class TopicResource {
         }
     }
     
+    //Get the settings of a topic
+    @GET
+    @Path("/{name}/config")
+    public Response getTopicConfig(@PathParam("name") String name) {
+        try {
+            return Response.ok(topicRepository.getTopic(name).getConfig()).build();
+        } catch (TopicNotFoundException e) {
+            return topicNotFound(name);
+        }
+    }
+    
+    //Change some settings of a topic while it runs; fields left out keep their value
+    @PATCH
+    @Path("/{name}/config")
+    public Response updateTopicConfig(@PathParam("name") String name, @Valid @NotNull TopicConfig changes) {
+        if (!supportsConfig(changes)) {
+            return historySizeUnsupported();
+        }
+        try {
+            TopicConfig config = topicRepository.getTopic(name).updateConfig(changes);
+            log.info("Topic {} reconfigured", name);
+            return Response.ok(config).build();
+        } catch (TopicNotFoundException e) {
+            log.warn("Topic not found for reconfiguration: {}", name);
+            return topicNotFound(name);
+        }
+    }
+    
+    
+    //Delete many topics at once; names of topics that do not exist are reported, not fatal
+    @POST
+    @Path("/batch/delete")
+    public Response deleteTopics(@Valid BatchTopicsRequest request) {
+        if (request.getNames().size() > MAX_BATCH_TOPICS) {
+            return tooManyTopics();
+        }
+        
+        List<String> deleted = new ArrayList<>();
+        List<String> notFound = new ArrayList<>();
+        for (String topicName : request.getNames()) {
+            if (topicName == null || !deleteIfPresent(topicName)) {
+                notFound.add(topicName);
+            } else {
+                deleted.add(topicName);
+                if (clusterService != null) {
+                    clusterService.onTopicDeleted(topicName);
+                }
+            }
+        }
+        log.info("Batch deleted {} topics, {} not found", deleted.size(), notFound.size());
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("deleted", deleted);
+        response.put("not_found", notFound);
+        return Response.ok(response).build();
+    }
+    
+    
+    // Publish a JSON message, a JSON array of messages or newline-delimited messages, streaming a result line per batch
+    @POST
+    @Path("/{name}/messages")
+    @Consumes({MediaType.APPLICATION_JSON, APPLICATION_NDJSON})
+    @Produces({APPLICATION_NDJSON, MediaType.APPLICATION_JSON})
+    public Response publishMessages(@PathParam("name") String name, InputStream body) {
+        if (ingest == null) {
+            return unavailable("Publishing over HTTP is not enabled");
+        }
+        
+        if (!topicRepository.topicExists(name)) {
+            log.warn("Topic not found for publish: {}", name);
+            return topicNotFound(name);
+        }
+        
+        return Response.ok(ingest.ingest(name, body), APPLICATION_NDJSON).build();
+    }
+    
+    
+    // Fetch messages from an offset, waiting up to timeout_ms for one if there are none yet
+    @GET
+    @Path("/{name}/messages")
+    public void pollMessages(
+            @PathParam("name") String name,
+            @QueryParam("offset") @DefaultValue("0") long offset,
+            @QueryParam("max") Integer max,
+            @QueryParam("timeout_ms") @DefaultValue("0") long timeoutMillis,
+            @Suspended AsyncResponse response) throws IOException {
+        if (eventFeeds == null) {
+            response.resume(unavailable("HTTP consumers are not enabled"));
+            return;
+        }
+        if (!topicRepository.topicExists(name)) {
+            response.resume(topicNotFound(name));
+            return;
+        }
+        if (offset < 0 || timeoutMillis < 0 || (max != null && max < 1)) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "offset and timeout_ms cannot be negative, and max must be at least 1");
+            response.resume(Response.status(Response.Status.BAD_REQUEST).entity(error).build());
+            return;
+        }
+        
+        int limit = Math.min(max != null ? max : eventFeeds.getMaxPollMessages(), eventFeeds.getMaxPollMessages());
+        try {
+            eventFeeds.poll(name, offset, limit, Math.min(timeoutMillis, eventFeeds.getMaxPollTimeoutMillis()), response);
+        } catch (TopicNotFoundException e) {
+            response.resume(topicNotFound(name));
+        }
+    }
+    
+    // Stream new messages as Server-Sent Events; Last-Event-ID or from_offset replays stored ones first
+    @GET
+    @Path("/{name}/events")
+    @Produces("text/event-stream")
+    public Response streamEvents(
+            @PathParam("name") String name,
+            @QueryParam("from_offset") Long fromOffset,
+            @HeaderParam("Last-Event-ID") Long lastEventId) throws IOException {
+        if (eventFeeds == null) {
+            return unavailable("HTTP consumers are not enabled");
+        }
+        
+        Long replayFrom = lastEventId != null ? Long.valueOf(lastEventId + 1) : fromOffset;
+        try {
+            ChunkedOutput<String> stream = eventFeeds.openStream(name, replayFrom);
+            return Response.ok(stream).header("Cache-Control", "no-cache").header("X-Accel-Buffering", "no").build();
+        } catch (TopicNotFoundException e) {
+            return topicNotFound(name);
+        }
+    }
+    
+    private static Response topicNotFound(String name) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", "Topic not found");
+        error.put("topic", name);
+        return Response.status(Response.Status.NOT_FOUND).type(MediaType.APPLICATION_JSON).entity(error).build();
+    }
+    
+    /**
+     * Deletes a topic, leaving its subscribers to be notified in the background.
+     */
+    private boolean deleteIfPresent(String name) {
+        if (topicDeleter != null) {
+            return topicDeleter.delete(name);
+        }
+        return topicRepository.removeTopic(name) != null;
+    }
+    
+    private boolean supportsConfig(TopicConfig config) {
+        return config == null || config.getHistorySize() == null || topicRepository.isHistoryResizable();
+    }
+    
+    private static Response historySizeUnsupported() {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", "history_size cannot be set on off-heap or tiered history");
+        return Response.status(Response.Status.BAD_REQUEST).type(MediaType.APPLICATION_JSON).entity(error).build();
+    }
+    
+    private static Response tooManyTopics() {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", "A batch may name at most " + MAX_BATCH_TOPICS + " topics");
+        return Response.status(Response.Status.BAD_REQUEST).type(MediaType.APPLICATION_JSON).entity(error).build();
+    }
+    
+    private static Response unavailable(String message) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", message);
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE).type(MediaType.APPLICATION_JSON).entity(error).build();
+    }
+    
     
-    //List all topics
+    //List topics in name order, a page at a time
     @GET
-    public Response listTopics() {
-        log.debug("Listing all topics");
+    public Response listTopics(
+            @QueryParam("prefix") String prefix,
+            @QueryParam("cursor") String cursor,
+            @QueryParam("limit") @DefaultValue("" + DEFAULT_LIST_LIMIT) int limit) {
+        log.debug("Listing topics with prefix {} after {}", prefix, cursor);
+        if (limit < 1) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "limit must be at least 1");
+            return Response.status(Response.Status.BAD_REQUEST).entity(error).build();
+        }
+        int pageSize = Math.min(limit, MAX_LIST_LIMIT);
         
-        List<TopicInfo> topicInfos = topicRepository.getAllTopics().stream()
+        String topicPrefix = prefix != null && !prefix.isEmpty() ? prefix : null;
+        List<TopicInfo> topicInfos = topicRepository.listTopics(topicPrefix, cursor, pageSize).stream()
                 .map(topic -> new TopicInfo(topic.getName(), topic.getSubscriberCount()))
                 .collect(Collectors.toList());
         
         Map<String, Object> response = new HashMap<>();
         response.put("topics", topicInfos);
+        if (topicInfos.size() == pageSize) {
+            response.put("next_cursor", topicInfos.get(topicInfos.size() - 1).getName());
+        }
         
         log.debug("Returning {} topics", topicInfos.size());
         return Response.ok(response).build();
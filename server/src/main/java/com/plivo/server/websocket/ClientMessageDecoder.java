@@ -0,0 +1,164 @@
+package com.plivo.server.websocket;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.plivo.models.ws.enums.MessageType;
+import com.plivo.models.ws.request.ClientMessage;
+import com.plivo.models.ws.request.PingRequest;
+import com.plivo.models.ws.request.PublishRequest;
+import com.plivo.models.ws.request.SubscribeRequest;
+import com.plivo.models.ws.request.UnsubscribeRequest;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Decodes inbound WebSocket frames into client messages.
+ * The {@code type} field is found with a streaming scan first, and the frame is
+ * then bound with an {@link ObjectReader} resolved once per subtype, skipping
+ * Jackson's polymorphic type handling. Thread-safe and shared by all sessions;
+ * reusable request instances are held per session in {@link Buffers}.
+ */
+public class ClientMessageDecoder {
+    
+    private final JsonFactory jsonFactory;
+    private final Map<MessageType, ObjectReader> readers;
+    
+    public ClientMessageDecoder(ObjectMapper objectMapper) {
+        // The type is already known when binding, so drop the type id handling and the type property
+        ObjectMapper untypedMapper = objectMapper.copy().addMixIn(ClientMessage.class, UntypedClientMessage.class);
+        
+        this.jsonFactory = untypedMapper.getFactory();
+        this.readers = new EnumMap<>(MessageType.class);
+        readers.put(MessageType.SUBSCRIBE, untypedMapper.readerFor(SubscribeRequest.class));
+        readers.put(MessageType.UNSUBSCRIBE, untypedMapper.readerFor(UnsubscribeRequest.class));
+        readers.put(MessageType.PUBLISH, untypedMapper.readerFor(PublishRequest.class));
+        readers.put(MessageType.PING, untypedMapper.readerFor(PingRequest.class));
+    }
+    
+    /**
+     * Finds the top-level {@code type} field without binding the rest of the frame. For a
+     * publish the scan goes on until {@code topic} is found too, so it can be rate limited
+     * before binding, and then picks up {@code request_id} unless an object or array
+     * comes first.
+     *
+     * @param frame The raw frame text
+     * @param header Receives the fields found, reset first
+     * @return The client message type, or null if missing or not a client request type
+     * @throws IOException If the frame is not a JSON object
+     */
+    public MessageType peek(String frame, Header header) throws IOException {
+        header.reset();
+        try (JsonParser parser = jsonFactory.createParser(frame)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Message must be a JSON object");
+            }
+            
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (header.isPublishKnown() && value.isStructStart()) {
+                    return header.type;
+                }
+                
+                if ("type".equals(field)) {
+                    MessageType type = value == JsonToken.VALUE_STRING ? MessageType.fromValue(parser.getText()) : null;
+                    header.type = type != null && readers.containsKey(type) ? type : null;
+                    if (header.type != MessageType.PUBLISH) {
+                        return header.type;
+                    }
+                } else if ("topic".equals(field) && value == JsonToken.VALUE_STRING) {
+                    header.topic = parser.getText();
+                } else if ("request_id".equals(field) && value == JsonToken.VALUE_STRING) {
+                    header.requestId = parser.getText();
+                } else {
+                    parser.skipChildren();
+                }
+                
+                if (header.isPublishKnown() && header.requestId != null) {
+                    return header.type;
+                }
+            }
+            return header.type;
+        }
+    }
+    
+    /**
+     * Binds a frame of a known type, reusing the session's request instance for that type.
+     *
+     * @param frame The raw frame text
+     * @param type The type returned by {@link #peek(String, Header)}
+     * @param buffers The session's reusable request instances
+     * @return The decoded message, valid until the next decode on the same buffers
+     * @throws IOException If the frame cannot be bound
+     */
+    public ClientMessage decode(String frame, MessageType type, Buffers buffers) throws IOException {
+        ClientMessage target = buffers.get(type);
+        target.reset();
+        return readers.get(type).withValueToUpdate(target).readValue(frame);
+    }
+    
+    /**
+     * Reusable request instances for one session. Safe because a session's frames are
+     * handled one at a time and handlers copy out what they keep; nested objects such as
+     * the publish payload are freshly allocated on every decode.
+     */
+    public static class Buffers {
+        
+        private final Map<MessageType, ClientMessage> requests = new EnumMap<>(MessageType.class);
+        
+        public Buffers() {
+            requests.put(MessageType.SUBSCRIBE, new SubscribeRequest());
+            requests.put(MessageType.UNSUBSCRIBE, new UnsubscribeRequest());
+            requests.put(MessageType.PUBLISH, new PublishRequest());
+            requests.put(MessageType.PING, new PingRequest());
+        }
+        
+        private ClientMessage get(MessageType type) {
+            return requests.get(type);
+        }
+    }
+    
+    /**
+     * Top-level fields read by {@link #peek(String, Header)}, reused per session.
+     */
+    public static class Header {
+        
+        private MessageType type;
+        private String topic;
+        private String requestId;
+        
+        public MessageType getType() {
+            return type;
+        }
+        
+        public String getTopic() {
+            return topic;
+        }
+        
+        public String getRequestId() {
+            return requestId;
+        }
+        
+        private boolean isPublishKnown() {
+            return type == MessageType.PUBLISH && topic != null;
+        }
+        
+        private void reset() {
+            type = null;
+            topic = null;
+            requestId = null;
+        }
+    }
+    
+    @JsonTypeInfo(use = JsonTypeInfo.Id.NONE)
+    @JsonIgnoreProperties({"type"})
+    private abstract static class UntypedClientMessage {
+    }
+}
@@ -0,0 +1,47 @@
+package com.plivo.server.websocket;
+
+import com.plivo.core.cluster.ClusterService;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.annotations.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Inter-node endpoint receiving frames from other brokers' outbound links.
+ */
+// Cluster frames wrap client payloads, so allow more than the client limit
+@WebSocket(maxTextMessageSize = 1024 * 1024)
+public class ClusterWebSocket {
+    
+    private static final Logger log = LoggerFactory.getLogger(ClusterWebSocket.class);
+    
+    private final ClusterService clusterService;
+    
+    public ClusterWebSocket(ClusterService clusterService) {
+        this.clusterService = clusterService;
+    }
+    
+    @OnWebSocketConnect
+    public void onConnect(Session session) {
+        log.info("Cluster peer connected: {}", session.getRemoteAddress());
+    }
+    
+    @OnWebSocketClose
+    public void onClose(Session session, int statusCode, String reason) {
+        log.info("Cluster peer disconnected: {} - {}", statusCode, reason);
+    }
+    
+    @OnWebSocketError
+    public void onError(Session session, Throwable error) {
+        log.error("Cluster connection error for {}: {}", session.getRemoteAddress(), error.getMessage());
+    }
+    
+    @OnWebSocketMessage
+    public void onMessage(Session session, String message) {
+        try {
+            clusterService.handlePeerFrame(session, message);
+        } catch (Exception e) {
+            log.error("Failed to handle cluster frame: {}", e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.plivo.server.websocket;
+
+import com.plivo.core.cluster.ClusterService;
+import com.plivo.core.cluster.PeerLink;
+import org.eclipse.jetty.websocket.server.JettyServerUpgradeRequest;
+import org.eclipse.jetty.websocket.server.JettyServerUpgradeResponse;
+import org.eclipse.jetty.websocket.server.JettyWebSocketCreator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * Accepts inter-node links only from peers that present the cluster's shared secret in
+ * {@link PeerLink#SECRET_HEADER}; any other upgrade to {@code /cluster} is refused with 403.
+ */
+public class ClusterWebSocketCreator implements JettyWebSocketCreator {
+    
+    private static final Logger log = LoggerFactory.getLogger(ClusterWebSocketCreator.class);
+    
+    private final ClusterService clusterService;
+    
+    public ClusterWebSocketCreator(ClusterService clusterService) {
+        this.clusterService = clusterService;
+    }
+    
+    @Override
+    public Object createWebSocket(JettyServerUpgradeRequest req, JettyServerUpgradeResponse resp) {
+        if (!clusterService.isTrustedPeer(req.getHeader(PeerLink.SECRET_HEADER))) {
+            log.warn("Refused cluster link from {} without the cluster secret", req.getRemoteSocketAddress());
+            try {
+                resp.sendForbidden("Cluster secret required");
+            } catch (IOException e) {
+                log.debug("Failed to refuse cluster link: {}", e.getMessage());
+            }
+            return null;
+        }
+        return new ClusterWebSocket(clusterService);
+    }
+}
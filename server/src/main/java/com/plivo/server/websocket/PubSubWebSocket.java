@@ -1,48 +1,145 @@
 package com.plivo.server.websocket;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.plivo.core.cluster.ClusterService;
+import com.plivo.core.codec.ProtocolCodec;
+import com.plivo.core.service.BackpressureWatchdog;
+import com.plivo.core.service.ConnectionReaper;
+import com.plivo.core.service.EventBatcher;
+import com.plivo.core.service.FlowController;
 import com.plivo.core.service.PubSubService;
+import com.plivo.core.service.RateLimiter;
+import com.plivo.core.service.SessionSender;
 import com.plivo.core.service.WebSocketErrorService;
+import com.plivo.models.ws.enums.MessageType;
 import com.plivo.models.ws.request.ClientMessage;
-import com.plivo.models.ws.request.ClientMessageVisitor;
+import org.eclipse.jetty.websocket.api.Frame;
 import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WriteCallback;
 import org.eclipse.jetty.websocket.api.annotations.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 
 @WebSocket
-public class PubSubWebSocket {
+public class PubSubWebSocket implements ConnectionReaper.Connection {
     
     private static final Logger log = LoggerFactory.getLogger(PubSubWebSocket.class);
     
+    private static final ByteBuffer EMPTY_PING = ByteBuffer.allocate(0);
+    
+    private static final String CLIENT_ID_PARAMETER = "client_id";
+    
     private final PubSubService pubSubService;
-    private final ObjectMapper objectMapper;
+    private final ProtocolCodec codec;
+    private final FlowController flowController;
+    private final BackpressureWatchdog watchdog;
+    private final EventBatcher batcher;
+    private final SessionSender sender;
+    private final ClusterService clusterService;
+    private final RateLimiter rateLimiter;
+    private final ConnectionReaper reaper;
+    private final ClientMessageDecoder decoder;
+    private final long replayTimeoutMillis;
     private final ConcurrentHashMap<Session, String> sessionToClientId;
     
-    public PubSubWebSocket(PubSubService pubSubService, ObjectMapper objectMapper) {
+    // Per-session state, created once on connect
+    private final ClientMessageDecoder.Buffers decodeBuffers;
+    private final ClientMessageDecoder.Header header;
+    private RateLimiter.Buckets rateBuckets;
+    // Client id from the handshake's client_id parameter; limits publishes across all of the client's connections
+    private String clientId;
+    private Session session;
+    private ConnectionReaper.Handle liveness;
+    private WebSocketErrorService errorService;
+    private WebSocketMessageHandler handler;
+    
+    public PubSubWebSocket(
+            PubSubService pubSubService,
+            ProtocolCodec codec,
+            FlowController flowController,
+            BackpressureWatchdog watchdog,
+            EventBatcher batcher,
+            SessionSender sender,
+            ClusterService clusterService,
+            RateLimiter rateLimiter,
+            ConnectionReaper reaper,
+            ClientMessageDecoder decoder,
+            long replayTimeoutMillis) {
         this.pubSubService = pubSubService;
-        this.objectMapper = objectMapper;
+        this.codec = codec;
+        this.flowController = flowController;
+        this.watchdog = watchdog;
+        this.batcher = batcher;
+        this.sender = sender;
+        this.clusterService = clusterService;
+        this.rateLimiter = rateLimiter;
+        this.reaper = reaper;
+        this.decoder = decoder;
+        this.replayTimeoutMillis = replayTimeoutMillis;
         this.sessionToClientId = new ConcurrentHashMap<>();
+        this.decodeBuffers = new ClientMessageDecoder.Buffers();
+        this.header = new ClientMessageDecoder.Header();
     }
     
     @OnWebSocketConnect
     public void onConnect(Session session) {
         log.info("WebSocket connection established: {}", session.getRemoteAddress());
+        
+        this.session = session;
+        this.liveness = reaper != null ? reaper.register(this) : null;
+        this.errorService = new WebSocketErrorService(session, codec);
+        this.rateBuckets = rateLimiter != null ? rateLimiter.newSessionBuckets() : null;
+        List<String> clientIds = session.getUpgradeRequest().getParameterMap().get(CLIENT_ID_PARAMETER);
+        this.clientId = clientIds != null && !clientIds.isEmpty() ? clientIds.get(0) : null;
+        this.handler = new WebSocketMessageHandler(
+            session,
+            pubSubService,
+            codec,
+            sessionToClientId,
+            flowController,
+            watchdog,
+            batcher,
+            sender,
+            clusterService,
+            errorService,
+            replayTimeoutMillis
+        );
     }
     
     @OnWebSocketClose
     public void onClose(Session session, int statusCode, String reason) {
         log.info("WebSocket connection closed: {} - {}", statusCode, reason);
         
-        // Remove all subscriptions for this client
+        if (liveness != null) {
+            liveness.cancel();
+        }
+        
+        // Remove all subscriptions for this client, unless the reaper already removed them
         String clientId = sessionToClientId.remove(session);
         if (clientId != null) {
             pubSubService.removeAllSubscriptions(clientId);
             log.info("Removed all subscriptions for client: {}", clientId);
         }
+        
+        if (flowController != null) {
+            flowController.removeSession(session);
+        }
+        if (watchdog != null) {
+            watchdog.removeSession(session);
+        }
+        sender.removeSession(session);
+    }
+    
+    // Any frame from the client, including pongs to our pings, shows it is still there
+    @OnWebSocketFrame
+    public void onFrame(Session session, Frame frame) {
+        if (liveness != null) {
+            liveness.touch();
+        }
     }
     
     @OnWebSocketError
@@ -55,25 +152,74 @@ public class PubSubWebSocket {
         log.debug("Received message: {}", message);
         
         try {
-            ClientMessage clientMsg = objectMapper.readValue(message, ClientMessage.class);
-            
-            if (clientMsg.getType() == null) {
-                WebSocketErrorService.sendError(session, objectMapper, "INVALID_MESSAGE", "Message type is required", null);
+            MessageType type = decoder.peek(message, header);
+            if (type == null) {
+                errorService.sendError("INVALID_MESSAGE", "Message type is missing or not supported", null);
                 return;
             }
             
+            // Publishes over the limit are refused before the frame is bound
+            if (type == MessageType.PUBLISH && rateLimiter != null) {
+                // Connections that did not name a client in the handshake are limited by the id they subscribed with
+                String publisher = clientId != null ? clientId : sessionToClientId.get(session);
+                RateLimiter.Rejection rejection = rateLimiter.tryPublish(
+                    rateBuckets, publisher, header.getTopic(), RateLimiter.utf8Length(message));
+                if (rejection != null) {
+                    rejectPublish(rejection);
+                    return;
+                }
+            }
+            
+            ClientMessage clientMsg = decoder.decode(message, type, decodeBuffers);
+            
             // Using visitor pattern to handle message
-            ClientMessageVisitor visitor = new WebSocketMessageHandler(
-                session, 
-                pubSubService, 
-                objectMapper, 
-                sessionToClientId
-            );
-            clientMsg.accept(visitor);
+            clientMsg.accept(handler);
             
+        } catch (IOException e) {
+            log.warn("Malformed message: {}", e.getMessage());
+            errorService.sendError("INVALID_MESSAGE", "Malformed message: " + e.getMessage(), null);
         } catch (Exception e) {
             log.error("Error processing message: {}", e.getMessage(), e);
-            WebSocketErrorService.sendError(session, objectMapper, "INTERNAL_ERROR", "Failed to process message: " + e.getMessage(), null);
+            errorService.sendError("INTERNAL_ERROR", "Failed to process message: " + e.getMessage(), null);
+        }
+    }
+    
+    @Override
+    public boolean isOpen() {
+        return session.isOpen();
+    }
+    
+    @Override
+    public void ping() {
+        session.getRemote().sendPing(EMPTY_PING.duplicate(), WriteCallback.NOOP);
+    }
+    
+    @Override
+    public Object getSession() {
+        return session;
+    }
+    
+    @Override
+    public void evicted() {
+        log.info("Closing unresponsive WebSocket connection: {}", session.getRemoteAddress());
+        sessionToClientId.clear();
+        // No close handshake; the peer is not answering
+        session.disconnect();
+    }
+    
+    private void rejectPublish(RateLimiter.Rejection rejection) {
+        String message;
+        switch (rejection.getScope()) {
+            case SESSION:
+                message = "Publish rate limit exceeded for this connection";
+                break;
+            case CLIENT:
+                message = "Publish rate limit exceeded for this client";
+                break;
+            default:
+                message = "Publish rate limit exceeded for topic: " + header.getTopic();
+                break;
         }
+        errorService.sendError("RATE_LIMITED", message, "retry_after_ms=" + rejection.getRetryAfterMillis(), header.getRequestId());
     }
 }
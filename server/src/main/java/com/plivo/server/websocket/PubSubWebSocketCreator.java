@@ -1,22 +1,86 @@
 package com.plivo.server.websocket;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.plivo.core.cluster.ClusterService;
+import com.plivo.core.codec.CompressionPolicy;
+import com.plivo.core.codec.ProtocolCodec;
+import com.plivo.core.service.BackpressureWatchdog;
+import com.plivo.core.service.ConnectionReaper;
+import com.plivo.core.service.EventBatcher;
+import com.plivo.core.service.FlowController;
 import com.plivo.core.service.PubSubService;
+import com.plivo.core.service.RateLimiter;
+import com.plivo.core.service.SessionSender;
+import org.eclipse.jetty.websocket.api.ExtensionConfig;
 import org.eclipse.jetty.websocket.server.JettyWebSocketCreator;
 
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Creates a {@link PubSubWebSocket} per connection. The {@code permessage-deflate} extension is
+ * declined when it is disabled in the configuration, or when the client asks for application-level
+ * compression with {@code ?compression=deflate} in the handshake, so its compressed event frames
+ * are not deflated a second time by the extension.
+ */
 public class PubSubWebSocketCreator implements JettyWebSocketCreator {
     
+    static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+    private static final String COMPRESSION_PARAMETER = "compression";
+    
     private final PubSubService pubSubService;
-    private final ObjectMapper objectMapper;
+    private final ProtocolCodec codec;
+    private final FlowController flowController;
+    private final BackpressureWatchdog watchdog;
+    private final EventBatcher batcher;
+    private final SessionSender sender;
+    private final ClusterService clusterService;
+    private final RateLimiter rateLimiter;
+    private final ConnectionReaper reaper;
+    private final ClientMessageDecoder decoder;
+    private final boolean perMessageDeflate;
+    private final long replayTimeoutMillis;
     
-    public PubSubWebSocketCreator(PubSubService pubSubService, ObjectMapper objectMapper) {
+    public PubSubWebSocketCreator(
+            PubSubService pubSubService,
+            ProtocolCodec codec,
+            ObjectMapper objectMapper,
+            FlowController flowController,
+            BackpressureWatchdog watchdog,
+            EventBatcher batcher,
+            SessionSender sender,
+            ClusterService clusterService,
+            RateLimiter rateLimiter,
+            ConnectionReaper reaper,
+            boolean perMessageDeflate,
+            long replayTimeoutMillis) {
         this.pubSubService = pubSubService;
-        this.objectMapper = objectMapper;
+        this.codec = codec;
+        this.flowController = flowController;
+        this.watchdog = watchdog;
+        this.batcher = batcher;
+        this.sender = sender;
+        this.clusterService = clusterService;
+        this.rateLimiter = rateLimiter;
+        this.reaper = reaper;
+        this.decoder = new ClientMessageDecoder(objectMapper);
+        this.perMessageDeflate = perMessageDeflate;
+        this.replayTimeoutMillis = replayTimeoutMillis;
     }
     
     @Override
     public Object createWebSocket(org.eclipse.jetty.websocket.server.JettyServerUpgradeRequest req,
                                    org.eclipse.jetty.websocket.server.JettyServerUpgradeResponse resp) {
-        return new PubSubWebSocket(pubSubService, objectMapper);
+        if (!perMessageDeflate || wantsDeflate(req.getParameterMap().get(COMPRESSION_PARAMETER))) {
+            List<ExtensionConfig> extensions = resp.getExtensions().stream()
+                .filter(extension -> !PERMESSAGE_DEFLATE.equals(extension.getName()))
+                .collect(Collectors.toList());
+            resp.setExtensions(extensions);
+        }
+        return new PubSubWebSocket(pubSubService, codec, flowController, watchdog, batcher, sender, clusterService, rateLimiter, reaper, decoder, replayTimeoutMillis);
+    }
+    
+    private static boolean wantsDeflate(List<String> compression) {
+        return compression != null && !compression.isEmpty() && CompressionPolicy.wantsDeflate(compression.get(0));
     }
 }
@@ -1,20 +1,39 @@
 package com.plivo.server.websocket;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.plivo.core.cluster.ClusterService;
+import com.plivo.core.codec.CompressionPolicy;
+import com.plivo.core.codec.ProtocolCodec;
+import com.plivo.core.exceptions.ClusterForwardException;
 import com.plivo.core.exceptions.TopicNotFoundException;
 import com.plivo.core.exceptions.QueueOverflowException;
+import com.plivo.core.service.BackpressureWatchdog;
+import com.plivo.core.service.EventBatcher;
+import com.plivo.core.service.FlowController;
 import com.plivo.core.service.PubSubService;
+import com.plivo.core.service.SessionSender;
 import com.plivo.core.service.WebSocketErrorService;
+import com.plivo.models.FrameReplay;
 import com.plivo.models.MessageEnvelope;
+import com.plivo.models.ReplayFrom;
 import com.plivo.models.Subscription;
+import com.plivo.models.Topic;
 import com.plivo.models.ws.request.*;
 import com.plivo.models.ws.response.*;
+import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.eclipse.jetty.websocket.common.WebSocketSession;
+import org.eclipse.jetty.websocket.core.Frame;
+import org.eclipse.jetty.websocket.core.OpCode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 
 
@@ -24,20 +43,43 @@ public class WebSocketMessageHandler implements ClientMessageVisitor {
     
     private final Session session;
     private final PubSubService pubSubService;
-    private final ObjectMapper objectMapper;
+    private final ProtocolCodec codec;
     private final ConcurrentHashMap<Session, String> sessionToClientId;
+    private final FlowController flowController;
+    private final BackpressureWatchdog watchdog;
+    private final EventBatcher batcher;
+    private final SessionSender sender;
+    private final ClusterService clusterService;
     private final WebSocketErrorService errorService;
+    private final long replayTimeoutMillis;
+    // Whether the connection negotiated permessage-deflate, which already compresses every frame
+    private final boolean extensionDeflate;
     
     public WebSocketMessageHandler(
             Session session,
             PubSubService pubSubService,
-            ObjectMapper objectMapper,
-            ConcurrentHashMap<Session, String> sessionToClientId) {
+            ProtocolCodec codec,
+            ConcurrentHashMap<Session, String> sessionToClientId,
+            FlowController flowController,
+            BackpressureWatchdog watchdog,
+            EventBatcher batcher,
+            SessionSender sender,
+            ClusterService clusterService,
+            WebSocketErrorService errorService,
+            long replayTimeoutMillis) {
         this.session = session;
         this.pubSubService = pubSubService;
-        this.objectMapper = objectMapper;
+        this.codec = codec;
         this.sessionToClientId = sessionToClientId;
-        this.errorService = new WebSocketErrorService(session, objectMapper);
+        this.flowController = flowController;
+        this.watchdog = watchdog;
+        this.batcher = batcher;
+        this.sender = sender;
+        this.clusterService = clusterService;
+        this.errorService = errorService;
+        this.replayTimeoutMillis = replayTimeoutMillis;
+        this.extensionDeflate = session.getUpgradeResponse().getExtensions().stream()
+            .anyMatch(extension -> PubSubWebSocketCreator.PERMESSAGE_DEFLATE.equals(extension.getName()));
     }
     
     @Override
@@ -46,6 +88,11 @@ public class WebSocketMessageHandler implements ClientMessageVisitor {
             String topic = request.getTopic();
             String clientId = request.getClientId();
             Integer lastN = request.getLastN();
+            Long fromOffset = request.getFromOffset();
+            Long fromTime = request.getFromTime();
+            String compression = request.getCompression();
+            Integer batchSize = request.getBatchSize();
+            Long batchLingerMs = request.getBatchLingerMs();
             String requestId = request.getRequestId();
             
             if (topic == null || topic.isEmpty()) {
@@ -58,11 +105,47 @@ public class WebSocketMessageHandler implements ClientMessageVisitor {
                 return;
             }
             
+            if ((fromOffset != null ? 1 : 0) + (fromTime != null ? 1 : 0) + (lastN != null ? 1 : 0) > 1) {
+                sendError("INVALID_REQUEST", "Only one of last_n, from_offset and from_time may be given", requestId);
+                return;
+            }
+            
+            if ((fromOffset != null && fromOffset < 0) || (fromTime != null && fromTime < 0)) {
+                sendError("INVALID_REQUEST", "from_offset and from_time cannot be negative", requestId);
+                return;
+            }
+            
+            if (!CompressionPolicy.isSupported(compression)) {
+                sendError("INVALID_REQUEST", "Unsupported compression: " + compression, requestId);
+                return;
+            }
+            
+            if (batchSize != null && (batchSize < 1 || batchSize > batcher.getMaxBatchSize())) {
+                sendError("INVALID_REQUEST", "batch_size must be between 1 and " + batcher.getMaxBatchSize(), requestId);
+                return;
+            }
+            
+            if (batchLingerMs != null && (batchLingerMs < 0 || batchLingerMs > batcher.getMaxLingerMillis())) {
+                sendError("INVALID_REQUEST", "batch_linger_ms must be between 0 and " + batcher.getMaxLingerMillis(), requestId);
+                return;
+            }
+            
+            // Events are already deflated by the extension; compressing them here too only costs CPU
+            if (extensionDeflate && CompressionPolicy.wantsDeflate(compression)) {
+                compression = CompressionPolicy.NONE;
+            }
+            
             // Track client ID for this session
             sessionToClientId.put(session, clientId);
             
-            // Subscribe
-            pubSubService.subscribe(topic, clientId, session, lastN);
+            // Subscribe with the requested delivery options
+            Subscription subscription = new Subscription(clientId, topic, session);
+            subscription.setCompression(compression);
+            if (batchSize != null) {
+                subscription.setBatchSize(batchSize);
+                subscription.setBatchLingerMs(batchLingerMs != null ? batchLingerMs : batcher.getDefaultLingerMillis());
+            }
+            pubSubService.subscribe(subscription, lastN);
             
             // Send ACK
             AckResponse ack = new AckResponse("success", "Subscribed to topic: " + topic, requestId);
@@ -70,18 +153,11 @@ public class WebSocketMessageHandler implements ClientMessageVisitor {
             
             // Send message history if requested
             if (lastN != null && lastN > 0) {
-                List<MessageEnvelope> history = pubSubService.getMessageHistory(topic, lastN);
-                for (MessageEnvelope envelope : history) {
-                    EventResponse event = new EventResponse(
-                        topic,
-                        new EventResponse.MessageData(
-                            envelope.getId(),
-                            envelope.getPayload(),
-                            envelope.getPublishedAt()
-                        )
-                    );
-                    sendMessage(event);
-                }
+                replayHistory(topic, ReplayFrom.LAST_N, lastN);
+            } else if (fromOffset != null) {
+                replayHistory(topic, ReplayFrom.OFFSET, fromOffset);
+            } else if (fromTime != null) {
+                replayHistory(topic, ReplayFrom.TIME, fromTime);
             }
             
         } catch (TopicNotFoundException e) {
@@ -139,62 +215,82 @@ public class WebSocketMessageHandler implements ClientMessageVisitor {
                 return;
             }
             
+            Integer priority = msg.getPriority();
+            if (priority != null && (priority < 0 || priority >= Topic.PRIORITY_LANES)) {
+                sendError("INVALID_REQUEST", "priority must be between 0 and " + (Topic.PRIORITY_LANES - 1), requestId);
+                return;
+            }
+            int lane = priority != null ? priority : Topic.DEFAULT_PRIORITY;
+            
+            // Topics led by another node are published there; the ack follows its answer
+            if (clusterService != null && !clusterService.isLocalLeader(topic)) {
+                ackWhenComplete(clusterService.forwardPublish(topic, msg.getId(), msg.getPayload(), lane), topic, requestId);
+                return;
+            }
+            
+            if (clusterService != null) {
+                clusterService.ensureInSync(topic);
+            }
+            
             // Publish message
-            MessageEnvelope envelope = pubSubService.publish(topic, msg.getId(), msg.getPayload());
+            MessageEnvelope envelope = pubSubService.publish(topic, msg.getId(), msg.getPayload(), lane);
             
-            // Send ACK to publisher
-            AckResponse ack = new AckResponse("success", "Message published to topic: " + topic, requestId);
-            sendMessage(ack);
+            // Send ACK to publisher, once replicated as far as the ack level requires
+            if (clusterService != null) {
+                ackWhenComplete(clusterService.replicate(topic, envelope), topic, requestId);
+            } else {
+                sendJson(codec.encodePublishAck(topic, requestId));
+            }
             
-            // Broadcast to all subscribers
-            ConcurrentHashMap<String, Subscription> subscribers = pubSubService.getTopicSubscribers(topic);
-            if (subscribers != null) {
-                EventResponse event = new EventResponse(
-                    topic,
-                    new EventResponse.MessageData(
-                        envelope.getId(),
-                        envelope.getPayload(),
-                        envelope.getPublishedAt()
-                    )
-                );
-                
-                String eventJson = objectMapper.writeValueAsString(event);
-                
-                subscribers.values().forEach(sub -> {
-                    Session subscriberSession = (Session) sub.getSession();
-                    if (subscriberSession != null && subscriberSession.isOpen()) {
-                        try {
-                            subscriberSession.getRemote().sendString(eventJson);
-                            log.debug("Sent event to subscriber: {}", sub.getClientId());
-                        } catch (IOException e) {
-                            log.error("Failed to send message to subscriber {}: {}", sub.getClientId(), e.getMessage());
-                        }
-                    }
-                });
+            // Subscribers are served by the dispatcher; account the send against the publisher's credits
+            if (flowController != null) {
+                flowController.onPublish(session, topic);
             }
             
         } catch (QueueOverflowException e) {
             // Handle backpressure - queue is full, consumers are slow
             log.warn("Queue overflow for topic {}: {}/{}", e.getTopicName(), e.getQueueSize(), e.getQueueCapacity());
-            String errorMsg = String.format("Topic queue is full (%d/%d messages). Consumers are slow. Topic has stopped accepting new messages.",
+            String errorMsg = String.format("Topic queue is full (%d/%d messages). Consumers are slow. Topic has stopped accepting new messages until the backlog drains.",
                     e.getQueueSize(), e.getQueueCapacity());
             sendError("CONSUMER_IS_SLOW", errorMsg, request.getRequestId());
             
-            // Initiate graceful shutdown for this topic
+            // Initiate graceful shutdown for this topic; the watchdog resumes it at the low watermark
             try {
                 pubSubService.initiateGracefulShutdown(e.getTopicName());
+                if (watchdog != null) {
+                    watchdog.onOverflow(session, e.getTopicName());
+                }
                 log.warn("Initiated graceful shutdown for topic {}", e.getTopicName());
             } catch (Exception ex) {
                 log.error("Failed to initiate graceful shutdown: {}", ex.getMessage());
             }
         } catch (TopicNotFoundException e) {
             sendError("TOPIC_NOT_FOUND", e.getMessage(), request.getRequestId());
+        } catch (ClusterForwardException e) {
+            sendError(e.getCode(), e.getMessage(), request.getRequestId());
         } catch (Exception e) {
             log.error("Error handling publish: {}", e.getMessage(), e);
             sendError("INTERNAL_ERROR", "Failed to publish message: " + e.getMessage(), request.getRequestId());
         }
     }
     
+    private void ackWhenComplete(CompletableFuture<?> publish, String topic, String requestId) {
+        publish.whenComplete((result, error) -> {
+            if (error == null) {
+                sendJson(codec.encodePublishAck(topic, requestId));
+                return;
+            }
+            
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (cause instanceof ClusterForwardException) {
+                sendError(((ClusterForwardException) cause).getCode(), cause.getMessage(), requestId);
+            } else {
+                log.error("Error completing clustered publish: {}", cause.getMessage(), cause);
+                sendError("INTERNAL_ERROR", "Failed to publish message: " + cause.getMessage(), requestId);
+            }
+        });
+    }
+    
     @Override
     public void visit(PingRequest request) {
         try {
@@ -205,10 +301,94 @@ public class WebSocketMessageHandler implements ClientMessageVisitor {
         }
     }
     
+    /**
+     * Sends stored history, streaming stored frames when the topic's history keeps them
+     * and encoding each message otherwise. Frames are queued without waiting and charged
+     * against the session's bytes in flight; when the next one would go over, the replay
+     * first waits for its queued frames to be written. A client that has not read the
+     * replay within the timeout is disconnected, so the read thread is never held longer.
+     */
+    private void replayHistory(String topic, ReplayFrom from, long value) throws IOException {
+        ReplayCallback callback = new ReplayCallback(System.currentTimeMillis() + replayTimeoutMillis);
+        FrameReplay replay = pubSubService.replayFrames(topic, from, value);
+        if (replay != null) {
+            replay.sendTo((offset, frame) -> sendFrame(frame, callback));
+        } else {
+            switch (from) {
+                case LAST_N:
+                    sendHistory(topic, pubSubService.getMessageHistory(topic, (int) value), callback);
+                    break;
+                case OFFSET:
+                    sendHistory(topic, pubSubService.getMessagesFromOffset(topic, value), callback);
+                    break;
+                default:
+                    sendHistory(topic, pubSubService.getMessagesFromTime(topic, value), callback);
+                    break;
+            }
+        }
+        awaitReplay(callback);
+    }
+    
+    /**
+     * Queues an encoded event frame as a text frame. The frame buffer goes to the connection
+     * as is, so a frame mapped from a segment is written without copying it onto the heap.
+     */
+    private void sendFrame(ByteBuffer frame, ReplayCallback callback) {
+        if (session == null || !session.isOpen()) {
+            return;
+        }
+        int size = frame.remaining();
+        if (sender.getBytesInFlight(session) + size > sender.getMaxBytesInFlight() && !awaitReplay(callback)) {
+            return;
+        }
+        WriteCallback written = sender.charge(session, size, callback);
+        if (written == null) {
+            return;
+        }
+        callback.queued();
+        if (session instanceof WebSocketSession) {
+            ((WebSocketSession) session).getCoreSession().sendFrame(
+                new Frame(OpCode.TEXT, frame), Callback.from(written::writeSuccess, written::writeFailed), false);
+        } else {
+            session.getRemote().sendString(StandardCharsets.UTF_8.decode(frame).toString(), written);
+        }
+    }
+    
+    private void sendHistory(String topic, List<MessageEnvelope> history, ReplayCallback callback) throws IOException {
+        for (MessageEnvelope envelope : history) {
+            sendFrame(ByteBuffer.wrap(codec.encodeEvent(topic, envelope).getBytes(StandardCharsets.UTF_8)), callback);
+        }
+    }
+    
+    /**
+     * Waits for the replay's queued frames to be written. Disconnects the client if they fail
+     * or are not written by the replay's deadline, and returns false.
+     */
+    private boolean awaitReplay(ReplayCallback callback) {
+        if (callback.awaitWritten()) {
+            return true;
+        }
+        if (session.isOpen()) {
+            log.warn("Disconnecting {}: history replay not written within {} ms",
+                    session.getRemoteAddress(), replayTimeoutMillis);
+            session.disconnect();
+        }
+        return false;
+    }
+    
     private void sendMessage(ServerMessage message) {
         if (session != null && session.isOpen()) {
             try {
-                String json = objectMapper.writeValueAsString(message);
+                sendJson(codec.encode(message));
+            } catch (IOException e) {
+                log.error("Failed to encode message: {}", e.getMessage(), e);
+            }
+        }
+    }
+    
+    private void sendJson(String json) {
+        if (session != null && session.isOpen()) {
+            try {
                 session.getRemote().sendString(json);
                 log.debug("Sent message: {}", json);
             } catch (IOException e) {
@@ -220,4 +400,51 @@ public class WebSocketMessageHandler implements ClientMessageVisitor {
     private void sendError(String code, String message, String requestId) {
         errorService.sendError(code, message, requestId);
     }
+    
+    /**
+     * Tracks the frames of one replay that are queued and not yet written.
+     */
+    private static class ReplayCallback implements WriteCallback {
+        
+        private final long deadline;
+        private int pending;
+        private boolean failed;
+        
+        private ReplayCallback(long deadline) {
+            this.deadline = deadline;
+        }
+        
+        private synchronized void queued() {
+            pending++;
+        }
+        
+        /**
+         * @return Whether every queued frame was written before the deadline
+         */
+        private synchronized boolean awaitWritten() {
+            try {
+                long remaining = deadline - System.currentTimeMillis();
+                while (pending > 0 && !failed && remaining > 0) {
+                    wait(remaining);
+                    remaining = deadline - System.currentTimeMillis();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return pending == 0 && !failed;
+        }
+        
+        @Override
+        public synchronized void writeSuccess() {
+            pending--;
+            notifyAll();
+        }
+        
+        @Override
+        public synchronized void writeFailed(Throwable cause) {
+            pending--;
+            failed = true;
+            notifyAll();
+        }
+    }
 }
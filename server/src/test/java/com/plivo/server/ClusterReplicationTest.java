@@ -0,0 +1,143 @@
+package com.plivo.server;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.dropwizard.testing.DropwizardTestSupport;
+import io.dropwizard.testing.ResourceHelpers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs three nodes replicating every topic to all of them, with the configs in {@code cluster/}.
+ */
+class ClusterReplicationTest {
+    
+    private static final int MESSAGES = 1500;
+    private static final String PAYLOAD = "x".repeat(2048);
+    private static final long TIMEOUT_MILLIS = 30000;
+    
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient http = HttpClient.newHttpClient();
+    private final List<DropwizardTestSupport<PlivoConfiguration>> nodes = new ArrayList<>();
+    
+    @AfterEach
+    void tearDown() {
+        nodes.forEach(DropwizardTestSupport::after);
+    }
+    
+    @Test
+    void rejoiningNodeCatchesUpOnALogLargerThanOneFrame() throws Exception {
+        DropwizardTestSupport<PlivoConfiguration> node1 = start(1);
+        start(2);
+        post(1, "/topics", "{\"name\": \"orders\"}");
+        publishAll(1, 0, MESSAGES);
+        
+        // About 3 MB of history, which only fits the 1 MB inter-node frame limit in pages
+        start(3);
+        assertEquals(MESSAGES, awaitStored(3, MESSAGES));
+        
+        // Whichever replica leads once node-1 is gone still reaches a quorum through node-3
+        node1.after();
+        nodes.remove(node1);
+        publishAll(2, MESSAGES, 10);
+        assertEquals(MESSAGES + 10, awaitStored(3, MESSAGES + 10));
+    }
+    
+    private DropwizardTestSupport<PlivoConfiguration> start(int node) throws Exception {
+        DropwizardTestSupport<PlivoConfiguration> support = new DropwizardTestSupport<>(
+            PlivoApplication.class, ResourceHelpers.resourceFilePath("cluster/node" + node + ".yml"));
+        support.before();
+        nodes.add(support);
+        return support;
+    }
+    
+    /**
+     * Publishes through a node, retrying while the cluster is still forming and rejects every message.
+     */
+    private void publishAll(int node, int first, int count) throws Exception {
+        StringBuilder body = new StringBuilder();
+        for (int i = first; i < first + count; i++) {
+            body.append("{\"id\": \"m-").append(i).append("\", \"payload\": \"").append(PAYLOAD).append("\"}\n");
+        }
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        String result;
+        do {
+            result = post(node, "/topics/orders/messages", body.toString());
+            String[] lines = result.trim().split("\n");
+            JsonNode summary = objectMapper.readTree(lines[lines.length - 1]);
+            int accepted = summary.path("accepted").asInt();
+            if (accepted == count) {
+                return;
+            }
+            if (accepted > 0) {
+                break;
+            }
+            Thread.sleep(200);
+        } while (System.currentTimeMillis() < deadline);
+        throw new AssertionError("Publish was not accepted: " + result);
+    }
+    
+    /**
+     * Waits until a node stores the expected number of messages.
+     *
+     * @return The number it stores
+     */
+    private int awaitStored(int node, int expected) throws Exception {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        int stored;
+        do {
+            stored = countStored(node);
+            if (stored >= expected) {
+                return stored;
+            }
+            Thread.sleep(200);
+        } while (System.currentTimeMillis() < deadline);
+        return stored;
+    }
+    
+    private int countStored(int node) throws Exception {
+        Set<String> ids = new HashSet<>();
+        int count = 0;
+        long offset = 0;
+        while (true) {
+            HttpResponse<String> response = http.send(HttpRequest.newBuilder(
+                URI.create(baseUrl(node) + "/topics/orders/messages?max=1000&offset=" + offset)).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                return count;
+            }
+            JsonNode page = objectMapper.readTree(response.body());
+            if (page.path("events").isEmpty()) {
+                assertEquals(count, ids.size(), "messages stored twice");
+                return count;
+            }
+            for (JsonNode event : page.path("events")) {
+                ids.add(event.path("message").path("id").asText());
+                count++;
+            }
+            offset = page.path("next_offset").asLong();
+        }
+    }
+    
+    private String post(int node, String path, String body) throws Exception {
+        return http.send(HttpRequest.newBuilder(URI.create(baseUrl(node) + path))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(body))
+            .build(), HttpResponse.BodyHandlers.ofString()).body();
+    }
+    
+    private static String baseUrl(int node) {
+        return "http://localhost:" + (18000 + node * 100);
+    }
+}
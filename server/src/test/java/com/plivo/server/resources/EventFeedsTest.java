@@ -0,0 +1,211 @@
+package com.plivo.server.resources;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.plivo.core.codec.CompressionPolicy;
+import com.plivo.core.codec.ProtocolCodec;
+import com.plivo.core.repository.TopicRepository;
+import com.plivo.core.service.DispatchWeights;
+import com.plivo.core.service.MessageDispatcher;
+import com.plivo.core.service.PubSubService;
+import com.plivo.core.service.SessionSender;
+import com.plivo.core.service.TimeOrderedMessageIdGenerator;
+import com.plivo.models.HeapMessageHistory;
+import com.plivo.models.MessageEnvelope;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.core.Response;
+import org.glassfish.jersey.server.ChunkedOutput;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventFeedsTest {
+    
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Semaphore delivered = new Semaphore(0);
+    private TopicRepository topicRepository;
+    private MessageDispatcher dispatcher;
+    private ReplayingPubSubService pubSubService;
+    private EventFeeds feeds;
+    
+    @BeforeEach
+    void setUp() {
+        topicRepository = new TopicRepository(name -> new HeapMessageHistory(100));
+        dispatcher = new MessageDispatcher(
+            new ProtocolCodec(objectMapper),
+            new CompressionPolicy(List.of()),
+            null,
+            new SessionSender(1024),
+            1,
+            1,
+            1,
+            new DispatchWeights(List.of()),
+            new int[]{1, 4, 16}
+        );
+        dispatcher.addListener((topic, drained) -> delivered.release(drained));
+        dispatcher.start();
+        pubSubService = new ReplayingPubSubService(topicRepository, dispatcher);
+        feeds = new EventFeeds(pubSubService, new ProtocolCodec(objectMapper), 1000, 100, 30000);
+        topicRepository.createTopic("orders");
+    }
+    
+    @AfterEach
+    void tearDown() throws Exception {
+        dispatcher.stop();
+    }
+    
+    @Test
+    void messagesPublishedDuringAReplayFollowItOnce() throws Exception {
+        long first = publish("a");
+        publish("b");
+        publish("c");
+        
+        // One message is published before the replay reads history and one after, both delivered live
+        pubSubService.publishDuringRead = true;
+        RecordingOutput output = new RecordingOutput();
+        feeds.openStream("orders", first, output);
+        
+        List<Long> stored = topicRepository.getTopic("orders").getLastNMessages(5).stream()
+            .map(MessageEnvelope::getOffset)
+            .collect(Collectors.toList());
+        assertEquals(stored, output.ids());
+        
+        long next = publish("d");
+        assertEquals(next, output.ids().get(5));
+    }
+    
+    @Test
+    void streamWithoutOffsetSendsOnlyNewMessages() throws Exception {
+        publish("a");
+        RecordingOutput output = new RecordingOutput();
+        feeds.openStream("orders", null, output);
+        
+        long next = publish("b");
+        assertEquals(List.of(next), output.ids());
+    }
+    
+    @Test
+    void pollReturnsStoredMessagesAndTheNextOffset() throws Exception {
+        long first = publish("a");
+        long second = publish("b");
+        publish("c");
+        
+        CompletableFuture<Object> resumed = new CompletableFuture<>();
+        feeds.poll("orders", first, 2, 1000, asyncResponse(resumed));
+        
+        JsonNode body = body(resumed);
+        assertEquals(2, body.get("events").size());
+        assertEquals(first, body.get("events").get(0).get("message").get("offset").asLong());
+        assertEquals(second + 1, body.get("next_offset").asLong());
+    }
+    
+    @Test
+    void waitingPollIsAnsweredByTheNextMessage() throws Exception {
+        long last = publish("a");
+        
+        CompletableFuture<Object> resumed = new CompletableFuture<>();
+        feeds.poll("orders", last + 1, 10, 10000, asyncResponse(resumed));
+        assertFalse(resumed.isDone());
+        
+        long next = publish("b");
+        JsonNode body = body(resumed);
+        assertEquals(1, body.get("events").size());
+        assertEquals(next, body.get("events").get(0).get("message").get("offset").asLong());
+        assertEquals(next + 1, body.get("next_offset").asLong());
+        assertTrue(pubSubService.getTopicSubscribers("orders").isEmpty());
+    }
+    
+    // Publishes and waits for the dispatcher to deliver the message
+    private long publish(String payload) throws InterruptedException {
+        long offset = pubSubService.publish("orders", null, payload).getOffset();
+        assertTrue(delivered.tryAcquire(5, TimeUnit.SECONDS));
+        return offset;
+    }
+    
+    private JsonNode body(CompletableFuture<Object> resumed) throws Exception {
+        Response response = (Response) resumed.get(5, TimeUnit.SECONDS);
+        return objectMapper.readTree((String) response.getEntity());
+    }
+    
+    private AsyncResponse asyncResponse(CompletableFuture<Object> resumed) {
+        return (AsyncResponse) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[]{AsyncResponse.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "resume":
+                        return resumed.complete(args[0]);
+                    case "setTimeout":
+                        return true;
+                    default:
+                        return null;
+                }
+            });
+    }
+    
+    /**
+     * Publishes around the history read of a replay, once, when asked to.
+     */
+    private class ReplayingPubSubService extends PubSubService {
+        
+        private volatile boolean publishDuringRead;
+        
+        private ReplayingPubSubService(TopicRepository topicRepository, MessageDispatcher dispatcher) {
+            super(topicRepository, new TimeOrderedMessageIdGenerator("test"), dispatcher);
+        }
+        
+        @Override
+        public List<MessageEnvelope> getMessagesFromOffset(String topicName, long offset, int limit) {
+            if (!publishDuringRead) {
+                return super.getMessagesFromOffset(topicName, offset, limit);
+            }
+            publishDuringRead = false;
+            try {
+                EventFeedsTest.this.publish("covered");
+                List<MessageEnvelope> messages = super.getMessagesFromOffset(topicName, offset, limit);
+                EventFeedsTest.this.publish("after");
+                return messages;
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+    
+    private static class RecordingOutput extends ChunkedOutput<String> {
+        
+        private final List<String> chunks = Collections.synchronizedList(new ArrayList<>());
+        
+        private RecordingOutput() {
+            super(String.class);
+        }
+        
+        @Override
+        public void write(String chunk) {
+            chunks.add(chunk);
+        }
+        
+        // Event ids in the order they were written
+        private List<Long> ids() {
+            List<Long> ids = new ArrayList<>();
+            synchronized (chunks) {
+                for (String chunk : chunks) {
+                    if (chunk.startsWith("id: ")) {
+                        ids.add(Long.parseLong(chunk.substring(4, chunk.indexOf('\n'))));
+                    }
+                }
+            }
+            return ids;
+        }
+    }
+}
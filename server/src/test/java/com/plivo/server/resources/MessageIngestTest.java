@@ -0,0 +1,151 @@
+package com.plivo.server.resources;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.plivo.core.codec.CompressionPolicy;
+import com.plivo.core.codec.ProtocolCodec;
+import com.plivo.core.repository.TopicRepository;
+import com.plivo.core.service.DispatchWeights;
+import com.plivo.core.service.MessageDispatcher;
+import com.plivo.core.service.PubSubService;
+import com.plivo.core.service.SessionSender;
+import com.plivo.core.service.TimeOrderedMessageIdGenerator;
+import com.plivo.models.HeapMessageHistory;
+import com.plivo.models.TopicConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MessageIngestTest {
+    
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private TopicRepository topicRepository;
+    private MessageIngest ingest;
+    
+    @BeforeEach
+    void setUp() {
+        topicRepository = new TopicRepository(name -> new HeapMessageHistory(100));
+        // Never started, so published messages stay queued
+        MessageDispatcher dispatcher = new MessageDispatcher(
+            new ProtocolCodec(objectMapper),
+            new CompressionPolicy(List.of()),
+            null,
+            new SessionSender(1024),
+            1,
+            1,
+            1,
+            new DispatchWeights(List.of()),
+            new int[]{1, 4, 16}
+        );
+        PubSubService pubSubService = new PubSubService(topicRepository, new TimeOrderedMessageIdGenerator("test"), dispatcher);
+        ingest = new MessageIngest(pubSubService, null, null, objectMapper, 2, 50);
+        topicRepository.createTopic("orders");
+    }
+    
+    @Test
+    void ndjsonWritesAResultLinePerBatchAndASummary() throws Exception {
+        List<JsonNode> lines = run("orders",
+            "{\"payload\":\"a\"}\n{\"payload\":\"b\"}\n{\"id\":\"no-payload\"}\n[1]\n{\"payload\":\"c\",\"priority\":0}\n");
+        
+        assertEquals(4, lines.size());
+        JsonNode first = lines.get(0);
+        assertEquals(0, first.get("batch").asInt());
+        assertEquals(0, first.get("first_index").asInt());
+        assertEquals(2, first.get("accepted").asInt());
+        long firstOffset = first.get("first_offset").asLong();
+        assertTrue(first.get("last_offset").asLong() > firstOffset);
+        assertFalse(first.has("errors"));
+        
+        JsonNode second = lines.get(1);
+        assertEquals(2, second.get("first_index").asInt());
+        assertEquals(0, second.get("accepted").asInt());
+        assertEquals(2, second.get("rejected").asInt());
+        assertFalse(second.has("first_offset"));
+        assertEquals(2, second.get("errors").get(0).get("index").asInt());
+        assertEquals("INVALID_REQUEST", second.get("errors").get(0).get("code").asText());
+        assertEquals(3, second.get("errors").get(1).get("index").asInt());
+        
+        JsonNode third = lines.get(2);
+        assertEquals(4, third.get("first_index").asInt());
+        assertEquals(1, third.get("accepted").asInt());
+        assertTrue(third.get("first_offset").asLong() > first.get("last_offset").asLong());
+        
+        JsonNode summary = lines.get(3);
+        assertEquals("complete", summary.get("status").asText());
+        assertEquals(3, summary.get("accepted").asLong());
+        assertEquals(2, summary.get("rejected").asLong());
+        assertFalse(summary.has("index"));
+        assertEquals(3, topicRepository.getTopic("orders").getQueueSize());
+    }
+    
+    @Test
+    void fullQueueAbortsAtTheFirstUnpublishedIndex() throws Exception {
+        topicRepository.createTopic("small", new TopicConfig(2, null, null, null, null));
+        
+        List<JsonNode> lines = run("small", "[{\"payload\":1},{\"payload\":2},{\"payload\":3},{\"payload\":4}]");
+        
+        assertEquals(2, lines.size());
+        assertEquals(2, lines.get(0).get("accepted").asInt());
+        JsonNode summary = lines.get(1);
+        assertEquals("aborted", summary.get("status").asText());
+        assertEquals("CONSUMER_IS_SLOW", summary.get("code").asText());
+        assertEquals(2, summary.get("index").asInt());
+        assertEquals(2, summary.get("accepted").asLong());
+        assertEquals(2, topicRepository.getTopic("small").getQueueSize());
+    }
+    
+    @Test
+    void malformedJsonAbortsAfterTheMessagesBeforeIt() throws Exception {
+        List<JsonNode> lines = run("orders", "{\"payload\":\"a\"}\n{\"payload\":");
+        
+        assertEquals(2, lines.size());
+        assertEquals(1, lines.get(0).get("accepted").asInt());
+        JsonNode summary = lines.get(1);
+        assertEquals("aborted", summary.get("status").asText());
+        assertEquals("INVALID_MESSAGE", summary.get("code").asText());
+        assertEquals(1, summary.get("index").asInt());
+        assertEquals(1, summary.get("accepted").asLong());
+    }
+    
+    @Test
+    void unterminatedArrayAborts() throws Exception {
+        List<JsonNode> lines = run("orders", "[{\"payload\":\"a\"}");
+        
+        JsonNode summary = lines.get(lines.size() - 1);
+        assertEquals("aborted", summary.get("status").asText());
+        assertEquals("INVALID_MESSAGE", summary.get("code").asText());
+        assertEquals(1, summary.get("accepted").asLong());
+    }
+    
+    @Test
+    void unknownTopicAbortsBeforeAnyResult() throws Exception {
+        List<JsonNode> lines = run("missing", "{\"payload\":\"a\"}");
+        
+        assertEquals(1, lines.size());
+        JsonNode summary = lines.get(0);
+        assertEquals("aborted", summary.get("status").asText());
+        assertEquals("TOPIC_NOT_FOUND", summary.get("code").asText());
+        assertEquals(0, summary.get("index").asInt());
+        assertEquals(0, summary.get("accepted").asLong());
+    }
+    
+    private List<JsonNode> run(String topic, String body) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ingest.ingest(topic, new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8))).write(output);
+        
+        List<JsonNode> lines = new ArrayList<>();
+        for (String line : output.toString(StandardCharsets.UTF_8).split("\n")) {
+            lines.add(objectMapper.readTree(line));
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,82 @@
+package com.plivo.server.resources;
+
+import com.plivo.core.repository.TopicRepository;
+import com.plivo.core.service.StatsAggregator;
+import com.plivo.models.http.TopicStats;
+import jakarta.ws.rs.core.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class StatsResourceTest {
+    
+    private StatsAggregator aggregator;
+    private StatsResource resource;
+    
+    @BeforeEach
+    void setUp() throws Exception {
+        TopicRepository topicRepository = new TopicRepository();
+        for (String name : List.of("a", "b", "c", "d", "e")) {
+            topicRepository.createTopic(name);
+        }
+        aggregator = new StatsAggregator(topicRepository, 60000);
+        aggregator.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (aggregator.getSnapshot().getTopicCount() < 5 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        resource = new StatsResource(aggregator, 2);
+    }
+    
+    @AfterEach
+    void tearDown() {
+        aggregator.stop();
+    }
+    
+    @Test
+    void pagesAreCappedAndCarryTheNextCursorUntilTheLast() {
+        List<String> seen = new ArrayList<>();
+        String cursor = null;
+        Map<String, Object> body;
+        do {
+            body = body(resource.getStats(null, cursor, 10, null));
+            seen.addAll(topics(body).keySet());
+            assertEquals(5, body.get("total_topics"));
+            cursor = (String) body.get("next_cursor");
+        } while (cursor != null);
+        
+        // The limit is capped at the configured page size, and the short last page has no cursor
+        assertEquals(List.of("a", "b", "c", "d", "e"), seen);
+    }
+    
+    @Test
+    void topListsHaveNoCursor() {
+        Map<String, Object> body = body(resource.getStats(null, null, null, 2));
+        assertEquals(2, topics(body).size());
+        assertFalse(body.containsKey("next_cursor"));
+    }
+    
+    @Test
+    void limitsBelowOneAreRejected() {
+        assertEquals(400, resource.getStats(null, null, 0, null).getStatus());
+        assertEquals(400, resource.getStats(null, null, null, 0).getStatus());
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> body(Response response) {
+        assertEquals(200, response.getStatus());
+        return (Map<String, Object>) response.getEntity();
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static Map<String, TopicStats> topics(Map<String, Object> body) {
+        return (Map<String, TopicStats>) body.get("topics");
+    }
+}
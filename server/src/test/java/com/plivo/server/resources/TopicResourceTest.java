@@ -0,0 +1,154 @@
+package com.plivo.server.resources;
+
+import com.plivo.core.repository.TopicRepository;
+import com.plivo.models.HeapMessageHistory;
+import com.plivo.models.TopicConfig;
+import com.plivo.models.http.BatchTopicsRequest;
+import com.plivo.models.http.CreateTopicRequest;
+import com.plivo.models.http.TopicInfo;
+import io.dropwizard.jersey.validation.Validators;
+import jakarta.validation.Validator;
+import jakarta.ws.rs.core.Response;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TopicResourceTest {
+    
+    private final AtomicInteger historiesOpened = new AtomicInteger();
+    private TopicRepository topicRepository;
+    private TopicResource resource;
+    
+    @BeforeEach
+    void setUp() {
+        topicRepository = new TopicRepository(name -> {
+            historiesOpened.incrementAndGet();
+            return new HeapMessageHistory(100);
+        });
+        resource = new TopicResource(topicRepository);
+    }
+    
+    @Test
+    void batchCreateReportsCreatedExistingAndInvalidNames() {
+        topicRepository.createTopic("orders");
+        BatchTopicsRequest request = new BatchTopicsRequest(Arrays.asList("orders", "payments", "bad name", null, "refunds"));
+        request.setConfig(new TopicConfig(50, null, null, null, null));
+        
+        Map<String, Object> body = body(resource.createTopics(request));
+        assertEquals(List.of("payments", "refunds"), body.get("created"));
+        assertEquals(List.of("orders"), body.get("existing"));
+        assertEquals(Arrays.asList("bad name", null), body.get("invalid"));
+        assertEquals(50, topicRepository.getTopic("payments").getConfig().getQueueCapacity());
+    }
+    
+    @Test
+    void batchDeleteReportsTopicsNotFound() {
+        resource.createTopics(new BatchTopicsRequest(List.of("orders", "payments")));
+        
+        Map<String, Object> body = body(resource.deleteTopics(new BatchTopicsRequest(List.of("orders", "missing", "payments"))));
+        assertEquals(List.of("orders", "payments"), body.get("deleted"));
+        assertEquals(List.of("missing"), body.get("not_found"));
+        assertFalse(topicRepository.topicExists("orders"));
+        assertFalse(topicRepository.topicExists("payments"));
+    }
+    
+    @Test
+    void batchesOverTheLimitAreRejected() {
+        List<String> names = new ArrayList<>(Collections.nCopies(10001, "orders"));
+        assertEquals(400, resource.createTopics(new BatchTopicsRequest(names)).getStatus());
+        assertEquals(400, resource.deleteTopics(new BatchTopicsRequest(names)).getStatus());
+        assertFalse(topicRepository.topicExists("orders"));
+    }
+    
+    @Test
+    void creatingAndDeletingUnusedTopicsOpensNoHistory() {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            names.add("topic-" + i);
+        }
+        resource.createTopics(new BatchTopicsRequest(names));
+        resource.deleteTopics(new BatchTopicsRequest(names));
+        assertEquals(0, historiesOpened.get());
+        assertTrue(topicRepository.getAllTopics().isEmpty());
+    }
+    
+    @Test
+    void configPatchChangesOnlyTheFieldsItSets() {
+        topicRepository.createTopic("orders", new TopicConfig(50, null, null, 1000L, null));
+        TopicConfig changes = new TopicConfig(null, 20, TopicConfig.OverflowPolicy.DROP_OLDEST, null, null);
+        
+        Response response = resource.updateTopicConfig("orders", changes);
+        assertEquals(200, response.getStatus());
+        TopicConfig config = (TopicConfig) response.getEntity();
+        assertEquals(50, config.getQueueCapacity());
+        assertEquals(20, config.getHistorySize());
+        assertEquals(TopicConfig.OverflowPolicy.DROP_OLDEST, config.getOverflowPolicy());
+        assertEquals(1000L, config.getTtlMillis());
+        assertEquals(TopicConfig.Compression.AUTO, config.getCompression());
+        assertEquals(config, topicRepository.getTopic("orders").getConfig());
+        
+        assertEquals(404, resource.updateTopicConfig("missing", changes).getStatus());
+    }
+    
+    @Test
+    void configOutOfRangeFailsValidation() {
+        Validator validator = Validators.newValidator();
+        assertTrue(validator.validate(new TopicConfig(1, 1, null, 0L, null)).isEmpty());
+        assertEquals(1, validator.validate(new TopicConfig(0, null, null, null, null)).size());
+        assertEquals(1, validator.validate(new TopicConfig(null, 0, null, null, null)).size());
+        assertEquals(1, validator.validate(new TopicConfig(null, null, null, -1L, null)).size());
+    }
+    
+    @Test
+    void historySizeIsRejectedWhenTheHistoryCannotBeResized() {
+        resource = new TopicResource(new TopicRepository(name -> new HeapMessageHistory(100), false));
+        TopicConfig sized = new TopicConfig(null, 20, null, null, null);
+        
+        CreateTopicRequest create = new CreateTopicRequest("orders");
+        create.setConfig(sized);
+        assertEquals(400, resource.createTopic(create).getStatus());
+        BatchTopicsRequest batch = new BatchTopicsRequest(List.of("orders"));
+        batch.setConfig(sized);
+        assertEquals(400, resource.createTopics(batch).getStatus());
+        
+        resource.createTopics(new BatchTopicsRequest(List.of("orders")));
+        assertEquals(400, resource.updateTopicConfig("orders", sized).getStatus());
+        assertEquals(200, resource.updateTopicConfig("orders", new TopicConfig(10, null, null, null, null)).getStatus());
+    }
+    
+    @Test
+    void listingFollowsTheNextCursorWithinThePrefix() {
+        resource.createTopics(new BatchTopicsRequest(List.of("orders-a", "orders-b", "orders-c", "payments-a")));
+    
+        List<String> seen = new ArrayList<>();
+        String cursor = null;
+        Map<String, Object> body;
+        do {
+            body = body(resource.listTopics("orders-", cursor, 2));
+            for (Object topic : (List<?>) body.get("topics")) {
+                seen.add(((TopicInfo) topic).getName());
+            }
+            cursor = (String) body.get("next_cursor");
+        } while (cursor != null);
+    
+        assertEquals(List.of("orders-a", "orders-b", "orders-c"), seen);
+        assertEquals(4, ((List<?>) body(resource.listTopics("", null, 10)).get("topics")).size());
+        assertEquals(400, resource.listTopics(null, null, 0).getStatus());
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> body(Response response) {
+        assertEquals(200, response.getStatus());
+        return (Map<String, Object>) response.getEntity();
+    }
+}